@@ -5,6 +5,8 @@
  */
 package io.kroxylicious.proxy.filter;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 
 import javax.annotation.Nullable;
@@ -65,6 +67,9 @@ public interface FilterContext {
      * <br/>
      * Invoking this method is identical to invoking:
      * {@code requestFilterResultBuilder.forward(header, request).complete()}
+     * <p>The records of a request, such as those of a Produce request, may be views of the proxy's network
+     * buffers rather than copies. They must not be used once the request has been forwarded, or once the filter
+     * has dropped it or short-circuited it, because those buffers are then released and may be reused.</p>
      *
      * @param header The header to forward to the broker.
      * @param request The request to forward to the broker.
@@ -107,6 +112,34 @@ public interface FilterContext {
     <M extends ApiMessage> CompletionStage<M> sendRequest(@NonNull RequestHeaderData header,
                                                           @NonNull ApiMessage request);
 
+    /**
+     * Runs CPU-intensive work, such as encrypting or parsing records, on the proxy's worker pool
+     * rather than on the thread associated with the connection, so that it doesn't hold up
+     * the network I/O of other connections sharing that thread.
+     * <p>Work offloaded by the filters of a connection is run one piece at a time, in the order
+     * in which it was offloaded. The returned {@link CompletionStage} is completed, in that same order,
+     * by the thread associated with the connection, so computation stages chained to it using the default
+     * execution methods may safely mutate filter members. The work itself must not touch them.
+     * See {@link io.kroxylicious.proxy.filter} for more details.</p>
+     * <p>The default implementation runs the work immediately, on the calling thread.</p>
+     *
+     * @param <T> The type of the result of the work
+     * @param work The work to run.
+     * @return CompletionStage that will yield the result of the work, or complete exceptionally with
+     * the exception it threw, or with a {@link java.util.concurrent.RejectedExecutionException} if the
+     * worker pool is too busy to accept it.
+     * @see FilterFactoryContext#workerPool()
+     */
+    @NonNull
+    default <T> CompletionStage<T> offload(@NonNull Callable<T> work) {
+        try {
+            return CompletableFuture.completedFuture(work.call());
+        }
+        catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     /**
      * Generates a completed filter results containing the given header and response.  When
      * response filters implementations return this result, the response will be sent towards
@@ -114,6 +147,9 @@ public interface FilterContext {
      * <br/>
      * Invoking this method is identical to invoking:
      * {@code responseFilterResultBuilder.forward(header, response).complete()}
+     * <p>The records of a response, such as those of a Fetch response, may be views of the proxy's network
+     * buffers rather than copies. They must not be used once the response has been forwarded, or once the filter
+     * has dropped it, because those buffers are then released and may be reused.</p>
      *
      * @param header The header to forward to the broker.
      * @param response The request to forward to the broker.
@@ -6,8 +6,11 @@
 
 package io.kroxylicious.proxy.filter;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 
+import javax.annotation.Nullable;
+
 import io.kroxylicious.proxy.plugin.UnknownPluginInstanceException;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -27,6 +30,32 @@ public interface FilterFactoryContext {
      */
     ScheduledExecutorService eventLoop();
 
+    /**
+     * The proxy's pool of threads for CPU-intensive work, shared by all connections.
+     * Work submitted to it may run concurrently and in any order, and must not mutate
+     * Filter members. Prefer {@link FilterContext#offload(java.util.concurrent.Callable)}, which
+     * runs the work of a connection in order and completes on the connection's event loop.
+     * Once the pool is saturated, it rejects work with a {@link java.util.concurrent.RejectedExecutionException}.
+     * The default implementation runs work immediately, on the submitting thread.
+     * @return executor
+     */
+    @NonNull
+    default Executor workerPool() {
+        return Runnable::run;
+    }
+
+    /**
+     * The cache of topic names of the virtual cluster this Filter's channel belongs to, as seen
+     * from this Filter's position in the filter chain.
+     * Null if the factory is not bound to a channel yet.
+     * The default implementation returns null.
+     * @return cache, or null
+     */
+    @Nullable
+    default TopicNameCache topicNameCache() {
+        return null;
+    }
+
     /**
      * Gets a plugin instance for the given plugin type and name
      * @param pluginClass The plugin type
@@ -0,0 +1,38 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.proxy.filter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+import org.apache.kafka.common.Uuid;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Resolves topic ids to topic names, for filters handling requests and responses which identify
+ * topics by id (such as Fetch v13 and later).
+ * <p>The names are cached for all the connections of a virtual cluster, separately for each position in the
+ * filter chain, because filters nearer the broker may rewrite topic names. The cache looks up the names it
+ * doesn't know by sending a Metadata request upstream from the asking filter, so it only ever holds names as
+ * that filter sees them. Concurrent lookups of the same topic id share a single request. Names which haven't
+ * been used for a while are evicted, and so is the least recently used name once the cache is full.</p>
+ */
+public interface TopicNameCache {
+
+    /**
+     * Gets the names of the given topics.
+     * The returned stage is already complete if all the names are cached. Otherwise, it completes on the
+     * event loop of the given context once the missing names have been looked up.
+     * @param topicIds The topic ids.
+     * @param context The context of the filter asking, used to send a Metadata request for the names which aren't cached.
+     * @return A stage which completes with the names of the topics, by topic id. Topics which don't exist are absent from the map.
+     */
+    @NonNull
+    CompletionStage<Map<Uuid, String>> topicNames(@NonNull Collection<Uuid> topicIds, @NonNull FilterContext context);
+}
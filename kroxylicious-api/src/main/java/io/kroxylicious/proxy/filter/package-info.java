@@ -61,5 +61,8 @@
  *  which is available in {@link io.kroxylicious.proxy.filter.FilterFactory#createFilter(FilterFactoryContext, java.lang.Object)}
  *  when it is creating an instance of a Filter. Ensure that any work executes quickly as this is the IO thread for potentially
  *  many connections.</p>
+ *  <p>CPU-intensive work should instead be handed to the proxy's worker pool using
+ *  {@link io.kroxylicious.proxy.filter.FilterContext#offload(java.util.concurrent.Callable)}. Computation stages chained
+ *  to the stage it returns using the default execution methods are performed by the thread for the connection.</p>
  */
 package io.kroxylicious.proxy.filter;
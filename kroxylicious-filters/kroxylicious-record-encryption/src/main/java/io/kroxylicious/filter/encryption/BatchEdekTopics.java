@@ -0,0 +1,199 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.filter.encryption;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import org.apache.kafka.common.config.ConfigResource;
+import org.apache.kafka.common.config.TopicConfig;
+import org.apache.kafka.common.message.DescribeConfigsRequestData;
+import org.apache.kafka.common.message.DescribeConfigsRequestData.DescribeConfigsResource;
+import org.apache.kafka.common.message.DescribeConfigsResponseData;
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.protocol.Errors;
+import org.slf4j.Logger;
+
+import io.kroxylicious.filter.encryption.crypto.Encryption;
+import io.kroxylicious.proxy.filter.FilterContext;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * The topics whose records are encrypted with {@link Encryption#V3_BATCH_EDEK}, which stores the EDEK in only
+ * the first record of each batch.
+ * <p>Compaction could remove the record holding the EDEK, leaving the rest of its batch undecryptable, so compacted
+ * topics are refused. A configured topic is only encrypted this way once the broker has described it as not compacted,
+ * otherwise its records are encrypted with the EDEK in every record. The description is renewed periodically, so that
+ * a topic made compacted without going through the proxy stops being encrypted this way, but records produced before
+ * the change was noticed remain at risk.</p>
+ * <p>Optionally, requests which would make a configured topic compacted, or make compaction the broker default, are refused.</p>
+ * <p>Used on the filter thread of a single connection.</p>
+ */
+class BatchEdekTopics {
+
+    private static final Logger LOGGER = getLogger(BatchEdekTopics.class);
+
+    static final String BROKER_CLEANUP_POLICY = "log.cleanup.policy";
+
+    // Version 1 is supported by every broker which supports record headers, which encryption needs anyway.
+    static final short DESCRIBE_CONFIGS_VERSION = 1;
+
+    static final Duration DESCRIBE_AGAIN_AFTER = Duration.ofMinutes(1);
+
+    private final Set<String> topics;
+    private final boolean refuseCompaction;
+    private final long describeAgainAfterNanos;
+    private final LongSupplier nanoTime;
+    // whether the configured topics are compacted, as described by the broker
+    private final Map<String, Description> compacted = new HashMap<>();
+
+    private record Description(boolean compacted, long describedAt) {}
+
+    /**
+     * @param topics The names of the topics whose records should be encrypted with the EDEK stored once per batch.
+     * @param refuseCompaction Whether to refuse requests which would make any of the topics compacted.
+     */
+    BatchEdekTopics(@NonNull Set<String> topics, boolean refuseCompaction) {
+        this(topics, refuseCompaction, DESCRIBE_AGAIN_AFTER, System::nanoTime);
+    }
+
+    BatchEdekTopics(@NonNull Set<String> topics, boolean refuseCompaction, @NonNull Duration describeAgainAfter, @NonNull LongSupplier nanoTime) {
+        this.topics = Set.copyOf(topics);
+        this.refuseCompaction = refuseCompaction;
+        this.describeAgainAfterNanos = describeAgainAfter.toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Selects the topics whose records are encrypted with the EDEK stored once per batch.
+     * @param topicNames The names of the topics being produced to.
+     * @param context The context of the filter, used to describe the topics' cleanup policy.
+     * @return A stage which completes, on the filter thread, with the names of the topics which are configured
+     * for it and aren't compacted.
+     */
+    @NonNull
+    CompletionStage<Set<String>> select(@NonNull Collection<String> topicNames, @NonNull FilterContext context) {
+        long now = nanoTime.getAsLong();
+        var undescribed = topicNames.stream().filter(topics::contains).filter(topicName -> {
+            var description = compacted.get(topicName);
+            return description == null || now - description.describedAt() > describeAgainAfterNanos;
+        }).toList();
+        CompletionStage<Void> described = undescribed.isEmpty() ? CompletableFuture.completedFuture(null) : describe(undescribed, context);
+        return described.thenApply(ignored -> topicNames.stream()
+                .filter(topicName -> {
+                    var description = compacted.get(topicName);
+                    return description != null && !description.compacted();
+                })
+                .collect(Collectors.toSet()));
+    }
+
+    private CompletionStage<Void> describe(List<String> topicNames, FilterContext context) {
+        var request = new DescribeConfigsRequestData();
+        for (String topicName : topicNames) {
+            request.resources().add(new DescribeConfigsResource()
+                    .setResourceType(ConfigResource.Type.TOPIC.id())
+                    .setResourceName(topicName)
+                    .setConfigurationKeys(List.of(TopicConfig.CLEANUP_POLICY_CONFIG)));
+        }
+        var header = new RequestHeaderData().setRequestApiVersion(DESCRIBE_CONFIGS_VERSION);
+        return context.<DescribeConfigsResponseData> sendRequest(header, request)
+                .handle((response, throwable) -> {
+                    if (throwable != null) {
+                        // the topics are described again next time, and meanwhile the EDEK goes in every record
+                        LOGGER.warn("Failed to describe the cleanup policy of topics {}, storing the EDEK in every record: {}", topicNames, throwable.getMessage());
+                        topicNames.forEach(compacted::remove);
+                        return null;
+                    }
+                    long now = nanoTime.getAsLong();
+                    for (var result : response.results()) {
+                        Boolean isCompacted = result.errorCode() == Errors.NONE.code() ? isCompacted(result) : null;
+                        if (isCompacted == null) {
+                            LOGGER.warn("Failed to describe the cleanup policy of topic {}, storing the EDEK in every record: {}", result.resourceName(),
+                                    Errors.forCode(result.errorCode()));
+                            compacted.remove(result.resourceName());
+                        }
+                        else {
+                            if (isCompacted) {
+                                LOGGER.warn("Topic {} is compacted, so storing the EDEK in every record rather than once per batch", result.resourceName());
+                            }
+                            compacted.put(result.resourceName(), new Description(isCompacted, now));
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    @Nullable
+    private static Boolean isCompacted(DescribeConfigsResponseData.DescribeConfigsResult result) {
+        for (var config : result.configs()) {
+            if (TopicConfig.CLEANUP_POLICY_CONFIG.equals(config.name()) && config.value() != null) {
+                return isCompactPolicy(config.value());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param resourceType The type of the resource being configured.
+     * @param resourceName The name of the resource being configured.
+     * @param configName The name of the config being set.
+     * @param value The value it is being set to.
+     * @return true if refusing compaction and setting the config would make compacted a topic whose records are encrypted
+     * with the EDEK stored once per batch.
+     */
+    boolean refuses(byte resourceType, @NonNull String resourceName, @NonNull String configName, @Nullable String value) {
+        if (!refuseCompaction || topics.isEmpty() || value == null || !isCompactPolicy(value)) {
+            return false;
+        }
+        if (resourceType == ConfigResource.Type.TOPIC.id()) {
+            return topics.contains(resourceName) && TopicConfig.CLEANUP_POLICY_CONFIG.equals(configName);
+        }
+        return resourceType == ConfigResource.Type.BROKER.id() && BROKER_CLEANUP_POLICY.equals(configName);
+    }
+
+    /**
+     * @param resourceName The name of the resource whose configuration is refused.
+     * @return The error message for a refused resource.
+     */
+    static String refusal(@NonNull String resourceName) {
+        return "Compaction can't be enabled for " + resourceName + " because the proxy stores the encrypted DEK of a topic's records once per batch";
+    }
+
+    /**
+     * @param resourceName The name of a resource which wasn't refused, but which was part of a request that was.
+     * @return The error message for a resource which wasn't refused.
+     */
+    static String notAttempted(@NonNull String resourceName) {
+        return "Not attempted for " + resourceName + " because the request would enable compaction for a topic whose encrypted DEKs the proxy stores once per batch";
+    }
+
+    /**
+     * @param value A cleanup policy, which is a comma-separated list of policies.
+     * @return true if the policy includes compaction.
+     */
+    private static boolean isCompactPolicy(String value) {
+        for (String policy : value.split(",")) {
+            if (TopicConfig.CLEANUP_POLICY_COMPACT.equals(policy.strip().toLowerCase(Locale.ROOT))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -9,9 +9,16 @@ package io.kroxylicious.filter.encryption;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -23,8 +30,10 @@ import org.slf4j.LoggerFactory;
 
 import io.micrometer.core.instrument.Metrics;
 
+import io.kroxylicious.filter.encryption.common.CryptoOffload;
 import io.kroxylicious.filter.encryption.common.FilterThreadExecutor;
 import io.kroxylicious.filter.encryption.config.CipherSpec;
+import io.kroxylicious.filter.encryption.config.CryptoOffloadConfig;
 import io.kroxylicious.filter.encryption.config.EncryptionConfigurationException;
 import io.kroxylicious.filter.encryption.config.KekSelectorService;
 import io.kroxylicious.filter.encryption.config.KmsCacheConfig;
@@ -67,6 +76,7 @@ public class RecordEncryption<K, E> implements FilterFactory<RecordEncryptionCon
         retryThread.setDaemon(true);
         return retryThread;
     });
+    private static final int CRYPTO_POOL_QUEUE_PER_THREAD = 64;
     private static KmsMetrics kmsMetrics = MicrometerKmsMetrics.create(Metrics.globalRegistry);
     private static final Logger LOGGER = LoggerFactory.getLogger(RecordEncryption.class);
 
@@ -106,7 +116,49 @@ public class RecordEncryption<K, E> implements FilterFactory<RecordEncryptionCon
         DekManager<K, E> dekManager = new DekManager<>(ignored -> kms, null, 5_000_000);
         EncryptionDekCache<K, E> encryptionDekCache = new EncryptionDekCache<>(dekManager, null, EncryptionDekCache.NO_MAX_CACHE_SIZE);
         DecryptionDekCache<K, E> decryptionDekCache = new DecryptionDekCache<>(dekManager, null, DecryptionDekCache.NO_MAX_CACHE_SIZE);
-        return new SharedEncryptionContext<>(kms, configuration, dekManager, encryptionDekCache, decryptionDekCache);
+        Set<String> batchEdekTopics = configuration.batchEdekTopics();
+        CryptoOffloadConfig cryptoOffloadConfig = configuration.cryptoOffload();
+        LOGGER.debug("Crypto offload configuration: {}", cryptoOffloadConfig);
+        ExecutorService cryptoPool = null;
+        CryptoOffload cryptoOffload = CryptoOffload.NONE;
+        if (cryptoOffloadConfig.enabled()) {
+            Executor cryptoExecutor;
+            if (cryptoOffloadConfig.threads() != null) {
+                cryptoPool = newCryptoPool(cryptoOffloadConfig.threads());
+                cryptoExecutor = cryptoPool;
+            }
+            else {
+                // the worker pool rejects work once it's full, and then the work runs on the thread which submitted it
+                cryptoExecutor = context.workerPool();
+            }
+            cryptoOffload = new CryptoOffload(cryptoExecutor, cryptoOffloadConfig.minBatchBytes());
+        }
+        return new SharedEncryptionContext<>(kms, configuration, dekManager, encryptionDekCache, decryptionDekCache, batchEdekTopics, cryptoOffload,
+                cryptoPool);
+    }
+
+    /**
+     * A bounded pool for the crypto work of the filter. Once its queue is full the work runs on the
+     * Filter thread which submitted it, holding up that connection rather than queueing without limit.
+     */
+    private static ExecutorService newCryptoPool(int threads) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * CRYPTO_POOL_QUEUE_PER_THREAD),
+                r -> {
+                    Thread cryptoThread = new Thread(r, "recordEncryptionCrypto-" + threadCount.incrementAndGet());
+                    cryptoThread.setDaemon(true);
+                    return cryptoThread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Override
+    public void close(SharedEncryptionContext<K, E> initializationData) {
+        ExecutorService cryptoPool = initializationData.cryptoPool();
+        if (cryptoPool != null) {
+            cryptoPool.shutdown();
+        }
     }
 
     @NonNull
@@ -121,16 +173,20 @@ public class RecordEncryption<K, E> implements FilterFactory<RecordEncryptionCon
                 1024 * 1024,
                 8 * 1024 * 1024,
                 sharedEncryptionContext.encryptionDekCache(),
-                executor);
+                executor,
+                sharedEncryptionContext.cryptoOffload());
 
         var decryptionManager = new InBandDecryptionManager<>(EncryptionResolver.ALL,
                 sharedEncryptionContext.dekManager(),
                 sharedEncryptionContext.decryptionDekCache(),
-                executor);
+                executor,
+                sharedEncryptionContext.cryptoOffload());
 
         KekSelectorService<Object, K> ksPlugin = context.pluginInstance(KekSelectorService.class, sharedEncryptionContext.configuration().selector());
         TopicNameBasedKekSelector<K> kekSelector = ksPlugin.buildSelector(sharedEncryptionContext.kms(), sharedEncryptionContext.configuration().selectorConfig());
-        return new RecordEncryptionFilter<>(encryptionManager, decryptionManager, kekSelector, executor);
+        return new RecordEncryptionFilter<>(encryptionManager, decryptionManager, kekSelector, new BatchEdekTopics(sharedEncryptionContext.batchEdekTopics(),
+                sharedEncryptionContext.configuration().refuseCompactingBatchEdekTopics()),
+                executor);
     }
 
     @NonNull
@@ -10,18 +10,30 @@ import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import org.apache.kafka.common.config.ConfigResource;
+import org.apache.kafka.common.message.AlterConfigsRequestData;
+import org.apache.kafka.common.message.AlterConfigsResponseData;
+import org.apache.kafka.common.message.AlterConfigsResponseData.AlterConfigsResourceResponse;
+import org.apache.kafka.common.message.CreateTopicsRequestData;
+import org.apache.kafka.common.message.CreateTopicsRequestData.CreatableTopic;
+import org.apache.kafka.common.message.CreateTopicsResponseData;
+import org.apache.kafka.common.message.CreateTopicsResponseData.CreatableTopicResult;
 import org.apache.kafka.common.message.FetchResponseData;
 import org.apache.kafka.common.message.FetchResponseData.FetchableTopicResponse;
 import org.apache.kafka.common.message.FetchResponseData.PartitionData;
+import org.apache.kafka.common.message.IncrementalAlterConfigsRequestData;
+import org.apache.kafka.common.message.IncrementalAlterConfigsResponseData;
 import org.apache.kafka.common.message.ProduceRequestData;
 import org.apache.kafka.common.message.ProduceRequestData.TopicProduceData;
 import org.apache.kafka.common.message.RequestHeaderData;
 import org.apache.kafka.common.message.ResponseHeaderData;
+import org.apache.kafka.common.protocol.Errors;
 import org.apache.kafka.common.record.MemoryRecords;
 import org.slf4j.Logger;
 
@@ -29,11 +41,15 @@ import io.kroxylicious.filter.encryption.common.FilterThreadExecutor;
 import io.kroxylicious.filter.encryption.common.RecordEncryptionUtil;
 import io.kroxylicious.filter.encryption.config.RecordField;
 import io.kroxylicious.filter.encryption.config.TopicNameBasedKekSelector;
+import io.kroxylicious.filter.encryption.crypto.AadNone;
 import io.kroxylicious.filter.encryption.decrypt.DecryptionManager;
 import io.kroxylicious.filter.encryption.encrypt.EncryptionManager;
 import io.kroxylicious.filter.encryption.encrypt.EncryptionScheme;
+import io.kroxylicious.proxy.filter.AlterConfigsRequestFilter;
+import io.kroxylicious.proxy.filter.CreateTopicsRequestFilter;
 import io.kroxylicious.proxy.filter.FetchResponseFilter;
 import io.kroxylicious.proxy.filter.FilterContext;
+import io.kroxylicious.proxy.filter.IncrementalAlterConfigsRequestFilter;
 import io.kroxylicious.proxy.filter.ProduceRequestFilter;
 import io.kroxylicious.proxy.filter.RequestFilterResult;
 import io.kroxylicious.proxy.filter.ResponseFilterResult;
@@ -47,21 +63,27 @@ import static org.slf4j.LoggerFactory.getLogger;
  * @param <K> The type of KEK reference
  */
 public class RecordEncryptionFilter<K>
-        implements ProduceRequestFilter, FetchResponseFilter {
+        implements ProduceRequestFilter, FetchResponseFilter, CreateTopicsRequestFilter, AlterConfigsRequestFilter, IncrementalAlterConfigsRequestFilter {
     private static final Logger log = getLogger(RecordEncryptionFilter.class);
+    // the IncrementalAlterConfigs operations, see org.apache.kafka.clients.admin.AlterConfigOp.OpType
+    private static final byte SET = 0;
+    private static final byte APPEND = 2;
     private final TopicNameBasedKekSelector<K> kekSelector;
 
     private final EncryptionManager<K> encryptionManager;
     private final DecryptionManager decryptionManager;
+    private final BatchEdekTopics batchEdekTopics;
     private final FilterThreadExecutor filterThreadExecutor;
 
     RecordEncryptionFilter(EncryptionManager<K> encryptionManager,
                            DecryptionManager decryptionManager,
                            TopicNameBasedKekSelector<K> kekSelector,
+                           @NonNull BatchEdekTopics batchEdekTopics,
                            @NonNull FilterThreadExecutor filterThreadExecutor) {
         this.kekSelector = kekSelector;
         this.encryptionManager = encryptionManager;
         this.decryptionManager = decryptionManager;
+        this.batchEdekTopics = batchEdekTopics;
         this.filterThreadExecutor = filterThreadExecutor;
     }
 
@@ -78,28 +100,30 @@ public class RecordEncryptionFilter<K>
         var topicNameToData = request.topicData().stream().collect(Collectors.toMap(TopicProduceData::name, Function.identity()));
         CompletionStage<Map<String, K>> keks = filterThreadExecutor.completingOnFilterThread(kekSelector.selectKek(topicNameToData.keySet()));
         return keks // figure out what keks we need
-                .thenCompose(kekMap -> {
-                    var futures = kekMap.entrySet().stream().flatMap(e -> {
-                        String topicName = e.getKey();
-                        var kekId = e.getValue();
-                        TopicProduceData tpd = topicNameToData.get(topicName);
-                        return tpd.partitionData().stream().map(ppd -> {
-                            // handle case where this topic is to be left unencrypted
-                            if (kekId == null) {
-                                return CompletableFuture.completedStage(ppd);
-                            }
-                            MemoryRecords records = (MemoryRecords) ppd.records();
-                            return encryptionManager.encrypt(
-                                    topicName,
-                                    ppd.index(),
-                                    new EncryptionScheme<>(kekId, EnumSet.of(RecordField.RECORD_VALUE)),
-                                    records,
-                                    context::createByteBufferOutputStream)
-                                    .thenApply(ppd::setRecords);
-                        });
-                    }).toList();
-                    return RecordEncryptionUtil.join(futures).thenApply(x -> request);
-                }).exceptionallyCompose(throwable -> {
+                .thenCompose(kekMap -> batchEdekTopics.select(encryptedTopics(kekMap), context) // and which topics can store the EDEK once per batch
+                        .thenCompose(batchEdek -> {
+                            var futures = kekMap.entrySet().stream().flatMap(e -> {
+                                String topicName = e.getKey();
+                                var kekId = e.getValue();
+                                TopicProduceData tpd = topicNameToData.get(topicName);
+                                return tpd.partitionData().stream().map(ppd -> {
+                                    // handle case where this topic is to be left unencrypted
+                                    if (kekId == null) {
+                                        return CompletableFuture.completedStage(ppd);
+                                    }
+                                    MemoryRecords records = (MemoryRecords) ppd.records();
+                                    return encryptionManager.encrypt(
+                                            topicName,
+                                            ppd.index(),
+                                            new EncryptionScheme<>(kekId, EnumSet.of(RecordField.RECORD_VALUE), AadNone.INSTANCE, batchEdek.contains(topicName)),
+                                            records,
+                                            context::createByteBufferOutputStream)
+                                            .thenApply(ppd::setRecords);
+                                });
+                            }).toList();
+                            return RecordEncryptionUtil.join(futures).thenApply(x -> request);
+                        }))
+                .exceptionallyCompose(throwable -> {
                     log.atWarn().setMessage("failed to encrypt records, cause message: {}")
                             .addArgument(throwable.getMessage())
                             .setCause(log.isDebugEnabled() ? throwable : null)
@@ -108,6 +132,90 @@ public class RecordEncryptionFilter<K>
                 });
     }
 
+    private static <K> Set<String> encryptedTopics(Map<String, K> kekMap) {
+        return kekMap.entrySet().stream()
+                .filter(e -> e.getValue() != null)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public CompletionStage<RequestFilterResult> onCreateTopicsRequest(short apiVersion,
+                                                                      RequestHeaderData header,
+                                                                      CreateTopicsRequestData request,
+                                                                      FilterContext context) {
+        var refused = request.topics().stream()
+                .filter(topic -> topic.configs().stream()
+                        .anyMatch(config -> batchEdekTopics.refuses(ConfigResource.Type.TOPIC.id(), topic.name(), config.name(), config.value())))
+                .map(CreatableTopic::name)
+                .collect(Collectors.toSet());
+        if (refused.isEmpty()) {
+            return context.forwardRequest(header, request);
+        }
+        var response = new CreateTopicsResponseData();
+        for (CreatableTopic topic : request.topics()) {
+            response.topics().add(new CreatableTopicResult()
+                    .setName(topic.name())
+                    .setErrorCode(Errors.POLICY_VIOLATION.code())
+                    .setErrorMessage(errorMessage(refused, topic.name())));
+        }
+        return context.requestFilterResultBuilder().shortCircuitResponse(response).completed();
+    }
+
+    @Override
+    public CompletionStage<RequestFilterResult> onAlterConfigsRequest(short apiVersion,
+                                                                      RequestHeaderData header,
+                                                                      AlterConfigsRequestData request,
+                                                                      FilterContext context) {
+        var refused = request.resources().stream()
+                .filter(resource -> resource.configs().stream()
+                        .anyMatch(config -> batchEdekTopics.refuses(resource.resourceType(), resource.resourceName(), config.name(), config.value())))
+                .map(AlterConfigsRequestData.AlterConfigsResource::resourceName)
+                .collect(Collectors.toSet());
+        if (refused.isEmpty()) {
+            return context.forwardRequest(header, request);
+        }
+        var response = new AlterConfigsResponseData();
+        for (var resource : request.resources()) {
+            response.responses().add(new AlterConfigsResourceResponse()
+                    .setResourceType(resource.resourceType())
+                    .setResourceName(resource.resourceName())
+                    .setErrorCode(Errors.POLICY_VIOLATION.code())
+                    .setErrorMessage(errorMessage(refused, resource.resourceName())));
+        }
+        return context.requestFilterResultBuilder().shortCircuitResponse(response).completed();
+    }
+
+    @Override
+    public CompletionStage<RequestFilterResult> onIncrementalAlterConfigsRequest(short apiVersion,
+                                                                                 RequestHeaderData header,
+                                                                                 IncrementalAlterConfigsRequestData request,
+                                                                                 FilterContext context) {
+        // only setting or appending to a config can make a topic compacted
+        var refused = request.resources().stream()
+                .filter(resource -> resource.configs().stream()
+                        .filter(config -> config.configOperation() == SET || config.configOperation() == APPEND)
+                        .anyMatch(config -> batchEdekTopics.refuses(resource.resourceType(), resource.resourceName(), config.name(), config.value())))
+                .map(IncrementalAlterConfigsRequestData.AlterConfigsResource::resourceName)
+                .collect(Collectors.toSet());
+        if (refused.isEmpty()) {
+            return context.forwardRequest(header, request);
+        }
+        var response = new IncrementalAlterConfigsResponseData();
+        for (var resource : request.resources()) {
+            response.responses().add(new IncrementalAlterConfigsResponseData.AlterConfigsResourceResponse()
+                    .setResourceType(resource.resourceType())
+                    .setResourceName(resource.resourceName())
+                    .setErrorCode(Errors.POLICY_VIOLATION.code())
+                    .setErrorMessage(errorMessage(refused, resource.resourceName())));
+        }
+        return context.requestFilterResultBuilder().shortCircuitResponse(response).completed();
+    }
+
+    private static String errorMessage(Set<String> refused, String resourceName) {
+        return refused.contains(resourceName) ? BatchEdekTopics.refusal(resourceName) : BatchEdekTopics.notAttempted(resourceName);
+    }
+
     @Override
     public CompletionStage<ResponseFilterResult> onFetchResponse(short apiVersion, ResponseHeaderData header, FetchResponseData response, FilterContext context) {
         return maybeDecodeFetch(response.responses(), context)
@@ -6,12 +6,18 @@
 
 package io.kroxylicious.filter.encryption;
 
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+import io.kroxylicious.filter.encryption.common.CryptoOffload;
 import io.kroxylicious.filter.encryption.config.RecordEncryptionConfig;
 import io.kroxylicious.filter.encryption.decrypt.DecryptionDekCache;
 import io.kroxylicious.filter.encryption.dek.DekManager;
 import io.kroxylicious.filter.encryption.encrypt.EncryptionDekCache;
 import io.kroxylicious.kms.service.Kms;
 
+import edu.umd.cs.findbugs.annotations.Nullable;
+
 /**
  * Things which are shared between instances of the filter.
  * Because they're shared between filter instances, the things shared here must be thread-safe.
@@ -24,24 +30,36 @@ public class SharedEncryptionContext<K, E> {
     private final DekManager<K, E> dekManager;
     private final EncryptionDekCache<K, E> encryptionDekCache;
     private final DecryptionDekCache<K, E> decryptionDekCache;
+    private final Set<String> batchEdekTopics;
+    private final CryptoOffload cryptoOffload;
+    private final @Nullable ExecutorService cryptoPool;
 
     /**
      * @param kms
      * @param configuration
      * @param dekManager
      * @param encryptionDekCache
+     * @param batchEdekTopics the topics whose records are encrypted with the EDEK stored once per batch
+     * @param cryptoOffload
+     * @param cryptoPool the crypto pool dedicated to the filter, if any, which is shut down when the factory is closed
      */
     SharedEncryptionContext(
                             Kms<K, E> kms,
                             RecordEncryptionConfig configuration,
                             DekManager<K, E> dekManager,
                             EncryptionDekCache<K, E> encryptionDekCache,
-                            DecryptionDekCache<K, E> decryptionDekCache) {
+                            DecryptionDekCache<K, E> decryptionDekCache,
+                            Set<String> batchEdekTopics,
+                            CryptoOffload cryptoOffload,
+                            @Nullable ExecutorService cryptoPool) {
         this.kms = kms;
         this.configuration = configuration;
         this.dekManager = dekManager;
         this.encryptionDekCache = encryptionDekCache;
         this.decryptionDekCache = decryptionDekCache;
+        this.batchEdekTopics = batchEdekTopics;
+        this.cryptoOffload = cryptoOffload;
+        this.cryptoPool = cryptoPool;
     }
 
     public Kms<K, E> kms() {
@@ -63,4 +81,17 @@ public class SharedEncryptionContext<K, E> {
     public DecryptionDekCache<K, E> decryptionDekCache() {
         return decryptionDekCache;
     }
+
+    public Set<String> batchEdekTopics() {
+        return batchEdekTopics;
+    }
+
+    public CryptoOffload cryptoOffload() {
+        return cryptoOffload;
+    }
+
+    @Nullable
+    public ExecutorService cryptoPool() {
+        return cryptoPool;
+    }
 }
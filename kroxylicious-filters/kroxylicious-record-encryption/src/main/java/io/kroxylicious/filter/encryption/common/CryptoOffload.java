@@ -0,0 +1,67 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.filter.encryption.common;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import org.apache.kafka.common.record.MemoryRecords;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * Decides which partitions are encrypted or decrypted on a pool of crypto threads rather than on the Filter thread.
+ * Offloaded work runs concurrently with the work of other partitions, so it must not touch Filter member state,
+ * nor allocate the connection's buffers, so it writes its records to heap buffers. It does read the records of the
+ * frame being filtered, which may be views of the connection's network buffers, and decryption overwrites them in
+ * place, so the frame must not be forwarded or released until the work has completed.
+ * Its result must be brought back to the Filter thread with {@link FilterThreadExecutor#completingOnFilterThread(CompletionStage)}.
+ * @param executor The crypto threads.
+ * @param minBatchBytes The size of the records of a partition at or above which their work is offloaded.
+ */
+public record CryptoOffload(@NonNull Executor executor, int minBatchBytes) {
+
+    /**
+     * Never offloads.
+     */
+    public static final CryptoOffload NONE = new CryptoOffload(Runnable::run, Integer.MAX_VALUE);
+
+    public CryptoOffload {
+        Objects.requireNonNull(executor);
+        if (minBatchBytes < 0) {
+            throw new IllegalArgumentException("minBatchBytes must not be negative");
+        }
+    }
+
+    /**
+     * @param records The records of a partition.
+     * @return true if the records should be encrypted or decrypted on the crypto threads.
+     */
+    public boolean shouldOffload(@NonNull MemoryRecords records) {
+        return records.sizeInBytes() >= minBatchBytes;
+    }
+
+    /**
+     * Runs the given work on the crypto threads, or on the calling thread if they won't accept it,
+     * such as when they are the proxy's worker pool and it is full.
+     * @param work The work.
+     * @return A stage completing with the result of the work.
+     * @param <T> The type of the result.
+     */
+    public <T> @NonNull CompletionStage<T> supply(@NonNull Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(work, executor);
+        }
+        catch (RejectedExecutionException e) {
+            return CompletableFuture.supplyAsync(work, Runnable::run);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.filter.encryption.config;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+/**
+ * Controls whether the encryption and decryption of partitions run on a pool of crypto threads,
+ * rather than on the event loop of the connection.
+ *
+ * @param threads the number of threads in a crypto pool dedicated to the filter (defaults to using the proxy's worker pool).
+ * @param minBatchBytes the size in bytes of the records of a partition at or above which their encryption or decryption
+ * is offloaded (defaults to never offloading).
+ */
+public record CryptoOffloadConfig(@Nullable Integer threads,
+                                  @Nullable Integer minBatchBytes) {
+
+    public CryptoOffloadConfig {
+        if (threads != null && threads < 1) {
+            throw new IllegalArgumentException("cryptoThreads must be at least 1");
+        }
+        if (minBatchBytes != null && minBatchBytes < 0) {
+            throw new IllegalArgumentException("cryptoOffloadMinBatchBytes must not be negative");
+        }
+    }
+
+    /**
+     * @return true if any encryption or decryption is offloaded.
+     */
+    public boolean enabled() {
+        return minBatchBytes != null;
+    }
+}
@@ -17,6 +17,14 @@ package io.kroxylicious.filter.encryption.config;
 public enum EncryptionVersion {
 
     V1_UNSUPPORTED,
-    V2;
+    V2,
+    /**
+     * As {@link #V2}, but the encrypted DEK is stored once per record batch rather than in every record,
+     * which makes small records much smaller. Compaction could remove the record holding the encrypted DEK,
+     * losing the rest of the batch's records, whose fetching then fails. So it is only used for the topics
+     * configured for it which aren't compacted, and is unsafe for a topic which might become compacted
+     * (see {@link RecordEncryptionConfig#batchEdekTopics()}).
+     */
+    V3_BATCH_EDEK;
 
 }
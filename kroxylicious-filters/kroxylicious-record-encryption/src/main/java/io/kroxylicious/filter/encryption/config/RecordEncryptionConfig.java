@@ -6,7 +6,10 @@
 
 package io.kroxylicious.filter.encryption.config;
 
+import java.util.Collection;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -39,6 +42,46 @@ public record RecordEncryptionConfig(
                 resolvedAliasRefreshAfterWriteSeconds, notFoundAliasExpireAfterWriteSeconds);
     }
 
+    public CryptoOffloadConfig cryptoOffload() {
+        return new CryptoOffloadConfig(getExperimentalInt("cryptoThreads"), getExperimentalInt("cryptoOffloadMinBatchBytes"));
+    }
+
+    /**
+     * @return The topics whose records are encrypted with {@link EncryptionVersion#V3_BATCH_EDEK}, which stores the encrypted DEK
+     * once per record batch rather than in every record. The records of other topics are encrypted with {@link EncryptionVersion#V2}.
+     * The filter doesn't use it for topics which the broker describes as compacted. Only list topics which will never be compacted:
+     * if one becomes compacted, such as by a change not made through the proxy, before the filter notices, compaction can remove
+     * the record of a batch which holds its encrypted DEK. The rest of the batch's records can then never be decrypted, so their
+     * data is lost, and fetching them fails, stopping consumers of their partition from getting past them.
+     * See also {@link #refuseCompactingBatchEdekTopics()}.
+     */
+    public Set<String> batchEdekTopics() {
+        Object value = experimental.get("batchEdekTopics");
+        if (value == null) {
+            return Set.of();
+        }
+        if (value instanceof Collection<?> topics && topics.stream().allMatch(String.class::isInstance)) {
+            return topics.stream().map(String.class::cast).collect(Collectors.toUnmodifiableSet());
+        }
+        throw new EncryptionConfigurationException("batchEdekTopics must be a list of topic names: " + value);
+    }
+
+    /**
+     * @return Whether the filter refuses, with a policy violation, requests which would make one of the
+     * {@link #batchEdekTopics()} compacted, or make compaction the broker default. Off by default.
+     * Changes not made through the proxy can't be refused.
+     */
+    public boolean refuseCompactingBatchEdekTopics() {
+        Object value = experimental.get("refuseCompactingBatchEdekTopics");
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Boolean refuse) {
+            return refuse;
+        }
+        throw new EncryptionConfigurationException("refuseCompactingBatchEdekTopics must be true or false: " + value);
+    }
+
     @Nullable
     private Integer getExperimentalInt(String property) {
         if (experimental.containsKey(property)) {
@@ -12,6 +12,9 @@ package io.kroxylicious.filter.encryption.config;
 public enum WrapperVersion {
     V1_UNSUPPORTED,
 
-    V2;
+    V2,
+
+    /** As {@link #V2}, but with the EDEK written once per record batch. */
+    V3_BATCH_EDEK;
 
 }
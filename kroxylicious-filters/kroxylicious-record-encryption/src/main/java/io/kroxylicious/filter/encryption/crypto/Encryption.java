@@ -29,6 +29,11 @@ public class Encryption implements PersistedIdentifiable<EncryptionVersion> {
                     CipherSpecResolver.of(CipherSpec.AES_256_GCM_128),
                     AadResolver.of(AadSpec.NONE)),
             ParcelV1.INSTANCE);
+    public static final Encryption V3_BATCH_EDEK = new Encryption((byte) 3, EncryptionVersion.V3_BATCH_EDEK,
+            new WrapperV3(
+                    CipherSpecResolver.of(CipherSpec.AES_256_GCM_128),
+                    AadResolver.of(AadSpec.NONE)),
+            ParcelV1.INSTANCE);
     /***
      * take extreme care when updating the implementations, because new versions are forever once released.
      * If you're adding a new version here you will also need to add it to {@link EncryptionResolver#ALL}.
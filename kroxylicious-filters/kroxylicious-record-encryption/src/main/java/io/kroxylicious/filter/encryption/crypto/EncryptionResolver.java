@@ -14,7 +14,7 @@ import io.kroxylicious.filter.encryption.config.EncryptionVersion;
 
 public class EncryptionResolver extends AbstractResolver<EncryptionVersion, Encryption, EncryptionResolver> {
 
-    public static final EncryptionResolver ALL = new EncryptionResolver(List.of(Encryption.V1, Encryption.V2));
+    public static final EncryptionResolver ALL = new EncryptionResolver(List.of(Encryption.V1, Encryption.V2, Encryption.V3_BATCH_EDEK));
 
     EncryptionResolver(Collection<Encryption> impls) {
         super(impls);
@@ -23,6 +23,7 @@ import io.kroxylicious.filter.encryption.dek.Dek;
 import io.kroxylicious.kms.service.Serde;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 
 /**
  * Abstraction for the constructing the encrypted wrapper which includes the serialized id of the cipher and its parameters,
@@ -40,9 +41,22 @@ public interface Wrapper extends PersistedIdentifiable<WrapperVersion> {
         return plaintext;
     }
 
+    /**
+     * @return true if the EDEK is written only into the wrapper of the first encrypted record of each batch,
+     * with the wrappers of the rest of the batch's records referring back to it.
+     */
+    default boolean edekPerBatch() {
+        return false;
+    }
+
+    /**
+     * Writes the wrapper of an encrypted record.
+     * @param edek The EDEK, or null if it has already been written for the record's batch
+     * (only when {@link #edekPerBatch()} returns true).
+     */
     <E> void writeWrapper(
                           @NonNull Serde<E> edekSerde,
-                          @NonNull E edek,
+                          @Nullable E edek,
                           @NonNull String topicName,
                           int partitionId,
                           @NonNull RecordBatch batch,
@@ -53,6 +67,21 @@ public interface Wrapper extends PersistedIdentifiable<WrapperVersion> {
                           @NonNull Set<RecordField> recordFields,
                           @NonNull ByteBuffer buffer);
 
+    /**
+     * Computes the number of bytes {@link #writeWrapper(Serde, Object, String, int, RecordBatch, Record, Dek.Encryptor, Parcel, Aad, Set, ByteBuffer)}
+     * will write for a parcel of the given size.
+     * @param edek The EDEK, or null if it has already been written for the record's batch
+     * (only when {@link #edekPerBatch()} returns true).
+     * @param cipherManager The cipher manager of the encryptor.
+     * @param parcelSize The size of the plaintext parcel.
+     * @return The size of the wrapper.
+     */
+    <E> int sizeOfWrapper(
+                          @NonNull Serde<E> edekSerde,
+                          @Nullable E edek,
+                          @NonNull CipherManager cipherManager,
+                          int parcelSize);
+
     <E> void read(
                   @NonNull Parcel parcel,
                   @NonNull String topicName,
@@ -63,6 +92,20 @@ public interface Wrapper extends PersistedIdentifiable<WrapperVersion> {
                   Dek<E>.Decryptor decryptor,
                   @NonNull BiConsumer<ByteBuffer, Header[]> consumer);
 
+    /**
+     * Gets the bytes of the wrapper which {@link #readSpecAndEdek(ByteBuffer, Serde, BiFunction)} reads the cipher and the EDEK from,
+     * without deserializing them. Wrappers with equal bytes have the same cipher and EDEK, so long as both refer to the same
+     * batch when {@link #edekPerBatch()} returns true.
+     * @param wrapper The wrapper, which is not modified.
+     * @return A view of the bytes.
+     */
+    ByteBuffer specAndEdekBytes(ByteBuffer wrapper);
+
+    /**
+     * Reads the cipher and the EDEK of an encrypted record.
+     * The EDEK passed to the function is null if the record refers to the EDEK of an earlier record
+     * in its batch (only when {@link #edekPerBatch()} returns true).
+     */
     <E, T> T readSpecAndEdek(
                              ByteBuffer wrapper,
                              Serde<E> serde,
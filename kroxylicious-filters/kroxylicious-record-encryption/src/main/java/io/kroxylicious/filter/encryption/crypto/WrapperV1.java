@@ -23,6 +23,7 @@ import io.kroxylicious.filter.encryption.dek.Dek;
 import io.kroxylicious.kms.service.Serde;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 
 public class WrapperV1 implements Wrapper {
 
@@ -39,18 +40,28 @@ public class WrapperV1 implements Wrapper {
     }
 
     @Override
-    public <E> void writeWrapper(@NonNull Serde<E> edekSerde, @NonNull E edek, @NonNull String topicName, int partitionId, @NonNull RecordBatch batch,
+    public <E> void writeWrapper(@NonNull Serde<E> edekSerde, @Nullable E edek, @NonNull String topicName, int partitionId, @NonNull RecordBatch batch,
                                  @NonNull Record kafkaRecord, @NonNull Dek<E>.Encryptor encryptor, @NonNull Parcel parcel, @NonNull Aad aadSpec,
                                  @NonNull Set<RecordField> recordFields, @NonNull ByteBuffer buffer) {
         throw unsupportedVersionException();
     }
 
+    @Override
+    public <E> int sizeOfWrapper(@NonNull Serde<E> edekSerde, @Nullable E edek, @NonNull CipherManager cipherManager, int parcelSize) {
+        throw unsupportedVersionException();
+    }
+
     @Override
     public <E> void read(@NonNull Parcel parcel, @NonNull String topicName, int partition, @NonNull RecordBatch batch, @NonNull Record record,
                          ByteBuffer wrapper, Dek<E>.Decryptor decryptor, @NonNull BiConsumer<ByteBuffer, Header[]> consumer) {
         throw unsupportedVersionException();
     }
 
+    @Override
+    public ByteBuffer specAndEdekBytes(ByteBuffer wrapper) {
+        throw unsupportedVersionException();
+    }
+
     @Override
     public <E, T> T readSpecAndEdek(ByteBuffer wrapper, Serde<E> serde, BiFunction<CipherManager, E, T> fn) {
         throw unsupportedVersionException();
@@ -8,6 +8,7 @@ package io.kroxylicious.filter.encryption.crypto;
 
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
@@ -28,6 +29,7 @@ import io.kroxylicious.kms.service.Serde;
 import io.kroxylicious.proxy.tag.VisibleForTesting;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
 
 /**
  * <pre>
@@ -80,7 +82,7 @@ public class WrapperV2 implements Wrapper {
 
     @Override
     public <E> void writeWrapper(@NonNull Serde<E> edekSerde,
-                                 @NonNull E edek,
+                                 @Nullable E edek,
                                  @NonNull String topicName,
                                  int partitionId,
                                  @NonNull RecordBatch batch,
@@ -94,9 +96,7 @@ public class WrapperV2 implements Wrapper {
         try {
             CipherManager cipherManager = encryptor.cipherManager();
             buffer.put(cipherSpecResolver.toSerializedId(cipherManager));
-            short edekSize = (short) edekSerde.sizeOf(edek);
-            ByteUtils.writeUnsignedVarint(edekSize, buffer);
-            edekSerde.serialize(edek, buffer);
+            writeEdek(edekSerde, edek, buffer);
             buffer.put(aadResolver.toSerializedId(aad));
 
             ByteBuffer aadBuffer = aad.computeAad(topicName, partitionId, batch);
@@ -120,6 +120,59 @@ public class WrapperV2 implements Wrapper {
         }
     }
 
+    @Override
+    public <E> int sizeOfWrapper(@NonNull Serde<E> edekSerde,
+                                 @Nullable E edek,
+                                 @NonNull CipherManager cipherManager,
+                                 int parcelSize) {
+        int paramsSize = cipherManager.constantParamsSize();
+        if (paramsSize == CipherManager.VARIABLE_SIZE_PARAMETERS) {
+            throw new EncryptionException("variable size cipher parameters not supported yet");
+        }
+        return 1 // cipher_id
+                + sizeOfEdek(edekSerde, edek)
+                + 1 // aad_id
+                + paramsSize
+                + parcelSize
+                + cipherManager.ciphertextOverhead();
+    }
+
+    /**
+     * Computes the number of bytes {@link #writeEdek(Serde, Object, ByteBuffer)} will write.
+     * @param edekSerde The serde for the EDEK.
+     * @param edek The EDEK.
+     * @return The size of the edek_length and edek.
+     */
+    protected <E> int sizeOfEdek(@NonNull Serde<E> edekSerde, @Nullable E edek) {
+        int edekSize = edekSerde.sizeOf(Objects.requireNonNull(edek));
+        return ByteUtils.sizeOfUnsignedVarint(edekSize) + edekSize;
+    }
+
+    /**
+     * Writes the edek_length and edek.
+     * @param edekSerde The serde for the EDEK.
+     * @param edek The EDEK.
+     * @param buffer The buffer to write to.
+     */
+    protected <E> void writeEdek(@NonNull Serde<E> edekSerde, @Nullable E edek, @NonNull ByteBuffer buffer) {
+        short edekSize = (short) edekSerde.sizeOf(Objects.requireNonNull(edek));
+        ByteUtils.writeUnsignedVarint(edekSize, buffer);
+        edekSerde.serialize(edek, buffer);
+    }
+
+    /**
+     * Reads the EDEK written by {@link #writeEdek(Serde, Object, ByteBuffer)}.
+     * @param wrapper The wrapper, positioned at the edek_length.
+     * @param serde The serde for the EDEK.
+     * @return The EDEK.
+     */
+    @Nullable
+    protected <E> E readEdek(@NonNull ByteBuffer wrapper, @NonNull Serde<E> serde) {
+        var edekLength = ByteUtils.readUnsignedVarint(wrapper);
+        ByteBuffer slice = wrapper.slice(wrapper.position(), edekLength);
+        return serde.deserialize(slice);
+    }
+
     private <E> void writeParameters(@NonNull Dek<E>.Encryptor encryptor, CipherManager cipherManager, @NonNull ByteBuffer buffer) {
         int paramsSize = cipherManager.constantParamsSize();
         final ByteBuffer paramsBuffer;
@@ -136,11 +189,19 @@ public class WrapperV2 implements Wrapper {
         buffer.position(buffer.position() + paramsBuffer.limit());
     }
 
+    @Override
+    public ByteBuffer specAndEdekBytes(ByteBuffer wrapper) {
+        var view = wrapper.duplicate();
+        int start = view.position();
+        // skip the cipher_id
+        view.get();
+        var edekLength = ByteUtils.readUnsignedVarint(view);
+        return wrapper.slice(start, view.position() - start + edekLength);
+    }
+
     public <E, T> T readSpecAndEdek(ByteBuffer wrapper, Serde<E> serde, BiFunction<CipherManager, E, T> function) {
         CipherManager cipherManager = cipherSpecResolver.fromSerializedId(wrapper.get());
-        var edekLength = ByteUtils.readUnsignedVarint(wrapper);
-        ByteBuffer slice = wrapper.slice(wrapper.position(), edekLength);
-        E edek = serde.deserialize(slice);
+        E edek = readEdek(wrapper, serde);
         return function.apply(cipherManager, edek);
     }
 
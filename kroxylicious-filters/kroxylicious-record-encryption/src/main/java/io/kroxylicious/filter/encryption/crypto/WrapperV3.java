@@ -0,0 +1,84 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.filter.encryption.crypto;
+
+import java.nio.ByteBuffer;
+
+import org.apache.kafka.common.utils.ByteUtils;
+
+import io.kroxylicious.filter.encryption.config.WrapperVersion;
+import io.kroxylicious.filter.encryption.dek.CipherSpecResolver;
+import io.kroxylicious.kms.service.Serde;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+/**
+ * <p>As {@link WrapperV2}, except that the EDEK is written only into the wrapper of the first encrypted record of
+ * each batch. The wrappers of the batch's other records have an edek_length of zero and no edek, and are decrypted
+ * using the EDEK of the closest preceding record in their batch which has one.</p>
+ * <pre>
+ * wrapper_v3               = cipher_id
+ *                            edek_length
+ *                            [ edek ]                     ; iff edek_length is not zero
+ *                            aad_id
+ *                            [ cipher_parameters_length ] ; iff {@link io.kroxylicious.filter.encryption.dek.CipherManager#constantParamsSize()} returns -1
+ *                            cipher_parameters
+ *                            parcel_ciphertext
+ * edek_length              = 1*OCTET                      ; unsigned VARINT, zero to refer to the EDEK of the batch
+ * </pre>
+ * <p>Because a record's EDEK may be held by another record, this wrapper must not be used for compacted topics,
+ * where compaction may remove the record holding the EDEK while keeping the records which refer to it.</p>
+ */
+public class WrapperV3 extends WrapperV2 {
+
+    public WrapperV3(CipherSpecResolver cipherSpecResolver,
+                     AadResolver aadResolver) {
+        super(cipherSpecResolver, aadResolver);
+    }
+
+    @Override
+    public byte serializedId() {
+        return 2;
+    }
+
+    @Override
+    public WrapperVersion name() {
+        return WrapperVersion.V3_BATCH_EDEK;
+    }
+
+    @Override
+    public boolean edekPerBatch() {
+        return true;
+    }
+
+    @Override
+    protected <E> void writeEdek(@NonNull Serde<E> edekSerde, @Nullable E edek, @NonNull ByteBuffer buffer) {
+        if (edek == null) {
+            ByteUtils.writeUnsignedVarint(0, buffer);
+        }
+        else {
+            super.writeEdek(edekSerde, edek, buffer);
+        }
+    }
+
+    @Override
+    protected <E> int sizeOfEdek(@NonNull Serde<E> edekSerde, @Nullable E edek) {
+        return edek == null ? ByteUtils.sizeOfUnsignedVarint(0) : super.sizeOfEdek(edekSerde, edek);
+    }
+
+    @Nullable
+    @Override
+    protected <E> E readEdek(@NonNull ByteBuffer wrapper, @NonNull Serde<E> serde) {
+        if (wrapper.get(wrapper.position()) == 0) {
+            // skip the zero edek_length
+            wrapper.get();
+            return null;
+        }
+        return super.readEdek(wrapper, serde);
+    }
+}
@@ -9,9 +9,11 @@ package io.kroxylicious.filter.encryption.decrypt;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.function.IntFunction;
@@ -21,6 +23,7 @@ import org.apache.kafka.common.record.MemoryRecords;
 import org.apache.kafka.common.record.Record;
 import org.apache.kafka.common.utils.ByteBufferOutputStream;
 
+import io.kroxylicious.filter.encryption.common.CryptoOffload;
 import io.kroxylicious.filter.encryption.common.EncryptionException;
 import io.kroxylicious.filter.encryption.common.FilterThreadExecutor;
 import io.kroxylicious.filter.encryption.common.RecordEncryptionUtil;
@@ -31,6 +34,7 @@ import io.kroxylicious.filter.encryption.dek.Dek;
 import io.kroxylicious.filter.encryption.dek.DekManager;
 import io.kroxylicious.kafka.transform.RecordStream;
 import io.kroxylicious.kms.service.Serde;
+import io.kroxylicious.proxy.tag.VisibleForTesting;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 import edu.umd.cs.findbugs.annotations.Nullable;
@@ -49,15 +53,25 @@ public class InBandDecryptionManager<K, E> implements DecryptionManager {
     private final DecryptionDekCache<K, E> dekCache;
 
     private final EncryptionResolver encryptionResolver;
+    private final CryptoOffload cryptoOffload;
 
     public InBandDecryptionManager(EncryptionResolver encryptionResolver,
                                    @NonNull DekManager<K, E> dekManager,
                                    @NonNull DecryptionDekCache<K, E> dekCache,
                                    @Nullable FilterThreadExecutor filterThreadExecutor) {
+        this(encryptionResolver, dekManager, dekCache, filterThreadExecutor, CryptoOffload.NONE);
+    }
+
+    public InBandDecryptionManager(EncryptionResolver encryptionResolver,
+                                   @NonNull DekManager<K, E> dekManager,
+                                   @NonNull DecryptionDekCache<K, E> dekCache,
+                                   @Nullable FilterThreadExecutor filterThreadExecutor,
+                                   @NonNull CryptoOffload cryptoOffload) {
         this.encryptionResolver = encryptionResolver;
         this.dekManager = Objects.requireNonNull(dekManager);
         this.dekCache = Objects.requireNonNull(dekCache);
         this.filterThreadExecutor = filterThreadExecutor;
+        this.cryptoOffload = Objects.requireNonNull(cryptoOffload);
     }
 
     /**
@@ -102,24 +116,44 @@ public class InBandDecryptionManager<K, E> implements DecryptionManager {
             return CompletableFuture.completedFuture(records);
         }
 
-        CompletionStage<List<DecryptState<E>>> decryptStates = resolveAll(topicName, partition, records);
+        Set<Long> encryptedBatches = new HashSet<>();
+        CompletionStage<List<DecryptState<E>>> decryptStates = resolveAll(topicName, partition, records, encryptedBatches);
+        if (encryptedBatches.isEmpty()) {
+            // no encrypted records, return input without modification
+            return CompletableFuture.completedFuture(records);
+        }
+        if (cryptoOffload.shouldOffload(records)) {
+            // the connection's buffers can't be allocated off the filter thread, so use heap buffers
+            return filterThreadExecutor.completingOnFilterThread(decryptStates.thenCompose(
+                    decryptStateList -> cryptoOffload.supply(
+                            () -> decryptAndClose(topicName, partition, records, decryptStateList, encryptedBatches, ByteBufferOutputStream::new))));
+        }
         return decryptStates.thenApply(
-                decryptStateList -> {
-                    try {
-                        return decrypt(topicName,
-                                partition,
-                                records,
-                                decryptStateList,
-                                allocateBufferForDecrypt(records, bufferAllocator));
-                    }
-                    finally {
-                        for (var ds : decryptStateList) {
-                            if (ds != null && ds.decryptor() != null) {
-                                ds.decryptor().close();
-                            }
-                        }
-                    }
-                });
+                decryptStateList -> decryptAndClose(topicName, partition, records, decryptStateList, encryptedBatches, bufferAllocator));
+    }
+
+    @NonNull
+    private MemoryRecords decryptAndClose(@NonNull String topicName,
+                                          int partition,
+                                          @NonNull MemoryRecords records,
+                                          @NonNull List<DecryptState<E>> decryptStateList,
+                                          @NonNull Set<Long> encryptedBatches,
+                                          @NonNull IntFunction<ByteBufferOutputStream> bufferAllocator) {
+        try {
+            return decrypt(topicName,
+                    partition,
+                    records,
+                    decryptStateList,
+                    encryptedBatches,
+                    allocateBufferForDecrypt(records, bufferAllocator));
+        }
+        finally {
+            for (var ds : decryptStateList) {
+                if (ds != null && ds.decryptor() != null) {
+                    ds.decryptor().close();
+                }
+            }
+        }
     }
 
     /**
@@ -128,57 +162,86 @@ public class InBandDecryptionManager<K, E> implements DecryptionManager {
      * @param topicName The topic name.
      * @param partition The partition.
      * @param records The records to decrypt.
+     * @param encryptedBatches Filled with the base offsets of the batches with encrypted records.
      * @return A stage that completes with a list of the DecryptState
      * for each record in the given {@code records}, in the same order.
      */
-    private CompletionStage<List<DecryptState<E>>> resolveAll(String topicName,
-                                                              int partition,
-                                                              MemoryRecords records) {
+    @VisibleForTesting
+    CompletionStage<List<DecryptState<E>>> resolveAll(String topicName,
+                                                      int partition,
+                                                      MemoryRecords records,
+                                                      Set<Long> encryptedBatches) {
         Serde<E> serde = dekManager.edekSerde();
-        // Use a pair of lists because we end up wanting a `List<DecryptState>`,
-        // indexed by the position of the record in the multi-batch MemoryRecords,
-        // to pass to `RecordStream`, which avoids needing to use a `Record`
-        // itself as a hash key.
-        var cacheKeys = new ArrayList<DecryptionDekCache.CacheKey<E>>();
+        // We end up wanting a `List<DecryptState>`, indexed by the position of the record in the
+        // multi-batch MemoryRecords, to pass to `RecordStream`, which avoids needing to use a `Record`
+        // itself as a hash key. Records with the same EDEK share a DecryptState, so everything
+        // else is sized by the number of distinct EDEKs rather than the number of records.
         var states = new ArrayList<DecryptState<E>>();
+        Map<StateKey<E>, DecryptState<E>> distinctStates = new HashMap<>();
+        // The cache key of each batch whose records store their EDEK once per batch, by base offset
+        Map<Long, DecryptionDekCache.CacheKey<E>> batchCacheKeys = new HashMap<>();
+        var previous = new PreviousRecord<E>();
 
-        // Iterate the records collecting cache keys and decrypt states
-        // both cacheKeys and decryptStates use the list index as a way of identifying the corresponding
-        // record: The index in the list is the same as their index within the MemoryRecords
+        // Iterate the records collecting decrypt states
+        // the index in the list is the same as the record's index within the MemoryRecords
         RecordStream.ofRecords(records).forEachRecord((batch, record, ignored) -> {
             var decryptionVersion = decryptionVersion(topicName, partition, record);
-            if (decryptionVersion != null) {
-                ByteBuffer wrapper = record.value();
-                cacheKeys.add(decryptionVersion.wrapper().readSpecAndEdek(wrapper, serde, DecryptionDekCache.CacheKey::new));
-                states.add(new DecryptState<>(decryptionVersion));
-            }
-            else {
-                // It's not encrypted, so use sentinels
-                cacheKeys.add(DecryptionDekCache.CacheKey.unencrypted());
+            if (decryptionVersion == null) {
+                // It's not encrypted, so use the sentinel
                 states.add(DecryptState.none());
+                return;
+            }
+            encryptedBatches.add(batch.baseOffset());
+            ByteBuffer wrapper = record.value();
+            ByteBuffer specAndEdek = decryptionVersion.wrapper().specAndEdekBytes(wrapper);
+            if (previous.matches(batch.baseOffset(), decryptionVersion, specAndEdek)) {
+                // records in a batch almost always share an EDEK, so avoid deserializing it again
+                states.add(previous.state);
+                return;
             }
+            DecryptionDekCache.CacheKey<E> cacheKey = decryptionVersion.wrapper().readSpecAndEdek(wrapper, serde,
+                    (cipherManager, edek) -> edek == null ? null : new DecryptionDekCache.CacheKey<>(cipherManager, edek));
+            if (cacheKey == null) {
+                // the record uses the EDEK of an earlier record in its batch
+                cacheKey = batchCacheKeys.get(batch.baseOffset());
+                if (cacheKey == null) {
+                    throw new EncryptionException("No EDEK for the record at offset " + record.offset()
+                            + " in partition " + partition
+                            + " of topic " + topicName
+                            + ", the record holding its batch's EDEK may have been compacted away");
+                }
+            }
+            else if (decryptionVersion.wrapper().edekPerBatch()) {
+                batchCacheKeys.put(batch.baseOffset(), cacheKey);
+            }
+            var state = distinctStates.computeIfAbsent(new StateKey<>(decryptionVersion, cacheKey), k -> new DecryptState<>(decryptionVersion));
+            previous.update(batch.baseOffset(), decryptionVersion, specAndEdek, state);
+            states.add(state);
         });
+        if (encryptedBatches.isEmpty()) {
+            return CompletableFuture.completedFuture(states);
+        }
         // Lookup the decryptors for the cache keys
+        var cacheKeys = distinctStates.keySet().stream().map(StateKey::cacheKey).distinct().toList();
         return filterThreadExecutor.completingOnFilterThread(dekCache.getAll(cacheKeys, filterThreadExecutor))
                 .thenApply(cacheKeyDecryptorMap ->
                 // Once we have the decryptors from the cache...
-                issueDecryptors(cacheKeyDecryptorMap, cacheKeys, states));
+                issueDecryptors(cacheKeyDecryptorMap, distinctStates, states));
     }
 
     private @NonNull List<DecryptState<E>> issueDecryptors(@NonNull Map<DecryptionDekCache.CacheKey<E>, Dek<E>> cacheKeyDecryptorMap,
-                                                           @NonNull List<DecryptionDekCache.CacheKey<E>> cacheKeys,
+                                                           @NonNull Map<StateKey<E>, DecryptState<E>> distinctStates,
                                                            @NonNull List<DecryptState<E>> states) {
         Map<DecryptionDekCache.CacheKey<E>, Dek<E>.Decryptor> issuedDecryptors = new HashMap<>();
         try {
-            for (int index = 0, cacheKeysSize = cacheKeys.size(); index < cacheKeysSize; index++) {
-                DecryptionDekCache.CacheKey<E> cacheKey = cacheKeys.get(index);
-                // ...update (in place) the DecryptState with the decryptor
-                var decryptor = issuedDecryptors.computeIfAbsent(cacheKey, k -> {
+            distinctStates.forEach((stateKey, state) -> {
+                // ...update (in place) the DecryptState shared by the records with the EDEK with its decryptor
+                var decryptor = issuedDecryptors.computeIfAbsent(stateKey.cacheKey(), cacheKey -> {
                     Dek<E> dek = cacheKeyDecryptorMap.get(cacheKey);
                     return dek != null ? dek.decryptor() : null;
                 });
-                states.get(index).withDecryptor(decryptor);
-            }
+                state.withDecryptor(decryptor);
+            });
             // return the resolved DecryptStates
             return states;
         }
@@ -192,6 +255,38 @@ public class InBandDecryptionManager<K, E> implements DecryptionManager {
         }
     }
 
+    /**
+     * Identifies the records which can share a {@link DecryptState}.
+     */
+    private record StateKey<E>(Encryption encryption, DecryptionDekCache.CacheKey<E> cacheKey) {}
+
+    /**
+     * The wrapper bytes identifying the cipher and EDEK of the last record whose EDEK was resolved,
+     * so that following records of the same batch with the same bytes can share its state.
+     */
+    private static final class PreviousRecord<E> {
+        private long batchBaseOffset;
+        private @Nullable Encryption encryption;
+        private @Nullable ByteBuffer specAndEdek;
+        private @Nullable DecryptState<E> state;
+
+        boolean matches(long batchBaseOffset, Encryption encryption, ByteBuffer specAndEdek) {
+            // EDEKs aren't compared across batches, because a wrapper which writes an EDEK once per batch
+            // represents the EDEKs of different batches with the same bytes
+            return this.state != null
+                    && this.batchBaseOffset == batchBaseOffset
+                    && this.encryption == encryption
+                    && specAndEdek.equals(this.specAndEdek);
+        }
+
+        void update(long batchBaseOffset, Encryption encryption, ByteBuffer specAndEdek, DecryptState<E> state) {
+            this.batchBaseOffset = batchBaseOffset;
+            this.encryption = encryption;
+            this.specAndEdek = specAndEdek;
+            this.state = state;
+        }
+    }
+
     private static ByteBufferOutputStream allocateBufferForDecrypt(MemoryRecords memoryRecords,
                                                                    IntFunction<ByteBufferOutputStream> allocator) {
         int sizeEstimate = memoryRecords.sizeInBytes();
@@ -201,9 +296,10 @@ public class InBandDecryptionManager<K, E> implements DecryptionManager {
     /**
      * Fill the given {@code buffer} with the {@code records},
      * decrypting any which are encrypted using the corresponding decryptor from the given
-     * {@code decryptorList}.
+     * {@code decryptorList}. Batches without encrypted records are copied as they are.
      * @param records The records to decrypt.
      * @param decryptorList The decryptors to use.
+     * @param encryptedBatches The base offsets of the batches with encrypted records.
      * @param buffer The buffer to fill (to encourage buffer reuse).
      * @return The decrypted records.
      */
@@ -212,10 +308,12 @@ public class InBandDecryptionManager<K, E> implements DecryptionManager {
                                   int partition,
                                   @NonNull MemoryRecords records,
                                   @NonNull List<DecryptState<E>> decryptorList,
+                                  @NonNull Set<Long> encryptedBatches,
                                   @NonNull ByteBufferOutputStream buffer) {
         return RecordStream.ofRecordsWithIndex(records)
                 .mapPerRecord((batch, record, index) -> decryptorList.get(index))
                 .toMemoryRecords(buffer,
-                        new RecordDecryptor<>(topicName, partition));
+                        new RecordDecryptor<>(topicName, partition),
+                        batch -> !encryptedBatches.contains(batch.baseOffset()));
     }
 }
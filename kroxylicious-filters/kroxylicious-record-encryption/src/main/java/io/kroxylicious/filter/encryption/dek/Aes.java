@@ -24,16 +24,19 @@ public class Aes implements CipherManager {
 
     private static final int IV_SIZE_BYTES = 12;
     private static final int TAG_LENGTH_BITS = 128;
+    private static final int KEY_SIZE_BYTES = 32;
     private final String transformation;
     private final byte serializedId;
     private final CipherSpec spec;
     private final SecureRandom rng;
+    private final CipherPool cipherPool;
 
     private Aes(String transformation, byte serializedId, CipherSpec spec) {
         this.transformation = transformation;
         this.serializedId = serializedId;
         this.spec = spec;
         rng = new SecureRandom();
+        cipherPool = new CipherPool(this::newCipher, "AES", KEY_SIZE_BYTES, new GCMParameterSpec(TAG_LENGTH_BITS, new byte[IV_SIZE_BYTES]));
     }
 
     @Override
@@ -56,6 +59,21 @@ public class Aes implements CipherManager {
         }
     }
 
+    @Override
+    public Cipher borrowCipher() {
+        return cipherPool.borrow();
+    }
+
+    @Override
+    public void releaseCipher(Cipher cipher) {
+        cipherPool.release(cipher);
+    }
+
+    @Override
+    public int ciphertextOverhead() {
+        return TAG_LENGTH_BITS / Byte.SIZE;
+    }
+
     @Override
     public long maxEncryptionsPerKey() {
         return 1L << 32; // 2^32
@@ -90,6 +108,12 @@ public class Aes implements CipherManager {
 
     @Override
     public GCMParameterSpec readParameters(ByteBuffer parametersBuffer) {
+        if (parametersBuffer.hasArray()) {
+            // the spec copies the IV, so there's no need to copy it out of the buffer first
+            var spec = new GCMParameterSpec(TAG_LENGTH_BITS, parametersBuffer.array(), parametersBuffer.arrayOffset() + parametersBuffer.position(), IV_SIZE_BYTES);
+            parametersBuffer.position(parametersBuffer.position() + IV_SIZE_BYTES);
+            return spec;
+        }
         byte[] b = new byte[IV_SIZE_BYTES];
         parametersBuffer.get(b);
         return new GCMParameterSpec(TAG_LENGTH_BITS, b);
@@ -20,10 +20,15 @@ import io.kroxylicious.filter.encryption.config.CipherSpec;
 
 public class ChaChaPoly implements CipherManager {
     private static final int NONCE_SIZE_BYTES = 12;
+    private static final int KEY_SIZE_BYTES = 32;
+    private static final int TAG_SIZE_BYTES = 16;
 
     public static final ChaChaPoly INSTANCE = new ChaChaPoly();
 
+    private final CipherPool cipherPool;
+
     private ChaChaPoly() {
+        cipherPool = new CipherPool(this::newCipher, "ChaCha20", KEY_SIZE_BYTES, new IvParameterSpec(new byte[NONCE_SIZE_BYTES]));
     }
 
     @Override
@@ -51,6 +56,21 @@ public class ChaChaPoly implements CipherManager {
         }
     }
 
+    @Override
+    public int ciphertextOverhead() {
+        return TAG_SIZE_BYTES;
+    }
+
+    @Override
+    public Cipher borrowCipher() {
+        return cipherPool.borrow();
+    }
+
+    @Override
+    public void releaseCipher(Cipher cipher) {
+        cipherPool.release(cipher);
+    }
+
     @SuppressWarnings("java:S3329") // Sonar isn't able to understand that this _is_ a dynamically-generated, random IV.
     @Override
     public Supplier<AlgorithmParameterSpec> paramSupplier() {
@@ -83,6 +103,12 @@ public class ChaChaPoly implements CipherManager {
 
     @Override
     public AlgorithmParameterSpec readParameters(ByteBuffer parametersBuffer) {
+        if (parametersBuffer.hasArray()) {
+            // the spec copies the nonce, so there's no need to copy it out of the buffer first
+            var spec = new IvParameterSpec(parametersBuffer.array(), parametersBuffer.arrayOffset() + parametersBuffer.position(), NONCE_SIZE_BYTES);
+            parametersBuffer.position(parametersBuffer.position() + NONCE_SIZE_BYTES);
+            return spec;
+        }
         byte[] nonce = new byte[NONCE_SIZE_BYTES];
         parametersBuffer.get(nonce);
         return new IvParameterSpec(nonce);
@@ -32,6 +32,30 @@ public interface CipherManager extends PersistedIdentifiable<CipherSpec> {
 
     Cipher newCipher();
 
+    /**
+     * Gets a cipher, which may have been used before, for the duration of an {@link Dek.Encryptor} or {@link Dek.Decryptor}.
+     * The cipher must be initialized before each use, and should be {@linkplain #releaseCipher(Cipher) released}
+     * once it's no longer needed.
+     * The default implementation returns a {@linkplain #newCipher() new cipher}.
+     */
+    default Cipher borrowCipher() {
+        return newCipher();
+    }
+
+    /**
+     * Releases a cipher {@linkplain #borrowCipher() borrowed} from this manager, so that it may be reused.
+     * The default implementation does nothing.
+     */
+    default void releaseCipher(Cipher cipher) {
+        // nothing to release
+    }
+
+    /**
+     * Return the number of bytes by which the ciphertext of an encryption exceeds its plaintext
+     * (that is, the size of the authentication tag).
+     */
+    int ciphertextOverhead();
+
     /**
      * Return a supplier of parameters for use with the cipher.
      * The supplier need not be thread-safe.
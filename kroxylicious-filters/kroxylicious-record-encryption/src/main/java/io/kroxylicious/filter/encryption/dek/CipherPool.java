@@ -0,0 +1,92 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.filter.encryption.dek;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * <p>Pools the ciphers of a {@link CipherManager} per thread, so that using a DEK doesn't have to look up
+ * and allocate a new cipher with {@link Cipher#getInstance(String)}. A pooled cipher is always initialized
+ * (with {@link Cipher#init(int, java.security.Key, AlgorithmParameterSpec)}) before it's used for each operation.</p>
+ *
+ * <p>A cipher may be released on a different thread from the one which borrowed it, in which case it joins
+ * the pool of the releasing thread. Before it's pooled, a cipher is initialized with a key of the pool's own,
+ * so that pooled ciphers don't retain the key material of DEKs which may since have been destroyed.</p>
+ */
+final class CipherPool {
+
+    static final int MAX_POOLED_CIPHERS_PER_THREAD = 32;
+
+    private final Supplier<Cipher> cipherFactory;
+    private final SecretKey scrubKey;
+    private final AlgorithmParameterSpec scrubParameters;
+    private final ThreadLocal<ArrayDeque<Cipher>> pool = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * @param cipherFactory Creates a new cipher.
+     * @param keyAlgorithm The algorithm of the keys used with the ciphers.
+     * @param keySizeBytes The size of the keys used with the ciphers.
+     * @param scrubParameters Parameters with which the ciphers can be initialized for decryption.
+     */
+    CipherPool(@NonNull Supplier<Cipher> cipherFactory,
+               @NonNull String keyAlgorithm,
+               int keySizeBytes,
+               @NonNull AlgorithmParameterSpec scrubParameters) {
+        this.cipherFactory = Objects.requireNonNull(cipherFactory);
+        byte[] keyBytes = new byte[keySizeBytes];
+        new SecureRandom().nextBytes(keyBytes);
+        this.scrubKey = new SecretKeySpec(keyBytes, keyAlgorithm);
+        this.scrubParameters = Objects.requireNonNull(scrubParameters);
+    }
+
+    /**
+     * @return A cipher from the current thread's pool, or a new cipher if the pool is empty.
+     */
+    @NonNull
+    Cipher borrow() {
+        Cipher cipher = pool.get().pollFirst();
+        return cipher != null ? cipher : cipherFactory.get();
+    }
+
+    /**
+     * Returns a cipher to the current thread's pool. The cipher must not be used by the caller afterwards.
+     * @param cipher A cipher which was {@linkplain #borrow() borrowed}.
+     */
+    void release(@NonNull Cipher cipher) {
+        ArrayDeque<Cipher> ciphers = pool.get();
+        if (ciphers.size() >= MAX_POOLED_CIPHERS_PER_THREAD) {
+            return;
+        }
+        try {
+            // decrypt mode, because ciphers refuse to encrypt twice with the same key and parameters
+            cipher.init(Cipher.DECRYPT_MODE, scrubKey, scrubParameters);
+        }
+        catch (GeneralSecurityException e) {
+            // don't pool a cipher which might still hold the key it was used with
+            return;
+        }
+        ciphers.addFirst(cipher);
+    }
+
+    /**
+     * @return The number of ciphers in the current thread's pool.
+     */
+    int pooled() {
+        return pool.get().size();
+    }
+}
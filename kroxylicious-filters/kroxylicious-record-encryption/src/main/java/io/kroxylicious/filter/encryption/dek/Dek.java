@@ -196,7 +196,7 @@ public final class Dek<E> {
             this.cipherManager = Objects.requireNonNull(cipherManager);
             this.key = Objects.requireNonNull(key);
             this.numEncryptions = numEncryptions;
-            this.cipher = cipherManager.newCipher();
+            this.cipher = cipherManager.borrowCipher();
             this.paramSupplier = cipherManager.paramSupplier();
         }
 
@@ -222,6 +222,10 @@ public final class Dek<E> {
             if (numEncryptions <= 0) {
                 throw new DekUsageException("The Encryptor has no more operations allowed");
             }
+            else if (key == null) {
+                // the cipher has been released, and may be in use elsewhere
+                throw new DekUsageException("The Encryptor has been closed");
+            }
             else {
                 --numEncryptions;
                 try {
@@ -300,6 +304,7 @@ public final class Dek<E> {
         public void close() {
             if (key != null) {
                 key = null;
+                cipherManager.releaseCipher(cipher);
                 maybeDestroyKey(outstandingCryptors.releaseEncryptorUsage());
             }
         }
@@ -319,7 +324,7 @@ public final class Dek<E> {
         private final CipherManager cipherManager;
 
         private Decryptor(CipherManager cipherManager, SecretKey key) {
-            this.cipher = cipherManager.newCipher();
+            this.cipher = cipherManager.borrowCipher();
             this.cipherManager = cipherManager;
             this.key = key;
         }
@@ -335,6 +340,10 @@ public final class Dek<E> {
                             @Nullable ByteBuffer aad,
                             @NonNull ByteBuffer parameterBuffer,
                             @NonNull ByteBuffer plaintext) {
+            if (key == null) {
+                // the cipher has been released, and may be in use elsewhere
+                throw new DekUsageException("The Decryptor has been closed");
+            }
             try {
                 var parameterSpec = cipherManager.readParameters(parameterBuffer);
                 cipher.init(Cipher.DECRYPT_MODE, key, parameterSpec);
@@ -352,6 +361,7 @@ public final class Dek<E> {
         public void close() {
             if (key != null) {
                 key = null;
+                cipherManager.releaseCipher(cipher);
                 maybeDestroyKey(outstandingCryptors.releaseDecryptorUsage());
             }
         }
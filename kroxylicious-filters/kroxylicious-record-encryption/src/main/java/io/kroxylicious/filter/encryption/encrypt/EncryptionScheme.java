@@ -17,12 +17,16 @@ import io.kroxylicious.filter.encryption.crypto.AadNone;
  * Describes how a record should be encrypted
  * @param kekId The KEK identifier to be used. Not null.
  * @param recordFields The fields of the record that should be encrypted with the given KEK. Neither null nor empty.
+ * @param aadSpec The additional authenticated data. Not null.
+ * @param edekPerBatch Whether the encrypted DEK is stored once per record batch, rather than in every record
+ * (see {@link io.kroxylicious.filter.encryption.crypto.Encryption#V3_BATCH_EDEK}). Only safe for topics which aren't compacted.
  * @param <K> The type of KEK identifier.
  */
 public record EncryptionScheme<K>(
                                   K kekId,
                                   Set<RecordField> recordFields,
-                                  Aad aadSpec) {
+                                  Aad aadSpec,
+                                  boolean edekPerBatch) {
 
     public EncryptionScheme {
         Objects.requireNonNull(kekId);
@@ -32,6 +36,13 @@ public record EncryptionScheme<K>(
         Objects.requireNonNull(aadSpec);
     }
 
+    public EncryptionScheme(
+                            K kekId,
+                            Set<RecordField> recordFields,
+                            Aad aadSpec) {
+        this(kekId, recordFields, aadSpec, false);
+    }
+
     public EncryptionScheme(
                             K kekId,
                             Set<RecordField> recordFields) {
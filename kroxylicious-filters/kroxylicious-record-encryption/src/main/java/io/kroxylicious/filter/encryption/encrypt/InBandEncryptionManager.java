@@ -6,7 +6,6 @@
 
 package io.kroxylicious.filter.encryption.encrypt;
 
-import java.nio.ByteBuffer;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
@@ -15,12 +14,11 @@ import java.util.function.IntFunction;
 import org.apache.kafka.common.record.MemoryRecords;
 import org.apache.kafka.common.utils.ByteBufferOutputStream;
 
-import io.kroxylicious.filter.encryption.common.EncryptionException;
+import io.kroxylicious.filter.encryption.common.CryptoOffload;
 import io.kroxylicious.filter.encryption.common.FilterThreadExecutor;
 import io.kroxylicious.filter.encryption.common.RecordEncryptionUtil;
 import io.kroxylicious.filter.encryption.crypto.Encryption;
 import io.kroxylicious.filter.encryption.crypto.EncryptionHeader;
-import io.kroxylicious.filter.encryption.dek.BufferTooSmallException;
 import io.kroxylicious.filter.encryption.dek.Dek;
 import io.kroxylicious.filter.encryption.dek.ExhaustedDekException;
 import io.kroxylicious.kafka.transform.RecordStream;
@@ -33,8 +31,12 @@ public class InBandEncryptionManager<K, E> implements EncryptionManager<K> {
 
     private static final int MAX_ATTEMPTS = 3;
 
+    /** Shared by all the managers, so that each thread has a single record buffer however many connections it serves. */
+    private static final RecordBufferPool RECORD_BUFFERS = new RecordBufferPool();
+
     /**
-    * The encryption version used on the produce path.
+    * The encryption version used on the produce path, unless the encryption scheme stores the EDEK
+    * once per batch, when {@link Encryption#V3_BATCH_EDEK} is used.
     * Note that the encryption version used on the fetch path is read from the
     * {@link EncryptionHeader#ENCRYPTION_HEADER_NAME} header.
     */
@@ -45,6 +47,8 @@ public class InBandEncryptionManager<K, E> implements EncryptionManager<K> {
     private final FilterThreadExecutor filterThreadExecutor;
     private final int recordBufferInitialBytes;
     private final int recordBufferMaxBytes;
+    @NonNull
+    private final CryptoOffload cryptoOffload;
 
     public InBandEncryptionManager(@NonNull Encryption encryption,
                                    @NonNull Serde<E> edekSerde,
@@ -52,8 +56,19 @@ public class InBandEncryptionManager<K, E> implements EncryptionManager<K> {
                                    int recordBufferMaxBytes,
                                    @NonNull EncryptionDekCache<K, E> dekCache,
                                    @NonNull FilterThreadExecutor filterThreadExecutor) {
+        this(encryption, edekSerde, recordBufferInitialBytes, recordBufferMaxBytes, dekCache, filterThreadExecutor, CryptoOffload.NONE);
+    }
+
+    public InBandEncryptionManager(@NonNull Encryption encryption,
+                                   @NonNull Serde<E> edekSerde,
+                                   int recordBufferInitialBytes,
+                                   int recordBufferMaxBytes,
+                                   @NonNull EncryptionDekCache<K, E> dekCache,
+                                   @NonNull FilterThreadExecutor filterThreadExecutor,
+                                   @NonNull CryptoOffload cryptoOffload) {
         this.filterThreadExecutor = filterThreadExecutor;
-        this.encryption = Objects.requireNonNull(encryption); // TODO read from config
+        this.cryptoOffload = Objects.requireNonNull(cryptoOffload);
+        this.encryption = Objects.requireNonNull(encryption);
         this.edekSerde = Objects.requireNonNull(edekSerde);
         if (recordBufferInitialBytes <= 0) {
             throw new IllegalArgumentException();
@@ -94,13 +109,6 @@ public class InBandEncryptionManager<K, E> implements EncryptionManager<K> {
         return attemptEncrypt(topicName, partition, encryptionScheme, records, 0, bufferAllocator, totalRecords);
     }
 
-    private ByteBufferOutputStream allocateBufferForEncrypt(@NonNull MemoryRecords records,
-                                                            @NonNull IntFunction<ByteBufferOutputStream> bufferAllocator) {
-        int sizeEstimate = 2 * records.sizeInBytes();
-        // Accurate estimation is tricky without knowing the record sizes
-        return bufferAllocator.apply(sizeEstimate);
-    }
-
     private CompletionStage<MemoryRecords> attemptEncrypt(@NonNull String topicName,
                                                           int partition,
                                                           @NonNull EncryptionScheme<K> encryptionScheme,
@@ -116,19 +124,31 @@ public class InBandEncryptionManager<K, E> implements EncryptionManager<K> {
         return currentDek(encryptionScheme).thenCompose(dek -> {
             // if it's not alive we know a previous encrypt call has removed this stage from the cache and fall through to retry encrypt
             if (!dek.isDestroyed()) {
-                try (Dek<E>.Encryptor encryptor = dek.encryptor(allRecordsCount)) {
-                    var encryptedMemoryRecords = encryptBatches(
-                            topicName,
+                final Dek<E>.Encryptor encryptor;
+                try {
+                    encryptor = dek.encryptor(allRecordsCount);
+                }
+                catch (ExhaustedDekException e) {
+                    rotateKeyContext(encryptionScheme, dek);
+                    // recurse, incrementing the attempt number
+                    return attemptEncrypt(topicName,
                             partition,
                             encryptionScheme,
                             records,
-                            encryptor,
-                            bufferAllocator);
-                    return CompletableFuture.completedFuture(encryptedMemoryRecords);
+                            attempt + 1,
+                            bufferAllocator,
+                            allRecordsCount);
                 }
-                catch (ExhaustedDekException e) {
-                    rotateKeyContext(encryptionScheme, dek);
-                    // fall through to recursive call below...
+                catch (Exception e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+                if (cryptoOffload.shouldOffload(records)) {
+                    // the connection's buffers can't be allocated off the filter thread, so use heap buffers
+                    return filterThreadExecutor.completingOnFilterThread(cryptoOffload.supply(
+                            () -> encryptAndClose(topicName, partition, encryptionScheme, records, encryptor, ByteBufferOutputStream::new)));
+                }
+                try {
+                    return CompletableFuture.completedFuture(encryptAndClose(topicName, partition, encryptionScheme, records, encryptor, bufferAllocator));
                 }
                 catch (Exception e) {
                     return CompletableFuture.failedFuture(e);
@@ -145,6 +165,18 @@ public class InBandEncryptionManager<K, E> implements EncryptionManager<K> {
         });
     }
 
+    @NonNull
+    private MemoryRecords encryptAndClose(@NonNull String topicName,
+                                          int partition,
+                                          @NonNull EncryptionScheme<K> encryptionScheme,
+                                          @NonNull MemoryRecords memoryRecords,
+                                          @NonNull Dek<E>.Encryptor encryptor,
+                                          @NonNull IntFunction<ByteBufferOutputStream> bufferAllocator) {
+        try (encryptor) {
+            return encryptBatches(topicName, partition, encryptionScheme, memoryRecords, encryptor, bufferAllocator);
+        }
+    }
+
     @NonNull
     private MemoryRecords encryptBatches(@NonNull String topicName,
                                          int partition,
@@ -152,27 +184,20 @@ public class InBandEncryptionManager<K, E> implements EncryptionManager<K> {
                                          @NonNull MemoryRecords memoryRecords,
                                          @NonNull Dek<E>.Encryptor encryptor,
                                          @NonNull IntFunction<ByteBufferOutputStream> bufferAllocator) {
-        ByteBuffer recordBuffer = ByteBuffer.allocate(recordBufferInitialBytes);
-        do {
-            try {
-                return RecordStream.ofRecords(memoryRecords)
-                        .mapConstant(encryptor)
-                        .toMemoryRecords(allocateBufferForEncrypt(memoryRecords, bufferAllocator),
-                                new RecordEncryptor<>(topicName,
-                                        partition,
-                                        encryption,
-                                        encryptionScheme,
-                                        edekSerde,
-                                        recordBuffer));
-            }
-            catch (BufferTooSmallException e) {
-                int newCapacity = 2 * recordBuffer.capacity();
-                if (newCapacity > recordBufferMaxBytes) {
-                    throw new EncryptionException("Record buffer cannot grow greater than " + recordBufferMaxBytes + " bytes");
-                }
-                recordBuffer = ByteBuffer.allocate(newCapacity);
-            }
-        } while (true);
+        var recordEncryptor = new RecordEncryptor<>(topicName,
+                partition,
+                encryptionScheme.edekPerBatch() ? Encryption.V3_BATCH_EDEK : encryption,
+                encryptionScheme,
+                edekSerde,
+                size -> RECORD_BUFFERS.acquire(size, recordBufferInitialBytes, recordBufferMaxBytes));
+        // size the output exactly, rather than over-allocating it
+        int size = 0;
+        for (var batch : memoryRecords.batches()) {
+            size += recordEncryptor.sizeOfEncryptedBatch(batch, encryptor);
+        }
+        return RecordStream.ofRecords(memoryRecords)
+                .mapConstant(encryptor)
+                .toMemoryRecords(bufferAllocator.apply(size), recordEncryptor);
     }
 
     private void rotateKeyContext(@NonNull EncryptionScheme<K> encryptionScheme,
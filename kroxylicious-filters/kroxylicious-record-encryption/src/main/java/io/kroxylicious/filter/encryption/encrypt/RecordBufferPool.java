@@ -0,0 +1,81 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.filter.encryption.encrypt;
+
+import java.nio.ByteBuffer;
+
+import io.kroxylicious.filter.encryption.common.EncryptionException;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * <p>Direct buffers, one per thread, into which a record's value is encrypted before it's copied into the
+ * encrypted batch. A thread's buffer is reused for every record it encrypts, and replaced by a bigger one
+ * only when a record needs more room than it has.</p>
+ *
+ * <p>A thread keeps a buffer of at most {@link #MAX_RETAINED_CAPACITY} bytes. A record needing more room than that
+ * is encrypted into a heap buffer of its own, which is dropped once the record is encrypted.</p>
+ *
+ * <p>A buffer is only used while a thread encrypts a single record, so it's never shared between threads.</p>
+ */
+final class RecordBufferPool {
+
+    /**
+     * The greatest capacity of buffer a thread keeps for its later records, by default.
+     */
+    static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+    private final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<>();
+    private final int maxRetainedCapacity;
+
+    RecordBufferPool() {
+        this(MAX_RETAINED_CAPACITY);
+    }
+
+    /**
+     * @param maxRetainedCapacity The greatest capacity of buffer a thread keeps for its later records.
+     */
+    RecordBufferPool(int maxRetainedCapacity) {
+        if (maxRetainedCapacity <= 0) {
+            throw new IllegalArgumentException("maxRetainedCapacity must be positive");
+        }
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    /**
+     * Gets the current thread's buffer, first replacing it if it has less than the given capacity.
+     * If the given capacity is more than the thread keeps, gets a buffer which isn't kept instead.
+     * @param minCapacity The number of bytes the caller needs.
+     * @param initialCapacity The smallest capacity with which to allocate a buffer.
+     * @param maxCapacity The greatest capacity the caller allows.
+     * @return The cleared buffer, with at least {@code minCapacity} bytes remaining.
+     * @throws EncryptionException If {@code minCapacity} exceeds {@code maxCapacity}.
+     */
+    @NonNull
+    ByteBuffer acquire(int minCapacity, int initialCapacity, int maxCapacity) {
+        if (minCapacity > maxCapacity) {
+            throw new EncryptionException("Record buffer cannot grow greater than " + maxCapacity + " bytes");
+        }
+        ByteBuffer buffer = buffers.get();
+        if (buffer != null && buffer.capacity() >= minCapacity) {
+            return buffer.clear();
+        }
+        if (minCapacity > maxRetainedCapacity) {
+            // the thread keeps its smaller buffer, so this one is dropped once the record is encrypted
+            return ByteBuffer.allocate(minCapacity);
+        }
+        // round up, so that a run of slightly bigger records doesn't reallocate for each one
+        int capacity = minCapacity <= 1 ? 1 : Integer.highestOneBit(minCapacity - 1) << 1;
+        if (capacity <= 0 || capacity > maxCapacity) {
+            capacity = maxCapacity;
+        }
+        capacity = Math.min(Math.max(capacity, Math.min(initialCapacity, maxCapacity)), maxRetainedCapacity);
+        buffer = ByteBuffer.allocateDirect(capacity);
+        buffers.set(buffer);
+        return buffer;
+    }
+}
@@ -8,9 +8,13 @@ package io.kroxylicious.filter.encryption.encrypt;
 
 import java.nio.ByteBuffer;
 import java.util.Objects;
+import java.util.function.IntFunction;
 
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.DefaultRecord;
+import org.apache.kafka.common.record.DefaultRecordBatch;
 import org.apache.kafka.common.record.Record;
 import org.apache.kafka.common.record.RecordBatch;
 
@@ -37,7 +41,8 @@ public class RecordEncryptor<K, E> implements RecordTransform<Dek<E>.Encryptor>
     private final String topicName;
     private final int partition;
     private Dek<E>.Encryptor encryptor;
-    private final ByteBuffer recordBuffer;
+    private final IntFunction<ByteBuffer> recordBufferAllocator;
+    private @Nullable ByteBuffer recordBuffer;
     /**
      * The encryption version used on the produce path.
      * Note that the encryption version used on the fetch path is read from the
@@ -47,6 +52,8 @@ public class RecordEncryptor<K, E> implements RecordTransform<Dek<E>.Encryptor>
     private @Nullable ByteBuffer transformedValue;
     private @Nullable Header[] transformedHeaders;
     private RecordBatch batch;
+    /** Whether the EDEK has been written for the current batch, for wrappers which write it once per batch. */
+    private boolean batchEdekWritten;
 
     /**
      * Constructor (obviously).
@@ -61,23 +68,96 @@ public class RecordEncryptor<K, E> implements RecordTransform<Dek<E>.Encryptor>
                            @NonNull EncryptionScheme<K> encryptionScheme,
                            @NonNull Serde<E> edekSerde,
                            @NonNull ByteBuffer recordBuffer) {
+        this(topicName, partition, encryption, encryptionScheme, edekSerde, fixedBuffer(recordBuffer));
+    }
+
+    /**
+     * @param encryption The encryption version
+     * @param encryptionScheme The encryption scheme for this key
+     * @param edekSerde Serde for the encrypted DEK.
+     * @param recordBufferAllocator Returns a cleared buffer with at least the given number of bytes remaining,
+     * into which a record's value is encrypted. The buffer is only used until the next record is initialized.
+     */
+    public RecordEncryptor(@NonNull String topicName,
+                           int partition,
+                           @NonNull Encryption encryption,
+                           @NonNull EncryptionScheme<K> encryptionScheme,
+                           @NonNull Serde<E> edekSerde,
+                           @NonNull IntFunction<ByteBuffer> recordBufferAllocator) {
         this.topicName = Objects.requireNonNull(topicName);
         this.partition = partition;
         this.encryption = Objects.requireNonNull(encryption);
         this.encryptionScheme = Objects.requireNonNull(encryptionScheme);
         this.edekSerde = Objects.requireNonNull(edekSerde);
-        this.recordBuffer = Objects.requireNonNull(recordBuffer);
+        this.recordBufferAllocator = Objects.requireNonNull(recordBufferAllocator);
         this.encryptionHeader = new Header[]{ new RecordHeader(EncryptionHeader.ENCRYPTION_HEADER_NAME, new byte[]{ encryption.serializedId() }) };
     }
 
+    private static IntFunction<ByteBuffer> fixedBuffer(@NonNull ByteBuffer recordBuffer) {
+        Objects.requireNonNull(recordBuffer);
+        return size -> {
+            if (size > recordBuffer.capacity()) {
+                throw new BufferTooSmallException();
+            }
+            return recordBuffer.clear();
+        };
+    }
+
+    /**
+     * Computes the size of the given batch once its records have been encrypted, so that the encrypted batches can be
+     * allocated upfront. The size is exact for uncompressed batches of the current magic. The size of a compressed batch
+     * can't be known without compressing it, so it's estimated instead.
+     * @param batch The batch.
+     * @param encryptor The encryptor the batch will be encrypted with.
+     * @return The size of the encrypted batch.
+     */
+    public int sizeOfEncryptedBatch(@NonNull RecordBatch batch, @NonNull Dek<E>.Encryptor encryptor) {
+        if (batch.isControlBatch()) {
+            return batch.sizeInBytes();
+        }
+        if (batch.compressionType() != CompressionType.NONE || batch.magic() < RecordBatch.MAGIC_VALUE_V2) {
+            return 2 * batch.sizeInBytes();
+        }
+        int size = DefaultRecordBatch.RECORD_BATCH_OVERHEAD;
+        boolean edekWritten = false;
+        Long baseTimestamp = null;
+        for (Record kafkaRecord : batch) {
+            if (baseTimestamp == null) {
+                // the builder of the encrypted batch takes the timestamp of its first record as the base timestamp
+                baseTimestamp = kafkaRecord.timestamp();
+            }
+            if (kafkaRecord.hasValue()) {
+                int valueSize = sizeOfWrapper(kafkaRecord, encryptor, edekWritten);
+                edekWritten = true;
+                size += DefaultRecord.sizeInBytes((int) (kafkaRecord.offset() - batch.baseOffset()),
+                        kafkaRecord.timestamp() - baseTimestamp,
+                        kafkaRecord.keySize(),
+                        valueSize,
+                        doTransformHeaders(kafkaRecord));
+            }
+            else {
+                size += kafkaRecord.sizeInBytes();
+            }
+        }
+        return size;
+    }
+
+    private int sizeOfWrapper(@NonNull Record kafkaRecord, @NonNull Dek<E>.Encryptor encryptor, boolean edekWritten) {
+        var wrapper = encryption.wrapper();
+        E edek = edekWritten && wrapper.edekPerBatch() ? null : Objects.requireNonNull(encryptor.edek());
+        int parcelSize = encryption.parcel().sizeOfParcel(encryptionScheme.recordFields(), kafkaRecord);
+        return wrapper.sizeOfWrapper(edekSerde, edek, encryptor.cipherManager(), parcelSize);
+    }
+
     @Override
     public void initBatch(@NonNull RecordBatch batch) {
         this.batch = Objects.requireNonNull(batch);
+        this.batchEdekWritten = false;
     }
 
     @Override
     public void resetAfterTransform(Dek<E>.Encryptor encryptor, Record record) {
-        recordBuffer.clear();
+        recordBuffer = null;
     }
 
     @Override
@@ -100,6 +180,7 @@ public class RecordEncryptor<K, E> implements RecordTransform<Dek<E>.Encryptor>
     private ByteBuffer doTransformValue(@NonNull Record kafkaRecord) throws BufferTooSmallException {
         final ByteBuffer transformedValue;
         if (kafkaRecord.hasValue()) {
+            recordBuffer = recordBufferAllocator.apply(sizeOfWrapper(kafkaRecord, encryptor, batchEdekWritten));
             transformedValue = writeWrapper(kafkaRecord, recordBuffer);
         }
         else {
@@ -131,8 +212,10 @@ public class RecordEncryptor<K, E> implements RecordTransform<Dek<E>.Encryptor>
     private ByteBuffer writeWrapper(@NonNull Record kafkaRecord,
                                     @NonNull ByteBuffer buffer)
             throws BufferTooSmallException {
-        encryption.wrapper().writeWrapper(edekSerde,
-                Objects.requireNonNull(encryptor.edek()),
+        var wrapper = encryption.wrapper();
+        E edek = batchEdekWritten && wrapper.edekPerBatch() ? null : Objects.requireNonNull(encryptor.edek());
+        wrapper.writeWrapper(edekSerde,
+                edek,
                 topicName,
                 partition,
                 batch,
@@ -142,8 +225,9 @@ public class RecordEncryptor<K, E> implements RecordTransform<Dek<E>.Encryptor>
                 encryptionScheme.aadSpec(),
                 encryptionScheme.recordFields(),
                 buffer);
-        recordBuffer.flip();
-        return recordBuffer;
+        batchEdekWritten = true;
+        buffer.flip();
+        return buffer;
     }
 
     @Override
@@ -17,20 +17,34 @@ import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.LongStream;
 
+import org.apache.kafka.clients.admin.AlterConfigOp;
+import org.apache.kafka.common.config.ConfigResource;
+import org.apache.kafka.common.config.TopicConfig;
 import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.message.AlterConfigsRequestData;
+import org.apache.kafka.common.message.CreateTopicsRequestData;
+import org.apache.kafka.common.message.CreateTopicsRequestData.CreatableTopic;
+import org.apache.kafka.common.message.CreateTopicsRequestData.CreateableTopicConfig;
+import org.apache.kafka.common.message.CreateTopicsResponseData;
+import org.apache.kafka.common.message.DescribeConfigsRequestData;
+import org.apache.kafka.common.message.DescribeConfigsResponseData;
 import org.apache.kafka.common.message.FetchResponseData;
 import org.apache.kafka.common.message.FetchResponseData.FetchableTopicResponse;
 import org.apache.kafka.common.message.FetchResponseData.PartitionData;
+import org.apache.kafka.common.message.IncrementalAlterConfigsRequestData;
+import org.apache.kafka.common.message.IncrementalAlterConfigsResponseData;
 import org.apache.kafka.common.message.ProduceRequestData;
 import org.apache.kafka.common.message.ProduceRequestData.PartitionProduceData;
 import org.apache.kafka.common.message.ProduceRequestData.TopicProduceData;
 import org.apache.kafka.common.message.RequestHeaderData;
 import org.apache.kafka.common.message.ResponseHeaderData;
 import org.apache.kafka.common.protocol.ApiMessage;
+import org.apache.kafka.common.protocol.Errors;
 import org.apache.kafka.common.record.CompressionType;
 import org.apache.kafka.common.record.MemoryRecords;
 import org.apache.kafka.common.record.MemoryRecordsBuilder;
@@ -56,7 +70,9 @@ import io.kroxylicious.filter.encryption.decrypt.DecryptionManager;
 import io.kroxylicious.filter.encryption.encrypt.EncryptionManager;
 import io.kroxylicious.proxy.filter.FilterContext;
 import io.kroxylicious.proxy.filter.RequestFilterResult;
+import io.kroxylicious.proxy.filter.RequestFilterResultBuilder;
 import io.kroxylicious.proxy.filter.ResponseFilterResult;
+import io.kroxylicious.proxy.filter.filterresultbuilder.CloseOrTerminalStage;
 import io.kroxylicious.test.record.RecordTestUtils;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -69,8 +85,10 @@ import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anySet;
 import static org.mockito.ArgumentMatchers.assertArg;
 import static org.mockito.Mock.Strictness.LENIENT;
+import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -97,6 +115,9 @@ class RecordEncryptionFilterTest {
     @Mock(strictness = LENIENT)
     private FilterContext context;
 
+    @Mock(strictness = LENIENT)
+    private RequestFilterResultBuilder builder;
+
     @Captor
     private ArgumentCaptor<ApiMessage> apiMessageCaptor;
 
@@ -134,7 +155,7 @@ class RecordEncryptionFilterTest {
 
         when(decryptionManager.decrypt(any(), anyInt(), any(), any())).thenReturn(CompletableFuture.completedFuture(RecordTestUtils.singleElementMemoryRecords("decrypt", "decrypt")));
 
-        encryptionFilter = new RecordEncryptionFilter<>(encryptionManager, decryptionManager, kekSelector, new FilterThreadExecutor(Runnable::run));
+        encryptionFilter = new RecordEncryptionFilter<>(encryptionManager, decryptionManager, kekSelector, new BatchEdekTopics(Set.of(), false), new FilterThreadExecutor(Runnable::run));
     }
 
     @Test
@@ -280,6 +301,222 @@ class RecordEncryptionFilterTest {
                 .has(produceRequestMatching(pr -> pr.topicData().stream().anyMatch(td -> ENCRYPTED_TOPIC.equals(td.name()))))));
     }
 
+    @Test
+    void shouldStoreEdekOncePerBatchForConfiguredTopicWhichIsNotCompacted() {
+        // Given
+        var filter = batchEdekFilter();
+        when(context.<DescribeConfigsResponseData> sendRequest(any(), any())).thenReturn(CompletableFuture.completedFuture(cleanupPolicy(ENCRYPTED_TOPIC, "delete")));
+        var produceRequestData = buildProduceRequestData(new TopicProduceData()
+                .setName(ENCRYPTED_TOPIC)
+                .setPartitionData(List.of(new PartitionProduceData().setRecords(makeRecord(HELLO_PLAIN_WORLD)))));
+
+        // When
+        filter.onProduceRequest(ProduceRequestData.HIGHEST_SUPPORTED_VERSION, new RequestHeaderData(), produceRequestData, context);
+
+        // Then
+        verify(context).sendRequest(any(), assertArg(request -> assertThat(request)
+                .isInstanceOf(DescribeConfigsRequestData.class)
+                .extracting(describe -> ((DescribeConfigsRequestData) describe).resources().get(0).resourceName())
+                .isEqualTo(ENCRYPTED_TOPIC)));
+        verify(encryptionManager).encrypt(any(), anyInt(), assertArg(scheme -> assertThat(scheme.edekPerBatch()).isTrue()), any(), any());
+    }
+
+    @Test
+    void shouldStoreEdekInEveryRecordForCompactedTopic() {
+        // Given
+        var filter = batchEdekFilter();
+        when(context.<DescribeConfigsResponseData> sendRequest(any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(cleanupPolicy(ENCRYPTED_TOPIC, "compact,delete")));
+        var produceRequestData = buildProduceRequestData(new TopicProduceData()
+                .setName(ENCRYPTED_TOPIC)
+                .setPartitionData(List.of(new PartitionProduceData().setRecords(makeRecord(HELLO_PLAIN_WORLD)))));
+
+        // When
+        filter.onProduceRequest(ProduceRequestData.HIGHEST_SUPPORTED_VERSION, new RequestHeaderData(), produceRequestData, context);
+
+        // Then
+        verify(encryptionManager).encrypt(any(), anyInt(), assertArg(scheme -> assertThat(scheme.edekPerBatch()).isFalse()), any(), any());
+    }
+
+    @Test
+    void shouldOnlyTreatCompactInTheCleanupPolicyListAsCompaction() {
+        // Given
+        var filter = batchEdekFilter();
+        when(context.<DescribeConfigsResponseData> sendRequest(any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(cleanupPolicy(ENCRYPTED_TOPIC, "delete,compaction")));
+
+        // When
+        filter.onProduceRequest(ProduceRequestData.HIGHEST_SUPPORTED_VERSION, new RequestHeaderData(), produceToEncryptedTopic(), context);
+
+        // Then
+        verify(encryptionManager).encrypt(any(), anyInt(), assertArg(scheme -> assertThat(scheme.edekPerBatch()).isTrue()), any(), any());
+    }
+
+    @Test
+    void shouldTreatCompactWithinCleanupPolicyListAsCompaction() {
+        // Given
+        var filter = batchEdekFilter();
+        when(context.<DescribeConfigsResponseData> sendRequest(any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(cleanupPolicy(ENCRYPTED_TOPIC, "delete, Compact")));
+
+        // When
+        filter.onProduceRequest(ProduceRequestData.HIGHEST_SUPPORTED_VERSION, new RequestHeaderData(), produceToEncryptedTopic(), context);
+
+        // Then
+        verify(encryptionManager).encrypt(any(), anyInt(), assertArg(scheme -> assertThat(scheme.edekPerBatch()).isFalse()), any(), any());
+    }
+
+    @Test
+    void shouldDescribeCleanupPolicyAgainOnceDescriptionExpires() {
+        // Given
+        var nanoTime = new AtomicLong();
+        var filter = batchEdekFilter(new BatchEdekTopics(Set.of(ENCRYPTED_TOPIC), false, Duration.ofMinutes(1), nanoTime::get));
+        when(context.<DescribeConfigsResponseData> sendRequest(any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(cleanupPolicy(ENCRYPTED_TOPIC, "delete")))
+                .thenReturn(CompletableFuture.completedFuture(cleanupPolicy(ENCRYPTED_TOPIC, "compact")));
+        filter.onProduceRequest(ProduceRequestData.HIGHEST_SUPPORTED_VERSION, new RequestHeaderData(), produceToEncryptedTopic(), context);
+        nanoTime.addAndGet(Duration.ofSeconds(30).toNanos());
+        filter.onProduceRequest(ProduceRequestData.HIGHEST_SUPPORTED_VERSION, new RequestHeaderData(), produceToEncryptedTopic(), context);
+        verify(context, times(1)).sendRequest(any(), any());
+        clearInvocations(encryptionManager);
+
+        // When
+        nanoTime.addAndGet(Duration.ofSeconds(31).toNanos());
+        filter.onProduceRequest(ProduceRequestData.HIGHEST_SUPPORTED_VERSION, new RequestHeaderData(), produceToEncryptedTopic(), context);
+
+        // Then
+        verify(context, times(2)).sendRequest(any(), any());
+        verify(encryptionManager).encrypt(any(), anyInt(), assertArg(scheme -> assertThat(scheme.edekPerBatch()).isFalse()), any(), any());
+    }
+
+    @Test
+    void shouldStoreEdekInEveryRecordWhenCleanupPolicyCantBeDescribed() {
+        // Given
+        var filter = batchEdekFilter();
+        when(context.<DescribeConfigsResponseData> sendRequest(any(), any())).thenReturn(CompletableFuture.failedFuture(new RuntimeException("boom")));
+        var produceRequestData = buildProduceRequestData(new TopicProduceData()
+                .setName(ENCRYPTED_TOPIC)
+                .setPartitionData(List.of(new PartitionProduceData().setRecords(makeRecord(HELLO_PLAIN_WORLD)))));
+
+        // When
+        filter.onProduceRequest(ProduceRequestData.HIGHEST_SUPPORTED_VERSION, new RequestHeaderData(), produceRequestData, context);
+
+        // Then
+        verify(encryptionManager).encrypt(any(), anyInt(), assertArg(scheme -> assertThat(scheme.edekPerBatch()).isFalse()), any(), any());
+        verify(context).forwardRequest(any(), any());
+    }
+
+    @Test
+    void shouldRefuseToCreateCompactedBatchEdekTopic() {
+        // Given
+        var filter = batchEdekFilter();
+        mockBuilder();
+        var request = new CreateTopicsRequestData();
+        request.topics().add(new CreatableTopic().setName(UNENCRYPTED_TOPIC));
+        var topic = new CreatableTopic().setName(ENCRYPTED_TOPIC);
+        topic.configs().add(new CreateableTopicConfig().setName(TopicConfig.CLEANUP_POLICY_CONFIG).setValue("compact"));
+        request.topics().add(topic);
+
+        // When
+        filter.onCreateTopicsRequest(CreateTopicsRequestData.HIGHEST_SUPPORTED_VERSION, new RequestHeaderData(), request, context);
+
+        // Then
+        verify(context, never()).forwardRequest(any(), any());
+        verify(builder).shortCircuitResponse(assertArg(response -> assertThat(((CreateTopicsResponseData) response).topics())
+                .hasSize(2)
+                .allSatisfy(result -> assertThat(result.errorCode()).isEqualTo(Errors.POLICY_VIOLATION.code()))));
+    }
+
+    @Test
+    void shouldRefuseToMakeBatchEdekTopicCompacted() {
+        // Given
+        var filter = batchEdekFilter();
+        mockBuilder();
+        var request = new IncrementalAlterConfigsRequestData();
+        var resource = new IncrementalAlterConfigsRequestData.AlterConfigsResource()
+                .setResourceType(ConfigResource.Type.TOPIC.id())
+                .setResourceName(ENCRYPTED_TOPIC);
+        resource.configs().add(new IncrementalAlterConfigsRequestData.AlterableConfig()
+                .setName(TopicConfig.CLEANUP_POLICY_CONFIG)
+                .setConfigOperation(AlterConfigOp.OpType.APPEND.id())
+                .setValue("compact"));
+        request.resources().add(resource);
+
+        // When
+        filter.onIncrementalAlterConfigsRequest(IncrementalAlterConfigsRequestData.HIGHEST_SUPPORTED_VERSION, new RequestHeaderData(), request, context);
+
+        // Then
+        verify(context, never()).forwardRequest(any(), any());
+        verify(builder).shortCircuitResponse(assertArg(response -> assertThat(((IncrementalAlterConfigsResponseData) response).responses())
+                .singleElement()
+                .satisfies(result -> assertThat(result.errorCode()).isEqualTo(Errors.POLICY_VIOLATION.code()))));
+    }
+
+    @Test
+    void shouldForwardCompactionOfBatchEdekTopicUnlessConfiguredToRefuse() {
+        // Given
+        var filter = batchEdekFilter(new BatchEdekTopics(Set.of(ENCRYPTED_TOPIC), false));
+        var request = new CreateTopicsRequestData();
+        var topic = new CreatableTopic().setName(ENCRYPTED_TOPIC);
+        topic.configs().add(new CreateableTopicConfig().setName(TopicConfig.CLEANUP_POLICY_CONFIG).setValue("compact"));
+        request.topics().add(topic);
+
+        // When
+        filter.onCreateTopicsRequest(CreateTopicsRequestData.HIGHEST_SUPPORTED_VERSION, new RequestHeaderData(), request, context);
+
+        // Then
+        verify(context).forwardRequest(any(), assertArg(forwarded -> assertThat(forwarded).isSameAs(request)));
+    }
+
+    @Test
+    void shouldForwardCompactionOfOtherTopics() {
+        // Given
+        var filter = batchEdekFilter();
+        var request = new AlterConfigsRequestData();
+        var resource = new AlterConfigsRequestData.AlterConfigsResource()
+                .setResourceType(ConfigResource.Type.TOPIC.id())
+                .setResourceName(UNENCRYPTED_TOPIC);
+        resource.configs().add(new AlterConfigsRequestData.AlterableConfig().setName(TopicConfig.CLEANUP_POLICY_CONFIG).setValue("compact"));
+        request.resources().add(resource);
+
+        // When
+        filter.onAlterConfigsRequest(AlterConfigsRequestData.HIGHEST_SUPPORTED_VERSION, new RequestHeaderData(), request, context);
+
+        // Then
+        verify(context).forwardRequest(any(), assertArg(forwarded -> assertThat(forwarded).isSameAs(request)));
+    }
+
+    private RecordEncryptionFilter<String> batchEdekFilter() {
+        return batchEdekFilter(new BatchEdekTopics(Set.of(ENCRYPTED_TOPIC), true));
+    }
+
+    private RecordEncryptionFilter<String> batchEdekFilter(BatchEdekTopics batchEdekTopics) {
+        return new RecordEncryptionFilter<>(encryptionManager, decryptionManager, kekSelector, batchEdekTopics, new FilterThreadExecutor(Runnable::run));
+    }
+
+    private ProduceRequestData produceToEncryptedTopic() {
+        return buildProduceRequestData(new TopicProduceData()
+                .setName(ENCRYPTED_TOPIC)
+                .setPartitionData(List.of(new PartitionProduceData().setRecords(makeRecord(HELLO_PLAIN_WORLD)))));
+    }
+
+    private void mockBuilder() {
+        when(builder.shortCircuitResponse(any())).thenReturn(mock(CloseOrTerminalStage.class));
+        when(context.requestFilterResultBuilder()).thenReturn(builder);
+    }
+
+    private static DescribeConfigsResponseData cleanupPolicy(String topicName, String cleanupPolicy) {
+        var result = new DescribeConfigsResponseData.DescribeConfigsResult()
+                .setResourceType(ConfigResource.Type.TOPIC.id())
+                .setResourceName(topicName);
+        result.configs().add(new DescribeConfigsResponseData.DescribeConfigsResourceResult()
+                .setName(TopicConfig.CLEANUP_POLICY_CONFIG)
+                .setValue(cleanupPolicy));
+        var response = new DescribeConfigsResponseData();
+        response.results().add(result);
+        return response;
+    }
+
     private static FetchResponseData buildFetchResponseData(FetchableTopicResponse... topicResponses) {
         var data = new FetchResponseData();
         data.responses().addAll(Arrays.asList(topicResponses));
@@ -8,6 +8,9 @@ package io.kroxylicious.filter.encryption;
 
 import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -16,7 +19,9 @@ import javax.crypto.Cipher;
 import org.assertj.core.api.AbstractThrowableAssert;
 import org.junit.jupiter.api.Test;
 
+import io.kroxylicious.filter.encryption.common.CryptoOffload;
 import io.kroxylicious.filter.encryption.config.CipherSpec;
+import io.kroxylicious.filter.encryption.config.CryptoOffloadConfig;
 import io.kroxylicious.filter.encryption.config.EncryptionConfigurationException;
 import io.kroxylicious.filter.encryption.config.KekSelectorService;
 import io.kroxylicious.filter.encryption.config.KmsCacheConfig;
@@ -127,6 +132,101 @@ class RecordEncryptionTest {
         assertThat(config).isEqualTo(kmsCacheConfig);
     }
 
+    @Test
+    void testBatchEdekTopicsDefault() {
+        assertThat(new RecordEncryptionConfig("vault", 1L, "selector", 1L, null).batchEdekTopics()).isEmpty();
+    }
+
+    @Test
+    void testBatchEdekTopicsOverride() {
+        var config = new RecordEncryptionConfig("vault", 1L, "selector", 1L, Map.of("batchEdekTopics", List.of("topic1", "topic2")));
+        assertThat(config.batchEdekTopics()).containsExactlyInAnyOrder("topic1", "topic2");
+    }
+
+    @Test
+    void testBatchEdekTopicsRejectsNonListValues() {
+        var notList = new RecordEncryptionConfig("vault", 1L, "selector", 1L, Map.of("batchEdekTopics", "topic1"));
+        assertThatThrownBy(notList::batchEdekTopics).isInstanceOf(EncryptionConfigurationException.class);
+        var notNames = new RecordEncryptionConfig("vault", 1L, "selector", 1L, Map.of("batchEdekTopics", List.of(1)));
+        assertThatThrownBy(notNames::batchEdekTopics).isInstanceOf(EncryptionConfigurationException.class);
+    }
+
+    @Test
+    void testRefuseCompactingBatchEdekTopicsDefault() {
+        assertThat(new RecordEncryptionConfig("vault", 1L, "selector", 1L, null).refuseCompactingBatchEdekTopics()).isFalse();
+    }
+
+    @Test
+    void testRefuseCompactingBatchEdekTopicsOverride() {
+        var config = new RecordEncryptionConfig("vault", 1L, "selector", 1L, Map.of("refuseCompactingBatchEdekTopics", true));
+        assertThat(config.refuseCompactingBatchEdekTopics()).isTrue();
+        var notBoolean = new RecordEncryptionConfig("vault", 1L, "selector", 1L, Map.of("refuseCompactingBatchEdekTopics", "yes"));
+        assertThatThrownBy(notBoolean::refuseCompactingBatchEdekTopics).isInstanceOf(EncryptionConfigurationException.class);
+    }
+
+    @Test
+    void testCryptoOffloadConfigDefaults() {
+        CryptoOffloadConfig config = new RecordEncryptionConfig("vault", 1L, "selector", 1L, null).cryptoOffload();
+        assertThat(config.threads()).isNull();
+        assertThat(config.minBatchBytes()).isNull();
+        assertThat(config.enabled()).isFalse();
+    }
+
+    @Test
+    void testCryptoOffloadConfigOverrides() {
+        HashMap<String, Object> experimental = new HashMap<>();
+        experimental.put("cryptoThreads", 4);
+        experimental.put("cryptoOffloadMinBatchBytes", 65536);
+        CryptoOffloadConfig config = new RecordEncryptionConfig("vault", 1L, "selector", 1L, experimental).cryptoOffload();
+        assertThat(config).isEqualTo(new CryptoOffloadConfig(4, 65536));
+        assertThat(config.enabled()).isTrue();
+    }
+
+    @Test
+    void testCryptoOffloadConfigRejectsInvalidValues() {
+        assertThatThrownBy(() -> new CryptoOffloadConfig(0, null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new CryptoOffloadConfig(null, -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldUseWorkerPoolForCryptoOffloadByDefault() {
+        Executor workerPool = mock(Executor.class);
+        var fc = mockFactoryContext();
+        doReturn(workerPool).when(fc).workerPool();
+        var ee = new RecordEncryption<>();
+
+        var sec = ee.initialize(fc, new RecordEncryptionConfig("KMS", null, "SELECTOR", null, Map.of("cryptoOffloadMinBatchBytes", 1024)));
+
+        assertThat(sec.cryptoOffload()).isEqualTo(new CryptoOffload(workerPool, 1024));
+        assertThat(sec.cryptoPool()).isNull();
+    }
+
+    @Test
+    void shouldShutDownDedicatedCryptoPoolOnClose() {
+        var fc = mockFactoryContext();
+        var ee = new RecordEncryption<>();
+
+        var sec = ee.initialize(fc, new RecordEncryptionConfig("KMS", null, "SELECTOR", null,
+                Map.of("cryptoThreads", 2, "cryptoOffloadMinBatchBytes", 1024)));
+        assertThat(sec.cryptoPool()).isNotNull();
+        assertThat(sec.cryptoOffload().executor()).isSameAs(sec.cryptoPool());
+        Future<Thread> thread = sec.cryptoPool().submit(Thread::currentThread);
+        assertThat(thread).succeedsWithin(Duration.ofSeconds(5)).satisfies(cryptoThread -> assertThat(cryptoThread.isDaemon()).isTrue());
+
+        ee.close(sec);
+
+        assertThat(sec.cryptoPool().isShutdown()).isTrue();
+    }
+
+    @NonNull
+    private static FilterFactoryContext mockFactoryContext() {
+        var fc = mock(FilterFactoryContext.class);
+        var kmsService = mock(KmsService.class);
+        doReturn(kmsService).when(fc).pluginInstance(KmsService.class, "KMS");
+        doReturn(mock(Kms.class)).when(kmsService).buildKms(any());
+        return fc;
+    }
+
     @Test
     void testRetryPool() {
         Future<Thread> thread = RecordEncryption.RETRY_POOL.submit(Thread::currentThread);
@@ -48,4 +48,16 @@ class EncryptionTest {
         assertThat(aadResolver.toSerializedId(AadNone.INSTANCE)).isEqualTo(AadNone.INSTANCE.serializedId());
     }
 
+    @Test
+    void v3BatchEdek() {
+        assertThat(Encryption.V3_BATCH_EDEK.wrapper()).isExactlyInstanceOf(WrapperV3.class);
+        assertThat(Encryption.V3_BATCH_EDEK.wrapper().edekPerBatch()).isTrue();
+        assertThat(Encryption.V3_BATCH_EDEK.parcel()).isExactlyInstanceOf(ParcelV1.class);
+        assertThat(EncryptionResolver.ALL.fromSerializedId(Encryption.V3_BATCH_EDEK.serializedId())).isSameAs(Encryption.V3_BATCH_EDEK);
+
+        var cipherSpecResolver = ((WrapperV3) Encryption.V3_BATCH_EDEK.wrapper()).cipherSpecResolver();
+        assertThat(cipherSpecResolver.fromName(CipherSpec.AES_256_GCM_128)).isSameAs(Aes.AES_256_GCM_128);
+        assertThatThrownBy(() -> cipherSpecResolver.fromName(CipherSpec.CHACHA20_POLY1305)).isExactlyInstanceOf(UnknownCipherSpecException.class);
+    }
+
 }
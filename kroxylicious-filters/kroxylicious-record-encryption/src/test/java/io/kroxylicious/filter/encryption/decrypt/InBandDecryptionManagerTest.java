@@ -11,6 +11,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
@@ -18,8 +19,11 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 import java.util.stream.Stream;
 
 import javax.crypto.SecretKey;
@@ -45,9 +49,11 @@ import org.mockito.stubbing.Answer;
 
 import io.kroxylicious.filter.encryption.EncryptorCreationException;
 import io.kroxylicious.filter.encryption.TestingDek;
+import io.kroxylicious.filter.encryption.common.CryptoOffload;
 import io.kroxylicious.filter.encryption.common.EncryptionException;
 import io.kroxylicious.filter.encryption.common.FilterThreadExecutor;
 import io.kroxylicious.filter.encryption.config.RecordField;
+import io.kroxylicious.filter.encryption.crypto.AadNone;
 import io.kroxylicious.filter.encryption.crypto.Encryption;
 import io.kroxylicious.filter.encryption.crypto.EncryptionHeader;
 import io.kroxylicious.filter.encryption.crypto.EncryptionResolver;
@@ -67,6 +73,7 @@ import io.kroxylicious.test.record.RecordTestUtils;
 import edu.umd.cs.findbugs.annotations.NonNull;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
@@ -130,6 +137,173 @@ class InBandDecryptionManagerTest {
                 .isEqualTo(value);
     }
 
+    @Test
+    void shouldEncryptAndDecryptOnCryptoExecutorWhenOffloaded() {
+        InMemoryKms kms = getInMemoryKms();
+        AtomicInteger offloaded = new AtomicInteger();
+        var cryptoOffload = new CryptoOffload(command -> {
+            offloaded.incrementAndGet();
+            command.run();
+        }, 0);
+        var encryptionManager = createEncryptionManager(kms, 500_000, cryptoOffload);
+        var decryptionManager = createDecryptionManager(kms, cryptoOffload);
+        IntFunction<ByteBufferOutputStream> connectionAllocator = size -> {
+            throw new IllegalStateException("connection buffers must not be allocated off the filter thread");
+        };
+
+        var value = new byte[]{ 1, 2, 3 };
+        MemoryRecords initial = RecordTestUtils.memoryRecords(List.of(RecordTestUtils.record(value)));
+
+        var encrypted = encryptionManager.encrypt("topic", 1, createScheme(kms), initial, connectionAllocator);
+        assertThat(encrypted).succeedsWithin(Duration.ZERO);
+        assertThat(offloaded).hasValue(1);
+
+        var decrypted = encrypted.thenCompose(records -> decryptionManager.decrypt("topic", 1, records, connectionAllocator));
+        assertThat(decrypted).succeedsWithin(Duration.ZERO)
+                .satisfies(records -> assertThat(records.records().iterator().next())
+                        .extracting(RecordTestUtils::recordValueAsBytes)
+                        .isEqualTo(value));
+        assertThat(offloaded).hasValue(2);
+    }
+
+    @Test
+    void shouldEncryptAndDecryptInlineWhenCryptoExecutorRejects() {
+        InMemoryKms kms = getInMemoryKms();
+        var cryptoOffload = new CryptoOffload(command -> {
+            throw new RejectedExecutionException("full");
+        }, 0);
+        var encryptionManager = createEncryptionManager(kms, 500_000, cryptoOffload);
+        var decryptionManager = createDecryptionManager(kms, cryptoOffload);
+
+        var value = new byte[]{ 1, 2, 3 };
+        List<Record> encrypted = new ArrayList<>();
+        List<Record> decrypted = new ArrayList<>();
+        assertThat(doEncrypt(encryptionManager, "topic", 1, createScheme(kms), List.of(RecordTestUtils.record(value)), encrypted))
+                .isCompleted();
+        assertThat(doDecrypt(decryptionManager, "topic", 1, encrypted, decrypted)).isCompleted();
+
+        assertThat(decrypted).singleElement()
+                .extracting(RecordTestUtils::recordValueAsBytes)
+                .isEqualTo(value);
+    }
+
+    @Test
+    void shouldNotOffloadRecordsSmallerThanMinBatchBytes() {
+        InMemoryKms kms = getInMemoryKms();
+        AtomicInteger offloaded = new AtomicInteger();
+        var cryptoOffload = new CryptoOffload(command -> {
+            offloaded.incrementAndGet();
+            command.run();
+        }, 1024 * 1024);
+        var encryptionManager = createEncryptionManager(kms, 500_000, cryptoOffload);
+        var decryptionManager = createDecryptionManager(kms, cryptoOffload);
+
+        List<Record> encrypted = new ArrayList<>();
+        List<Record> decrypted = new ArrayList<>();
+        assertThat(doEncrypt(encryptionManager, "topic", 1, createScheme(kms), List.of(RecordTestUtils.record(new byte[]{ 1 })), encrypted))
+                .isCompleted();
+        assertThat(doDecrypt(decryptionManager, "topic", 1, encrypted, decrypted)).isCompleted();
+
+        assertThat(decrypted).hasSize(1);
+        assertThat(offloaded).hasValue(0);
+    }
+
+    @Test
+    void shouldWriteEdekOncePerBatchWithBatchEdekEncryption() {
+        InMemoryKms kms = getInMemoryKms();
+        var encryptionManager = createEncryptionManager(kms, 500_000);
+        var decryptionManager = createDecryptionManager(kms);
+        EncryptionScheme<UUID> scheme = createBatchEdekScheme(kms);
+
+        var values = List.of(new byte[]{ 1 }, new byte[]{ 2 }, new byte[]{ 3 });
+        List<Record> initial = List.of(RecordTestUtils.record(0, ByteBuffer.wrap(values.get(0))),
+                RecordTestUtils.record(1, ByteBuffer.wrap(values.get(1))),
+                RecordTestUtils.record(2, ByteBuffer.wrap(values.get(2))));
+        List<Record> encrypted = new ArrayList<>();
+        assertThat(doEncrypt(encryptionManager, "topic", 1, scheme, initial, encrypted)).isCompleted();
+
+        assertThat(encrypted).hasSize(3);
+        int edekLength = edekLength(encrypted.get(0));
+        assertThat(edekLength).isPositive();
+        assertThat(edekLength(encrypted.get(1))).isZero();
+        assertThat(edekLength(encrypted.get(2))).isZero();
+        assertThat(encrypted.get(1).valueSize()).isLessThan(encrypted.get(0).valueSize());
+
+        List<Record> decrypted = new ArrayList<>();
+        assertThat(doDecrypt(decryptionManager, "topic", 1, encrypted, decrypted)).isCompleted();
+        assertThat(decrypted).map(RecordTestUtils::recordValueAsBytes).containsExactlyElementsOf(values);
+    }
+
+    @Test
+    void shouldDecryptBatchesOfMixedEncryptionVersions() {
+        InMemoryKms kms = getInMemoryKms();
+        EncryptionScheme<UUID> scheme = createScheme(kms);
+        EncryptionScheme<UUID> batchEdekScheme = new EncryptionScheme<>(scheme.kekId(), scheme.recordFields(), AadNone.INSTANCE, true);
+        var decryptionManager = createDecryptionManager(kms);
+
+        List<Record> encrypted = new ArrayList<>();
+        doEncrypt(createEncryptionManager(kms, 500_000), "topic", 1, batchEdekScheme, List.of(RecordTestUtils.record(0, ByteBuffer.wrap(new byte[]{ 1 })),
+                RecordTestUtils.record(1, ByteBuffer.wrap(new byte[]{ 2 }))), encrypted);
+        doEncrypt(createEncryptionManager(kms, 500_000), "topic", 1, scheme, List.of(RecordTestUtils.record(2, ByteBuffer.wrap(new byte[]{ 3 }))), encrypted);
+        MemoryRecords records = RecordTestUtils.memoryRecords(
+                RecordTestUtils.memoryRecords(encrypted.subList(0, 2)).batches().iterator().next(),
+                RecordTestUtils.memoryRecords(encrypted.subList(2, 3)).batches().iterator().next());
+
+        assertThat(decryptionManager.decrypt("topic", 1, records, ByteBufferOutputStream::new))
+                .succeedsWithin(Duration.ZERO)
+                .satisfies(decrypted -> assertThat(decrypted.records())
+                        .map(RecordTestUtils::recordValueAsBytes)
+                        .containsExactly(new byte[]{ 1 }, new byte[]{ 2 }, new byte[]{ 3 }));
+    }
+
+    @Test
+    void shouldFailToDecryptBatchMissingItsEdek() {
+        InMemoryKms kms = getInMemoryKms();
+        var encryptionManager = createEncryptionManager(kms, 500_000);
+        var decryptionManager = createDecryptionManager(kms);
+
+        List<Record> encrypted = new ArrayList<>();
+        doEncrypt(encryptionManager, "topic", 1, createBatchEdekScheme(kms), List.of(RecordTestUtils.record(0, ByteBuffer.wrap(new byte[]{ 1 })),
+                RecordTestUtils.record(1, ByteBuffer.wrap(new byte[]{ 2 }))), encrypted);
+
+        // as if compaction had removed the record holding the EDEK
+        List<Record> compacted = encrypted.subList(1, 2);
+        assertThatThrownBy(() -> doDecrypt(decryptionManager, "topic", 1, compacted, new ArrayList<>()))
+                .isInstanceOf(EncryptionException.class)
+                .hasMessageContaining("No EDEK for the record");
+    }
+
+    @Test
+    void shouldShareDecryptStateBetweenRecordsWithSameEdek() {
+        InMemoryKms kms = getInMemoryKms();
+        var decryptionManager = createDecryptionManager(kms);
+
+        List<Record> encrypted = new ArrayList<>();
+        doEncrypt(createEncryptionManager(kms, 500_000), "topic", 1, createScheme(kms), List.of(RecordTestUtils.record(0, ByteBuffer.wrap(new byte[]{ 1 })),
+                RecordTestUtils.record(1, ByteBuffer.wrap(new byte[]{ 2 }))), encrypted);
+        doEncrypt(createEncryptionManager(kms, 500_000), "topic", 1, createScheme(kms), List.of(RecordTestUtils.record(2, ByteBuffer.wrap(new byte[]{ 3 }))),
+                encrypted);
+        encrypted.add(RecordTestUtils.record(3, ByteBuffer.wrap(new byte[]{ 4 })));
+
+        var states = decryptionManager.resolveAll("topic", 1, RecordTestUtils.memoryRecords(encrypted), new HashSet<>());
+
+        assertThat(states).succeedsWithin(Duration.ZERO).satisfies(stateList -> {
+            assertThat(stateList).hasSize(4);
+            assertThat(stateList.get(1)).isSameAs(stateList.get(0));
+            assertThat(stateList.get(2)).isNotSameAs(stateList.get(0));
+            assertThat(stateList.get(0).decryptor()).isNotNull();
+            assertThat(stateList.get(2).decryptor()).isNotNull().isNotSameAs(stateList.get(0).decryptor());
+            assertThat(stateList.get(3).isNone()).isTrue();
+        });
+    }
+
+    private static int edekLength(Record encrypted) {
+        ByteBuffer wrapper = encrypted.value();
+        // skip the cipher_id
+        wrapper.get();
+        return ByteUtils.readUnsignedVarint(wrapper);
+    }
+
     @Test
     void shouldPreserveMultipleBatchesOnEncrypt() {
         // given
@@ -192,6 +366,53 @@ class InBandDecryptionManagerTest {
         decryptedAssert.lastBatch().hasMetadataMatching(secondBatch).hasNumRecords(1).firstRecord().hasValueEqualTo(ARBITRARY_VALUE_2);
     }
 
+    @Test
+    void shouldReturnUnencryptedRecordsUnmodifiedOnDecrypt() {
+        // given
+        InMemoryKms kms = getInMemoryKms();
+        var decryptionManager = createDecryptionManager(kms);
+        MemoryRecords records = RecordTestUtils.memoryRecords(gzipBatch(), RecordTestUtils.singleElementRecordBatch(2L, ARBITRARY_KEY_2, ARBITRARY_VALUE_2,
+                ABSENT_HEADERS));
+
+        // when
+        MemoryRecords decrypted = assertImmediateSuccessAndGet(decrypt(decryptionManager, records));
+
+        // then
+        assertThat(decrypted).isSameAs(records);
+    }
+
+    @Test
+    void shouldCopyUnencryptedBatchesOnDecrypt() {
+        // given
+        InMemoryKms kms = getInMemoryKms();
+        EncryptionScheme<UUID> scheme = createScheme(kms);
+        var encryptionManager = createEncryptionManager(kms, 500_000);
+        var decryptionManager = createDecryptionManager(kms);
+
+        MutableRecordBatch unencryptedBatch = gzipBatch();
+        MemoryRecords encrypted = assertImmediateSuccessAndGet(encrypt(encryptionManager, scheme,
+                RecordTestUtils.singleElementMemoryRecords(RecordBatch.CURRENT_MAGIC_VALUE, 2L, 9L, ARBITRARY_KEY_2, ARBITRARY_VALUE_2)));
+        MemoryRecords records = RecordTestUtils.memoryRecords(unencryptedBatch, encrypted.batches().iterator().next());
+
+        // when
+        MemoryRecords decrypted = assertImmediateSuccessAndGet(decrypt(decryptionManager, records));
+
+        // then
+        MemoryRecordsAssert decryptedAssert = MemoryRecordsAssert.assertThat(decrypted);
+        decryptedAssert.hasNumBatches(2);
+        // byte-for-byte the same, still compressed
+        assertThat(decrypted.firstBatch()).isEqualTo(unencryptedBatch);
+        decryptedAssert.lastBatch().hasNumRecords(1).firstRecord().hasValueEqualTo(ARBITRARY_VALUE_2);
+    }
+
+    private static MutableRecordBatch gzipBatch() {
+        return RecordTestUtils.singleElementRecordBatch(RecordBatch.CURRENT_MAGIC_VALUE, 1L, CompressionType.GZIP, TimestampType.CREATE_TIME, 2L,
+                3L,
+                (short) 4, 5, false, false, 1, ARBITRARY_KEY.getBytes(
+                        StandardCharsets.UTF_8),
+                ARBITRARY_VALUE.getBytes(StandardCharsets.UTF_8));
+    }
+
     @Test
     void shouldPreserveControlBatchOnEncrypt() {
         // given
@@ -1004,22 +1225,34 @@ class InBandDecryptionManagerTest {
 
     @NonNull
     private static InBandDecryptionManager<UUID, InMemoryEdek> createDecryptionManager(InMemoryKms kms) {
+        return createDecryptionManager(kms, CryptoOffload.NONE);
+    }
+
+    @NonNull
+    private static InBandDecryptionManager<UUID, InMemoryEdek> createDecryptionManager(InMemoryKms kms, CryptoOffload cryptoOffload) {
 
         DekManager<UUID, InMemoryEdek> dekManager = new DekManager<>(ignored -> kms, null, 1);
         var dekCache = new DecryptionDekCache<>(dekManager, directExecutor(), DecryptionDekCache.NO_MAX_CACHE_SIZE);
         return new InBandDecryptionManager<>(EncryptionResolver.ALL,
                 dekManager,
                 dekCache,
-                new FilterThreadExecutor(directExecutor()));
+                new FilterThreadExecutor(directExecutor()),
+                cryptoOffload);
     }
 
     @NonNull
     private static InBandEncryptionManager<UUID, InMemoryEdek> createEncryptionManager(InMemoryKms kms, int maxEncryptionsPerDek) {
+        return createEncryptionManager(kms, maxEncryptionsPerDek, CryptoOffload.NONE);
+    }
+
+    @NonNull
+    private static InBandEncryptionManager<UUID, InMemoryEdek> createEncryptionManager(InMemoryKms kms, int maxEncryptionsPerDek, CryptoOffload cryptoOffload) {
         return createEncryptionManager(kms,
                 maxEncryptionsPerDek,
                 1024 * 1024,
                 8 * 1024 * 1024,
-                EncryptionDekCache.NO_MAX_CACHE_SIZE);
+                EncryptionDekCache.NO_MAX_CACHE_SIZE,
+                cryptoOffload);
     }
 
     @NonNull
@@ -1028,6 +1261,16 @@ class InBandDecryptionManagerTest {
                                                                                        int recordBufferInitialBytes,
                                                                                        int recordBufferMaxBytes,
                                                                                        int maxCacheSize) {
+        return createEncryptionManager(kms, maxEncryptionsPerDek, recordBufferInitialBytes, recordBufferMaxBytes, maxCacheSize, CryptoOffload.NONE);
+    }
+
+    @NonNull
+    private static InBandEncryptionManager<UUID, InMemoryEdek> createEncryptionManager(InMemoryKms kms,
+                                                                                       int maxEncryptionsPerDek,
+                                                                                       int recordBufferInitialBytes,
+                                                                                       int recordBufferMaxBytes,
+                                                                                       int maxCacheSize,
+                                                                                       CryptoOffload cryptoOffload) {
 
         DekManager<UUID, InMemoryEdek> dekManager = new DekManager<>(ignored -> kms, null, maxEncryptionsPerDek);
         var cache = new EncryptionDekCache<>(dekManager, directExecutor(), maxCacheSize);
@@ -1036,7 +1279,8 @@ class InBandDecryptionManagerTest {
                 recordBufferInitialBytes,
                 recordBufferMaxBytes,
                 cache,
-                new FilterThreadExecutor(directExecutor()));
+                new FilterThreadExecutor(directExecutor()),
+                cryptoOffload);
     }
 
     @NonNull
@@ -1053,6 +1297,12 @@ class InBandDecryptionManagerTest {
         return new EncryptionScheme<>(kekId, EnumSet.of(RecordField.RECORD_VALUE));
     }
 
+    @NonNull
+    private static EncryptionScheme<UUID> createBatchEdekScheme(InMemoryKms kms) {
+        var kekId = kms.generateKey();
+        return new EncryptionScheme<>(kekId, EnumSet.of(RecordField.RECORD_VALUE), AadNone.INSTANCE, true);
+    }
+
     @NonNull
     private static CompletionStage<MemoryRecords> decrypt(InBandDecryptionManager<UUID, InMemoryEdek> km, MemoryRecords encrypted) {
         return km.decrypt("topic", 1, encrypted, ByteBufferOutputStream::new);
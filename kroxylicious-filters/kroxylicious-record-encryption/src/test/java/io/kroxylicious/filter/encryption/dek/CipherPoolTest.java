@@ -0,0 +1,93 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.filter.encryption.dek;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CipherPoolTest {
+
+    private static CipherPool aesPool() {
+        return new CipherPool(Aes.AES_256_GCM_128::newCipher, "AES", 32,
+                new GCMParameterSpec(128, new byte[12]));
+    }
+
+    @Test
+    void shouldReuseReleasedCipher() {
+        var pool = aesPool();
+        Cipher cipher = pool.borrow();
+        assertThat(pool.pooled()).isZero();
+        pool.release(cipher);
+        assertThat(pool.pooled()).isEqualTo(1);
+        assertThat(pool.borrow()).isSameAs(cipher);
+        assertThat(pool.pooled()).isZero();
+    }
+
+    @Test
+    void shouldBoundThePoolOfEachThread() {
+        var pool = aesPool();
+        List<Cipher> ciphers = new ArrayList<>();
+        for (int i = 0; i < CipherPool.MAX_POOLED_CIPHERS_PER_THREAD + 1; i++) {
+            ciphers.add(pool.borrow());
+        }
+        ciphers.forEach(pool::release);
+        assertThat(pool.pooled()).isEqualTo(CipherPool.MAX_POOLED_CIPHERS_PER_THREAD);
+    }
+
+    @Test
+    void shouldPoolCiphersPerThread() throws InterruptedException {
+        var pool = aesPool();
+        pool.release(pool.borrow());
+        int[] pooledElsewhere = new int[1];
+        Thread thread = new Thread(() -> pooledElsewhere[0] = pool.pooled());
+        thread.start();
+        thread.join();
+        assertThat(pooledElsewhere[0]).isZero();
+        assertThat(pool.pooled()).isEqualTo(1);
+    }
+
+    @ParameterizedTest
+    @MethodSource("io.kroxylicious.filter.encryption.dek.CipherManagerTest#allCipherManagers")
+    void pooledCiphersShouldRoundTrip(CipherManager cipherManager) throws GeneralSecurityException {
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        var secretKey = new SecretKeySpec(keyBytes, "AES");
+        byte[] plaintext = "hello, world".getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < 3; i++) {
+            var params = cipherManager.paramSupplier().get();
+            Cipher encCipher = cipherManager.borrowCipher();
+            encCipher.init(Cipher.ENCRYPT_MODE, secretKey, params);
+            byte[] ciphertext = encCipher.doFinal(plaintext);
+            cipherManager.releaseCipher(encCipher);
+
+            var paramsBuffer = ByteBuffer.allocate(cipherManager.size(params));
+            cipherManager.writeParameters(paramsBuffer, params);
+            paramsBuffer.flip();
+
+            Cipher decCipher = cipherManager.borrowCipher();
+            decCipher.init(Cipher.DECRYPT_MODE, secretKey, cipherManager.readParameters(paramsBuffer));
+            assertThat(decCipher.doFinal(ciphertext)).isEqualTo(plaintext);
+            assertThat(paramsBuffer.hasRemaining()).isFalse();
+            cipherManager.releaseCipher(decCipher);
+        }
+    }
+}
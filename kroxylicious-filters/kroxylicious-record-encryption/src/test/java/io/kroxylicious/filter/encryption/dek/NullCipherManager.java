@@ -51,6 +51,11 @@ public class NullCipherManager implements CipherManager {
         return new NullCipher();
     }
 
+    @Override
+    public int ciphertextOverhead() {
+        return 0;
+    }
+
     @Override
     public Supplier<AlgorithmParameterSpec> paramSupplier() {
         return () -> nullParameters;
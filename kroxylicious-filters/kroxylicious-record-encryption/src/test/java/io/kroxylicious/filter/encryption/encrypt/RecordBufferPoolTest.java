@@ -0,0 +1,79 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.filter.encryption.encrypt;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import io.kroxylicious.filter.encryption.common.EncryptionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RecordBufferPoolTest {
+
+    @Test
+    void shouldReuseBufferWhenBigEnough() {
+        var pool = new RecordBufferPool();
+        ByteBuffer buffer = pool.acquire(10, 1024, 4096);
+        assertThat(buffer.isDirect()).isTrue();
+        assertThat(buffer.capacity()).isEqualTo(1024);
+        buffer.put((byte) 1);
+        ByteBuffer again = pool.acquire(1024, 1024, 4096);
+        assertThat(again).isSameAs(buffer);
+        assertThat(again.position()).isZero();
+    }
+
+    @Test
+    void shouldGrowBufferWhenTooSmall() {
+        var pool = new RecordBufferPool();
+        ByteBuffer buffer = pool.acquire(10, 16, 4096);
+        ByteBuffer bigger = pool.acquire(1000, 16, 4096);
+        assertThat(bigger).isNotSameAs(buffer);
+        assertThat(bigger.capacity()).isEqualTo(1024);
+        assertThat(pool.acquire(4096, 16, 4096).capacity()).isEqualTo(4096);
+    }
+
+    @Test
+    void shouldNotGrowBeyondMax() {
+        var pool = new RecordBufferPool();
+        assertThat(pool.acquire(3000, 16, 3000).capacity()).isEqualTo(3000);
+        assertThatThrownBy(() -> pool.acquire(3001, 16, 3000))
+                .isInstanceOf(EncryptionException.class)
+                .hasMessage("Record buffer cannot grow greater than 3000 bytes");
+    }
+
+    @Test
+    void shouldNotKeepBufferBiggerThanMaxRetained() {
+        var pool = new RecordBufferPool(1024);
+        ByteBuffer buffer = pool.acquire(10, 16, 4096);
+        ByteBuffer oversized = pool.acquire(2000, 16, 4096);
+        assertThat(oversized.isDirect()).isFalse();
+        assertThat(oversized.capacity()).isEqualTo(2000);
+        assertThat(pool.acquire(10, 16, 4096)).isSameAs(buffer);
+        assertThat(pool.acquire(2000, 16, 4096)).isNotSameAs(oversized);
+    }
+
+    @Test
+    void shouldNotAllocateInitialCapacityBiggerThanMaxRetained() {
+        var pool = new RecordBufferPool(512);
+        assertThat(pool.acquire(10, 1024, 4096).capacity()).isEqualTo(512);
+        assertThat(pool.acquire(1000, 16, 4096).capacity()).isEqualTo(1000);
+    }
+
+    @Test
+    void shouldUseBufferPerThread() throws InterruptedException {
+        var pool = new RecordBufferPool();
+        ByteBuffer buffer = pool.acquire(10, 16, 4096);
+        ByteBuffer[] otherThreads = new ByteBuffer[1];
+        Thread thread = new Thread(() -> otherThreads[0] = pool.acquire(10, 16, 4096));
+        thread.start();
+        thread.join();
+        assertThat(otherThreads[0]).isNotSameAs(buffer);
+    }
+}
@@ -8,18 +8,25 @@ package io.kroxylicious.filter.encryption.encrypt;
 
 import java.io.Closeable;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.kafka.common.header.Header;
 import org.apache.kafka.common.header.internals.RecordHeader;
+import org.apache.kafka.common.record.MemoryRecords;
 import org.apache.kafka.common.record.Record;
 import org.apache.kafka.common.record.RecordBatch;
+import org.apache.kafka.common.utils.ByteBufferOutputStream;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
 
 import io.kroxylicious.filter.encryption.FixedDekKmsService;
 import io.kroxylicious.filter.encryption.config.RecordField;
@@ -30,11 +37,13 @@ import io.kroxylicious.filter.encryption.dek.Aes;
 import io.kroxylicious.filter.encryption.dek.Dek;
 import io.kroxylicious.filter.encryption.dek.DekException;
 import io.kroxylicious.filter.encryption.dek.DekManager;
+import io.kroxylicious.kafka.transform.RecordStream;
 import io.kroxylicious.kafka.transform.RecordTransform;
 import io.kroxylicious.kms.service.Serde;
 import io.kroxylicious.test.assertj.KafkaAssertions;
 import io.kroxylicious.test.record.RecordTestUtils;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.mock;
 
@@ -346,4 +355,39 @@ class RecordEncryptorTest {
         // TODO decryption
     }
 
+    static List<Arguments> sizeOfEncryptedBatchShouldBeExact() {
+        return List.of(
+                Arguments.of(Encryption.V2, Set.of(RecordField.RECORD_VALUE)),
+                Arguments.of(Encryption.V2, Set.of(RecordField.RECORD_VALUE, RecordField.RECORD_HEADER_VALUES)),
+                Arguments.of(Encryption.V3_BATCH_EDEK, Set.of(RecordField.RECORD_VALUE)),
+                Arguments.of(Encryption.V3_BATCH_EDEK, Set.of(RecordField.RECORD_VALUE, RecordField.RECORD_HEADER_VALUES)));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void sizeOfEncryptedBatchShouldBeExact(Encryption encryption, Set<RecordField> fields) {
+        // Given
+        long timestamp = System.currentTimeMillis();
+        var re = new RecordEncryptor(
+                "topic", 0,
+                encryption,
+                new EncryptionScheme<>("key", fields),
+                components.edekSerde,
+                ByteBuffer::allocate);
+        MemoryRecords records = RecordTestUtils.memoryRecords(List.of(
+                RecordTestUtils.record(0L, timestamp, "k1", "v", new Header[]{ new RecordHeader("h", "x".getBytes(StandardCharsets.UTF_8)) }),
+                RecordTestUtils.record(1L, timestamp + 1000, "k2", "value".repeat(100), new Header[0]),
+                RecordTestUtils.record(2L, timestamp - 1000, null, "", new Header[0])));
+        RecordBatch batch = records.batches().iterator().next();
+
+        // When
+        int size = re.sizeOfEncryptedBatch(batch, components.encryptor);
+        MemoryRecords encrypted = RecordStream.ofRecords(records)
+                .mapConstant(components.encryptor)
+                .toMemoryRecords(new ByteBufferOutputStream(size), re);
+
+        // Then
+        assertThat(size).isEqualTo(encrypted.sizeInBytes());
+    }
+
 }
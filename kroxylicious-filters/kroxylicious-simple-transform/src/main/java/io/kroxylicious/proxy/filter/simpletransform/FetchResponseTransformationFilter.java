@@ -6,6 +6,7 @@
 
 package io.kroxylicious.proxy.filter.simpletransform;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletionStage;
@@ -18,6 +19,7 @@ import org.apache.kafka.common.message.MetadataResponseData;
 import org.apache.kafka.common.message.RequestHeaderData;
 import org.apache.kafka.common.message.ResponseHeaderData;
 import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.Errors;
 import org.apache.kafka.common.record.CompressionType;
 import org.apache.kafka.common.record.MemoryRecords;
 import org.apache.kafka.common.record.MemoryRecordsBuilder;
@@ -31,6 +33,9 @@ import org.slf4j.LoggerFactory;
 import io.kroxylicious.proxy.filter.FetchResponseFilter;
 import io.kroxylicious.proxy.filter.FilterContext;
 import io.kroxylicious.proxy.filter.ResponseFilterResult;
+import io.kroxylicious.proxy.filter.TopicNameCache;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
 
 /**
  * A filter for modifying the key/value/header/topic of {@link ApiKeys#FETCH} responses.
@@ -49,33 +54,55 @@ public class FetchResponseTransformationFilter implements FetchResponseFilter {
      */
     private final ByteBufferTransformation valueTransformation;
 
+    /**
+     * Resolves the topic ids of v13+ responses to topic names.
+     */
+    private final TopicNameCache topicNameCache;
+
     // TODO: add transformation support for key/header/topic
 
     public FetchResponseTransformationFilter(ByteBufferTransformation valueTransformation) {
+        this(valueTransformation, null);
+    }
+
+    /**
+     * @param valueTransformation Transformation to be applied to record value.
+     * @param topicNameCache The virtual cluster's topic name cache, or null to look up the names of every response's topic ids.
+     */
+    public FetchResponseTransformationFilter(ByteBufferTransformation valueTransformation, @Nullable TopicNameCache topicNameCache) {
         this.valueTransformation = valueTransformation;
+        this.topicNameCache = topicNameCache != null ? topicNameCache : FetchResponseTransformationFilter::lookUpTopicNames;
+    }
+
+    /**
+     * Looks up the names of the given topic ids via a Metadata request, without caching them.
+     */
+    private static CompletionStage<Map<Uuid, String>> lookUpTopicNames(Collection<Uuid> topicIds, FilterContext context) {
+        LOGGER.debug("Looking up the names of {} topic ids via Metadata request: {}", topicIds.size(), topicIds);
+        var metadataHeader = new RequestHeaderData().setRequestApiVersion(METADATA_API_VER_WITH_TOPIC_ID_SUPPORT);
+        var metadataRequest = new MetadataRequestData().setTopics(topicIds.stream()
+                .map(topicId -> new MetadataRequestData.MetadataRequestTopic().setName(null).setTopicId(topicId))
+                .toList());
+        return context.<MetadataResponseData> sendRequest(metadataHeader, metadataRequest)
+                .thenApply(metadataResponse -> metadataResponse.topics().stream()
+                        .filter(topic -> topic.errorCode() == Errors.NONE.code() && topic.name() != null)
+                        .collect(Collectors.toMap(MetadataResponseData.MetadataResponseTopic::topicId,
+                                MetadataResponseData.MetadataResponseTopic::name)));
     }
 
     @Override
     public CompletionStage<ResponseFilterResult> onFetchResponse(short apiVersion, ResponseHeaderData header, FetchResponseData fetchResponse,
                                                                  FilterContext context) {
-        List<MetadataRequestData.MetadataRequestTopic> requestTopics = fetchResponse.responses().stream()
+        List<Uuid> topicIds = fetchResponse.responses().stream()
                 .filter(t -> t.topic().isEmpty())
-                .map(fetchableTopicResponse -> {
-                    Uuid uuid = fetchableTopicResponse.topicId();
-                    return new MetadataRequestData.MetadataRequestTopic().setName(null).setTopicId(uuid);
-                })
+                .map(FetchResponseData.FetchableTopicResponse::topicId)
                 .distinct()
                 .toList();
-        if (!requestTopics.isEmpty()) {
-            LOGGER.debug("Fetch response contains {} unknown topic ids, lookup via Metadata request: {}", requestTopics.size(), requestTopics);
-            var metadataHeader = new RequestHeaderData().setRequestApiVersion(METADATA_API_VER_WITH_TOPIC_ID_SUPPORT);
-            var metadataRequest = new MetadataRequestData().setTopics(requestTopics);
-            return context.<MetadataResponseData> sendRequest(metadataHeader, metadataRequest)
-                    .thenCompose(metadataResponse -> {
-                        Map<Uuid, String> uidToName = metadataResponse.topics().stream()
-                                .collect(Collectors.toMap(MetadataResponseData.MetadataResponseTopic::topicId,
-                                        MetadataResponseData.MetadataResponseTopic::name));
-                        LOGGER.debug("Metadata response yields {}, updating original Fetch response", uidToName);
+        if (!topicIds.isEmpty()) {
+            LOGGER.debug("Fetch response contains {} unknown topic ids, resolving their names: {}", topicIds.size(), topicIds);
+            return topicNameCache.topicNames(topicIds, context)
+                    .thenCompose(uidToName -> {
+                        LOGGER.debug("Topic name cache yields {}, updating original Fetch response", uidToName);
                         for (var fetchableTopicResponse : fetchResponse.responses()) {
                             fetchableTopicResponse.setTopic(uidToName.get(fetchableTopicResponse.topicId()));
                         }
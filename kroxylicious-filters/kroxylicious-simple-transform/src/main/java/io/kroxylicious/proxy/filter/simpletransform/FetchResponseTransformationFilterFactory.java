@@ -35,7 +35,7 @@ public class FetchResponseTransformationFilterFactory
                                                           Config configuration) {
         var factory = context.pluginInstance(ByteBufferTransformationFactory.class, configuration.transformation());
         Objects.requireNonNull(factory, "Violated contract of FilterCreationContext");
-        return new FetchResponseTransformationFilter(factory.createTransformation(configuration.transformationConfig()));
+        return new FetchResponseTransformationFilter(factory.createTransformation(configuration.transformationConfig()), context.topicNameCache());
     }
 
     public record Config(@JsonProperty(required = true) @PluginImplName(ByteBufferTransformationFactory.class) String transformation,
@@ -9,7 +9,9 @@ package io.kroxylicious.proxy.filter.simpletransform;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
@@ -21,7 +23,6 @@ import org.apache.kafka.common.message.FetchResponseData.FetchableTopicResponse;
 import org.apache.kafka.common.message.FetchResponseData.PartitionData;
 import org.apache.kafka.common.message.MetadataRequestData;
 import org.apache.kafka.common.message.MetadataResponseData;
-import org.apache.kafka.common.message.RequestHeaderData;
 import org.apache.kafka.common.message.ResponseHeaderData;
 import org.apache.kafka.common.protocol.ApiMessage;
 import org.apache.kafka.common.record.CompressionType;
@@ -45,6 +46,7 @@ import io.kroxylicious.proxy.filter.FilterContext;
 import io.kroxylicious.proxy.filter.FilterFactoryContext;
 import io.kroxylicious.proxy.filter.ResponseFilterResult;
 import io.kroxylicious.proxy.filter.ResponseFilterResultBuilder;
+import io.kroxylicious.proxy.filter.TopicNameCache;
 import io.kroxylicious.proxy.filter.filterresultbuilder.CloseOrTerminalStage;
 import io.kroxylicious.proxy.plugin.PluginConfigurationException;
 
@@ -53,7 +55,6 @@ import edu.umd.cs.findbugs.annotations.NonNull;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -70,6 +71,9 @@ class FetchResponseTransformationFilterFactoryFilterTest {
     @Mock(strictness = Mock.Strictness.LENIENT)
     FilterContext context;
 
+    @Mock
+    TopicNameCache topicNameCache;
+
     @Mock(strictness = Mock.Strictness.LENIENT)
     private ResponseFilterResult responseFilterResult;
 
@@ -89,7 +93,7 @@ class FetchResponseTransformationFilterFactoryFilterTest {
     @SuppressWarnings("unchecked")
     void setUp() {
         filter = new FetchResponseTransformationFilter(new UpperCasing.Transformation(
-                new UpperCasing.Config("UTF-8")));
+                new UpperCasing.Config("UTF-8")), topicNameCache);
 
         when(context.forwardResponse(responseHeaderDataCaptor.capture(), apiMessageCaptor.capture())).thenAnswer(
                 invocation -> CompletableFuture.completedStage(responseFilterResult));
@@ -117,6 +121,7 @@ class FetchResponseTransformationFilterFactoryFilterTest {
                 .hasMessage(FetchResponseTransformationFilterFactory.class.getSimpleName() + " requires configuration, but config object is null");
         FilterFactoryContext constructContext = mock(FilterFactoryContext.class);
         doReturn(new UpperCasing()).when(constructContext).pluginInstance(any(), any());
+        doReturn(topicNameCache).when(constructContext).topicNameCache();
         FetchResponseTransformationFilterFactory.Config config = new FetchResponseTransformationFilterFactory.Config(UpperCasing.class.getName(),
                 new UpperCasing.Config("UTF-8"));
         assertThat(factory.createFilter(constructContext, config)).isInstanceOf(FetchResponseTransformationFilter.class);
@@ -149,11 +154,8 @@ class FetchResponseTransformationFilterFactoryFilterTest {
         var fetchResponse = new FetchResponseData();
         fetchResponse.responses().add(createFetchableTopicResponseWithOneRecord(RECORD_KEY, ORIGINAL_RECORD_VALUE).setTopicId(TOPIC_ID));
 
-        var metadataResponse = new MetadataResponseData();
-        metadataResponse.topics().add(new MetadataResponseData.MetadataResponseTopic().setTopicId(TOPIC_ID).setName(TOPIC_NAME));
-
-        when(context.sendRequest(isA(RequestHeaderData.class), isA(MetadataRequestData.class)))
-                .thenReturn(CompletableFuture.completedStage(metadataResponse));
+        when(topicNameCache.topicNames(List.of(TOPIC_ID), context))
+                .thenReturn(CompletableFuture.completedStage(Map.of(TOPIC_ID, TOPIC_NAME)));
 
         var stage = filter.onFetchResponse(fetchResponse.apiKey(), new ResponseHeaderData(), fetchResponse, context);
         assertThat(stage).isCompleted();
@@ -181,16 +183,13 @@ class FetchResponseTransformationFilterFactoryFilterTest {
     }
 
     @Test
-    void filterHandlesMetadataRequestError() throws Exception {
+    void filterHandlesTopicNameLookupError() throws Exception {
 
         var fetchResponse = new FetchResponseData();
         // Version 13 switched to topic id rather than topic names.
         fetchResponse.responses().add(createFetchableTopicResponseWithOneRecord(RECORD_KEY, ORIGINAL_RECORD_VALUE).setTopicId(TOPIC_ID));
 
-        var metadataResponse = new MetadataResponseData();
-        metadataResponse.topics().add(new MetadataResponseData.MetadataResponseTopic().setTopicId(TOPIC_ID).setName(TOPIC_NAME));
-
-        when(context.sendRequest(isA(RequestHeaderData.class), isA(MetadataRequestData.class)))
+        when(topicNameCache.topicNames(List.of(TOPIC_ID), context))
                 .thenReturn(CompletableFuture.failedStage(new IllegalStateException("out-of-band request exception")));
 
         var stage = filter.onFetchResponse(fetchResponse.apiKey(), new ResponseHeaderData(), fetchResponse, context);
@@ -199,6 +198,28 @@ class FetchResponseTransformationFilterFactoryFilterTest {
                 .isCompletedExceptionally();
     }
 
+    @Test
+    void filterLooksUpTopicNamesWithoutCache() throws Exception {
+
+        var fetchResponse = new FetchResponseData();
+        fetchResponse.responses().add(createFetchableTopicResponseWithOneRecord(RECORD_KEY, ORIGINAL_RECORD_VALUE).setTopicId(TOPIC_ID));
+        var metadataResponse = new MetadataResponseData();
+        metadataResponse.topics().add(new MetadataResponseData.MetadataResponseTopic().setTopicId(TOPIC_ID).setName(TOPIC_NAME));
+        when(context.sendRequest(any(), any(MetadataRequestData.class))).thenReturn(CompletableFuture.completedStage(metadataResponse));
+        var uncachedFilter = new FetchResponseTransformationFilter(new UpperCasing.Transformation(new UpperCasing.Config("UTF-8")), null);
+
+        var stage = uncachedFilter.onFetchResponse(fetchResponse.apiKey(), new ResponseHeaderData(), fetchResponse, context);
+        assertThat(stage).isCompleted();
+
+        var filteredResponse = (FetchResponseData) stage.toCompletableFuture().get().message();
+        assertThat(filteredResponse.responses())
+                .withFailMessage("expected topic response to have been augmented with topic name")
+                .anyMatch(ftr -> Objects.equals(ftr.topic(), TOPIC_NAME));
+        assertThat(responseToRecordStream(filteredResponse).map(this::decodeUtf8Value).toList())
+                .withFailMessage("expected record value to have been transformed")
+                .containsExactly(EXPECTED_TRANSFORMED_RECORD_VALUE);
+    }
+
     private Stream<Record> responseToRecordStream(FetchResponseData filteredResponse) {
         return Stream.of(filteredResponse.responses())
                 .flatMap(Collection::stream)
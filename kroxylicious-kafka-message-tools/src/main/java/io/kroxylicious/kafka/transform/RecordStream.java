@@ -13,8 +13,10 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 import java.util.function.Function;
+import java.util.function.Predicate;
 
 import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.RecordBatch;
 import org.apache.kafka.common.utils.ByteBufferOutputStream;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -46,6 +48,8 @@ import edu.umd.cs.findbugs.annotations.NonNull;
  *       This is like {@link java.util.stream.Collectors#toMap(Function, Function)}.</dd>
  * <dt>{@link #toMemoryRecords(ByteBufferOutputStream, RecordTransform)}</dt>
  *   <dd>Simultaneously map and convert a stream to a {@link MemoryRecords}</dd>
+ * <dt>{@link #toMemoryRecords(ByteBufferOutputStream, RecordTransform, Predicate)}</dt>
+ *   <dd>Likewise, but copying the batches which the transform would leave unchanged</dd>
  * </dl>
  * @param <T> The type of associated state.
  */
@@ -154,12 +158,36 @@ public class RecordStream<T> {
      */
     public MemoryRecords toMemoryRecords(@NonNull ByteBufferOutputStream buffer,
                                          @NonNull RecordTransform<T> transform) {
+        return toMemoryRecords(buffer, transform, batch -> false);
+    }
+
+    /**
+     * Applies a {@link RecordTransform} to the records in this stream,
+     * returning the mapped records in a {@link MemoryRecords}.
+     * This method will preserve empty batches and control batches.
+     * Batches which the given {@code unchanged} predicate matches are copied to the result as they are,
+     * without being decompressed or transformed, so long as the batch knows how many records it has
+     * (that is, for batches with magic &gt;= 2). Other batches are iterated and so will result in
+     * batch decompression.
+     *
+     * @param transform The record transform
+     * @param unchanged Whether the records of a batch would be unchanged by the transform.
+     * @return The mapped records
+     */
+    public MemoryRecords toMemoryRecords(@NonNull ByteBufferOutputStream buffer,
+                                         @NonNull RecordTransform<T> transform,
+                                         @NonNull Predicate<RecordBatch> unchanged) {
         BatchAwareMemoryRecordsBuilder builder = new BatchAwareMemoryRecordsBuilder(buffer);
         int indexInStream = 0;
         for (var batch : records.batches()) {
+            Integer count;
             if (batch.isControlBatch()) {
                 builder.writeBatch(batch);
             }
+            else if ((count = batch.countOrNull()) != null && unchanged.test(batch)) {
+                builder.writeBatch(batch);
+                indexInStream += count;
+            }
             else {
                 int indexInBatch = 0;
                 for (var record : batch) {
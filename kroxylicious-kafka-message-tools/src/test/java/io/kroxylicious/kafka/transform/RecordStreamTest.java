@@ -187,6 +187,31 @@ class RecordStreamTest {
                 .hasTimestampEqualTo(Math.abs(Integer.hashCode(index)) + 65L);
     }
 
+    @Test
+    void toMemoryRecordsCopiesUnchangedBatches() {
+        var mrb = new BatchAwareMemoryRecordsBuilder(new ByteBufferOutputStream(ByteBuffer.allocate(10)));
+        var mr = mrb.addBatch(CompressionType.GZIP, TimestampType.CREATE_TIME, 10)
+                .append(new SimpleRecord(42, "hello".getBytes(StandardCharsets.UTF_8), "world".getBytes(StandardCharsets.UTF_8), new Header[0]))
+                .append(new SimpleRecord(43, "hi".getBytes(StandardCharsets.UTF_8), "there".getBytes(StandardCharsets.UTF_8), new Header[0]))
+                .addBatch(CompressionType.NONE, TimestampType.CREATE_TIME, 12)
+                .append(new SimpleRecord(65, "HELLO".getBytes(StandardCharsets.UTF_8), "WORLD".getBytes(StandardCharsets.UTF_8), new Header[0]))
+                .build();
+        RecordStream<Integer> rs = RecordStream.ofRecordsWithIndex(mr);
+
+        var records = rs.toMemoryRecords(new ByteBufferOutputStream(ByteBuffer.allocate(10)),
+                new Prefixer<>(),
+                batch -> batch.baseOffset() == 10);
+
+        MemoryRecordsAssert recordsAssert = assertThat(records).hasNumBatches(2);
+        // the batch is byte-for-byte the same, still compressed
+        assertThat(records.firstBatch()).isEqualTo(mr.firstBatch());
+        // the index of the records in the copied batch still counts
+        recordsAssert.lastBatch()
+                .firstRecord()
+                .hasKeyEqualTo("2HELLO")
+                .hasValueEqualTo("2WORLD");
+    }
+
     @NonNull
     private static ByteBuffer prefix(@NonNull String prefix, @NonNull ByteBuffer buffer) {
         return StandardCharsets.UTF_8.encode(CharBuffer.wrap(prefix + StandardCharsets.UTF_8.decode(buffer)));
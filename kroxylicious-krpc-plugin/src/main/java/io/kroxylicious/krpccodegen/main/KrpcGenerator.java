@@ -273,6 +273,7 @@ public class KrpcGenerator {
                     logger.log(Level.DEBUG, "Processing message spec {0} with template {1} to {2}", messageSpec.name(), templateName, outputFile);
                     Map<String, Object> dataModel = Map.of(
                             "structRegistry", structRegistry,
+                            "outputPackage", outputPackage,
                             "messageSpec", messageSpec);
                     template.process(dataModel, writer);
                 }
@@ -0,0 +1,288 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.microbenchmarks;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.kafka.common.message.ApiVersionsRequestData;
+import org.apache.kafka.common.message.ApiVersionsResponseData;
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.message.ResponseHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ApiMessage;
+import org.apache.kafka.common.protocol.ByteBufferAccessor;
+import org.apache.kafka.common.protocol.MessageUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+import io.kroxylicious.proxy.KafkaProxy;
+import io.kroxylicious.proxy.config.ConfigParser;
+
+/**
+ * Measures the rate at which the proxy establishes connections when many clients connect at once.
+ * Each operation is a client connecting to the proxy, sending an ApiVersions request, which the proxy forwards
+ * to a local mock broker, and receiving the response.
+ * <p>The {@code acceptorThreads} parameter is passed to the proxy configuration. More than one acceptor
+ * thread only takes effect on the epoll and io_uring transports, where each listening port is bound once per
+ * acceptor thread with {@code SO_REUSEPORT}.</p>
+ */
+@Fork(value = 1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConnectionEstablishmentBenchmark {
+
+    private static final int CONCURRENT_CLIENTS = 256;
+    private static final int MAX_FRAME_SIZE = 1024 * 1024;
+
+    @State(Scope.Benchmark)
+    public static class ProxyState {
+
+        @Param({ "1", "4" })
+        int acceptorThreads;
+
+        EventLoopGroup brokerGroup;
+        EventLoopGroup clientGroup;
+        Channel brokerChannel;
+        KafkaProxy proxy;
+        Bootstrap clientBootstrap;
+        InetSocketAddress proxyAddress;
+
+        @Setup(Level.Trial)
+        public void init() throws Exception {
+            brokerGroup = new NioEventLoopGroup();
+            clientGroup = new NioEventLoopGroup();
+            brokerChannel = new ServerBootstrap().group(brokerGroup)
+                    .channel(NioServerSocketChannel.class)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline().addLast(frameDecoder(), new MockBrokerHandler());
+                        }
+                    })
+                    .bind("localhost", 0).sync().channel();
+            int brokerPort = ((InetSocketAddress) brokerChannel.localAddress()).getPort();
+
+            int bootstrapPort = freePort();
+            int brokerStartPort = freePort();
+            var configParser = new ConfigParser();
+            var config = configParser.parseConfiguration("""
+                    acceptorThreads: %d
+                    virtualClusters:
+                      demo:
+                        targetCluster:
+                          bootstrap_servers: localhost:%d
+                        clusterNetworkAddressConfigProvider:
+                          type: PortPerBrokerClusterNetworkAddressConfigProvider
+                          config:
+                            bootstrapAddress: localhost:%d
+                            brokerStartPort: %d
+                            numberOfBrokerPorts: 1
+                    """.formatted(acceptorThreads, brokerPort, bootstrapPort, brokerStartPort));
+            proxy = new KafkaProxy(configParser, config).startup();
+            proxyAddress = new InetSocketAddress("localhost", bootstrapPort);
+
+            clientBootstrap = new Bootstrap().group(clientGroup)
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.TCP_NODELAY, true);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            proxy.shutdown();
+            brokerChannel.close().sync();
+            clientGroup.shutdownGracefully().sync();
+            brokerGroup.shutdownGracefully().sync();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CONCURRENT_CLIENTS)
+    public void connectAndRequestApiVersions(ProxyState state) throws InterruptedException {
+        var outcomes = new Outcomes();
+        var bootstrap = state.clientBootstrap.clone().handler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel ch) {
+                ch.pipeline().addLast(frameDecoder(), new ClientHandler(outcomes));
+            }
+        });
+        for (int i = 0; i < CONCURRENT_CLIENTS; i++) {
+            bootstrap.connect(state.proxyAddress).addListener((ChannelFutureListener) future -> {
+                if (!future.isSuccess()) {
+                    outcomes.failed(future.channel(), future.cause());
+                }
+            });
+        }
+        outcomes.await();
+    }
+
+    private static LengthFieldBasedFrameDecoder frameDecoder() {
+        return new LengthFieldBasedFrameDecoder(MAX_FRAME_SIZE, 0, Integer.BYTES, 0, Integer.BYTES);
+    }
+
+    private static int freePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static ByteBuf frame(ApiMessage header, short headerVersion, ApiMessage body, short bodyVersion) {
+        ByteBuffer headerBytes = MessageUtil.toByteBuffer(header, headerVersion);
+        ByteBuffer bodyBytes = MessageUtil.toByteBuffer(body, bodyVersion);
+        return Unpooled.buffer(Integer.BYTES + headerBytes.remaining() + bodyBytes.remaining())
+                .writeInt(headerBytes.remaining() + bodyBytes.remaining())
+                .writeBytes(headerBytes)
+                .writeBytes(bodyBytes);
+    }
+
+    /**
+     * Answers every request with an ApiVersions response, encoded for the request's version.
+     */
+    private static class MockBrokerHandler extends ChannelInboundHandlerAdapter {
+
+        private static final ApiVersionsResponseData RESPONSE = new ApiVersionsResponseData();
+
+        static {
+            for (ApiKeys apiKey : ApiKeys.zkBrokerApis()) {
+                RESPONSE.apiKeys().add(new ApiVersionsResponseData.ApiVersion()
+                        .setApiKey(apiKey.id)
+                        .setMinVersion(apiKey.oldestVersion())
+                        .setMaxVersion(apiKey.latestVersion()));
+            }
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            var buf = (ByteBuf) msg;
+            try {
+                var accessor = new ByteBufferAccessor(buf.nioBuffer());
+                short apiKey = accessor.readShort();
+                short apiVersion = accessor.readShort();
+                int correlationId = accessor.readInt();
+                var header = new ResponseHeaderData().setCorrelationId(correlationId);
+                short version = ApiKeys.forId(apiKey) == ApiKeys.API_VERSIONS ? apiVersion : ApiKeys.API_VERSIONS.oldestVersion();
+                // ApiVersions responses always use header version 0
+                ctx.writeAndFlush(frame(header, (short) 0, RESPONSE, version));
+            }
+            finally {
+                buf.release();
+            }
+        }
+    }
+
+    /**
+     * The outcome of each client of an invocation, which fails if any client failed to get its response.
+     */
+    private static class Outcomes {
+
+        private final CountDownLatch done = new CountDownLatch(CONCURRENT_CLIENTS);
+        // a client may fail more than once, such as by failing to connect and then by the connection closing
+        private final Set<Channel> finished = ConcurrentHashMap.newKeySet();
+        private final AtomicReference<Throwable> firstFailure = new AtomicReference<>();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        void succeeded(Channel channel) {
+            if (finished.add(channel)) {
+                done.countDown();
+            }
+        }
+
+        void failed(Channel channel, Throwable cause) {
+            if (finished.add(channel)) {
+                failures.incrementAndGet();
+                firstFailure.compareAndSet(null, cause);
+                done.countDown();
+            }
+        }
+
+        void await() throws InterruptedException {
+            if (!done.await(1, TimeUnit.MINUTES)) {
+                throw new IllegalStateException("Timed out awaiting responses");
+            }
+            if (failures.get() > 0) {
+                throw new IllegalStateException(failures.get() + " of " + CONCURRENT_CLIENTS + " clients failed to get a response", firstFailure.get());
+            }
+        }
+    }
+
+    /**
+     * Sends an ApiVersions request once connected, and closes the connection when the response arrives.
+     */
+    private static class ClientHandler extends ChannelInboundHandlerAdapter {
+
+        private static final short API_VERSION = ApiKeys.API_VERSIONS.latestVersion();
+
+        private final Outcomes outcomes;
+
+        ClientHandler(Outcomes outcomes) {
+            this.outcomes = outcomes;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            var header = new RequestHeaderData()
+                    .setRequestApiKey(ApiKeys.API_VERSIONS.id)
+                    .setRequestApiVersion(API_VERSION)
+                    .setCorrelationId(1)
+                    .setClientId("benchmark");
+            var request = new ApiVersionsRequestData().setClientSoftwareName("benchmark").setClientSoftwareVersion("1.0");
+            ctx.writeAndFlush(frame(header, ApiKeys.API_VERSIONS.requestHeaderVersion(API_VERSION), request, API_VERSION));
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ((ByteBuf) msg).release();
+            outcomes.succeeded(ctx.channel());
+            ctx.close();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            outcomes.failed(ctx.channel(), new IllegalStateException("Connection closed before the response arrived"));
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            outcomes.failed(ctx.channel(), cause);
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.microbenchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import org.apache.kafka.common.message.ApiVersionsRequestData;
+import org.apache.kafka.common.message.ApiVersionsResponseData;
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.message.ResponseHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import io.kroxylicious.proxy.config.DeferredRequestWindow;
+import io.kroxylicious.proxy.filter.ApiVersionsRequestFilter;
+import io.kroxylicious.proxy.filter.ApiVersionsResponseFilter;
+import io.kroxylicious.proxy.filter.FilterAndInvoker;
+import io.kroxylicious.proxy.filter.FilterContext;
+import io.kroxylicious.proxy.filter.RequestFilterResult;
+import io.kroxylicious.proxy.filter.ResponseFilterResult;
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+import io.kroxylicious.proxy.internal.ApiVersionsServiceImpl;
+import io.kroxylicious.proxy.internal.FilterChainHandler;
+import io.kroxylicious.proxy.internal.FilterRoutingTable;
+import io.kroxylicious.proxy.internal.MemoryBudget;
+
+/**
+ * Measures the cost of passing a frame through a chain of filters that all complete synchronously.
+ * Run with {@code -prof gc} to see the allocations per frame ({@code gc.alloc.rate.norm}).
+ * <p>The {@code forwarding} parameter selects how the filters forward the frame:
+ * {@code context} uses {@link FilterContext#forwardRequest}/{@link FilterContext#forwardResponse},
+ * which the proxy can satisfy without allocating, while {@code builder} uses a result builder,
+ * which allocates a result and a stage for each filter.</p>
+ */
+@Fork(value = 1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FilterChainBenchmark {
+
+    public enum Forwarding {
+        context,
+        builder
+    }
+
+    @State(Scope.Thread)
+    public static class ChainState {
+
+        @Param({ "1", "8" })
+        int filterCount;
+
+        @Param({ "context", "builder" })
+        Forwarding forwarding;
+
+        EmbeddedChannel channel;
+        DecodedRequestFrame<ApiVersionsRequestData> requestFrame;
+        DecodedResponseFrame<ApiVersionsResponseData> responseFrame;
+
+        @Setup(Level.Trial)
+        public void init() {
+            List<FilterAndInvoker> filters = new ArrayList<>();
+            for (int i = 0; i < filterCount; i++) {
+                filters.addAll(FilterAndInvoker.build(new ForwardingFilter(forwarding)));
+            }
+            var filterChainHandler = new FilterChainHandler(filters, new FilterRoutingTable(filters), 20000, new DeferredRequestWindow(null, null), null, null,
+                    new EmbeddedChannel(),
+                    new ApiVersionsServiceImpl(), Runnable::run, MemoryBudget.Account.NONE);
+            // the sinks stop the frames reaching the ends of the pipeline, where they would be queued or released
+            channel = new EmbeddedChannel(new OutboundSink(), filterChainHandler, new InboundSink());
+            short apiVersion = ApiKeys.API_VERSIONS.latestVersion();
+            requestFrame = new DecodedRequestFrame<>(apiVersion, 1, true, new RequestHeaderData(), new ApiVersionsRequestData());
+            responseFrame = new DecodedResponseFrame<>(apiVersion, 1, new ResponseHeaderData(), new ApiVersionsResponseData());
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            channel.finishAndReleaseAll();
+        }
+    }
+
+    @Benchmark
+    public void writeRequest(ChainState state) {
+        state.channel.pipeline().write(state.requestFrame, state.channel.voidPromise());
+    }
+
+    @Benchmark
+    public void readResponse(ChainState state) {
+        state.channel.pipeline().fireChannelRead(state.responseFrame);
+    }
+
+    public static class ForwardingFilter implements ApiVersionsRequestFilter, ApiVersionsResponseFilter {
+
+        private final Forwarding forwarding;
+
+        ForwardingFilter(Forwarding forwarding) {
+            this.forwarding = forwarding;
+        }
+
+        @Override
+        public CompletionStage<RequestFilterResult> onApiVersionsRequest(short apiVersion, RequestHeaderData header, ApiVersionsRequestData request,
+                                                                         FilterContext context) {
+            if (forwarding == Forwarding.context) {
+                return context.forwardRequest(header, request);
+            }
+            return context.requestFilterResultBuilder().forward(header, request).completed();
+        }
+
+        @Override
+        public CompletionStage<ResponseFilterResult> onApiVersionsResponse(short apiVersion, ResponseHeaderData header, ApiVersionsResponseData response,
+                                                                           FilterContext context) {
+            if (forwarding == Forwarding.context) {
+                return context.forwardResponse(header, response);
+            }
+            return context.responseFilterResultBuilder().forward(header, response).completed();
+        }
+    }
+
+    private static class OutboundSink extends ChannelOutboundHandlerAdapter {
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            // discard
+        }
+    }
+
+    private static class InboundSink extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            // discard
+        }
+    }
+}
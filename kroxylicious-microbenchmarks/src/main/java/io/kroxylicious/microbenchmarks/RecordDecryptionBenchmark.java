@@ -0,0 +1,108 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.microbenchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.EnumSet;
+import java.util.UUID;
+
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.MemoryRecordsBuilder;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.utils.ByteBufferOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.kroxylicious.filter.encryption.common.FilterThreadExecutor;
+import io.kroxylicious.filter.encryption.config.EncryptionVersion;
+import io.kroxylicious.filter.encryption.config.RecordField;
+import io.kroxylicious.filter.encryption.crypto.AadNone;
+import io.kroxylicious.filter.encryption.crypto.EncryptionResolver;
+import io.kroxylicious.filter.encryption.decrypt.DecryptionDekCache;
+import io.kroxylicious.filter.encryption.decrypt.InBandDecryptionManager;
+import io.kroxylicious.filter.encryption.dek.DekManager;
+import io.kroxylicious.filter.encryption.encrypt.EncryptionDekCache;
+import io.kroxylicious.filter.encryption.encrypt.EncryptionScheme;
+import io.kroxylicious.filter.encryption.encrypt.InBandEncryptionManager;
+import io.kroxylicious.kms.provider.kroxylicious.inmemory.InMemoryEdek;
+import io.kroxylicious.kms.provider.kroxylicious.inmemory.InMemoryKms;
+import io.kroxylicious.kms.provider.kroxylicious.inmemory.UnitTestingKmsService;
+
+/**
+ * Measures decrypting a fetched batch of small encrypted records, with the EDEK stored in every record
+ * or once per batch.
+ */
+@Fork(value = 2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class RecordDecryptionBenchmark {
+
+    private static final int RECORDS_PER_BATCH = 10_000;
+
+    @Param({ "false", "true" })
+    public boolean edekPerBatch;
+
+    @Param({ "100" })
+    public int valueSize;
+
+    private InBandDecryptionManager<UUID, InMemoryEdek> decryptionManager;
+    private ByteBuffer encrypted;
+    private ByteBuffer fetched;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        InMemoryKms kms = UnitTestingKmsService.newInstance().buildKms(new UnitTestingKmsService.Config());
+        DekManager<UUID, InMemoryEdek> dekManager = new DekManager<>(ignored -> kms, null, 5_000_000);
+        FilterThreadExecutor filterThreadExecutor = new FilterThreadExecutor(Runnable::run);
+
+        var encryptionManager = new InBandEncryptionManager<>(EncryptionResolver.ALL.fromName(EncryptionVersion.V2),
+                dekManager.edekSerde(),
+                1024 * 1024,
+                8 * 1024 * 1024,
+                new EncryptionDekCache<>(dekManager, Runnable::run, EncryptionDekCache.NO_MAX_CACHE_SIZE),
+                filterThreadExecutor);
+        var scheme = new EncryptionScheme<>(kms.generateKey(), EnumSet.of(RecordField.RECORD_VALUE), AadNone.INSTANCE, edekPerBatch);
+        encrypted = encryptionManager.encrypt("topic", 0, scheme, plaintextBatch(), ByteBufferOutputStream::new)
+                .toCompletableFuture().join().buffer();
+        fetched = ByteBuffer.allocate(encrypted.remaining());
+
+        decryptionManager = new InBandDecryptionManager<>(EncryptionResolver.ALL,
+                dekManager,
+                new DecryptionDekCache<>(dekManager, Runnable::run, DecryptionDekCache.NO_MAX_CACHE_SIZE),
+                filterThreadExecutor);
+        // populate the DEK cache, so that the benchmark doesn't measure the KMS
+        decrypt();
+    }
+
+    private MemoryRecords plaintextBatch() {
+        byte[] value = new byte[valueSize];
+        try (MemoryRecordsBuilder builder = MemoryRecords.builder(ByteBuffer.allocate(RECORDS_PER_BATCH * (valueSize + 32)),
+                CompressionType.NONE, TimestampType.CREATE_TIME, 0L)) {
+            for (int i = 0; i < RECORDS_PER_BATCH; i++) {
+                builder.append(0L, null, value);
+            }
+            return builder.build();
+        }
+    }
+
+    @Benchmark
+    public MemoryRecords decrypt() {
+        // records are decrypted in place, so each decryption needs a fresh copy of the fetched batch
+        fetched.clear().put(encrypted.duplicate()).flip();
+        return decryptionManager.decrypt("topic", 0, MemoryRecords.readableRecords(fetched), ByteBufferOutputStream::new)
+                .toCompletableFuture().join();
+    }
+}
@@ -29,6 +29,7 @@ import io.netty.channel.kqueue.KQueueEventLoopGroup;
 import io.netty.channel.kqueue.KQueueServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.unix.UnixChannelOption;
 import io.netty.incubator.channel.uring.IOUring;
 import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
 import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
@@ -40,11 +41,13 @@ import io.kroxylicious.proxy.config.MicrometerDefinition;
 import io.kroxylicious.proxy.config.PluginFactoryRegistry;
 import io.kroxylicious.proxy.config.admin.AdminHttpConfiguration;
 import io.kroxylicious.proxy.internal.KafkaProxyInitializer;
+import io.kroxylicious.proxy.internal.MemoryBudget;
 import io.kroxylicious.proxy.internal.MeterRegistries;
 import io.kroxylicious.proxy.internal.PortConflictDetector;
 import io.kroxylicious.proxy.internal.admin.AdminHttpInitializer;
 import io.kroxylicious.proxy.internal.net.DefaultNetworkBindingOperationProcessor;
 import io.kroxylicious.proxy.internal.net.EndpointRegistry;
+import io.kroxylicious.proxy.internal.net.NetworkBindRequest;
 import io.kroxylicious.proxy.internal.net.NetworkBindingOperationProcessor;
 import io.kroxylicious.proxy.internal.util.Metrics;
 import io.kroxylicious.proxy.model.VirtualCluster;
@@ -58,7 +61,10 @@ public final class KafkaProxy implements AutoCloseable {
     private static final Logger LOGGER = LoggerFactory.getLogger(KafkaProxy.class);
     private static final Logger STARTUP_SHUTDOWN_LOGGER = LoggerFactory.getLogger("io.kroxylicious.proxy.StartupShutdownLogger");
 
-    private record EventGroupConfig(String name, EventLoopGroup bossGroup, EventLoopGroup workerGroup, Class<? extends ServerChannel> clazz) {
+    /**
+     * @param acceptors The number of times each listening port is bound, one per thread of the boss group.
+     */
+    private record EventGroupConfig(String name, EventLoopGroup bossGroup, EventLoopGroup workerGroup, Class<? extends ServerChannel> clazz, int acceptors) {
 
         public List<Future<?>> shutdownGracefully() {
             return List.of(bossGroup.shutdownGracefully(), workerGroup.shutdownGracefully());
@@ -106,16 +112,17 @@ public final class KafkaProxy implements AutoCloseable {
             var availableCores = Runtime.getRuntime().availableProcessors();
             meterRegistries = new MeterRegistries(micrometerConfig);
 
-            this.adminEventGroup = buildNettyEventGroups("admin", availableCores, config.isUseIoUring());
-            this.serverEventGroup = buildNettyEventGroups("server", availableCores, config.isUseIoUring());
+            this.adminEventGroup = buildNettyEventGroups("admin", availableCores, config.isUseIoUring(), 1);
+            this.serverEventGroup = buildNettyEventGroups("server", availableCores, config.isUseIoUring(), config.acceptorThreadCount());
 
             maybeStartMetricsListener(adminEventGroup, meterRegistries);
 
-            this.filterChainFactory = new FilterChainFactory(pfr, config.filters());
+            this.filterChainFactory = new FilterChainFactory(pfr, config.filters(), config.workerPoolConfig());
+            var memoryBudget = new MemoryBudget(config.maxInFlightBytesBudget());
             var tlsServerBootstrap = buildServerBootstrap(serverEventGroup,
-                    new KafkaProxyInitializer(filterChainFactory, pfr, true, endpointRegistry, endpointRegistry, false, Map.of()));
+                    new KafkaProxyInitializer(filterChainFactory, pfr, true, endpointRegistry, endpointRegistry, false, Map.of(), memoryBudget));
             var plainServerBootstrap = buildServerBootstrap(serverEventGroup,
-                    new KafkaProxyInitializer(filterChainFactory, pfr, false, endpointRegistry, endpointRegistry, false, Map.of()));
+                    new KafkaProxyInitializer(filterChainFactory, pfr, false, endpointRegistry, endpointRegistry, false, Map.of(), memoryBudget));
 
             bindingOperationProcessor.start(plainServerBootstrap, tlsServerBootstrap);
 
@@ -128,6 +135,9 @@ public final class KafkaProxy implements AutoCloseable {
             // TODO add a virtual host tag to metrics
             Metrics.inboundDownstreamMessagesCounter();
             Metrics.inboundDownstreamDecodedMessagesCounter();
+            Metrics.upstreamInFlightRequestsGauges();
+            Metrics.workerPoolQueueDepthGauge();
+            Metrics.inFlightBytesGauges(memoryBudget);
             return this;
         }
         catch (RuntimeException | InterruptedException e) {
@@ -137,42 +147,54 @@ public final class KafkaProxy implements AutoCloseable {
     }
 
     private ServerBootstrap buildServerBootstrap(EventGroupConfig virtualHostEventGroup, KafkaProxyInitializer kafkaProxyInitializer) {
-        return new ServerBootstrap().group(virtualHostEventGroup.bossGroup(), virtualHostEventGroup.workerGroup())
+        var serverBootstrap = new ServerBootstrap().group(virtualHostEventGroup.bossGroup(), virtualHostEventGroup.workerGroup())
                 .channel(virtualHostEventGroup.clazz())
                 .option(ChannelOption.SO_REUSEADDR, true)
                 .childHandler(kafkaProxyInitializer)
                 .childOption(ChannelOption.TCP_NODELAY, true);
+        if (virtualHostEventGroup.acceptors() > 1) {
+            serverBootstrap.option(UnixChannelOption.SO_REUSEPORT, true)
+                    .attr(NetworkBindRequest.ACCEPTORS, virtualHostEventGroup.acceptors());
+        }
+        return serverBootstrap;
     }
 
-    private EventGroupConfig buildNettyEventGroups(String name, int availableCores, boolean useIoUring) {
+    private EventGroupConfig buildNettyEventGroups(String name, int availableCores, boolean useIoUring, int acceptorThreads) {
         final Class<? extends ServerChannel> channelClass;
         final EventLoopGroup bossGroup;
         final EventLoopGroup workerGroup;
+        int acceptors = acceptorThreads;
 
         if (useIoUring) {
             if (!IOUring.isAvailable()) {
                 throw new IllegalStateException("io_uring not available due to: " + IOUring.unavailabilityCause());
             }
-            bossGroup = new IOUringEventLoopGroup(1);
+            bossGroup = new IOUringEventLoopGroup(acceptors);
             workerGroup = new IOUringEventLoopGroup(availableCores);
             channelClass = IOUringServerSocketChannel.class;
         }
         else if (Epoll.isAvailable()) {
-            bossGroup = new EpollEventLoopGroup(1);
+            bossGroup = new EpollEventLoopGroup(acceptors);
             workerGroup = new EpollEventLoopGroup(availableCores);
             channelClass = EpollServerSocketChannel.class;
         }
-        else if (KQueue.isAvailable()) {
-            bossGroup = new KQueueEventLoopGroup(1);
-            workerGroup = new KQueueEventLoopGroup(availableCores);
-            channelClass = KQueueServerSocketChannel.class;
-        }
         else {
-            bossGroup = new NioEventLoopGroup(1);
-            workerGroup = new NioEventLoopGroup(availableCores);
-            channelClass = NioServerSocketChannel.class;
+            if (acceptors > 1) {
+                LOGGER.warn("{} acceptor threads were requested, but SO_REUSEPORT requires the epoll or io_uring transport, so using 1", acceptors);
+                acceptors = 1;
+            }
+            if (KQueue.isAvailable()) {
+                bossGroup = new KQueueEventLoopGroup(1);
+                workerGroup = new KQueueEventLoopGroup(availableCores);
+                channelClass = KQueueServerSocketChannel.class;
+            }
+            else {
+                bossGroup = new NioEventLoopGroup(1);
+                workerGroup = new NioEventLoopGroup(availableCores);
+                channelClass = NioServerSocketChannel.class;
+            }
         }
-        return new EventGroupConfig(name, bossGroup, workerGroup, channelClass);
+        return new EventGroupConfig(name, bossGroup, workerGroup, channelClass, acceptors);
     }
 
     private void maybeStartMetricsListener(EventGroupConfig eventGroupConfig,
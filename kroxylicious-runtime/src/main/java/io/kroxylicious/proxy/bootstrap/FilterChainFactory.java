@@ -8,16 +8,21 @@ package io.kroxylicious.proxy.bootstrap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
 
 import io.kroxylicious.proxy.config.FilterDefinition;
 import io.kroxylicious.proxy.config.PluginFactory;
 import io.kroxylicious.proxy.config.PluginFactoryRegistry;
+import io.kroxylicious.proxy.config.WorkerPoolConfiguration;
 import io.kroxylicious.proxy.filter.Filter;
 import io.kroxylicious.proxy.filter.FilterAndInvoker;
 import io.kroxylicious.proxy.filter.FilterFactory;
 import io.kroxylicious.proxy.filter.FilterFactoryContext;
+import io.kroxylicious.proxy.internal.WorkerPool;
 import io.kroxylicious.proxy.plugin.PluginConfigurationException;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
@@ -79,8 +84,14 @@ public class FilterChainFactory implements AutoCloseable {
     }
 
     private final List<Wrapper> initialized;
+    private final WorkerPool workerPool;
 
     public FilterChainFactory(PluginFactoryRegistry pfr, List<FilterDefinition> filterDefinitions) {
+        this(pfr, filterDefinitions, new WorkerPoolConfiguration(null, null));
+    }
+
+    public FilterChainFactory(PluginFactoryRegistry pfr, List<FilterDefinition> filterDefinitions, WorkerPoolConfiguration workerPoolConfiguration) {
+        this.workerPool = new WorkerPool(workerPoolConfiguration);
         @SuppressWarnings({ "unchecked", "rawtypes" })
         Class<FilterFactory<? super Object, ? super Object>> type = (Class) FilterFactory.class;
         PluginFactory<FilterFactory<? super Object, ? super Object>> pluginFactory = pfr.pluginFactory(type);
@@ -94,6 +105,11 @@ public class FilterChainFactory implements AutoCloseable {
                     return null;
                 }
 
+                @Override
+                public @NonNull Executor workerPool() {
+                    return workerPool;
+                }
+
                 @Override
                 public <P> @NonNull P pluginInstance(@NonNull Class<P> pluginClass, @NonNull String instanceName) {
                     return pfr.pluginFactory(pluginClass).pluginInstance(instanceName);
@@ -139,20 +155,40 @@ public class FilterChainFactory implements AutoCloseable {
                 }
             }
         }
+        workerPool.close();
         if (firstThrown != null) {
             throw firstThrown;
         }
     }
 
+    /**
+     * The pool of threads to which the filters created by this factory offload CPU-intensive work.
+     *
+     * @return the worker pool.
+     */
+    public WorkerPool workerPool() {
+        return workerPool;
+    }
+
     /**
      * Creates and returns a new chain of filter instances.
      *
      * @return the new chain.
      */
     public List<FilterAndInvoker> createFilters(FilterFactoryContext context) {
-        return initialized
-                .stream()
-                .flatMap(wrapper -> FilterAndInvoker.build(wrapper.create(context)).stream())
+        return createFilters(position -> context);
+    }
+
+    /**
+     * Creates and returns a new chain of filter instances, each created with the context for its position in the chain.
+     *
+     * @param contextForPosition the context for the filter at the given position, counting from zero.
+     * @return the new chain.
+     */
+    public List<FilterAndInvoker> createFilters(IntFunction<FilterFactoryContext> contextForPosition) {
+        return IntStream.range(0, initialized.size())
+                .boxed()
+                .flatMap(position -> FilterAndInvoker.build(initialized.get(position).create(contextForPosition.apply(position))).stream())
                 .toList();
     }
 }
@@ -17,7 +17,20 @@ public record Configuration(@Nullable AdminHttpConfiguration adminHttp,
                             Map<String, VirtualCluster> virtualClusters,
                             List<FilterDefinition> filters,
                             List<MicrometerDefinition> micrometer,
-                            boolean useIoUring) {
+                            boolean useIoUring,
+                            @Nullable WorkerPoolConfiguration workerPool,
+                            @Nullable Integer acceptorThreads,
+                            @Nullable Long maxInFlightBytes) {
+
+    public Configuration {
+        if (acceptorThreads != null && acceptorThreads < 1) {
+            throw new IllegalArgumentException("acceptorThreads must be at least 1");
+        }
+        if (maxInFlightBytes != null && maxInFlightBytes < 1) {
+            throw new IllegalArgumentException("maxInFlightBytes must be at least 1");
+        }
+    }
+
     public @Nullable AdminHttpConfiguration adminHttpConfig() {
         return adminHttp();
     }
@@ -26,10 +39,34 @@ public record Configuration(@Nullable AdminHttpConfiguration adminHttp,
         return micrometer() == null ? List.of() : micrometer();
     }
 
+    public @NonNull WorkerPoolConfiguration workerPoolConfig() {
+        return workerPool() == null ? new WorkerPoolConfiguration(null, null) : workerPool();
+    }
+
     public boolean isUseIoUring() {
         return useIoUring();
     }
 
+    /**
+     * The number of threads accepting connections. When there is more than one, each listening port is bound once per thread
+     * using {@code SO_REUSEPORT}, so that the kernel spreads new connections across them. This is only possible with
+     * the epoll and io_uring transports.
+     * @return the number of threads (defaults to 1).
+     */
+    public int acceptorThreadCount() {
+        return acceptorThreads() == null ? 1 : acceptorThreads();
+    }
+
+    /**
+     * The budget for the bytes of the frames held by the proxy across all connections, while they are buffered
+     * awaiting an upstream connection or held up by filters. When it is exceeded, reads are paused on the connections
+     * holding the most bytes until the frames drain.
+     * @return the budget in bytes (defaults to unlimited).
+     */
+    public long maxInFlightBytesBudget() {
+        return maxInFlightBytes() == null ? Long.MAX_VALUE : maxInFlightBytes();
+    }
+
     public @NonNull List<io.kroxylicious.proxy.model.VirtualCluster> virtualClusterModel() {
         return virtualClusters.entrySet().stream()
                 .map(entry -> entry.getValue().toVirtualClusterModel(entry.getKey()))
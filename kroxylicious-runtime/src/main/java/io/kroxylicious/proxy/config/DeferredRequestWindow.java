@@ -0,0 +1,31 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.config;
+
+/**
+ * Bounds the frames that a connection may have held up by filters that complete asynchronously,
+ * either because a filter is working on them or because they are queued behind such work.
+ * Reads from the client are paused while either bound is reached, and resumed once the frames drain.
+ *
+ * @param maxFrames the maximum number of frames held up (defaults to 16). 1 pauses reads as soon as any filter defers.
+ * @param maxBytes the maximum total encoded size of the frames held up (defaults to 16 MiB).
+ */
+public record DeferredRequestWindow(Integer maxFrames, Long maxBytes) {
+
+    public static final int DEFAULT_MAX_FRAMES = 16;
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    public DeferredRequestWindow(Integer maxFrames, Long maxBytes) {
+        this.maxFrames = maxFrames == null ? DEFAULT_MAX_FRAMES : maxFrames;
+        this.maxBytes = maxBytes == null ? DEFAULT_MAX_BYTES : maxBytes;
+        if (this.maxFrames < 1) {
+            throw new IllegalArgumentException("maxFrames must be at least 1");
+        }
+        if (this.maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be at least 1");
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.proxy.config;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+/**
+ * Tunes the TLS engines used for both the client and upstream connections of a virtual cluster.
+ *
+ * @param provider the TLS implementation (defaults to OpenSSL when it is available, otherwise the JDK's).
+ * @param sessionCacheSize the number of TLS sessions cached for resumption (defaults to the provider's default).
+ * @param sessionTimeoutSeconds how long a cached TLS session may be resumed for (defaults to the provider's default).
+ * @param offloadHandshakes whether the CPU-intensive tasks of TLS handshakes, such as signing and verifying certificates,
+ * run on the proxy's worker pool rather than holding up the event loop of the connection (defaults to false).
+ */
+public record TlsEngine(@Nullable Provider provider,
+                        @Nullable Long sessionCacheSize,
+                        @Nullable Long sessionTimeoutSeconds,
+                        boolean offloadHandshakes) {
+
+    /**
+     * A TLS implementation.
+     */
+    public enum Provider {
+        /** The JDK's own implementation. */
+        JDK,
+        /** OpenSSL, or BoringSSL, through netty-tcnative. When it isn't available the JDK's implementation is used instead. */
+        OPENSSL
+    }
+
+    public TlsEngine {
+        if (sessionCacheSize != null && sessionCacheSize < 0) {
+            throw new IllegalArgumentException("sessionCacheSize must not be negative");
+        }
+        if (sessionTimeoutSeconds != null && sessionTimeoutSeconds < 0) {
+            throw new IllegalArgumentException("sessionTimeoutSeconds must not be negative");
+        }
+    }
+}
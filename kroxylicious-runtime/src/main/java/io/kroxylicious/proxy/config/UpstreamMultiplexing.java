@@ -0,0 +1,28 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.config;
+
+/**
+ * Shares connections to the brokers of the target cluster between the client connections of a virtual cluster,
+ * rather than opening a connection to a broker for each client connection.
+ * Only client connections using the same client id share a connection. Requests the broker may hold on to, such as
+ * fetches waiting for records, and all the requests of clients which authenticate with the brokers themselves
+ * (using SASL), go over a connection dedicated to the client connection instead.
+ *
+ * @param connectionsPerEventLoop the number of connections to each broker that the clients handled by each of the
+ * proxy's event loops share (defaults to 1).
+ */
+public record UpstreamMultiplexing(Integer connectionsPerEventLoop) {
+
+    public static final int DEFAULT_CONNECTIONS_PER_EVENT_LOOP = 1;
+
+    public UpstreamMultiplexing(Integer connectionsPerEventLoop) {
+        this.connectionsPerEventLoop = connectionsPerEventLoop == null ? DEFAULT_CONNECTIONS_PER_EVENT_LOOP : connectionsPerEventLoop;
+        if (this.connectionsPerEventLoop < 1) {
+            throw new IllegalArgumentException("connectionsPerEventLoop must be at least 1");
+        }
+    }
+}
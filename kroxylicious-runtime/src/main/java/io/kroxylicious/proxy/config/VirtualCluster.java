@@ -21,13 +21,23 @@ public record VirtualCluster(TargetCluster targetCluster,
 
                              @JsonProperty() Optional<Tls> tls,
                              boolean logNetwork,
-                             boolean logFrames) {
+                             boolean logFrames,
+                             @JsonProperty() Optional<DeferredRequestWindow> deferredRequestWindow,
+                             @JsonProperty() Optional<UpstreamMultiplexing> upstreamMultiplexing,
+                             boolean connectUpstreamOnAccept,
+                             @JsonProperty() Optional<WriteBufferWatermarks> writeBufferWatermarks,
+                             @JsonProperty() Optional<TlsEngine> tlsEngine) {
     public io.kroxylicious.proxy.model.VirtualCluster toVirtualClusterModel(String virtualClusterNodeName) {
         return new io.kroxylicious.proxy.model.VirtualCluster(virtualClusterNodeName,
                 targetCluster(),
                 toClusterNetworkAddressConfigProviderModel(),
                 tls(),
-                logNetwork(), logFrames());
+                logNetwork(), logFrames(),
+                deferredRequestWindow().orElseGet(() -> new DeferredRequestWindow(null, null)),
+                upstreamMultiplexing(),
+                connectUpstreamOnAccept(),
+                writeBufferWatermarks().orElseGet(() -> new WriteBufferWatermarks(null, null)),
+                tlsEngine().orElseGet(() -> new TlsEngine(null, null, null, false)));
     }
 
     private ClusterNetworkAddressConfigProvider toClusterNetworkAddressConfigProviderModel() {
@@ -0,0 +1,30 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.config;
+
+/**
+ * Sizes the pool of threads to which filters offload CPU-intensive work.
+ *
+ * @param threads the number of threads (defaults to the number of available processors).
+ * @param queueCapacity the number of pieces of work which may wait for a thread (defaults to 1024).
+ * Once it is full, further work is rejected rather than buffered, so a filter's offloaded work fails
+ * and the filter decides how to handle it.
+ */
+public record WorkerPoolConfiguration(Integer threads, Integer queueCapacity) {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    public WorkerPoolConfiguration(Integer threads, Integer queueCapacity) {
+        this.threads = threads == null ? Runtime.getRuntime().availableProcessors() : threads;
+        this.queueCapacity = queueCapacity == null ? DEFAULT_QUEUE_CAPACITY : queueCapacity;
+        if (this.threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        if (this.queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.config;
+
+/**
+ * Bounds the bytes queued for writing to the client and upstream connections of a virtual cluster.
+ * Once the bytes queued to one side of a connection exceed the high watermark, reads from the other side are
+ * paused until the queue drains below the low watermark.
+ *
+ * @param lowBytes the low watermark (defaults to 32 KiB).
+ * @param highBytes the high watermark (defaults to 64 KiB). It must not be less than the low watermark.
+ */
+public record WriteBufferWatermarks(Integer lowBytes, Integer highBytes) {
+
+    public static final int DEFAULT_LOW_BYTES = 32 * 1024;
+    public static final int DEFAULT_HIGH_BYTES = 64 * 1024;
+
+    public WriteBufferWatermarks(Integer lowBytes, Integer highBytes) {
+        this.lowBytes = lowBytes == null ? Math.min(DEFAULT_LOW_BYTES, highBytes == null ? DEFAULT_LOW_BYTES : highBytes) : lowBytes;
+        this.highBytes = highBytes == null ? Math.max(DEFAULT_HIGH_BYTES, this.lowBytes) : highBytes;
+        if (this.lowBytes < 0) {
+            throw new IllegalArgumentException("lowBytes must not be negative");
+        }
+        if (this.highBytes < this.lowBytes) {
+            throw new IllegalArgumentException("highBytes must not be less than lowBytes");
+        }
+    }
+}
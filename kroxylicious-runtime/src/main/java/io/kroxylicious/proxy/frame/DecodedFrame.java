@@ -43,6 +43,7 @@ public abstract class DecodedFrame<H extends ApiMessage, B extends ApiMessage>
     protected final B body;
 
     private final List<ByteBuf> buffers;
+    private int encodedSizeHint;
     private int headerAndBodyEncodedLength;
     private ObjectSerializationCache serializationCache;
 
@@ -52,6 +53,7 @@ public abstract class DecodedFrame<H extends ApiMessage, B extends ApiMessage>
         this.header = header;
         this.body = body;
         this.buffers = new ArrayList<>();
+        this.encodedSizeHint = -1;
         this.headerAndBodyEncodedLength = -1;
     }
 
@@ -60,7 +62,7 @@ public abstract class DecodedFrame<H extends ApiMessage, B extends ApiMessage>
         return correlationId;
     }
 
-    protected abstract short headerVersion();
+    public abstract short headerVersion();
 
     public H header() {
         return header;
@@ -78,6 +80,24 @@ public abstract class DecodedFrame<H extends ApiMessage, B extends ApiMessage>
         return apiVersion;
     }
 
+    /**
+     * Records the size of the header and body of this frame as it was received,
+     * which is a cheap estimate of the size of the re-encoded frame.
+     * @param headerAndBodySize The size, in bytes.
+     */
+    public void encodedSizeHint(int headerAndBodySize) {
+        this.encodedSizeHint = headerAndBodySize;
+    }
+
+    /**
+     * @return The size of the header and body of this frame as it was received, or -1 if this frame was not received
+     * (for example because it was created by a filter).
+     * Unlike {@link #estimateEncodedSize()} this doesn't require traversing the header and body.
+     */
+    public int encodedSizeHint() {
+        return encodedSizeHint;
+    }
+
     @Override
     public final int estimateEncodedSize() {
         if (headerAndBodyEncodedLength != -1) {
@@ -15,6 +15,8 @@ import io.kroxylicious.proxy.tag.VisibleForTesting;
 /**
  * A frame in the Kafka protocol which has not been decoded.
  * The wrapped buffer <strong>does not</strong> include the frame size prefix.
+ * <p>A frame may be {@linkplain #isStreamed() streamed}, in which case its buffer holds only the leading bytes of
+ * the frame and the rest of it follows as {@link OpaqueFrameChunk}s.</p>
  */
 public abstract class OpaqueFrame implements Frame {
 
@@ -29,6 +31,8 @@ public abstract class OpaqueFrame implements Frame {
     protected final int correlationId;
     /** The message buffer excluding the frame size, including the header and body. */
     protected final ByteBuf buf;
+    /** The number of bytes of the frame held in {@code buf}. */
+    private final int available;
 
     /**
      * @param buf The message buffer (excluding the frame size)
@@ -36,11 +40,22 @@ public abstract class OpaqueFrame implements Frame {
      * @param length The length of the frame within {@code buf}.
      */
     OpaqueFrame(ByteBuf buf, int correlationId, int length) {
+        this(buf, correlationId, length, false);
+    }
+
+    /**
+     * @param buf The message buffer (excluding the frame size)
+     * @param correlationId The correlation id
+     * @param length The length of the frame.
+     * @param streamed true if {@code buf} holds only the leading bytes of the frame, the rest following as chunks.
+     */
+    OpaqueFrame(ByteBuf buf, int correlationId, int length, boolean streamed) {
         this.length = length;
         this.correlationId = correlationId;
         this.buf = buf.asReadOnly();
-        if (buf.readableBytes() != length) {
-            throw new AssertionError("readable: " + buf.readableBytes() + " length: " + length);
+        this.available = buf.readableBytes();
+        if (streamed ? available >= length : available != length) {
+            throw new AssertionError("readable: " + available + " length: " + length + " streamed: " + streamed);
         }
     }
 
@@ -51,7 +66,7 @@ public abstract class OpaqueFrame implements Frame {
 
     @Override
     public int estimateEncodedSize() {
-        return FRAME_SIZE_LENGTH + length;
+        return FRAME_SIZE_LENGTH + available;
     }
 
     @Override
@@ -62,10 +77,40 @@ public abstract class OpaqueFrame implements Frame {
         }
         out.ensureWritable(estimateEncodedSize());
         out.writeInt(length);
-        out.writeBytes(buf, length);
+        out.writeBytes(buf, available);
         buf.release();
     }
 
+    /**
+     * @return The length of the frame, excluding the frame size prefix.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return true if this frame's buffer holds only the leading bytes of the frame, with the rest of the frame
+     * following as {@link OpaqueFrameChunk}s, the last of which {@linkplain OpaqueFrameChunk#isLast() is marked}.
+     */
+    public boolean isStreamed() {
+        return available != length;
+    }
+
+    /**
+     * Returns a view of this frame's buffer starting {@code offset} bytes into the frame,
+     * without copying the frame's bytes.
+     * Ownership of the buffer is transferred to the returned view, so the caller becomes responsible for
+     * releasing it and this frame must not subsequently be {@linkplain #encode(ByteBufAccessor) encoded}.
+     * @param offset The number of leading bytes of the frame to omit from the view.
+     * @return The view.
+     */
+    public ByteBuf transferBuffer(int offset) {
+        if (offset < 0 || offset > available) {
+            throw new IndexOutOfBoundsException("offset: " + offset + " available: " + available);
+        }
+        return buf.slice(buf.readerIndex() + offset, available - offset);
+    }
+
     @VisibleForTesting
     public ByteBuf buf() {
         return buf;
@@ -0,0 +1,49 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.frame;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.DefaultByteBufHolder;
+
+/**
+ * A run of bytes of a {@linkplain OpaqueFrame#isStreamed() streamed} opaque frame, following the frame itself
+ * and any earlier chunks of the same frame.
+ * Chunks are relayed to the peer as they arrive, rather than the whole frame first being buffered, and must
+ * reach it immediately after the frame and in the order they were read.
+ */
+public final class OpaqueFrameChunk extends DefaultByteBufHolder {
+
+    private final boolean last;
+
+    /**
+     * @param content The bytes of the chunk.
+     * @param last true if this chunk completes its frame.
+     */
+    public OpaqueFrameChunk(ByteBuf content, boolean last) {
+        super(content);
+        this.last = last;
+    }
+
+    /**
+     * @return true if this chunk completes its frame.
+     */
+    public boolean isLast() {
+        return last;
+    }
+
+    @Override
+    public OpaqueFrameChunk replace(ByteBuf content) {
+        return new OpaqueFrameChunk(content, last);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" +
+                "last=" + last +
+                ", content=" + content() +
+                ')';
+    }
+}
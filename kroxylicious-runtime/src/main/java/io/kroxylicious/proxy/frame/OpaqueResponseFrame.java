@@ -12,6 +12,16 @@ public class OpaqueResponseFrame extends OpaqueFrame implements ResponseFrame {
         super(buf, correlationId, length);
     }
 
+    /**
+     * @param buf The leading bytes of the frame (excluding the frame size)
+     * @param correlationId The correlation id
+     * @param length The length of the whole frame
+     * @param streamed true if the rest of the frame follows as {@link OpaqueFrameChunk}s
+     */
+    public OpaqueResponseFrame(ByteBuf buf, int correlationId, int length, boolean streamed) {
+        super(buf, correlationId, length, streamed);
+    }
+
     @Override
     public String toString() {
         int index = buf.readerIndex();
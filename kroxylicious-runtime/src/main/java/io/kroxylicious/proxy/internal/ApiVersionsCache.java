@@ -0,0 +1,124 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.proxy.internal;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.apache.kafka.common.message.ApiVersionsResponseData;
+import org.apache.kafka.common.message.ApiVersionsResponseData.ApiVersion;
+import org.apache.kafka.common.message.ApiVersionsResponseData.ApiVersionCollection;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ObjectSerializationCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import io.kroxylicious.proxy.internal.codec.ByteBufAccessorImpl;
+import io.kroxylicious.proxy.service.HostPort;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+/**
+ * The API versions of the upstream brokers of a virtual cluster, by upstream address.
+ * Entries expire after a time to live, so that a broker upgrade or downgrade is eventually noticed,
+ * and are invalidated as soon as a broker rejects the version of an ApiVersions request.
+ */
+public class ApiVersionsCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ApiVersionsCache.class);
+
+    static final Duration TIME_TO_LIVE = Duration.ofMinutes(5);
+
+    private final Map<HostPort, Entry> entries = new ConcurrentHashMap<>();
+    private final LongSupplier nanoTime;
+    private final long timeToLiveNanos;
+
+    public ApiVersionsCache() {
+        this(System::nanoTime, TIME_TO_LIVE);
+    }
+
+    ApiVersionsCache(LongSupplier nanoTime, Duration timeToLive) {
+        this.nanoTime = nanoTime;
+        this.timeToLiveNanos = timeToLive.toNanos();
+    }
+
+    /**
+     * The API versions of an upstream broker.
+     * @param upstream The versions supported by the broker.
+     * @param intersected The response a client is sent, listing the versions supported by both the broker and the proxy.
+     * @param expiresAt When the entry expires, in {@link System#nanoTime()} terms.
+     * @param encodedResponses The {@code intersected} response encoded without a header, by ApiVersions version.
+     */
+    record Entry(ApiVersionCollection upstream, ApiVersionsResponseData intersected, long expiresAt, Map<Short, byte[]> encodedResponses) {
+
+        /**
+         * Gets the intersected response as a frame (excluding the frame size prefix).
+         * ApiVersions responses always use header version 0, so the header is just the correlation id.
+         * @param apiVersion The version of the client's ApiVersions request.
+         * @param correlationId The correlation id of the client's ApiVersions request.
+         * @return The frame, or null if the version is not supported by both the broker and the proxy.
+         */
+        @Nullable
+        ByteBuf encodedResponse(short apiVersion, int correlationId) {
+            ApiVersion supported = intersected.apiKeys().find(ApiKeys.API_VERSIONS.id);
+            if (supported == null || apiVersion < supported.minVersion() || apiVersion > supported.maxVersion()) {
+                return null;
+            }
+            byte[] body = encodedResponses.computeIfAbsent(apiVersion, v -> encode(intersected, v));
+            return Unpooled.wrappedBuffer(Unpooled.copyInt(correlationId), Unpooled.wrappedBuffer(body));
+        }
+
+        private static byte[] encode(ApiVersionsResponseData response, short apiVersion) {
+            var cache = new ObjectSerializationCache();
+            byte[] body = new byte[response.size(cache, apiVersion)];
+            var buf = Unpooled.wrappedBuffer(body).writerIndex(0);
+            response.write(new ByteBufAccessorImpl(buf), cache, apiVersion);
+            return body;
+        }
+    }
+
+    /**
+     * Caches the API versions of an upstream broker.
+     * @param upstreamAddress The address of the broker.
+     * @param upstream The versions supported by the broker.
+     * @param intersected The response a client is sent. The cache keeps a copy of it.
+     */
+    public void put(@NonNull HostPort upstreamAddress, @NonNull ApiVersionCollection upstream, @NonNull ApiVersionsResponseData intersected) {
+        entries.put(upstreamAddress, new Entry(upstream.duplicate(), intersected.duplicate(), nanoTime.getAsLong() + timeToLiveNanos, new ConcurrentHashMap<>()));
+    }
+
+    /**
+     * Gets the API versions of an upstream broker.
+     * @param upstreamAddress The address of the broker.
+     * @return The versions, or null if they are not cached or have expired.
+     */
+    @Nullable
+    Entry get(@NonNull HostPort upstreamAddress) {
+        var entry = entries.get(upstreamAddress);
+        if (entry != null && nanoTime.getAsLong() - entry.expiresAt() >= 0) {
+            entries.remove(upstreamAddress, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Forgets the API versions of an upstream broker.
+     * @param upstreamAddress The address of the broker.
+     */
+    public void invalidate(@NonNull HostPort upstreamAddress) {
+        if (entries.remove(upstreamAddress) != null) {
+            LOGGER.debug("Invalidated the cached API versions of {}", upstreamAddress);
+        }
+    }
+}
@@ -22,23 +22,95 @@ import org.apache.kafka.common.protocol.Errors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.netty.buffer.ByteBuf;
+
 import io.kroxylicious.proxy.ApiVersionsService;
 import io.kroxylicious.proxy.filter.FilterContext;
+import io.kroxylicious.proxy.service.HostPort;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
 
 public class ApiVersionsServiceImpl {
 
     private record ApiVersions(ApiVersionCollection upstream, ApiVersionCollection intersected) {}
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ApiVersionsServiceImpl.class);
+    private final ApiVersionsCache cache;
+    private HostPort upstreamAddress = null;
     private ApiVersions apiVersions = null;
 
+    public ApiVersionsServiceImpl() {
+        this(null);
+    }
+
+    /**
+     * @param cache The API versions shared by the connections of the virtual cluster, or null if they aren't shared.
+     */
+    public ApiVersionsServiceImpl(@Nullable ApiVersionsCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Records the address of the upstream broker the connection is being made to. The versions are only shared
+     * with the other connections to the same address, and none are shared until the address is known.
+     * @param upstreamAddress The address actually being connected to.
+     */
+    public void connectingTo(HostPort upstreamAddress) {
+        this.upstreamAddress = upstreamAddress;
+    }
+
     public void updateVersions(String channel, ApiVersionsResponseData upstreamApiVersions) {
+        if (upstreamApiVersions.errorCode() == Errors.UNSUPPORTED_VERSION.code()) {
+            invalidateCachedVersions();
+        }
         var upstream = upstreamApiVersions.duplicate().apiKeys();
         intersectApiVersions(channel, upstreamApiVersions);
         var intersected = upstreamApiVersions.duplicate().apiKeys();
         this.apiVersions = new ApiVersions(upstream, intersected);
     }
 
+    /**
+     * Shares the versions learnt by {@link #updateVersions(String, ApiVersionsResponseData)} with the other connections
+     * to the same upstream broker.
+     * @param intersectedResponse The intersected response, as sent to the client.
+     */
+    public void cacheVersions(ApiVersionsResponseData intersectedResponse) {
+        if (cache != null && upstreamAddress != null && apiVersions != null && intersectedResponse.errorCode() == Errors.NONE.code()) {
+            cache.put(upstreamAddress, apiVersions.upstream(), intersectedResponse);
+        }
+    }
+
+    /**
+     * Gets the cached response to a client's ApiVersions request, so that the client can be answered
+     * without a round trip to the upstream broker.
+     * @param apiVersion The version of the client's request.
+     * @param correlationId The correlation id of the client's request.
+     * @return The response frame (excluding the frame size prefix), or null if there is no cached response for this request.
+     */
+    @Nullable
+    public ByteBuf cachedResponse(short apiVersion, int correlationId) {
+        var entry = cachedEntry();
+        if (entry == null) {
+            return null;
+        }
+        var response = entry.encodedResponse(apiVersion, correlationId);
+        if (response != null) {
+            this.apiVersions = new ApiVersions(entry.upstream(), entry.intersected().apiKeys());
+        }
+        return response;
+    }
+
+    private void invalidateCachedVersions() {
+        if (cache != null && upstreamAddress != null) {
+            cache.invalidate(upstreamAddress);
+        }
+    }
+
+    @Nullable
+    private ApiVersionsCache.Entry cachedEntry() {
+        return cache == null || upstreamAddress == null ? null : cache.get(upstreamAddress);
+    }
+
     private static void intersectApiVersions(String channel, ApiVersionsResponseData resp) {
         Set<ApiVersion> unknownApis = new HashSet<>();
         for (var key : resp.apiKeys()) {
@@ -102,6 +174,11 @@ public class ApiVersionsServiceImpl {
         if (apiVersions != null) {
             return CompletableFuture.completedFuture(apiVersions);
         }
+        var cached = cachedEntry();
+        if (cached != null) {
+            apiVersions = new ApiVersions(cached.upstream(), cached.intersected().apiKeys());
+            return CompletableFuture.completedFuture(apiVersions);
+        }
 
         // KIP-511 when the client receives an unsupported version for the ApiVersionResponse, it fails back to version 0
         // Use the same algorithm as https://github.com/apache/kafka/blob/159d25a7df25975694e2e0eb18a8feb125f7c39e/clients/src/main/java/org/apache/kafka/clients/NetworkClient.java#L957-L977
@@ -110,6 +187,7 @@ public class ApiVersionsServiceImpl {
         return context.<ApiVersionsResponseData> sendRequest(header, data)
                 .thenCompose(response -> {
                     if (response.errorCode() != Errors.NONE.code()) {
+                        invalidateCachedVersions();
                         if (header.requestApiVersion() == 0 || response.errorCode() != Errors.UNSUPPORTED_VERSION.code()) {
                             throw new IllegalStateException("Received error " + Errors.forCode(response.errorCode()) +
                                     " when making an ApiVersionsRequest with correlation id " + header.correlationId() + ".");
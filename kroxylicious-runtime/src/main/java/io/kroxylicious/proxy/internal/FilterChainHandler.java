@@ -0,0 +1,988 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import org.apache.kafka.common.message.ProduceRequestData;
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.message.ResponseHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ApiMessage;
+import org.apache.kafka.common.utils.ByteBufferOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+
+import io.kroxylicious.proxy.ApiVersionsService;
+import io.kroxylicious.proxy.config.DeferredRequestWindow;
+import io.kroxylicious.proxy.filter.Filter;
+import io.kroxylicious.proxy.filter.FilterAndInvoker;
+import io.kroxylicious.proxy.filter.FilterContext;
+import io.kroxylicious.proxy.filter.FilterInvoker;
+import io.kroxylicious.proxy.filter.FilterResult;
+import io.kroxylicious.proxy.filter.RequestFilterResult;
+import io.kroxylicious.proxy.filter.RequestFilterResultBuilder;
+import io.kroxylicious.proxy.filter.ResponseFilterResult;
+import io.kroxylicious.proxy.filter.ResponseFilterResultBuilder;
+import io.kroxylicious.proxy.frame.DecodedFrame;
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+import io.kroxylicious.proxy.frame.OpaqueFrame;
+import io.kroxylicious.proxy.frame.OpaqueFrameChunk;
+import io.kroxylicious.proxy.frame.OpaqueRequestFrame;
+import io.kroxylicious.proxy.frame.OpaqueResponseFrame;
+import io.kroxylicious.proxy.internal.filter.RequestFilterResultBuilderImpl;
+import io.kroxylicious.proxy.internal.filter.ResponseFilterResultBuilderImpl;
+import io.kroxylicious.proxy.internal.util.Assertions;
+import io.kroxylicious.proxy.internal.util.ByteBufOutputStream;
+import io.kroxylicious.proxy.model.VirtualCluster;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * A {@code ChannelDuplexHandler} that applies a chain of {@link Filter}s.
+ * <p>Requests written to the upstream channel are passed to the filters in the order in which they are given,
+ * and responses read from it are passed to the filters in the reverse order.
+ * A frame is passed from one filter to the next in a loop for as long as the filters complete synchronously.
+ * Only when a filter returns an incomplete stage is the rest of the chain chained onto that stage, in which case
+ * subsequent frames queue behind it at that filter, so each filter sees frames in the order in which they arrived.</p>
+ * <p>Requests sent by a filter using {@link FilterContext#sendRequest(RequestHeaderData, ApiMessage)} are passed
+ * to the filters after it, and their responses to the filters after it (in reverse order), before completing the
+ * sending filter's promise. Short-circuit responses are passed to the filters before the one which produced them.</p>
+ * <p>Frames held up by deferred work don't pause reads from the client straight away. Reads are only paused
+ * while the number or size of the held frames reaches the limits of the {@link DeferredRequestWindow},
+ * so a connection can keep reading and passing frames through the other filters while one filter waits.</p>
+ * <p>Work offloaded by the filters using {@link FilterContext#offload(Callable)} is run on the worker pool
+ * one piece at a time, in the order in which it was offloaded, and its results are completed on the event loop.</p>
+ * <p>Frames are only passed to the filters that the {@link FilterRoutingTable} routes their API key to. The others
+ * are skipped, although a frame still queues behind deferred work at a skipped filter, so that frames keep their order.</p>
+ */
+public class FilterChainHandler extends ChannelDuplexHandler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FilterChainHandler.class);
+    private static final CompletableFuture<Void> COMPLETED = CompletableFuture.completedFuture(null);
+    private final Filter[] filters;
+    private final FilterInvoker[] invokers;
+    private final FilterRoutingTable routingTable;
+    private final long timeoutMs;
+    private final String sniHostname;
+    private final VirtualCluster virtualCluster;
+    private final Channel inboundChannel;
+    private final ApiVersionsServiceImpl apiVersionService;
+    private final Executor workerPool;
+    private final MemoryBudget.Account memoryAccount;
+    // indexed by the position of the filter in the chain
+    private final CompletableFuture<Void>[] writeFutures;
+    private final CompletableFuture<Void>[] readFutures;
+    private final InternalFilterContext[] idleFilterContexts;
+    private final int maxHeldFrames;
+    private final long maxHeldBytes;
+    // frames currently held up by deferred work, either being worked on or queued behind it
+    private int heldFrames;
+    private long heldBytes;
+    private boolean readsPaused;
+    // frames queued behind deferred work, whose buffers are released should the channel close first
+    private final Set<Object> queuedFrames = Collections.newSetFromMap(new IdentityHashMap<>());
+    // work offloaded by the filters, waiting for the work offloaded before it to complete
+    private final Deque<Runnable> offloaded = new ArrayDeque<>();
+    private boolean offloading;
+    private ChannelHandlerContext ctx;
+    private PromiseFactory promiseFactory;
+
+    @SuppressWarnings("unchecked")
+    public FilterChainHandler(List<FilterAndInvoker> filterAndInvokers, FilterRoutingTable routingTable, long timeoutMs,
+                              DeferredRequestWindow deferredRequestWindow, String sniHostname, VirtualCluster virtualCluster, Channel inboundChannel,
+                              ApiVersionsServiceImpl apiVersionService, Executor workerPool, MemoryBudget.Account memoryAccount) {
+        int size = Objects.requireNonNull(filterAndInvokers).size();
+        this.filters = new Filter[size];
+        this.invokers = new FilterInvoker[size];
+        this.writeFutures = new CompletableFuture[size];
+        this.readFutures = new CompletableFuture[size];
+        this.idleFilterContexts = new InternalFilterContext[size];
+        for (int index = 0; index < size; index++) {
+            var filterAndInvoker = Objects.requireNonNull(filterAndInvokers.get(index));
+            filters[index] = filterAndInvoker.filter();
+            invokers[index] = filterAndInvoker.invoker();
+            writeFutures[index] = COMPLETED;
+            readFutures[index] = COMPLETED;
+        }
+        this.routingTable = Objects.requireNonNull(routingTable);
+        this.timeoutMs = Assertions.requireStrictlyPositive(timeoutMs, "timeout");
+        this.maxHeldFrames = deferredRequestWindow.maxFrames();
+        this.maxHeldBytes = deferredRequestWindow.maxBytes();
+        this.sniHostname = sniHostname;
+        this.virtualCluster = virtualCluster;
+        this.inboundChannel = inboundChannel;
+        this.apiVersionService = apiVersionService;
+        this.workerPool = workerPool;
+        this.memoryAccount = Objects.requireNonNull(memoryAccount);
+    }
+
+    String filterDescriptor(int index) {
+        Filter filter = filters[index];
+        return filter.getClass().getSimpleName() + "@" + System.identityHashCode(filter);
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        this.promiseFactory = new PromiseFactory(ctx.executor(), timeoutMs, TimeUnit.MILLISECONDS, LOGGER.getName());
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        discardQueuedFrames();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof DecodedResponseFrame<?> decodedFrame) {
+            readDecodedResponse(decodedFrame, filters.length - 1);
+        }
+        else {
+            if (!(msg instanceof OpaqueResponseFrame) && !(msg instanceof OpaqueFrameChunk)) {
+                throw new IllegalStateException("Unexpected message reading from upstream:  " + msg);
+            }
+            readOpaqueResponse(msg, filters.length - 1);
+        }
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof DecodedRequestFrame<?> decodedFrame) {
+            writeDecodedRequest(decodedFrame, 0, promise);
+        }
+        else {
+            if (!(msg instanceof OpaqueRequestFrame) && msg != Unpooled.EMPTY_BUFFER) {
+                // Unpooled.EMPTY_BUFFER is used by KafkaProxyFrontendHandler#closeOnFlush
+                // but, otherwise we don't expect any other kind of message
+                throw new IllegalStateException("Unexpected message writing to upstream: " + msg);
+            }
+            writeOpaqueRequest(msg, 0, promise);
+        }
+    }
+
+    /**
+     * Passes a response to the filters from {@code from} down to the first, then on to the next handler.
+     */
+    private void readDecodedResponse(DecodedResponseFrame<?> decodedFrame, int from) {
+        // responses to asynchronous requests jump the queue, and flow back to their sender
+        InternalResponseFrame<?> internalFrame = decodedFrame instanceof InternalResponseFrame<?> irf ? irf : null;
+        long route = routingTable.responseRoute(decodedFrame.apiKey(), decodedFrame.apiVersion());
+        for (int index = from; index >= 0; index--) {
+            if (internalFrame != null) {
+                if (internalFrame.isRecipient(filters[index])) {
+                    completeInternalResponse(index, internalFrame);
+                    return;
+                }
+            }
+            else if (!readFutures[index].isDone()) {
+                final int queuedIndex = index;
+                enqueue(decodedFrame);
+                readFutures[index] = readFutures[index]
+                        .handle((ignored, throwable) -> dequeue(decodedFrame) ? filterResponse(queuedIndex, decodedFrame) : COMPLETED)
+                        .thenCompose(Function.identity())
+                        .exceptionally(throwable -> null);
+                return;
+            }
+            if (!FilterRoutingTable.isRouted(route, index)) {
+                continue;
+            }
+            var filterContext = acquireFilterContext(index, decodedFrame);
+            var future = dispatchDecodedResponse(filterContext, decodedFrame);
+            if (!future.isDone()) {
+                var deferred = deferResponse(index, decodedFrame, future);
+                if (internalFrame == null) {
+                    readFutures[index] = deferred;
+                }
+                return;
+            }
+            if (!handleCompletedResponse(filterContext, decodedFrame, future)) {
+                return;
+            }
+        }
+        ctx.fireChannelRead(decodedFrame);
+    }
+
+    /**
+     * Passes a response that was queued behind deferred work to the filter at {@code index}.
+     * @return a future which completes once the filter has finished with the response.
+     */
+    private CompletableFuture<Void> filterResponse(int index, DecodedResponseFrame<?> decodedFrame) {
+        if (!FilterRoutingTable.isRouted(routingTable.responseRoute(decodedFrame.apiKey(), decodedFrame.apiVersion()), index)) {
+            readDecodedResponse(decodedFrame, index - 1);
+            return COMPLETED;
+        }
+        var filterContext = acquireFilterContext(index, decodedFrame);
+        var future = dispatchDecodedResponse(filterContext, decodedFrame);
+        if (!future.isDone()) {
+            return deferResponse(index, decodedFrame, future);
+        }
+        if (handleCompletedResponse(filterContext, decodedFrame, future)) {
+            readDecodedResponse(decodedFrame, index - 1);
+        }
+        return COMPLETED;
+    }
+
+    private CompletableFuture<Void> deferResponse(int index, DecodedResponseFrame<?> decodedFrame, CompletableFuture<ResponseFilterResult> future) {
+        return handleDeferredStage(index, decodedFrame, future)
+                .<Void> handle((responseFilterResult, throwable) -> {
+                    release(decodedFrame);
+                    if (handleResponseFilterResult(index, decodedFrame, responseFilterResult, throwable)) {
+                        readDecodedResponse(decodedFrame, index - 1);
+                    }
+                    return null;
+                })
+                .whenComplete((ignored, throwable) -> deferredResponseCompleted(index));
+    }
+
+    private void readOpaqueResponse(Object msg, int from) {
+        for (int index = from; index >= 0; index--) {
+            if (!readFutures[index].isDone()) {
+                final int queuedIndex = index;
+                enqueue(msg);
+                readFutures[index] = readFutures[index].whenComplete((a, b) -> {
+                    if (dequeue(msg)) {
+                        readOpaqueResponse(msg, queuedIndex - 1);
+                    }
+                });
+                return;
+            }
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    /**
+     * Passes a request to the filters from {@code from} up to the last, then on to the next handler.
+     */
+    private void writeDecodedRequest(DecodedRequestFrame<?> decodedFrame, int from, ChannelPromise promise) {
+        // internal requests jump the queue, they must flow!
+        boolean internal = decodedFrame instanceof InternalRequestFrame;
+        long route = routingTable.requestRoute(decodedFrame.apiKey(), decodedFrame.apiVersion());
+        for (int index = from; index < filters.length; index++) {
+            if (!internal && !writeFutures[index].isDone()) {
+                final int queuedIndex = index;
+                enqueue(decodedFrame);
+                writeFutures[index] = writeFutures[index]
+                        .handle((ignored, throwable) -> dequeue(decodedFrame) ? filterRequest(queuedIndex, decodedFrame, promise) : COMPLETED)
+                        .thenCompose(Function.identity())
+                        .exceptionally(throwable -> null);
+                return;
+            }
+            if (!FilterRoutingTable.isRouted(route, index)) {
+                continue;
+            }
+            var filterContext = acquireFilterContext(index, decodedFrame);
+            var future = dispatchDecodedRequest(filterContext, decodedFrame);
+            if (!future.isDone()) {
+                var deferred = deferRequest(index, decodedFrame, promise, future);
+                if (!internal) {
+                    writeFutures[index] = deferred;
+                }
+                return;
+            }
+            if (!handleCompletedRequest(filterContext, decodedFrame, promise, future)) {
+                return;
+            }
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("{}: Forwarding request: {}", channelDescriptor(), decodedFrame);
+        }
+        ctx.write(decodedFrame, promise);
+    }
+
+    /**
+     * Passes a request that was queued behind deferred work to the filter at {@code index}.
+     * @return a future which completes once the filter has finished with the request.
+     */
+    private CompletableFuture<Void> filterRequest(int index, DecodedRequestFrame<?> decodedFrame, ChannelPromise promise) {
+        if (!FilterRoutingTable.isRouted(routingTable.requestRoute(decodedFrame.apiKey(), decodedFrame.apiVersion()), index)) {
+            writeDecodedRequest(decodedFrame, index + 1, promise);
+            return COMPLETED;
+        }
+        var filterContext = acquireFilterContext(index, decodedFrame);
+        var future = dispatchDecodedRequest(filterContext, decodedFrame);
+        if (!future.isDone()) {
+            return deferRequest(index, decodedFrame, promise, future);
+        }
+        if (handleCompletedRequest(filterContext, decodedFrame, promise, future)) {
+            writeDecodedRequest(decodedFrame, index + 1, promise);
+        }
+        return COMPLETED;
+    }
+
+    private CompletableFuture<Void> deferRequest(int index, DecodedRequestFrame<?> decodedFrame, ChannelPromise promise,
+                                                 CompletableFuture<RequestFilterResult> future) {
+        return handleDeferredStage(index, decodedFrame, future)
+                .<Void> handle((requestFilterResult, throwable) -> {
+                    release(decodedFrame);
+                    if (handleRequestFilterResult(index, decodedFrame, promise, requestFilterResult, throwable)) {
+                        writeDecodedRequest(decodedFrame, index + 1, promise);
+                    }
+                    return null;
+                })
+                .whenComplete((ignored, throwable) -> deferredRequestCompleted(index));
+    }
+
+    private void writeOpaqueRequest(Object msg, int from, ChannelPromise promise) {
+        for (int index = from; index < filters.length; index++) {
+            if (!writeFutures[index].isDone()) {
+                final int queuedIndex = index;
+                enqueue(msg);
+                writeFutures[index].whenComplete((unused, throwable) -> {
+                    if (dequeue(msg)) {
+                        writeOpaqueRequest(msg, queuedIndex + 1, promise);
+                    }
+                });
+                return;
+            }
+        }
+        ctx.write(msg, promise);
+    }
+
+    /**
+     * Returns a context for the filter at {@code index} to use while it handles the given frame.
+     * Contexts are reused once a filter has completed synchronously, so that the common case of a filter
+     * forwarding a frame it isn't interested in doesn't allocate. A context that is still in use,
+     * either further up the stack or by deferred work, is never handed out again.
+     */
+    private InternalFilterContext acquireFilterContext(int index, DecodedFrame<?, ?> decodedFrame) {
+        var filterContext = idleFilterContexts[index];
+        if (filterContext == null) {
+            return new InternalFilterContext(index, decodedFrame);
+        }
+        idleFilterContexts[index] = null;
+        filterContext.decodedFrame = decodedFrame;
+        return filterContext;
+    }
+
+    private void releaseFilterContext(InternalFilterContext filterContext) {
+        idleFilterContexts[filterContext.index] = filterContext;
+    }
+
+    private CompletableFuture<ResponseFilterResult> dispatchDecodedResponse(InternalFilterContext filterContext, DecodedResponseFrame<?> decodedFrame) {
+        int index = filterContext.index;
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("{}: Dispatching upstream {} response to filter {}: {}",
+                    channelDescriptor(), decodedFrame.apiKey(), filterDescriptor(index), decodedFrame);
+        }
+        var stage = invokers[index].onResponse(decodedFrame.apiKey(), decodedFrame.apiVersion(),
+                decodedFrame.header(), decodedFrame.body(), filterContext);
+        if (stage == filterContext.forwardResponseStage) {
+            return filterContext.forwardedResponse;
+        }
+        return stage instanceof InternalCompletionStage ? ((InternalCompletionStage<ResponseFilterResult>) stage).getUnderlyingCompletableFuture()
+                : stage.toCompletableFuture();
+    }
+
+    private CompletableFuture<RequestFilterResult> dispatchDecodedRequest(InternalFilterContext filterContext, DecodedRequestFrame<?> decodedFrame) {
+        int index = filterContext.index;
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("{}: Dispatching downstream {} request to filter{}: {}",
+                    channelDescriptor(), decodedFrame.apiKey(), filterDescriptor(index), decodedFrame);
+        }
+        var stage = invokers[index].onRequest(decodedFrame.apiKey(), decodedFrame.apiVersion(), decodedFrame.header(),
+                decodedFrame.body(), filterContext);
+        if (stage == filterContext.forwardRequestStage) {
+            return filterContext.forwardedRequest;
+        }
+        return stage instanceof InternalCompletionStage ? ((InternalCompletionStage<RequestFilterResult>) stage).getUnderlyingCompletableFuture()
+                : stage.toCompletableFuture();
+    }
+
+    private boolean handleCompletedResponse(InternalFilterContext filterContext, DecodedResponseFrame<?> decodedFrame,
+                                            CompletableFuture<ResponseFilterResult> future) {
+        ResponseFilterResult responseFilterResult = null;
+        Throwable throwable = null;
+        try {
+            responseFilterResult = future.join();
+        }
+        catch (CompletionException | CancellationException e) {
+            throwable = e;
+        }
+        boolean forward = handleResponseFilterResult(filterContext.index, decodedFrame, responseFilterResult, throwable);
+        releaseFilterContext(filterContext);
+        return forward;
+    }
+
+    private boolean handleCompletedRequest(InternalFilterContext filterContext, DecodedRequestFrame<?> decodedFrame, ChannelPromise promise,
+                                           CompletableFuture<RequestFilterResult> future) {
+        RequestFilterResult requestFilterResult = null;
+        Throwable throwable = null;
+        try {
+            requestFilterResult = future.join();
+        }
+        catch (CompletionException | CancellationException e) {
+            throwable = e;
+        }
+        boolean forward = handleRequestFilterResult(filterContext.index, decodedFrame, promise, requestFilterResult, throwable);
+        releaseFilterContext(filterContext);
+        return forward;
+    }
+
+    /**
+     * @return true if the response should be passed to the next filter in the chain.
+     */
+    private boolean handleResponseFilterResult(int index, DecodedResponseFrame<?> decodedFrame, ResponseFilterResult responseFilterResult, Throwable throwable) {
+        if (throwable != null) {
+            handleFilteringException(index, throwable, decodedFrame);
+            return false;
+        }
+        try {
+            validateFilterResultNonNull(responseFilterResult);
+            if (responseFilterResult.drop()) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("{}: Filter{} drops {} response",
+                            channelDescriptor(), filterDescriptor(index), decodedFrame.apiKey());
+                }
+                // the frame won't be encoded, so release any buffers it holds now
+                decodedFrame.release();
+                return false;
+            }
+
+            if (responseFilterResult.message() != null) {
+                ResponseHeaderData header = responseFilterResult.header() == null ? decodedFrame.header() : (ResponseHeaderData) responseFilterResult.header();
+                checkForwardedResponse(decodedFrame, header, responseFilterResult.message());
+                if (!responseFilterResult.closeConnection()) {
+                    return true;
+                }
+                readDecodedResponse(decodedFrame, index - 1);
+            }
+
+            if (responseFilterResult.closeConnection()) {
+                closeConnection();
+            }
+        }
+        catch (RuntimeException | AssertionError e) {
+            handleFilteringException(index, e, decodedFrame);
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the request should be passed to the next filter in the chain.
+     */
+    private boolean handleRequestFilterResult(int index, DecodedRequestFrame<?> decodedFrame, ChannelPromise promise, RequestFilterResult requestFilterResult,
+                                              Throwable throwable) {
+        if (throwable != null) {
+            handleFilteringException(index, throwable, decodedFrame);
+            return false;
+        }
+        try {
+            validateFilterResultNonNull(requestFilterResult);
+            if (requestFilterResult.drop()) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("{}: Filter{} drops {} request",
+                            channelDescriptor(), filterDescriptor(index), decodedFrame.apiKey());
+                }
+                // the frame won't be encoded, so release any buffers it holds now
+                decodedFrame.release();
+                return false;
+            }
+
+            if (requestFilterResult.message() != null) {
+                if (requestFilterResult.shortCircuitResponse()) {
+                    forwardShortCircuitResponse(index, decodedFrame, requestFilterResult);
+                }
+                else {
+                    checkForwardedRequest(decodedFrame, requestFilterResult);
+                    if (!requestFilterResult.closeConnection()) {
+                        return true;
+                    }
+                    writeDecodedRequest(decodedFrame, index + 1, promise);
+                }
+            }
+
+            if (requestFilterResult.closeConnection()) {
+                if (requestFilterResult.message() != null) {
+                    ctx.flush();
+                }
+                closeConnection();
+            }
+        }
+        catch (RuntimeException | AssertionError e) {
+            handleFilteringException(index, e, decodedFrame);
+        }
+        return false;
+    }
+
+    private void handleFilteringException(int index, Throwable t, DecodedFrame<?, ?> decodedFrame) {
+        if (LOGGER.isWarnEnabled()) {
+            var direction = decodedFrame.header() instanceof RequestHeaderData ? "request" : "response";
+            LOGGER.atWarn().setMessage("{}: Filter{} for {} {} ended exceptionally - closing connection. Cause message {}")
+                    .addArgument(channelDescriptor())
+                    .addArgument(direction)
+                    .addArgument(filterDescriptor(index))
+                    .addArgument(decodedFrame.apiKey())
+                    .addArgument(t.getMessage())
+                    .setCause(LOGGER.isDebugEnabled() ? t : null)
+                    .log();
+        }
+        closeConnection();
+    }
+
+    private <F extends FilterResult> CompletableFuture<F> handleDeferredStage(int index, DecodedFrame<?, ?> decodedFrame, CompletableFuture<F> future) {
+        hold(decodedFrame);
+        promiseFactory.wrapWithTimeLimit(future,
+                () -> "Deferred work for filter %s did not complete processing within %s ms %s %s".formatted(filterDescriptor(index), timeoutMs,
+                        decodedFrame instanceof DecodedRequestFrame ? "request" : "response", decodedFrame.apiKey()));
+        return future.thenApplyAsync(filterResult -> filterResult, ctx.executor());
+    }
+
+    /**
+     * Queues a frame behind deferred work.
+     */
+    private void enqueue(Object frame) {
+        queuedFrames.add(frame);
+        hold(frame);
+    }
+
+    /**
+     * Takes a frame off the queue once the deferred work ahead of it has completed, however it completed.
+     * @return true if the frame is to be passed on, false if it has been discarded because the channel has closed.
+     */
+    private boolean dequeue(Object frame) {
+        if (!queuedFrames.remove(frame)) {
+            return false;
+        }
+        release(frame);
+        if (!ctx.channel().isOpen()) {
+            discard(frame);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Discards the frames still queued behind deferred work, releasing their buffers.
+     */
+    private void discardQueuedFrames() {
+        for (Object frame : queuedFrames) {
+            release(frame);
+            discard(frame);
+        }
+        queuedFrames.clear();
+    }
+
+    private static void discard(Object frame) {
+        if (frame instanceof InternalRequestFrame<?> internalRequestFrame) {
+            // the filter which sent it would otherwise wait for its timeout
+            internalRequestFrame.promise().completeExceptionally(new ClosedChannelException());
+        }
+        if (frame instanceof DecodedFrame<?, ?> decodedFrame) {
+            decodedFrame.release();
+        }
+        else if (frame instanceof OpaqueFrame opaqueFrame) {
+            opaqueFrame.buf().release();
+        }
+        else {
+            ReferenceCountUtil.release(frame);
+        }
+    }
+
+    /**
+     * Accounts for a frame being held up by deferred work, pausing reads from the client
+     * if that exhausts the window.
+     */
+    private void hold(Object frame) {
+        int size = MemoryBudget.sizeOf(frame);
+        heldFrames++;
+        heldBytes += size;
+        memoryAccount.reserve(size);
+        if (!readsPaused && (heldFrames >= maxHeldFrames || heldBytes >= maxHeldBytes)) {
+            readsPaused = true;
+            ReadPauses.pause(inboundChannel, ReadPauses.Reason.DEFERRED_REQUEST_WINDOW);
+        }
+    }
+
+    /**
+     * Accounts for a frame no longer being held up, resuming reads from the client
+     * once there's room in the window, unless they are paused for another reason too.
+     */
+    private void release(Object frame) {
+        int size = MemoryBudget.sizeOf(frame);
+        heldFrames--;
+        heldBytes -= size;
+        memoryAccount.release(size);
+        if (readsPaused && heldFrames < maxHeldFrames && heldBytes < maxHeldBytes) {
+            readsPaused = false;
+            ReadPauses.resume(inboundChannel, ReadPauses.Reason.DEFERRED_REQUEST_WINDOW);
+        }
+    }
+
+    private <T> CompletionStage<T> offload(Callable<T> work) {
+        Objects.requireNonNull(work);
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable task = () -> runOffloaded(work, future);
+        if (ctx.executor().inEventLoop()) {
+            enqueueOffloaded(task);
+        }
+        else {
+            ctx.executor().execute(() -> enqueueOffloaded(task));
+        }
+        return future.minimalCompletionStage();
+    }
+
+    private void enqueueOffloaded(Runnable task) {
+        offloaded.add(task);
+        if (!offloading) {
+            runNextOffloaded();
+        }
+    }
+
+    private void runNextOffloaded() {
+        Runnable task = offloaded.poll();
+        offloading = task != null;
+        if (task != null) {
+            task.run();
+        }
+    }
+
+    private <T> void runOffloaded(Callable<T> work, CompletableFuture<T> future) {
+        try {
+            workerPool.execute(() -> {
+                T result;
+                try {
+                    result = work.call();
+                }
+                catch (Throwable t) {
+                    offloadCompleted(() -> future.completeExceptionally(t));
+                    return;
+                }
+                offloadCompleted(() -> future.complete(result));
+            });
+        }
+        catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            runNextOffloaded();
+        }
+    }
+
+    /**
+     * Completes offloaded work on the event loop, then starts the work offloaded after it.
+     */
+    private void offloadCompleted(Runnable completion) {
+        ctx.executor().execute(() -> {
+            completion.run();
+            runNextOffloaded();
+        });
+    }
+
+    private void deferredResponseCompleted(int index) {
+        readFutures[index].whenComplete((u, t) -> inboundChannel.flush());
+    }
+
+    private void deferredRequestCompleted(int index) {
+        // flush so that writes from this completion can be driven towards the broker
+        ctx.flush();
+        // chain a flush to force any pending writes towards the broker
+        writeFutures[index].whenComplete((u, t) -> ctx.flush());
+        // flush inbound in case of short-circuit
+        inboundChannel.flush();
+    }
+
+    private void checkForwardedRequest(DecodedRequestFrame<?> decodedFrame, RequestFilterResult requestFilterResult) {
+        var header = requestFilterResult.header() == null ? decodedFrame.header() : requestFilterResult.header();
+        ApiMessage message = requestFilterResult.message();
+        if (decodedFrame.body() != message) {
+            throw new IllegalStateException();
+        }
+        if (decodedFrame.header() != header) {
+            throw new IllegalStateException();
+        }
+        // check it's a request
+        String name = message.getClass().getName();
+        if (!name.endsWith("RequestData")) {
+            throw new AssertionError("Attempt to use forwardRequest with a non-request: " + name);
+        }
+    }
+
+    private void checkForwardedResponse(DecodedFrame<?, ?> decodedFrame, ResponseHeaderData header, ApiMessage message) {
+        // check it's a response
+        String name = message.getClass().getName();
+        if (!name.endsWith("ResponseData")) {
+            throw new AssertionError("Attempt to use forwardResponse with a non-response: " + name);
+        }
+        if (decodedFrame.body() != message) {
+            throw new AssertionError();
+        }
+        if (decodedFrame.header() != header) {
+            throw new AssertionError();
+        }
+    }
+
+    private void forwardShortCircuitResponse(int index, DecodedRequestFrame<?> decodedFrame, RequestFilterResult requestFilterResult) {
+        if (decodedFrame.hasResponse()) {
+            var header = requestFilterResult.header() == null ? new ResponseHeaderData() : ((ResponseHeaderData) requestFilterResult.header());
+            header.setCorrelationId(decodedFrame.correlationId());
+            ApiMessage message = requestFilterResult.message();
+            // check it's a response
+            String name = message.getClass().getName();
+            if (!name.endsWith("ResponseData")) {
+                throw new AssertionError("Attempt to use forwardResponse with a non-response: " + name);
+            }
+            if (message.apiKey() != decodedFrame.apiKey().id) {
+                throw new AssertionError(
+                        "Attempt to respond with ApiMessage of type " + ApiKeys.forId(message.apiKey()) + " but request is of type " + decodedFrame.apiKey());
+            }
+            DecodedResponseFrame<?> responseFrame = new DecodedResponseFrame<>(decodedFrame.apiVersion(), decodedFrame.correlationId(),
+                    header, message);
+            decodedFrame.transferBuffersTo(responseFrame);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("{}: Forwarding response: {}", channelDescriptor(), decodedFrame);
+            }
+            // the response flows back through the filters that have already seen the request
+            readDecodedResponse(responseFrame, index - 1);
+            // required to flush the message back to the client
+            ctx.fireChannelReadComplete();
+        }
+        else {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("{}: Filter {} attempted to short-circuit respond to a message with apiKey {}" +
+                        " that has no response in the Kafka Protocol, dropping response",
+                        channelDescriptor(), filterDescriptor(index), decodedFrame.apiKey());
+            }
+        }
+    }
+
+    private void closeConnection() {
+        ctx.close().addListener(future -> {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("{}: Channel closed", channelDescriptor());
+            }
+        });
+    }
+
+    private String channelDescriptor() {
+        return ctx.channel().toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void completeInternalResponse(int index, InternalResponseFrame<?> decodedFrame) {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("{}: Completing {} response for request sent by filter{}: {}",
+                    channelDescriptor(), decodedFrame.apiKey(), filterDescriptor(index), decodedFrame);
+        }
+        CompletableFuture<ApiMessage> p = (CompletableFuture<ApiMessage>) decodedFrame
+                .promise();
+        p.complete(decodedFrame.body());
+    }
+
+    private static <F extends FilterResult> F validateFilterResultNonNull(F f) {
+        return Objects.requireNonNullElseGet(f, () -> {
+            throw new IllegalStateException("filter completion must not yield a null result");
+        });
+    }
+
+    private class InternalFilterContext implements FilterContext, ApiVersionsService {
+
+        private final int index;
+        private DecodedFrame<?, ?> decodedFrame;
+        // the stages handed to the filter are minimal stages, which the filter cannot complete,
+        // while the handler uses the completed futures they were derived from
+        private CompletableFuture<RequestFilterResult> forwardedRequest;
+        private CompletionStage<RequestFilterResult> forwardRequestStage;
+        private CompletableFuture<ResponseFilterResult> forwardedResponse;
+        private CompletionStage<ResponseFilterResult> forwardResponseStage;
+
+        InternalFilterContext(int index, DecodedFrame<?, ?> decodedFrame) {
+            this.index = index;
+            this.decodedFrame = decodedFrame;
+        }
+
+        @Override
+        public String channelDescriptor() {
+            return FilterChainHandler.this.channelDescriptor();
+        }
+
+        @Override
+        public ByteBufferOutputStream createByteBufferOutputStream(int initialCapacity) {
+            final ByteBuf buffer = ctx.alloc().ioBuffer(initialCapacity);
+            decodedFrame.add(buffer);
+            return new ByteBufOutputStream(buffer);
+        }
+
+        @Nullable
+        @Override
+        public String sniHostname() {
+            return sniHostname;
+        }
+
+        public String getVirtualClusterName() {
+            return virtualCluster.getClusterName();
+        }
+
+        @Override
+        public ApiVersionsService getApiVersionsService() {
+            return this;
+        }
+
+        @Override
+        public RequestFilterResultBuilder requestFilterResultBuilder() {
+            return new RequestFilterResultBuilderImpl();
+        }
+
+        @Override
+        public ResponseFilterResultBuilder responseFilterResultBuilder() {
+            return new ResponseFilterResultBuilderImpl();
+        }
+
+        @Override
+        public CompletionStage<RequestFilterResult> forwardRequest(RequestHeaderData header, ApiMessage request) {
+            if (header == decodedFrame.header() && request == decodedFrame.body()) {
+                // forwarding the frame unchanged is the common case, so the stage is cached along with the context
+                if (forwardRequestStage == null) {
+                    forwardedRequest = CompletableFuture.completedFuture(new ForwardedFrame(this));
+                    forwardRequestStage = forwardedRequest.minimalCompletionStage();
+                }
+                return forwardRequestStage;
+            }
+            return requestFilterResultBuilder().forward(header, request).completed();
+        }
+
+        @Override
+        public CompletionStage<ResponseFilterResult> forwardResponse(ResponseHeaderData header, ApiMessage response) {
+            if (header == decodedFrame.header() && response == decodedFrame.body()) {
+                if (forwardResponseStage == null) {
+                    forwardedResponse = CompletableFuture.completedFuture(new ForwardedFrame(this));
+                    forwardResponseStage = forwardedResponse.minimalCompletionStage();
+                }
+                return forwardResponseStage;
+            }
+            return responseFilterResultBuilder().forward(header, response).completed();
+        }
+
+        @NonNull
+        @Override
+        public <M extends ApiMessage> CompletionStage<M> sendRequest(@NonNull RequestHeaderData header,
+                                                                     @NonNull ApiMessage request) {
+            Objects.requireNonNull(header);
+            Objects.requireNonNull(request);
+
+            var apiKey = ApiKeys.forId(request.apiKey());
+            header.setRequestApiKey(apiKey.id);
+            header.setCorrelationId(-1);
+
+            if (!apiKey.isVersionSupported(header.requestApiVersion())) {
+                throw new IllegalArgumentException("apiKey %s does not support version %d. the supported version range for this api key is %d...%d (inclusive)."
+                        .formatted(apiKey, header.requestApiVersion(), apiKey.oldestVersion(), apiKey.latestVersion()));
+            }
+
+            var hasResponse = apiKey != ApiKeys.PRODUCE || ((ProduceRequestData) request).acks() != 0;
+            CompletableFuture<M> filterPromise = promiseFactory.newTimeLimitedPromise(
+                    () -> "Asynchronous %s request made by filter %s failed to complete within %s ms.".formatted(apiKey, filterDescriptor(index), timeoutMs));
+            var frame = new InternalRequestFrame<>(
+                    header.requestApiVersion(), header.correlationId(), hasResponse,
+                    filters[index], filterPromise, header, request);
+
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("{}: Sending request: {}", FilterChainHandler.this.channelDescriptor(), frame);
+            }
+            ChannelPromise writePromise = ctx.channel().newPromise();
+            // the request is passed to the filters after the sender
+            if (ctx.executor().inEventLoop()) {
+                sendInternalRequest(frame, writePromise);
+            }
+            else {
+                ctx.executor().execute(() -> sendInternalRequest(frame, writePromise));
+            }
+
+            // Complete the filter promise for an ack-less Produce
+            // based on the success of the channel write
+            // (for all other requests the filter promise will be completed
+            // when handling the response, which won't arrive if the write fails).
+            writePromise.addListener(f -> {
+                if (!f.isSuccess()) {
+                    filterPromise.completeExceptionally(f.cause());
+                }
+                else if (!hasResponse) {
+                    filterPromise.complete(null);
+                }
+            });
+
+            return filterPromise.minimalCompletionStage();
+        }
+
+        private void sendInternalRequest(InternalRequestFrame<?> frame, ChannelPromise writePromise) {
+            writeDecodedRequest(frame, index + 1, writePromise);
+            ctx.flush();
+        }
+
+        @NonNull
+        @Override
+        public <T> CompletionStage<T> offload(@NonNull Callable<T> work) {
+            return FilterChainHandler.this.offload(work);
+        }
+
+        @Override
+        public CompletionStage<Optional<ApiVersionRanges>> getApiVersionRanges(ApiKeys keys) {
+            return apiVersionService.getApiVersionRanges(keys, this);
+        }
+
+    }
+
+    /**
+     * The result of a filter forwarding the frame it was given, unchanged.
+     * It reads the frame from the filter's context, so that it can be reused along with the context.
+     */
+    private record ForwardedFrame(InternalFilterContext filterContext) implements RequestFilterResult, ResponseFilterResult {
+
+        @Override
+        public ApiMessage header() {
+            return filterContext.decodedFrame.header();
+        }
+
+        @Override
+        public ApiMessage message() {
+            return filterContext.decodedFrame.body();
+        }
+
+        @Override
+        public boolean shortCircuitResponse() {
+            return false;
+        }
+
+        @Override
+        public boolean closeConnection() {
+            return false;
+        }
+
+        @Override
+        public boolean drop() {
+            return false;
+        }
+    }
+
+}
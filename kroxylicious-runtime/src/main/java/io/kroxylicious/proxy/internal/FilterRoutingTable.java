@@ -0,0 +1,152 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.proxy.internal;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import org.apache.kafka.common.protocol.ApiKeys;
+
+import io.kroxylicious.proxy.filter.FilterAndInvoker;
+import io.kroxylicious.proxy.filter.FilterInvoker;
+import io.kroxylicious.proxy.internal.codec.DecodePredicate;
+
+/**
+ * Precomputes which filters of a chain handle the requests and responses of each API key, so that
+ * frames are only passed to the filters interested in them, and which API keys and versions need
+ * decoding, so that the decoders can tell with a single lookup.
+ * <p>A route is a bitmask of the positions in the chain of the filters which handle any version of an API key.
+ * A filter which handles only some versions may be passed a frame it doesn't handle, in which case its invoker
+ * forwards it. For the same reason filters beyond the 64th, and versions which the proxy doesn't know about,
+ * are always routed to every filter.</p>
+ */
+public final class FilterRoutingTable implements DecodePredicate {
+
+    static final long ALL_FILTERS = -1L;
+
+    private static final ApiKeys[] API_KEYS = ApiKeys.values();
+    private static final int API_KEY_SLOTS = maxApiKeyId() + 1;
+    private static final int VERSION_SLOTS = maxLatestVersion() + 1;
+
+    private final List<FilterInvoker> invokers;
+    // indexed by api key id
+    private final long[] requestRoutes;
+    private final long[] responseRoutes;
+    // bit sets indexed by api key id * VERSION_SLOTS + api version
+    private final long[] decodeRequests;
+    private final long[] decodeResponses;
+
+    public FilterRoutingTable(List<FilterAndInvoker> filterAndInvokers) {
+        this.invokers = filterAndInvokers.stream().map(FilterAndInvoker::invoker).map(Objects::requireNonNull).toList();
+        this.requestRoutes = new long[API_KEY_SLOTS];
+        this.responseRoutes = new long[API_KEY_SLOTS];
+        this.decodeRequests = new long[bitSetLength(API_KEY_SLOTS * VERSION_SLOTS)];
+        this.decodeResponses = new long[bitSetLength(API_KEY_SLOTS * VERSION_SLOTS)];
+        for (ApiKeys apiKey : API_KEYS) {
+            for (short apiVersion = 0; apiVersion <= apiKey.latestVersion(true); apiVersion++) {
+                int slot = apiKey.id * VERSION_SLOTS + apiVersion;
+                for (int index = 0; index < invokers.size(); index++) {
+                    var invoker = invokers.get(index);
+                    if (invoker.shouldHandleRequest(apiKey, apiVersion)) {
+                        requestRoutes[apiKey.id] |= bit(index);
+                        decodeRequests[slot >>> 6] |= 1L << slot;
+                    }
+                    if (invoker.shouldHandleResponse(apiKey, apiVersion)) {
+                        responseRoutes[apiKey.id] |= bit(index);
+                        decodeResponses[slot >>> 6] |= 1L << slot;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the bitmask of the filters to which requests with the given key and version are passed.
+     * @see #isRouted(long, int)
+     */
+    public long requestRoute(ApiKeys apiKey, short apiVersion) {
+        return isKnownVersion(apiKey, apiVersion) ? requestRoutes[apiKey.id] : ALL_FILTERS;
+    }
+
+    /**
+     * @return the bitmask of the filters to which responses with the given key and version are passed.
+     * @see #isRouted(long, int)
+     */
+    public long responseRoute(ApiKeys apiKey, short apiVersion) {
+        return isKnownVersion(apiKey, apiVersion) ? responseRoutes[apiKey.id] : ALL_FILTERS;
+    }
+
+    /**
+     * @return true if the given route passes frames to the filter at the given position in the chain.
+     */
+    public static boolean isRouted(long route, int index) {
+        return index >= Long.SIZE || (route & (1L << index)) != 0;
+    }
+
+    @Override
+    public boolean shouldDecodeRequest(ApiKeys apiKey, short apiVersion) {
+        if (isKnownVersion(apiKey, apiVersion)) {
+            return isSet(decodeRequests, apiKey.id * VERSION_SLOTS + apiVersion);
+        }
+        return anyInvoker(invoker -> invoker.shouldHandleRequest(apiKey, apiVersion));
+    }
+
+    @Override
+    public boolean shouldDecodeResponse(ApiKeys apiKey, short apiVersion) {
+        if (isKnownVersion(apiKey, apiVersion)) {
+            return isSet(decodeResponses, apiKey.id * VERSION_SLOTS + apiVersion);
+        }
+        return anyInvoker(invoker -> invoker.shouldHandleResponse(apiKey, apiVersion));
+    }
+
+    private boolean anyInvoker(Predicate<FilterInvoker> handles) {
+        for (var invoker : invokers) {
+            if (handles.test(invoker)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isKnownVersion(ApiKeys apiKey, short apiVersion) {
+        return apiVersion >= 0 && apiVersion <= apiKey.latestVersion(true);
+    }
+
+    private static boolean isSet(long[] bitSet, int slot) {
+        return (bitSet[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private static long bit(int index) {
+        return index >= Long.SIZE ? 0 : 1L << index;
+    }
+
+    private static int bitSetLength(int bits) {
+        return (bits + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    private static int maxApiKeyId() {
+        int max = 0;
+        for (ApiKeys apiKey : API_KEYS) {
+            max = Math.max(max, apiKey.id);
+        }
+        return max;
+    }
+
+    private static int maxLatestVersion() {
+        int max = 0;
+        for (ApiKeys apiKey : API_KEYS) {
+            max = Math.max(max, apiKey.latestVersion(true));
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "FilterRoutingTable{" + invokers + "}";
+    }
+}
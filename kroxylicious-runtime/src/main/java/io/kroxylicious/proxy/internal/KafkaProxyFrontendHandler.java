@@ -10,7 +10,10 @@ import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.apache.kafka.common.message.ApiVersionsRequestData;
 import org.apache.kafka.common.message.ApiVersionsResponseData;
@@ -23,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
@@ -31,8 +35,10 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.handler.codec.DecoderException;
 import io.netty.handler.codec.haproxy.HAProxyMessage;
+import io.netty.handler.codec.haproxy.HAProxyMessageDecoder;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SniCompletionEvent;
 
@@ -40,9 +46,9 @@ import io.kroxylicious.proxy.filter.FilterAndInvoker;
 import io.kroxylicious.proxy.filter.NetFilter;
 import io.kroxylicious.proxy.frame.DecodedRequestFrame;
 import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+import io.kroxylicious.proxy.frame.OpaqueResponseFrame;
 import io.kroxylicious.proxy.frame.RequestFrame;
 import io.kroxylicious.proxy.internal.codec.CorrelationManager;
-import io.kroxylicious.proxy.internal.codec.DecodePredicate;
 import io.kroxylicious.proxy.internal.codec.FrameOversizedException;
 import io.kroxylicious.proxy.internal.codec.KafkaRequestEncoder;
 import io.kroxylicious.proxy.internal.codec.KafkaResponseDecoder;
@@ -59,6 +65,8 @@ public class KafkaProxyFrontendHandler
     /** Cache ApiVersions response which we use when returning ApiVersions ourselves */
     private static final ApiVersionsResponseData API_VERSIONS_RESPONSE;
 
+    static final int BOOTSTRAP_CONNECT_TIMEOUT_MILLIS = 10_000;
+
     static {
         var objectMapper = new ObjectMapper();
         try (var parser = KafkaProxyFrontendHandler.class.getResourceAsStream("/ApiVersions-3.2.json")) {
@@ -72,6 +80,10 @@ public class KafkaProxyFrontendHandler
     private final boolean logNetwork;
     private final boolean logFrames;
     private final ApiVersionsServiceImpl apiVersionService;
+    private final Executor workerPool;
+    private final UpstreamMultiplexer upstreamMultiplexer;
+    private final MemoryBudget memoryBudget;
+    private MemoryBudget.Account memoryAccount = MemoryBudget.Account.NONE;
     private final VirtualCluster virtualCluster;
 
     private ChannelHandlerContext outboundCtx;
@@ -107,7 +119,10 @@ public class KafkaProxyFrontendHandler
         HA_PROXY,
         /** A Kafka ApiVersions request has been received */
         API_VERSIONS,
-        /** Some other Kafka request has been received and we're in the process of connecting to the outbound cluster */
+        /**
+         * Some other Kafka request has been received (or the channel became active, when connecting upstream on accept)
+         * and we're in the process of connecting to the outbound cluster
+         */
         CONNECTING,
         /** The outbound connection is connected but not yet active */
         CONNECTED,
@@ -132,18 +147,26 @@ public class KafkaProxyFrontendHandler
     private State state = State.START;
 
     private boolean isInboundBlocked = true;
+    // true between a backend connection made before the client's first request and that request
+    private boolean preConnected = false;
     private HAProxyMessage haProxyMessage;
 
     KafkaProxyFrontendHandler(NetFilter filter,
                               SaslDecodePredicate dp,
                               VirtualCluster virtualCluster,
-                              ApiVersionsServiceImpl apiVersionService) {
+                              ApiVersionsServiceImpl apiVersionService,
+                              Executor workerPool,
+                              UpstreamMultiplexer upstreamMultiplexer,
+                              MemoryBudget memoryBudget) {
         this.filter = filter;
         this.dp = dp;
         this.virtualCluster = virtualCluster;
         this.logNetwork = virtualCluster.isLogNetwork();
         this.logFrames = virtualCluster.isLogFrames();
         this.apiVersionService = apiVersionService;
+        this.workerPool = workerPool;
+        this.upstreamMultiplexer = upstreamMultiplexer;
+        this.memoryBudget = memoryBudget;
     }
 
     private IllegalStateException illegalState(String msg) {
@@ -165,7 +188,9 @@ public class KafkaProxyFrontendHandler
         outboundCtx = ctx;
         // connection is complete, so first forward the buffered message
         for (Object bufferedMsg : bufferedMsgs) {
+            int size = MemoryBudget.sizeOf(bufferedMsg);
             forwardOutbound(ctx, bufferedMsg);
+            memoryAccount.release(size);
         }
         bufferedMsgs = null; // don't pin in memory once we no longer need it
         if (pendingReadComplete) {
@@ -176,7 +201,7 @@ public class KafkaProxyFrontendHandler
 
         var inboundChannel = this.inboundCtx.channel();
         // once buffered message has been forwarded we enable auto-read to start accepting further messages
-        inboundChannel.config().setAutoRead(true);
+        ReadPauses.resume(inboundChannel, ReadPauses.Reason.CONNECTING);
     }
 
     @Override
@@ -190,6 +215,12 @@ public class KafkaProxyFrontendHandler
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (preConnected && msg instanceof RequestFrame) {
+            preConnected = false;
+            if (handlePreConnectedApiVersionsFrame(ctx, msg)) {
+                return;
+            }
+        }
         if (state == State.OUTBOUND_ACTIVE) { // post-backend connection
             forwardOutbound(ctx, msg);
         }
@@ -228,8 +259,33 @@ public class KafkaProxyFrontendHandler
             ctx.channel().read();
         }
         else {
-            bufferMsgAndSelectServer(msg);
+            // The cached versions are those of the broker actually connected to, so it has to be selected first
+            selectServer();
+            if (writeCachedApiVersionsResponse(ctx, apiVersionsFrame)) {
+                // The upstream's versions are already known, so the request needn't wait for the backend connection
+                ctx.channel().read();
+            }
+            else {
+                bufferMessage(msg);
+            }
+        }
+    }
+
+    /**
+     * Handles the client's first request when the backend connection was made before it arrived.
+     * @return true if the request was an ApiVersions request answered from the cache.
+     */
+    private boolean handlePreConnectedApiVersionsFrame(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof DecodedRequestFrame<?> frame && frame.apiKey() == ApiKeys.API_VERSIONS)) {
+            return false;
         }
+        DecodedRequestFrame<ApiVersionsRequestData> apiVersionsFrame = (DecodedRequestFrame<ApiVersionsRequestData>) msg;
+        storeApiVersionsFeatures(apiVersionsFrame);
+        if (writeCachedApiVersionsResponse(ctx, apiVersionsFrame)) {
+            ctx.channel().read();
+            return true;
+        }
+        return false;
     }
 
     private boolean isSubsequentRequestFrame(Object msg) {
@@ -256,11 +312,15 @@ public class KafkaProxyFrontendHandler
     }
 
     private void bufferMsgAndSelectServer(Object msg) {
-        state = State.CONNECTING;
         // But for any other request we'll need a backend connection
         // (for which we need to ask the filter which cluster to connect to
         // and with what filters)
         bufferMessage(msg);
+        selectServer();
+    }
+
+    private void selectServer() {
+        state = State.CONNECTING;
         // TODO ensure that the filter makes exactly one upstream connection?
         // Or not for the topic routing case
 
@@ -270,6 +330,7 @@ public class KafkaProxyFrontendHandler
 
     private void bufferMessage(Object msg) {
         this.bufferedMsgs.add(msg);
+        memoryAccount.reserve(MemoryBudget.sizeOf(msg));
     }
 
     @Override
@@ -281,21 +342,50 @@ public class KafkaProxyFrontendHandler
             LOGGER.debug("{}: Connecting to backend broker {} using filters {}",
                     inboundCtx.channel().id(), remote, filters);
         }
+        connect(remote, filters, new HashSet<>());
+    }
+
+    /**
+     * Makes a connection attempt. If it fails and the target is a bootstrap server, the attempt is repeated with
+     * another of the bootstrap servers, until each has been attempted once.
+     * @param remote The target.
+     * @param filters The filters.
+     * @param attempted The bootstrap servers already attempted.
+     */
+    private void connect(HostPort remote, List<FilterAndInvoker> filters, Set<HostPort> attempted) {
         var correlationManager = new CorrelationManager();
+        apiVersionService.connectingTo(remote);
 
         final Channel inboundChannel = inboundCtx.channel();
+        var bootstrapServers = virtualCluster.bootstrapServers();
+        boolean failover = bootstrapServers.canFailover() && bootstrapServers.isBootstrapServer(remote);
+        attempted.add(remote);
 
         // Start the upstream connection attempt.
         Bootstrap b = new Bootstrap();
         backendHandler = new KafkaProxyBackendHandler(this, inboundCtx);
-        b.group(inboundChannel.eventLoop())
-                .channel(inboundChannel.getClass())
-                .handler(backendHandler)
+        var watermarks = virtualCluster.writeBufferWatermarks();
+        b.handler(backendHandler)
                 .option(ChannelOption.AUTO_READ, true)
-                .option(ChannelOption.TCP_NODELAY, true);
+                .option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(watermarks.lowBytes(), watermarks.highBytes()));
+        if (failover) {
+            // don't wait for the OS's timeout when another server could be tried instead
+            b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, BOOTSTRAP_CONNECT_TIMEOUT_MILLIS);
+        }
 
-        LOGGER.trace("Connecting to outbound {}", remote);
-        ChannelFuture connectFuture = initConnection(remote.host(), remote.port(), b);
+        boolean multiplexed = virtualCluster.upstreamMultiplexing().isPresent();
+        ChannelFuture connectFuture;
+        if (multiplexed) {
+            LOGGER.trace("Connecting to outbound {} over a shared connection", remote);
+            connectFuture = upstreamMultiplexer.connect(b, inboundChannel.eventLoop(), inboundChannel.getClass(), virtualCluster, remote);
+        }
+        else {
+            b.group(inboundChannel.eventLoop())
+                    .channel(inboundChannel.getClass())
+                    .option(ChannelOption.TCP_NODELAY, true);
+            LOGGER.trace("Connecting to outbound {}", remote);
+            connectFuture = initConnection(remote.host(), remote.port(), b);
+        }
         Channel outboundChannel = connectFuture.channel();
         ChannelPipeline pipeline = outboundChannel.pipeline();
 
@@ -307,24 +397,44 @@ public class KafkaProxyFrontendHandler
         if (logFrames) {
             pipeline.addFirst("frameLogger", new LoggingHandler("io.kroxylicious.proxy.internal.UpstreamFrameLogger"));
         }
-        addFiltersToPipeline(filters, pipeline, inboundChannel);
-        pipeline.addFirst("responseDecoder", new KafkaResponseDecoder(correlationManager, virtualCluster.socketFrameMaxSizeBytes()));
+        // the filter instances belong to this connection, so their routes are worked out here
+        var routingTable = new FilterRoutingTable(filters);
+        addFiltersToPipeline(filters, routingTable, pipeline, inboundChannel);
+        pipeline.addFirst("responseDecoder", new KafkaResponseDecoder(correlationManager, virtualCluster.socketFrameMaxSizeBytes(),
+                virtualCluster.streamedFrameMinSizeBytes()));
         pipeline.addFirst("requestEncoder", new KafkaRequestEncoder(correlationManager));
         if (logNetwork) {
             pipeline.addFirst("networkLogger", new LoggingHandler("io.kroxylicious.proxy.internal.UpstreamNetworkLogger"));
         }
 
-        virtualCluster.getUpstreamSslContext().ifPresent(c -> pipeline.addFirst("ssl", c.newHandler(outboundChannel.alloc())));
+        if (!multiplexed) {
+            // shared connections have their own TLS
+            // naming the broker lets the TLS engine resume a session from an earlier connection to it
+            virtualCluster.getUpstreamSslContext().ifPresent(c -> pipeline.addFirst("ssl",
+                    c.newHandler(outboundChannel.alloc(), remote.host(), remote.port(), virtualCluster.tlsHandshakeExecutor(workerPool))));
+        }
+        else {
+            pipeline.addFirst("multiplexer", upstreamMultiplexer.peerHandler(outboundChannel));
+        }
 
+        long connectStart = System.nanoTime();
         connectFuture.addListener(future -> {
             if (future.isSuccess()) {
+                bootstrapServers.connected(remote, System.nanoTime() - connectStart);
                 state = State.CONNECTED;
                 LOGGER.trace("{}: Outbound connected", inboundCtx.channel().id());
                 // Now we know which filters are to be used we need to update the DecodePredicate
                 // so that the decoder starts decoding the messages that the filters want to intercept
-                dp.setDelegate(DecodePredicate.forFilters(filters));
+                dp.setDelegate(routingTable);
             }
             else {
+                bootstrapServers.failed(remote);
+                HostPort next = failover && inboundChannel.isActive() ? bootstrapServers.select(attempted) : null;
+                if (next != null) {
+                    LOGGER.warn("Connection to bootstrap server {} failed with: {}, trying {}", remote, future.cause().getMessage(), next);
+                    connect(next, filters, attempted);
+                    return;
+                }
                 state = State.FAILED;
                 // Close the connection if the connection attempt has failed.
                 Throwable failureCause = future.cause();
@@ -342,10 +452,11 @@ public class KafkaProxyFrontendHandler
         return b.connect(remoteHost, remotePort);
     }
 
-    private void addFiltersToPipeline(List<FilterAndInvoker> filters, ChannelPipeline pipeline, Channel inboundChannel) {
-        for (var filter : filters) {
+    private void addFiltersToPipeline(List<FilterAndInvoker> filters, FilterRoutingTable routingTable, ChannelPipeline pipeline, Channel inboundChannel) {
+        if (!filters.isEmpty()) {
             // TODO configurable timeout
-            pipeline.addFirst(filter.toString(), new FilterHandler(filter, 20000, sniHostname, virtualCluster, inboundChannel, apiVersionService));
+            pipeline.addFirst("filterChain", new FilterChainHandler(filters, routingTable, 20000, virtualCluster.deferredRequestWindow(), sniHostname,
+                    virtualCluster, inboundChannel, apiVersionService, workerPool, memoryAccount));
         }
     }
 
@@ -389,6 +500,17 @@ public class KafkaProxyFrontendHandler
                 apiVersion, correlationId, header, API_VERSIONS_RESPONSE));
     }
 
+    private boolean writeCachedApiVersionsResponse(ChannelHandlerContext ctx, DecodedRequestFrame<ApiVersionsRequestData> frame) {
+        int correlationId = frame.correlationId();
+        ByteBuf response = apiVersionService.cachedResponse(frame.apiVersion(), correlationId);
+        if (response == null) {
+            return false;
+        }
+        LOGGER.debug("{}: Writing cached ApiVersions response", ctx.channel());
+        ctx.writeAndFlush(new OpaqueResponseFrame(response, correlationId, response.readableBytes()));
+        return true;
+    }
+
     private void storeApiVersionsFeatures(DecodedRequestFrame<ApiVersionsRequestData> frame) {
         // TODO check the format of the strings using a regex
         // Needed to reproduce the exact behaviour for how a broker handles this
@@ -403,7 +525,7 @@ public class KafkaProxyFrontendHandler
         }
         if (isInboundBlocked && outboundCtx.channel().isWritable()) {
             isInboundBlocked = false;
-            inboundCtx.channel().config().setAutoRead(true);
+            ReadPauses.resume(inboundCtx.channel(), ReadPauses.Reason.UPSTREAM_UNWRITABLE);
         }
     }
 
@@ -426,8 +548,8 @@ public class KafkaProxyFrontendHandler
             outboundChannel.flush();
         }
         if (!outboundChannel.isWritable()) {
-            ctx.channel().config().setAutoRead(false);
             isInboundBlocked = true;
+            ReadPauses.pause(ctx.channel(), ReadPauses.Reason.UPSTREAM_UNWRITABLE);
         }
 
     }
@@ -435,6 +557,7 @@ public class KafkaProxyFrontendHandler
     @Override
     public void channelInactive(ChannelHandlerContext ctx) {
         LOGGER.trace("INACTIVE on inbound {}", ctx.channel());
+        memoryAccount.close();
         if (outboundCtx == null) {
             return;
         }
@@ -545,11 +668,28 @@ public class KafkaProxyFrontendHandler
     @Override
     public void channelActive(ChannelHandlerContext ctx) throws Exception {
         this.inboundCtx = ctx;
+        this.memoryAccount = memoryBudget.register(ctx.channel());
         LOGGER.trace("{}: channelActive", inboundCtx.channel().id());
         // Initially the channel is not auto reading, so read the first batch of requests
-        ctx.channel().config().setAutoRead(false);
+        ReadPauses.pause(ctx.channel(), ReadPauses.Reason.CONNECTING);
         ctx.channel().read();
         super.channelActive(ctx);
+        if (canPreConnect(ctx)) {
+            // Nothing about the client's requests affects which broker or filters are used, so connect to the backend
+            // while waiting for the first request. Requests are buffered until the connection is active.
+            LOGGER.trace("{}: Connecting to backend before the first request", inboundCtx.channel().id());
+            preConnected = true;
+            state = State.CONNECTING;
+            filter.selectServer(this);
+        }
+    }
+
+    private boolean canPreConnect(ChannelHandlerContext ctx) {
+        // with authentication offload the backend connection is made once the client has authenticated,
+        // and the HAProxy message must be read before any request
+        return virtualCluster.connectUpstreamOnAccept()
+                && !dp.isAuthenticationOffloadEnabled()
+                && ctx.pipeline().get(HAProxyMessageDecoder.class) == null;
     }
 
     @Override
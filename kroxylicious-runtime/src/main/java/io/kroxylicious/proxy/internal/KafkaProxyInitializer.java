@@ -9,22 +9,29 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.apache.kafka.common.protocol.ApiKeys;
 import org.apache.kafka.common.security.auth.AuthenticateCallbackHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.handler.codec.haproxy.HAProxyMessageDecoder;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SniHandler;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateExecutor;
 
 import io.kroxylicious.proxy.bootstrap.FilterChainFactory;
 import io.kroxylicious.proxy.config.PluginFactoryRegistry;
@@ -54,10 +61,13 @@ public class KafkaProxyInitializer extends ChannelInitializer<SocketChannel> {
     private final EndpointReconciler endpointReconciler;
     private final PluginFactoryRegistry pfr;
     private final FilterChainFactory filterChainFactory;
+    private final UpstreamMultiplexer upstreamMultiplexer;
+    private final MemoryBudget memoryBudget;
 
     public KafkaProxyInitializer(FilterChainFactory filterChainFactory, PluginFactoryRegistry pfr, boolean tls,
                                  VirtualClusterBindingResolver virtualClusterBindingResolver, EndpointReconciler endpointReconciler,
-                                 boolean haproxyProtocol, Map<KafkaAuthnHandler.SaslMechanism, AuthenticateCallbackHandler> authnMechanismHandlers) {
+                                 boolean haproxyProtocol, Map<KafkaAuthnHandler.SaslMechanism, AuthenticateCallbackHandler> authnMechanismHandlers,
+                                 MemoryBudget memoryBudget) {
         this.pfr = pfr;
         this.endpointReconciler = endpointReconciler;
         this.haproxyProtocol = haproxyProtocol;
@@ -65,6 +75,8 @@ public class KafkaProxyInitializer extends ChannelInitializer<SocketChannel> {
         this.tls = tls;
         this.virtualClusterBindingResolver = virtualClusterBindingResolver;
         this.filterChainFactory = filterChainFactory;
+        this.upstreamMultiplexer = new UpstreamMultiplexer(filterChainFactory.workerPool());
+        this.memoryBudget = memoryBudget;
     }
 
     @Override
@@ -115,6 +127,8 @@ public class KafkaProxyInitializer extends ChannelInitializer<SocketChannel> {
     @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
     private void initTlsChannel(SocketChannel ch, ChannelPipeline pipeline, Optional<String> bindingAddress, int targetPort) {
         LOGGER.debug("Adding SSL/SNI handler");
+        // the executor for the handshake depends on the virtual cluster, which is only known once it has been resolved
+        var handshakeExecutor = new AtomicReference<Executor>(ImmediateExecutor.INSTANCE);
         pipeline.addLast(new SniHandler((sniHostname, promise) -> {
             try {
                 var stage = virtualClusterBindingResolver.resolve(Endpoint.createEndpoint(bindingAddress, targetPort, tls), sniHostname);
@@ -132,6 +146,7 @@ public class KafkaProxyInitializer extends ChannelInitializer<SocketChannel> {
                         }
                         else {
                             KafkaProxyInitializer.this.addHandlers(ch, binding);
+                            handshakeExecutor.set(virtualCluster.tlsHandshakeExecutor(filterChainFactory.workerPool()));
                             promise.setSuccess(sslContext.get());
                         }
                     }
@@ -152,12 +167,21 @@ public class KafkaProxyInitializer extends ChannelInitializer<SocketChannel> {
                 super.onLookupComplete(ctx, future);
                 ctx.fireChannelActive();
             }
+
+            @Override
+            protected SslHandler newSslHandler(SslContext context, ByteBufAllocator allocator) {
+                SslHandler sslHandler = context.newHandler(allocator, handshakeExecutor.get());
+                sslHandler.setHandshakeTimeoutMillis(handshakeTimeoutMillis);
+                return sslHandler;
+            }
         });
     }
 
     @VisibleForTesting
     void addHandlers(SocketChannel ch, VirtualClusterBinding binding) {
         var virtualCluster = binding.virtualCluster();
+        var watermarks = virtualCluster.writeBufferWatermarks();
+        ch.config().setWriteBufferWaterMark(new WriteBufferWaterMark(watermarks.lowBytes(), watermarks.highBytes()));
         ChannelPipeline pipeline = ch.pipeline();
         if (virtualCluster.isLogNetwork()) {
             pipeline.addLast("networkLogger", new LoggingHandler("io.kroxylicious.proxy.internal.DownstreamNetworkLogger", LogLevel.INFO));
@@ -186,9 +210,10 @@ public class KafkaProxyInitializer extends ChannelInitializer<SocketChannel> {
             pipeline.addLast(new KafkaAuthnHandler(ch, authnHandlers));
         }
 
-        ApiVersionsServiceImpl apiVersionService = new ApiVersionsServiceImpl();
+        ApiVersionsServiceImpl apiVersionService = new ApiVersionsServiceImpl(virtualCluster.apiVersionsCache());
         final NetFilter netFilter = new InitalizerNetFilter(dp, apiVersionService, ch, binding, pfr, filterChainFactory, endpointReconciler);
-        var frontendHandler = new KafkaProxyFrontendHandler(netFilter, dp, virtualCluster, apiVersionService);
+        var frontendHandler = new KafkaProxyFrontendHandler(netFilter, dp, virtualCluster, apiVersionService, filterChainFactory.workerPool(),
+                upstreamMultiplexer, memoryBudget);
 
         pipeline.addLast("netHandler", frontendHandler);
 
@@ -221,11 +246,10 @@ public class KafkaProxyInitializer extends ChannelInitializer<SocketChannel> {
 
         @Override
         public void selectServer(NetFilter.NetFilterContext context) {
+            List<FilterAndInvoker> customProtocolFilters = filterChainFactory.createFilters(position -> new NettyFilterContext(ch.eventLoop(), pfr,
+                    filterChainFactory.workerPool(), virtualCluster.topicNameCache().forFilter(position, ch.eventLoop())));
             List<FilterAndInvoker> apiVersionFilters = decodePredicate.isAuthenticationOffloadEnabled() ? List.of()
-                    : FilterAndInvoker.build(new ApiVersionsIntersectFilter(apiVersionService));
-
-            NettyFilterContext filterContext = new NettyFilterContext(ch.eventLoop(), pfr);
-            List<FilterAndInvoker> customProtocolFilters = filterChainFactory.createFilters(filterContext);
+                    : FilterAndInvoker.build(new ApiVersionsIntersectFilter(apiVersionService, !handlesApiVersions(customProtocolFilters)));
             List<FilterAndInvoker> brokerAddressFilters = FilterAndInvoker.build(new BrokerAddressFilter(virtualCluster, endpointReconciler));
             var filters = new ArrayList<>(apiVersionFilters);
             filters.addAll(customProtocolFilters);
@@ -234,7 +258,7 @@ public class KafkaProxyInitializer extends ChannelInitializer<SocketChannel> {
             }
             filters.addAll(brokerAddressFilters);
 
-            var target = binding.upstreamTarget();
+            var target = binding.selectUpstreamTarget();
             if (target == null) {
                 // This condition should never happen.
                 throw new IllegalStateException("A target address for binding %s is not known.".formatted(binding));
@@ -242,5 +266,17 @@ public class KafkaProxyInitializer extends ChannelInitializer<SocketChannel> {
 
             context.initiateConnect(target, filters);
         }
+
+        private static boolean handlesApiVersions(List<FilterAndInvoker> filters) {
+            return filters.stream().anyMatch(filter -> {
+                for (short version = ApiKeys.API_VERSIONS.oldestVersion(); version <= ApiKeys.API_VERSIONS.latestVersion(); version++) {
+                    if (filter.invoker().shouldHandleRequest(ApiKeys.API_VERSIONS, version)
+                            || filter.invoker().shouldHandleResponse(ApiKeys.API_VERSIONS, version)) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
     }
 }
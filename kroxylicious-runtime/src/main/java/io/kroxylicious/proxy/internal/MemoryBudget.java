@@ -0,0 +1,306 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.proxy.internal;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.common.protocol.MessageSizeAccumulator;
+import org.apache.kafka.common.protocol.ObjectSerializationCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.channel.Channel;
+
+import io.kroxylicious.proxy.frame.DecodedFrame;
+import io.kroxylicious.proxy.frame.OpaqueFrame;
+import io.kroxylicious.proxy.frame.OpaqueFrameChunk;
+
+/**
+ * A budget for the bytes of the frames held by the proxy across all its client connections, whether buffered
+ * while a connection awaits its upstream connection or held up by filters which complete asynchronously.
+ * <p>Each client connection holds its bytes in an {@link Account}. When the bytes held across all the accounts
+ * exceed the budget, reads are paused on the connections holding the most bytes, until the paused connections
+ * hold enough to cover the excess. Connections are only chosen when the total crosses the budget, rather than on
+ * every reservation while it is over. The paused connections are resumed once the total drops below
+ * three quarters of the budget, so that connections aren't paused and resumed with every frame. Resuming only
+ * withdraws the budget's reason for pausing a connection, so the connection stays paused if it has reasons of its own.</p>
+ * <p>Accounts are updated on the event loop of their connection, and pausing or resuming a connection happens
+ * on its event loop too.</p>
+ */
+public class MemoryBudget {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoryBudget.class);
+
+    private final long maxBytes;
+    private final long resumeBytes;
+    private final AtomicLong heldBytes = new AtomicLong();
+    private final AtomicInteger pausedConnections = new AtomicInteger();
+    // set by the reservation which takes the total over the budget, so that only it sheds
+    private final AtomicBoolean overBudget = new AtomicBoolean();
+    private final Set<Account> accounts = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param maxBytes The budget in bytes.
+     */
+    public MemoryBudget(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be at least 1");
+        }
+        this.maxBytes = maxBytes;
+        this.resumeBytes = maxBytes - maxBytes / 4;
+    }
+
+    /**
+     * Opens an account for the bytes held by a client connection.
+     * @param channel The channel of the client connection.
+     * @return The account, which must be closed when the connection closes.
+     */
+    public Account register(Channel channel) {
+        var account = new Account(this, channel);
+        accounts.add(account);
+        return account;
+    }
+
+    /**
+     * @return The bytes held across all the accounts.
+     */
+    public long heldBytes() {
+        return heldBytes.get();
+    }
+
+    /**
+     * @return The number of connections whose reads are paused because the budget was exceeded.
+     */
+    public int pausedConnections() {
+        return pausedConnections.get();
+    }
+
+    /**
+     * Estimates the bytes held by a frame, or by a chunk of a streamed frame.
+     * @param frame The frame or chunk.
+     * @return The size of the frame or chunk, or 0 if it is neither.
+     */
+    static int sizeOf(Object frame) {
+        if (frame instanceof DecodedFrame<?, ?> decodedFrame) {
+            // computing the size of a decoded frame is expensive, so rely on the size it was decoded from
+            int size = decodedFrame.encodedSizeHint();
+            if (size < 0) {
+                // a frame created by a filter wasn't decoded, so size it once, and remember that so that the frame is
+                // released with the size it was reserved with, even if filters change it meanwhile
+                size = headerAndBodySize(decodedFrame);
+                decodedFrame.encodedSizeHint(size);
+            }
+            return size;
+        }
+        else if (frame instanceof OpaqueFrame opaqueFrame) {
+            return opaqueFrame.estimateEncodedSize();
+        }
+        else if (frame instanceof OpaqueFrameChunk chunk) {
+            return chunk.content().readableBytes();
+        }
+        return 0;
+    }
+
+    /**
+     * Sizes the header and body of a frame without {@link DecodedFrame#estimateEncodedSize() caching} the result
+     * in the frame, which would be stale were a filter to change it before it's encoded.
+     */
+    private static int headerAndBodySize(DecodedFrame<?, ?> frame) {
+        var sizer = new MessageSizeAccumulator();
+        var cache = new ObjectSerializationCache();
+        frame.header().addSize(sizer, cache, frame.headerVersion());
+        frame.body().addSize(sizer, cache, frame.apiVersion());
+        return sizer.totalSize();
+    }
+
+    private void reserved(long bytes) {
+        if (heldBytes.addAndGet(bytes) > maxBytes && !overBudget.get() && overBudget.compareAndSet(false, true)) {
+            shed();
+        }
+    }
+
+    private void released(long bytes) {
+        long held = heldBytes.addAndGet(-bytes);
+        if (held <= maxBytes && overBudget.get()) {
+            overBudget.set(false);
+        }
+        if (held < resumeBytes && pausedConnections.get() > 0) {
+            resumeAll();
+        }
+    }
+
+    /**
+     * An account and the bytes it held when it was chosen, which can change while choosing.
+     */
+    private record Candidate(Account account, long heldBytes) {}
+
+    /**
+     * Pauses the heaviest connections that aren't already paused, until the paused connections cover the excess.
+     */
+    private synchronized void shed() {
+        long excess = heldBytes.get() - maxBytes;
+        // the fewest heaviest connections that cover the excess, lightest first
+        var heaviest = new PriorityQueue<Candidate>(Comparator.comparingLong(Candidate::heldBytes));
+        long heaviestBytes = 0;
+        for (Account account : accounts) {
+            long held = account.heldBytes;
+            if (account.paused) {
+                excess -= held;
+            }
+            else if (held > 0) {
+                heaviest.add(new Candidate(account, held));
+                heaviestBytes += held;
+                heaviestBytes = dropLightest(heaviest, heaviestBytes, excess);
+            }
+        }
+        if (excess <= 0) {
+            return;
+        }
+        dropLightest(heaviest, heaviestBytes, excess);
+        for (Candidate candidate : heaviest) {
+            LOGGER.debug("Proxy holds {} bytes, over the budget of {} bytes, pausing reads from {} which holds {} bytes",
+                    heldBytes.get(), maxBytes, candidate.account().channel, candidate.heldBytes());
+            candidate.account().pause();
+        }
+    }
+
+    private static long dropLightest(PriorityQueue<Candidate> heaviest, long heaviestBytes, long excess) {
+        while (!heaviest.isEmpty() && heaviestBytes - heaviest.peek().heldBytes() >= excess) {
+            heaviestBytes -= heaviest.poll().heldBytes();
+        }
+        return heaviestBytes;
+    }
+
+    private synchronized void resumeAll() {
+        for (Account account : accounts) {
+            if (account.paused) {
+                account.resume();
+            }
+        }
+    }
+
+    /**
+     * The bytes held by a client connection.
+     */
+    public static final class Account {
+
+        /**
+         * An account which isn't part of any budget, and so is never paused.
+         */
+        public static final Account NONE = new Account(null, null);
+
+        private final MemoryBudget budget;
+        private final Channel channel;
+        // only updated on the event loop of the channel
+        private volatile long heldBytes;
+        private volatile boolean paused;
+        private boolean closed;
+
+        private Account(MemoryBudget budget, Channel channel) {
+            this.budget = budget;
+            this.channel = channel;
+        }
+
+        /**
+         * Records that the connection holds more bytes.
+         * @param bytes The bytes.
+         */
+        public void reserve(int bytes) {
+            if (budget == null || closed || bytes <= 0) {
+                return;
+            }
+            heldBytes += bytes;
+            budget.reserved(bytes);
+        }
+
+        /**
+         * Records that the connection holds fewer bytes.
+         * @param bytes The bytes.
+         */
+        public void release(int bytes) {
+            if (budget == null || closed || bytes <= 0) {
+                return;
+            }
+            heldBytes -= bytes;
+            budget.released(bytes);
+        }
+
+        /**
+         * @return true if reads from the connection are paused because the budget was exceeded.
+         */
+        public boolean isPaused() {
+            return paused;
+        }
+
+        /**
+         * @return The bytes held by the connection.
+         */
+        public long heldBytes() {
+            return heldBytes;
+        }
+
+        /**
+         * Releases the bytes still held by the connection, and removes the account from the budget.
+         * Frames released afterwards are ignored.
+         */
+        public void close() {
+            if (budget == null || closed) {
+                return;
+            }
+            closed = true;
+            budget.accounts.remove(this);
+            long bytes = heldBytes;
+            heldBytes = 0;
+            synchronized (budget) {
+                if (paused) {
+                    paused = false;
+                    budget.pausedConnections.decrementAndGet();
+                }
+            }
+            if (bytes > 0) {
+                budget.released(bytes);
+            }
+        }
+
+        private void pause() {
+            paused = true;
+            budget.pausedConnections.incrementAndGet();
+            runOnEventLoop(() -> {
+                // the connection may have been resumed in the meantime
+                if (paused) {
+                    ReadPauses.pause(channel, ReadPauses.Reason.MEMORY_BUDGET);
+                }
+            });
+        }
+
+        private void resume() {
+            paused = false;
+            budget.pausedConnections.decrementAndGet();
+            runOnEventLoop(() -> {
+                // the budget may have been exceeded again in the meantime
+                if (!paused) {
+                    ReadPauses.resume(channel, ReadPauses.Reason.MEMORY_BUDGET);
+                }
+            });
+        }
+
+        private void runOnEventLoop(Runnable task) {
+            if (channel.eventLoop().inEventLoop()) {
+                task.run();
+            }
+            else {
+                channel.eventLoop().execute(task);
+            }
+        }
+    }
+}
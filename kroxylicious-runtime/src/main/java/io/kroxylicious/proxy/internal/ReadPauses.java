@@ -0,0 +1,88 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.proxy.internal;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+/**
+ * The reasons for which reads from a client connection are paused.
+ * Several parts of the proxy pause reads for reasons of their own, so each resumes them by withdrawing
+ * its reason, and reads are only resumed once no reason remains.
+ * <p>Only used on the event loop of the connection.</p>
+ */
+final class ReadPauses {
+
+    enum Reason {
+        /**
+         * The connection to the upstream broker isn't active yet, so requests are read one at a time.
+         */
+        CONNECTING,
+        /**
+         * The connection to the upstream broker can't take any more requests.
+         */
+        UPSTREAM_UNWRITABLE,
+        /**
+         * The filters are holding up as many frames as the deferred request window allows.
+         */
+        DEFERRED_REQUEST_WINDOW,
+        /**
+         * The proxy as a whole is holding more bytes than its memory budget allows.
+         */
+        MEMORY_BUDGET
+    }
+
+    private static final AttributeKey<Set<Reason>> REASONS = AttributeKey.valueOf(ReadPauses.class, "reasons");
+
+    private ReadPauses() {
+    }
+
+    /**
+     * Pauses reads from the connection for the given reason.
+     * @param channel The channel of the client connection.
+     * @param reason The reason.
+     */
+    static void pause(Channel channel, Reason reason) {
+        reasons(channel).add(reason);
+        channel.config().setAutoRead(false);
+    }
+
+    /**
+     * Withdraws the given reason for pausing reads from the connection, resuming them if no other reason remains.
+     * @param channel The channel of the client connection.
+     * @param reason The reason.
+     */
+    static void resume(Channel channel, Reason reason) {
+        var reasons = reasons(channel);
+        reasons.remove(reason);
+        if (reasons.isEmpty()) {
+            channel.config().setAutoRead(true);
+        }
+    }
+
+    /**
+     * @param channel The channel of the client connection.
+     * @param reason The reason.
+     * @return true if reads from the connection are paused for the given reason.
+     */
+    static boolean isPaused(Channel channel, Reason reason) {
+        return reasons(channel).contains(reason);
+    }
+
+    private static Set<Reason> reasons(Channel channel) {
+        var attribute = channel.attr(REASONS);
+        var reasons = attribute.get();
+        if (reasons == null) {
+            reasons = EnumSet.noneOf(Reason.class);
+            attribute.set(reasons);
+        }
+        return reasons;
+    }
+}
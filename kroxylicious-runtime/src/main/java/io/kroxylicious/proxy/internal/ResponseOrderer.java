@@ -19,6 +19,8 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelPromise;
 
 import io.kroxylicious.proxy.frame.Frame;
+import io.kroxylicious.proxy.frame.OpaqueFrame;
+import io.kroxylicious.proxy.frame.OpaqueFrameChunk;
 import io.kroxylicious.proxy.frame.RequestFrame;
 
 /**
@@ -34,6 +36,10 @@ import io.kroxylicious.proxy.frame.RequestFrame;
  * get that are out of order. Then, when we do encounter the response for the
  * oldest in-flight correlationId we can check if there are any enqueued
  * responses that can now be forwarded towards the client.
+ * <p>A streamed response is followed by the chunks of the rest of it, which must
+ * reach the client immediately after it. Its chunks are queued along with it
+ * if it is queued, and while any of them are still to be written any other
+ * response is queued, even the response for the oldest in-flight correlationId.</p>
  */
 public class ResponseOrderer extends ChannelDuplexHandler {
 
@@ -41,7 +47,20 @@ public class ResponseOrderer extends ChannelDuplexHandler {
     Map<Integer, QueuedResponse> queuedResponses = new HashMap<>();
     private static final Logger logger = LoggerFactory.getLogger(ResponseOrderer.class);
 
-    record QueuedResponse(Object msg, ChannelPromise promise) {}
+    /** true while a streamed response has been written but its last chunk hasn't. */
+    private boolean streaming;
+    /** The queued streamed response which the chunks being written belong to, if any. */
+    private QueuedResponse streamTarget;
+
+    record QueuedResponse(Object msg, ChannelPromise promise, Deque<QueuedResponse> chunks) {
+        QueuedResponse(Object msg, ChannelPromise promise) {
+            this(msg, promise, new ArrayDeque<>(0));
+        }
+
+        boolean incomplete() {
+            return isStreamed(msg) && (chunks.isEmpty() || !((OpaqueFrameChunk) chunks.peekLast().msg).isLast());
+        }
+    }
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
@@ -58,19 +77,39 @@ public class ResponseOrderer extends ChannelDuplexHandler {
 
     @Override
     public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
-        if (msg instanceof Frame responseFrame) {
+        if (msg instanceof OpaqueFrameChunk chunk) {
+            if (streamTarget != null) {
+                streamTarget.chunks.add(new QueuedResponse(msg, promise));
+                if (chunk.isLast()) {
+                    streamTarget = null;
+                }
+            }
+            else {
+                super.write(ctx, msg, promise);
+                if (chunk.isLast()) {
+                    streaming = false;
+                    drainQueue(ctx);
+                }
+            }
+        }
+        else if (msg instanceof Frame responseFrame) {
             Integer oldestCorrelationId = inflightCorrelationIds.peekFirst();
             if (oldestCorrelationId == null) {
                 logger.warn("Handling a Frame {}, but we have no inflight correlation ids, continuing to write", msg);
                 super.write(ctx, msg, promise);
             }
-            else if (oldestCorrelationId == responseFrame.correlationId()) {
+            else if (!streaming && oldestCorrelationId == responseFrame.correlationId()) {
                 inflightCorrelationIds.removeFirst();
                 super.write(ctx, msg, promise);
+                streaming = isStreamed(msg);
                 drainQueue(ctx);
             }
             else {
-                queuedResponses.put(responseFrame.correlationId(), new QueuedResponse(msg, promise));
+                QueuedResponse queued = new QueuedResponse(msg, promise);
+                queuedResponses.put(responseFrame.correlationId(), queued);
+                if (isStreamed(msg)) {
+                    streamTarget = queued;
+                }
             }
         }
         else {
@@ -80,13 +119,25 @@ public class ResponseOrderer extends ChannelDuplexHandler {
 
     private void drainQueue(ChannelHandlerContext ctx) throws Exception {
         Integer oldestCorrelationId;
-        while ((oldestCorrelationId = inflightCorrelationIds.peekFirst()) != null && queuedResponses.containsKey(oldestCorrelationId)) {
+        while (!streaming && (oldestCorrelationId = inflightCorrelationIds.peekFirst()) != null && queuedResponses.containsKey(oldestCorrelationId)) {
             Integer integer = inflightCorrelationIds.removeFirst();
             QueuedResponse thing = queuedResponses.remove(integer);
             super.write(ctx, thing.msg, thing.promise);
+            for (QueuedResponse chunk : thing.chunks) {
+                super.write(ctx, chunk.msg, chunk.promise);
+            }
+            if (thing.incomplete()) {
+                // the rest of its chunks are still to arrive, and can be written as they do
+                streaming = true;
+                streamTarget = null;
+            }
         }
     }
 
+    private static boolean isStreamed(Object msg) {
+        return msg instanceof OpaqueFrame opaqueFrame && opaqueFrame.isStreamed();
+    }
+
     int inFlightRequestCount() {
         return inflightCorrelationIds.size();
     }
@@ -0,0 +1,216 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.proxy.internal;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+import org.apache.kafka.common.Uuid;
+import org.apache.kafka.common.message.MetadataRequestData;
+import org.apache.kafka.common.message.MetadataResponseData;
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.protocol.Errors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.kroxylicious.proxy.filter.FilterContext;
+import io.kroxylicious.proxy.filter.TopicNameCache;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+
+/**
+ * The topic names of a virtual cluster, by topic id.
+ * <p>The names are kept separately for each position in the filter chain, because a filter nearer the
+ * broker may rewrite topic names, so a filter only ever sees the names it looked up itself.
+ * Each position holds at most a bounded number of names, evicting the least recently used, and names which
+ * haven't been used for a while expire.</p>
+ * Each connection uses its own {@link #forFilter(int, Executor) view}, so that lookups
+ * made on behalf of another connection complete on the right thread.
+ */
+public class TopicNameCacheImpl {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TopicNameCacheImpl.class);
+
+    // Version 12 was the first version that uses topic ids.
+    static final short METADATA_API_VER_WITH_TOPIC_ID_SUPPORT = (short) 12;
+
+    static final int MAX_NAMES = 10_000;
+    static final Duration EXPIRE_AFTER_ACCESS = Duration.ofHours(1);
+
+    private final Map<Integer, Names> positions = new ConcurrentHashMap<>();
+    private final int maxNames;
+    private final long expireAfterAccessNanos;
+    private final LongSupplier nanoTime;
+
+    public TopicNameCacheImpl() {
+        this(MAX_NAMES, EXPIRE_AFTER_ACCESS, System::nanoTime);
+    }
+
+    TopicNameCacheImpl(int maxNames, Duration expireAfterAccess, LongSupplier nanoTime) {
+        this.maxNames = maxNames;
+        this.expireAfterAccessNanos = expireAfterAccess.toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Gets a view of this cache for a filter of a connection.
+     * @param position The position of the filter in the filter chain.
+     * @param eventLoop The event loop of the connection.
+     * @return The view.
+     */
+    public TopicNameCache forFilter(int position, Executor eventLoop) {
+        Names names = positions.computeIfAbsent(position, p -> new Names());
+        return (topicIds, context) -> names.topicNames(topicIds, context, eventLoop);
+    }
+
+    private static final class Entry {
+        private final String name;
+        private long accessed;
+
+        private Entry(String name, long accessed) {
+            this.name = name;
+            this.accessed = accessed;
+        }
+    }
+
+    /**
+     * The names as seen by the filters at one position in the filter chain.
+     */
+    private final class Names {
+
+        // in access order, so the eldest is the least recently used
+        private final LinkedHashMap<Uuid, Entry> names = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Uuid, Entry> eldest) {
+                return size() > maxNames;
+            }
+        };
+        private final Map<Uuid, CompletableFuture<String>> lookups = new ConcurrentHashMap<>();
+
+        private synchronized String get(Uuid topicId) {
+            Entry entry = names.get(topicId);
+            if (entry == null) {
+                return null;
+            }
+            long now = nanoTime.getAsLong();
+            if (now - entry.accessed > expireAfterAccessNanos) {
+                names.remove(topicId);
+                return null;
+            }
+            entry.accessed = now;
+            return entry.name;
+        }
+
+        private synchronized Map<Uuid, String> learn(MetadataResponseData response) {
+            long now = nanoTime.getAsLong();
+            var learnt = new HashMap<Uuid, String>();
+            for (var topic : response.topics()) {
+                Uuid topicId = topic.topicId();
+                if (topic.errorCode() == Errors.NONE.code() && topic.name() != null && topicId != null && !Uuid.ZERO_UUID.equals(topicId)) {
+                    names.put(topicId, new Entry(topic.name(), now));
+                    learnt.put(topicId, topic.name());
+                }
+            }
+            // the least recently used names come first, so stop at the first one which hasn't expired
+            var iterator = names.values().iterator();
+            while (iterator.hasNext() && now - iterator.next().accessed > expireAfterAccessNanos) {
+                iterator.remove();
+            }
+            return learnt;
+        }
+
+        @NonNull
+        CompletionStage<Map<Uuid, String>> topicNames(@NonNull Collection<Uuid> topicIds, @NonNull FilterContext context, @NonNull Executor eventLoop) {
+            var result = new HashMap<Uuid, String>(topicIds.size());
+            var pending = new HashMap<Uuid, CompletableFuture<String>>();
+            var lookUp = new ArrayList<Uuid>();
+            for (Uuid topicId : topicIds) {
+                String name = get(topicId);
+                if (name != null) {
+                    result.put(topicId, name);
+                    continue;
+                }
+                var lookup = new CompletableFuture<String>();
+                var existing = lookups.putIfAbsent(topicId, lookup);
+                if (existing != null) {
+                    pending.put(topicId, existing);
+                }
+                else if ((name = get(topicId)) != null) {
+                    // learnt since we last looked
+                    lookups.remove(topicId, lookup);
+                    lookup.complete(name);
+                    result.put(topicId, name);
+                }
+                else {
+                    pending.put(topicId, lookup);
+                    lookUp.add(topicId);
+                }
+            }
+            if (!lookUp.isEmpty()) {
+                lookUp(lookUp, context);
+            }
+            if (pending.isEmpty()) {
+                return CompletableFuture.completedFuture(result);
+            }
+            return CompletableFuture.allOf(pending.values().toArray(CompletableFuture[]::new))
+                    .thenApplyAsync(ignored -> {
+                        pending.forEach((topicId, lookup) -> {
+                            String name = lookup.join();
+                            if (name != null) {
+                                result.put(topicId, name);
+                            }
+                        });
+                        return result;
+                    }, eventLoop);
+        }
+
+        private void lookUp(List<Uuid> topicIds, FilterContext context) {
+            LOGGER.debug("Looking up the names of {} topic ids via Metadata request: {}", topicIds.size(), topicIds);
+            var header = new RequestHeaderData().setRequestApiVersion(METADATA_API_VER_WITH_TOPIC_ID_SUPPORT);
+            var request = new MetadataRequestData()
+                    .setAllowAutoTopicCreation(false)
+                    .setTopics(topicIds.stream().map(topicId -> new MetadataRequestData.MetadataRequestTopic().setName(null).setTopicId(topicId)).toList());
+            CompletionStage<MetadataResponseData> response;
+            try {
+                response = context.sendRequest(header, request);
+            }
+            catch (RuntimeException e) {
+                completeLookups(topicIds, null, e);
+                return;
+            }
+            // the request fails if the connection it was sent on closes, so the lookups waited on by other connections don't hang
+            response.whenComplete((metadata, throwable) -> completeLookups(topicIds, metadata, throwable));
+        }
+
+        private void completeLookups(List<Uuid> topicIds, MetadataResponseData response, Throwable throwable) {
+            Map<Uuid, String> learnt = response != null ? learn(response) : Map.of();
+            for (Uuid topicId : topicIds) {
+                var lookup = lookups.remove(topicId);
+                if (lookup == null) {
+                    continue;
+                }
+                if (throwable != null) {
+                    lookup.completeExceptionally(throwable);
+                }
+                else {
+                    // null if the topic doesn't exist
+                    lookup.complete(learnt.get(topicId));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,874 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.utils.ByteUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+
+import io.kroxylicious.proxy.config.UpstreamMultiplexing;
+import io.kroxylicious.proxy.model.VirtualCluster;
+import io.kroxylicious.proxy.service.HostPort;
+import io.kroxylicious.proxy.tag.VisibleForTesting;
+
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+/**
+ * Shares connections to upstream brokers between the client connections of the virtual clusters
+ * which opt in using {@link UpstreamMultiplexing}.
+ * <p>Each client connection still has its own upstream channel, carrying its filters and its request encoder and
+ * response decoder, but that channel is an in-process {@link LocalChannel} rather than a socket. Its peer passes
+ * the encoded requests on to one of a small pool of connections to the broker, shared by the client connections
+ * handled by the same event loop, and passes the responses back. The correlation ids of the requests are rewritten,
+ * so that they are unique on the shared connection, and restored in the responses. Since the broker responds to the
+ * requests on a connection in the order it received them, the requests in flight on a shared connection are kept
+ * in a queue.</p>
+ * <p>The broker handles the requests on a connection one at a time, so a request which it holds on to until a timeout
+ * expires, such as a fetch waiting for records or a produce waiting for its records to be replicated, would hold up
+ * every other client sharing the connection. Those requests are sent over a connection dedicated to the client
+ * connection instead, opened when it first needs one. Consumers fetch, and join their group, over dedicated connections,
+ * so each still has its own connection to the broker.
+ * The broker authenticates connections, not clients, so once a client starts to authenticate (using SASL) all its
+ * requests are sent over its dedicated connection. The broker mutes a connection while it throttles a client id, so
+ * only client connections using the same client id share a connection. Since a client's requests may be sent over
+ * more than one connection, its responses are passed back to it in the order of its requests.</p>
+ * <p>A client connection stops sending requests while any connection it uses isn't writable. A connection stops
+ * reading responses while any client connection it passes responses to has more than the virtual cluster's high
+ * watermark of response bytes it hasn't yet read, until that falls to the low watermark.</p>
+ * <p>A client connection's upstream channel is connected once the pool has a connection to the broker, so that failing
+ * to reach the broker fails the connect, as it would for a socket. A pool is discarded once it has no client connections
+ * and its last shared connection has closed.</p>
+ */
+public class UpstreamMultiplexer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(UpstreamMultiplexer.class);
+
+    private static final int FRAME_SIZE_LENGTH = Integer.BYTES;
+    // frame size, api key and api version precede the correlation id of a request
+    private static final int REQUEST_CORRELATION_ID_OFFSET = FRAME_SIZE_LENGTH + Short.BYTES + Short.BYTES;
+    private static final int REQUEST_API_KEY_OFFSET = FRAME_SIZE_LENGTH;
+    private static final int REQUEST_API_VERSION_OFFSET = REQUEST_API_KEY_OFFSET + Short.BYTES;
+    private static final int REQUEST_CLIENT_ID_OFFSET = REQUEST_CORRELATION_ID_OFFSET + Integer.BYTES;
+    // frame size precedes the correlation id of a response
+    private static final int RESPONSE_CORRELATION_ID_OFFSET = FRAME_SIZE_LENGTH;
+
+    // the bit of the writability of a client connection's upstream channel which the multiplexer controls
+    private static final int STREAM_WRITABILITY_INDEX = 1;
+
+    /**
+     * The requests which the broker may hold on to until a timeout expires, other than produce requests with acks.
+     */
+    private static final Set<Short> DEDICATED_API_KEYS = Stream.of(ApiKeys.FETCH,
+            ApiKeys.JOIN_GROUP,
+            ApiKeys.SYNC_GROUP,
+            ApiKeys.CREATE_TOPICS,
+            ApiKeys.DELETE_TOPICS,
+            ApiKeys.CREATE_PARTITIONS,
+            ApiKeys.DELETE_RECORDS,
+            ApiKeys.ELECT_LEADERS)
+            .map(apiKey -> apiKey.id)
+            .collect(Collectors.toUnmodifiableSet());
+
+    private static final AttributeKey<ClientStream> CLIENT_STREAM = AttributeKey.valueOf(UpstreamMultiplexer.class, "clientStream");
+
+    // local addresses are global, so pools are numbered across all multiplexers
+    private static final AtomicLong POOL_IDS = new AtomicLong();
+
+    private final Map<PoolKey, Pool> pools = new ConcurrentHashMap<>();
+    private final Executor workerPool;
+
+    /**
+     * @param workerPool The proxy's worker pool, to which TLS handshake work is offloaded when the virtual cluster asks.
+     */
+    public UpstreamMultiplexer(Executor workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    /**
+     * Connects the channel of the given bootstrap to the given broker, over a connection shared with
+     * other client connections. The {@link #peerHandler(Channel)} must be added first to the channel's pipeline.
+     * @param bootstrap The bootstrap for the upstream channel of a client connection, with its handler configured.
+     * @param eventLoop The event loop of the client connection.
+     * @param socketChannelClass The class of the socket channels to use for the shared connections.
+     * @param virtualCluster The virtual cluster of the client connection.
+     * @param remote The broker.
+     * @return A future which completes once the channel of the bootstrap is connected, which is once the broker has been
+     * connected to, or fails if it can't be within the bootstrap's {@link ChannelOption#CONNECT_TIMEOUT_MILLIS}.
+     */
+    public ChannelFuture connect(Bootstrap bootstrap, EventLoop eventLoop, Class<? extends Channel> socketChannelClass, VirtualCluster virtualCluster,
+                                 HostPort remote) {
+        // counting the client connection in the same step stops the pool being discarded before it's used
+        var pool = pools.compute(new PoolKey(eventLoop, virtualCluster.getClusterName(), remote), (key, existing) -> {
+            var p = existing != null ? existing : new Pool(key, virtualCluster, socketChannelClass);
+            p.clients.incrementAndGet();
+            return p;
+        });
+        return pool.connect(bootstrap.group(eventLoop).channel(LocalChannel.class));
+    }
+
+    /**
+     * Gets the handler which must be first in the pipeline of an upstream channel connected by
+     * {@link #connect(Bootstrap, EventLoop, Class, VirtualCluster, HostPort)}, which tells the multiplexer
+     * how much of the client connection's responses it has read.
+     * @param upstreamChannel The upstream channel.
+     * @return The handler.
+     */
+    public ChannelHandler peerHandler(Channel upstreamChannel) {
+        return Objects.requireNonNull(upstreamChannel.attr(CLIENT_STREAM).get(), "channel was not connected by the multiplexer").peerHandler;
+    }
+
+    @VisibleForTesting
+    int poolCount() {
+        return pools.size();
+    }
+
+    private record PoolKey(EventLoop eventLoop, String clusterName, HostPort remote) {}
+
+    /**
+     * The connections to a broker shared by the client connections of a virtual cluster handled by an event loop.
+     * Other than connecting, it's only used on the event loop.
+     */
+    private final class Pool {
+
+        private final PoolKey key;
+        private final VirtualCluster virtualCluster;
+        private final Class<? extends Channel> socketChannelClass;
+        private final int maxConnections;
+        private final LocalAddress address;
+        private final ChannelFuture bindFuture;
+        private final Map<String, List<Connection>> sharedConnections = new HashMap<>();
+        private final List<ClientStream> connecting = new ArrayList<>();
+        // the client connections, counted when they start connecting
+        private final AtomicInteger clients = new AtomicInteger();
+        // a connection opened to find out if the broker is reachable, which becomes a shared connection once one is needed
+        private @Nullable Connection spare;
+        private boolean evicted;
+
+        Pool(PoolKey key, VirtualCluster virtualCluster, Class<? extends Channel> socketChannelClass) {
+            this.key = key;
+            this.virtualCluster = virtualCluster;
+            this.socketChannelClass = socketChannelClass;
+            this.maxConnections = virtualCluster.upstreamMultiplexing().map(UpstreamMultiplexing::connectionsPerEventLoop)
+                    .orElse(UpstreamMultiplexing.DEFAULT_CONNECTIONS_PER_EVENT_LOOP);
+            this.address = new LocalAddress("kroxylicious-upstream-" + POOL_IDS.incrementAndGet());
+            this.bindFuture = new ServerBootstrap()
+                    .group(key.eventLoop())
+                    .channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInitializer<LocalChannel>() {
+                        @Override
+                        protected void initChannel(LocalChannel stream) {
+                            attach(stream);
+                        }
+                    })
+                    .bind(address);
+        }
+
+        /**
+         * Connects the channel of the given bootstrap to this pool, once the pool is accepting connections
+         * and has a connection to the broker.
+         */
+        ChannelFuture connect(Bootstrap bootstrap) {
+            ChannelFuture registerFuture = bootstrap.register();
+            Channel channel = registerFuture.channel();
+            var clientStream = new ClientStream(this, channel);
+            channel.attr(CLIENT_STREAM).set(clientStream);
+            var connectTimeoutMillis = (Integer) bootstrap.config().options().get(ChannelOption.CONNECT_TIMEOUT_MILLIS);
+            ChannelPromise connectPromise = channel.newPromise();
+            registerFuture.addListener(registered -> {
+                if (!registered.isSuccess()) {
+                    connectPromise.setFailure(registered.cause());
+                    clientGone();
+                    return;
+                }
+                channel.closeFuture().addListener(closed -> clientGone());
+                brokerConnected(connectTimeoutMillis).addListener(reachable -> {
+                    if (!reachable.isSuccess()) {
+                        connectPromise.setFailure(reachable.cause());
+                        channel.close();
+                        return;
+                    }
+                    bindFuture.addListener(bound -> {
+                        if (bound.isSuccess()) {
+                            connecting.add(clientStream);
+                            channel.connect(address, connectPromise);
+                        }
+                        else {
+                            connectPromise.setFailure(bound.cause());
+                            channel.close();
+                        }
+                    });
+                });
+            });
+            connectPromise.addListener(connected -> connecting.remove(clientStream));
+            return connectPromise;
+        }
+
+        /**
+         * Gets a future which completes once the pool has a connection to the broker, opening a spare connection if it has none.
+         */
+        private ChannelFuture brokerConnected(@Nullable Integer connectTimeoutMillis) {
+            for (List<Connection> connections : sharedConnections.values()) {
+                for (Connection connection : connections) {
+                    if (connection.isActive()) {
+                        return connection.connectFuture();
+                    }
+                }
+            }
+            if (spare == null) {
+                var connection = openConnection(connectTimeoutMillis);
+                spare = connection;
+                connection.closeFuture().addListener(future -> {
+                    if (spare == connection) {
+                        spare = null;
+                    }
+                    evictIfIdle();
+                });
+            }
+            return spare.connectFuture();
+        }
+
+        private void clientGone() {
+            clients.decrementAndGet();
+            evictIfIdle();
+        }
+
+        /**
+         * Discards the pool if it has no client connections and no connections to the broker.
+         */
+        private void evictIfIdle() {
+            // a client connection counted while this runs keeps the pool
+            pools.computeIfPresent(key, (k, pool) -> {
+                if (pool == this && clients.get() == 0 && sharedConnections.isEmpty() && spare == null) {
+                    evicted = true;
+                    return null;
+                }
+                return pool;
+            });
+            if (evicted) {
+                bindFuture.channel().close();
+            }
+        }
+
+        /**
+         * Attaches the peer of a client connection's upstream channel to the client connection's stream.
+         */
+        private void attach(LocalChannel stream) {
+            ClientStream clientStream = null;
+            for (ClientStream candidate : connecting) {
+                if (stream.remoteAddress().equals(candidate.peer.localAddress())) {
+                    clientStream = candidate;
+                    break;
+                }
+            }
+            if (clientStream == null) {
+                LOGGER.warn("{}: Unknown client connection to shared upstream connections, closing it", stream);
+                stream.close();
+                return;
+            }
+            connecting.remove(clientStream);
+            // buffers read from the stream may hold more than one request
+            stream.pipeline().addLast(new LengthFieldBasedFrameDecoder(virtualCluster.socketFrameMaxSizeBytes() + FRAME_SIZE_LENGTH, 0, FRAME_SIZE_LENGTH),
+                    clientStream);
+            clientStream.attached(stream);
+        }
+
+        /**
+         * Gets a connection shared by the client connections using the given client id,
+         * opening a new connection unless the pool is already full.
+         */
+        Connection sharedConnection(@Nullable String clientId) {
+            String connectionsKey = Objects.requireNonNullElse(clientId, "");
+            var connections = sharedConnections.computeIfAbsent(connectionsKey, k -> new ArrayList<>());
+            if (connections.size() < maxConnections) {
+                Connection connection;
+                if (spare != null) {
+                    connection = spare;
+                    spare = null;
+                }
+                else {
+                    connection = openConnection(null);
+                }
+                connections.add(connection);
+                connection.closeFuture().addListener(future -> {
+                    connections.remove(connection);
+                    if (connections.isEmpty()) {
+                        sharedConnections.remove(connectionsKey, connections);
+                    }
+                    evictIfIdle();
+                });
+                return connection;
+            }
+            return connections.stream().min(Comparator.comparingInt(Connection::streamCount)).orElseThrow();
+        }
+
+        /**
+         * Opens a connection to the broker.
+         * @param connectTimeoutMillis The connect timeout, or null for the default.
+         */
+        Connection openConnection(@Nullable Integer connectTimeoutMillis) {
+            var connection = new Connection();
+            var watermarks = virtualCluster.writeBufferWatermarks();
+            Bootstrap b = new Bootstrap();
+            b.group(key.eventLoop())
+                    .channel(socketChannelClass)
+                    .handler(connection)
+                    .option(ChannelOption.AUTO_READ, true)
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(watermarks.lowBytes(), watermarks.highBytes()));
+            if (connectTimeoutMillis != null) {
+                b.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis);
+            }
+            var remote = key.remote();
+            LOGGER.debug("Opening shared connection to {} for virtual cluster {}", remote, key.clusterName());
+            ChannelFuture connectFuture = b.connect(remote.host(), remote.port());
+            connection.connectFuture = connectFuture;
+            Channel channel = connectFuture.channel();
+            ChannelPipeline pipeline = channel.pipeline();
+            // the responses are passed on whole, leaving the clients' decoders to decode them
+            pipeline.addFirst("frameDecoder", new LengthFieldBasedFrameDecoder(virtualCluster.socketFrameMaxSizeBytes() + FRAME_SIZE_LENGTH,
+                    0, FRAME_SIZE_LENGTH));
+            virtualCluster.getUpstreamSslContext().ifPresent(c -> pipeline.addFirst("ssl",
+                    c.newHandler(channel.alloc(), remote.host(), remote.port(), virtualCluster.tlsHandshakeExecutor(workerPool))));
+            connectFuture.addListener(future -> {
+                if (!future.isSuccess()) {
+                    connection.releaseUnsent();
+                    LOGGER.atWarn()
+                            .setCause(LOGGER.isDebugEnabled() ? future.cause() : null)
+                            .log("Shared connection to target cluster on {} failed with: {}, closing the client connections using it. "
+                                    + "Increase log level to DEBUG for stacktrace", remote, future.cause().getMessage());
+                }
+            });
+            channel.closeFuture().addListener(future -> connection.closeStreams());
+            return connection;
+        }
+
+        int lowWatermark() {
+            return virtualCluster.writeBufferWatermarks().lowBytes();
+        }
+
+        int highWatermark() {
+            return virtualCluster.writeBufferWatermarks().highBytes();
+        }
+    }
+
+    /**
+     * The handler of a connection to a broker, either shared between client connections or dedicated to one.
+     */
+    private static final class Connection extends ChannelInboundHandlerAdapter {
+
+        private final Set<ClientStream> streams = new HashSet<>();
+        private final Set<ClientStream> unflushedStreams = new HashSet<>();
+        private final Deque<InFlight> inFlight = new ArrayDeque<>();
+        // requests sent before the connection became active
+        private final Deque<ByteBuf> unsent = new ArrayDeque<>();
+        private ChannelFuture connectFuture;
+        private ChannelHandlerContext ctx;
+        private int nextCorrelationId;
+        // the client connections with too many response bytes they haven't read
+        private int blockedStreams;
+
+        int streamCount() {
+            return streams.size();
+        }
+
+        ChannelFuture connectFuture() {
+            return connectFuture;
+        }
+
+        ChannelFuture closeFuture() {
+            return connectFuture.channel().closeFuture();
+        }
+
+        boolean isActive() {
+            return connectFuture.channel().isActive();
+        }
+
+        void close() {
+            connectFuture.channel().close();
+        }
+
+        void add(ClientStream stream) {
+            streams.add(stream);
+        }
+
+        void remove(ClientStream stream) {
+            streams.remove(stream);
+            unflushedStreams.remove(stream);
+        }
+
+        void closeStreams() {
+            for (ClientStream stream : List.copyOf(streams)) {
+                stream.close();
+            }
+        }
+
+        /**
+         * @return true if the connection can take more requests.
+         */
+        boolean isReady() {
+            return ctx.channel().isActive() && ctx.channel().isWritable();
+        }
+
+        void streamBlocked() {
+            if (blockedStreams++ == 0) {
+                ctx.channel().config().setAutoRead(false);
+            }
+        }
+
+        void streamUnblocked() {
+            if (--blockedStreams == 0) {
+                ctx.channel().config().setAutoRead(true);
+            }
+        }
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) {
+            this.ctx = ctx;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            super.channelActive(ctx);
+            ByteBuf request;
+            while ((request = unsent.poll()) != null) {
+                ctx.write(request, ctx.voidPromise());
+            }
+            ctx.flush();
+            updateStreams();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            releaseUnsent();
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void channelUnregistered(ChannelHandlerContext ctx) throws Exception {
+            // a connection which failed to connect was never active
+            releaseUnsent();
+            super.channelUnregistered(ctx);
+        }
+
+        void releaseUnsent() {
+            unsent.forEach(ByteBuf::release);
+            unsent.clear();
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+            updateStreams();
+            super.channelWritabilityChanged(ctx);
+        }
+
+        private void updateStreams() {
+            for (ClientStream stream : streams) {
+                stream.updateReads();
+            }
+        }
+
+        /**
+         * Sends a request from a client connection, replacing its correlation id with one that is unique on this connection.
+         * If the connection has closed the request is dropped and the client connection closed, as it would be by the
+         * connection closing.
+         * @param stream The client connection.
+         * @param response Where the response goes, or null if the request gets no response.
+         */
+        void send(ClientStream stream, @Nullable PendingResponse response, ByteBuf request) {
+            if (!connectFuture.channel().isOpen()) {
+                request.release();
+                stream.close();
+                return;
+            }
+            int ri = request.readerIndex();
+            int correlationId = nextCorrelationId++;
+            if (response != null) {
+                inFlight.add(new InFlight(correlationId, response));
+            }
+            request.setInt(ri + REQUEST_CORRELATION_ID_OFFSET, correlationId);
+            if (isActive()) {
+                ctx.write(request, ctx.voidPromise());
+            }
+            else {
+                unsent.add(request);
+            }
+        }
+
+        void flush() {
+            ctx.flush();
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ByteBuf response = (ByteBuf) msg;
+            int ri = response.readerIndex();
+            int correlationId = response.getInt(ri + RESPONSE_CORRELATION_ID_OFFSET);
+            // the broker responds in request order, so any requests before this one had no response
+            InFlight request;
+            while ((request = inFlight.poll()) != null && request.correlationId() != correlationId) {
+                request.response().complete(null);
+            }
+            if (request == null) {
+                response.release();
+                LOGGER.warn("{}: Unexpected correlation id {} in response on shared connection, closing it", ctx.channel(), correlationId);
+                ctx.close();
+                return;
+            }
+            response.setInt(ri + RESPONSE_CORRELATION_ID_OFFSET, request.response().streamCorrelationId);
+            ClientStream stream = request.response().stream;
+            if (request.response().complete(response)) {
+                unflushedStreams.add(stream);
+            }
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+            for (ClientStream stream : unflushedStreams) {
+                stream.flush();
+            }
+            unflushedStreams.clear();
+            super.channelReadComplete(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            LOGGER.warn("Netty caught exception from shared connection {}: {}", ctx.channel(), cause.getMessage(), cause);
+            ctx.close();
+        }
+    }
+
+    /**
+     * A request in flight on a connection.
+     * @param correlationId The correlation id of the request on the connection.
+     * @param response Where the response goes.
+     */
+    private record InFlight(int correlationId, PendingResponse response) {}
+
+    /**
+     * The response to a request of a client connection, which is passed back once the responses
+     * to its earlier requests have been.
+     */
+    private static final class PendingResponse {
+
+        private final ClientStream stream;
+        private final int streamCorrelationId;
+        private @Nullable ByteBuf response;
+        private boolean done;
+        // the client connection has gone away
+        private boolean cancelled;
+
+        PendingResponse(ClientStream stream, int streamCorrelationId) {
+            this.stream = stream;
+            this.streamCorrelationId = streamCorrelationId;
+        }
+
+        /**
+         * @param response The response, or null if the request had none.
+         * @return true if any responses were passed back to the client connection.
+         */
+        boolean complete(@Nullable ByteBuf response) {
+            if (cancelled) {
+                ReferenceCountUtil.release(response);
+                return false;
+            }
+            this.response = response;
+            this.done = true;
+            return stream.relayResponses();
+        }
+    }
+
+    /**
+     * The requests and responses of a client connection, which it exchanges with the peer of its upstream channel.
+     * Requests go over a connection shared with other client connections using the same client id, or over a
+     * connection dedicated to the client connection.
+     */
+    private static final class ClientStream extends ChannelInboundHandlerAdapter {
+
+        private final Pool pool;
+        private final Channel peer;
+        private final ChannelHandler peerHandler = new PeerHandler();
+        private final Deque<PendingResponse> pendingResponses = new ArrayDeque<>();
+        private @Nullable Channel stream;
+        private @Nullable Connection shared;
+        private @Nullable Connection dedicated;
+        private boolean authenticating;
+        private long unreadResponseBytes;
+        private boolean responsesBlocked;
+
+        ClientStream(Pool pool, Channel peer) {
+            this.pool = pool;
+            this.peer = peer;
+        }
+
+        void attached(Channel stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (!(msg instanceof ByteBuf request) || request.readableBytes() < REQUEST_CLIENT_ID_OFFSET) {
+                // such as the empty buffer written when closing the connection
+                ReferenceCountUtil.release(msg);
+                return;
+            }
+            int ri = request.readerIndex();
+            short apiKey = request.getShort(ri + REQUEST_API_KEY_OFFSET);
+            if (apiKey == ApiKeys.SASL_HANDSHAKE.id || apiKey == ApiKeys.SASL_AUTHENTICATE.id) {
+                authenticating = true;
+            }
+            boolean expectsResponse = expectsResponse(request);
+            Connection connection;
+            if (authenticating || DEDICATED_API_KEYS.contains(apiKey) || (apiKey == ApiKeys.PRODUCE.id && expectsResponse)) {
+                if (dedicated == null) {
+                    dedicated = use(pool.openConnection(null));
+                }
+                connection = dedicated;
+            }
+            else {
+                if (shared == null) {
+                    shared = use(pool.sharedConnection(clientId(request)));
+                }
+                connection = shared;
+            }
+            PendingResponse response = null;
+            if (expectsResponse) {
+                response = new PendingResponse(this, request.getInt(ri + REQUEST_CORRELATION_ID_OFFSET));
+                pendingResponses.add(response);
+            }
+            connection.send(this, response, request);
+            updateReads();
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+            if (shared != null) {
+                shared.flush();
+            }
+            if (dedicated != null) {
+                dedicated.flush();
+            }
+            super.channelReadComplete(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            detach();
+            super.channelInactive(ctx);
+        }
+
+        private Connection use(Connection connection) {
+            connection.add(this);
+            if (responsesBlocked) {
+                connection.streamBlocked();
+            }
+            return connection;
+        }
+
+        private void detach() {
+            for (Connection connection : connections()) {
+                connection.remove(this);
+                if (responsesBlocked) {
+                    connection.streamUnblocked();
+                }
+            }
+            responsesBlocked = false;
+            if (dedicated != null) {
+                dedicated.close();
+            }
+            shared = null;
+            dedicated = null;
+            for (PendingResponse pending : pendingResponses) {
+                pending.cancelled = true;
+                ReferenceCountUtil.release(pending.response);
+            }
+            pendingResponses.clear();
+        }
+
+        private List<Connection> connections() {
+            List<Connection> connections = new ArrayList<>(2);
+            if (shared != null) {
+                connections.add(shared);
+            }
+            if (dedicated != null) {
+                connections.add(dedicated);
+            }
+            return connections;
+        }
+
+        void close() {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+
+        void flush() {
+            if (stream != null) {
+                stream.flush();
+            }
+        }
+
+        /**
+         * Reads requests, and lets the client connection send them, only while the connections it uses can take them.
+         */
+        void updateReads() {
+            boolean ready = true;
+            for (Connection connection : connections()) {
+                ready &= connection.isReady();
+            }
+            if (stream != null) {
+                stream.config().setAutoRead(ready);
+            }
+            ChannelOutboundBuffer outboundBuffer = peer.unsafe().outboundBuffer();
+            if (outboundBuffer != null) {
+                outboundBuffer.setUserDefinedWritability(STREAM_WRITABILITY_INDEX, ready);
+            }
+        }
+
+        /**
+         * Passes back the responses which have arrived, in the order of their requests.
+         * @return true if any responses were passed back.
+         */
+        boolean relayResponses() {
+            boolean relayed = false;
+            PendingResponse head;
+            while ((head = pendingResponses.peek()) != null && head.done) {
+                pendingResponses.poll();
+                ByteBuf response = head.response;
+                if (response == null) {
+                    continue;
+                }
+                if (stream == null || !stream.isActive()) {
+                    // the client has gone away
+                    response.release();
+                    continue;
+                }
+                unreadResponseBytes += response.readableBytes();
+                stream.write(response, stream.voidPromise());
+                relayed = true;
+            }
+            if (!responsesBlocked && unreadResponseBytes > pool.highWatermark()) {
+                responsesBlocked = true;
+                connections().forEach(Connection::streamBlocked);
+            }
+            return relayed;
+        }
+
+        private void responsesRead(int bytes) {
+            unreadResponseBytes -= bytes;
+            if (responsesBlocked && unreadResponseBytes <= pool.lowWatermark()) {
+                responsesBlocked = false;
+                connections().forEach(Connection::streamUnblocked);
+            }
+        }
+
+        /**
+         * Counts the response bytes which the client connection has read.
+         */
+        private final class PeerHandler extends ChannelInboundHandlerAdapter {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+                if (msg instanceof ByteBuf response) {
+                    responsesRead(response.readableBytes());
+                }
+                super.channelRead(ctx, msg);
+            }
+        }
+    }
+
+    @Nullable
+    private static String clientId(ByteBuf request) {
+        int offset = request.readerIndex() + REQUEST_CLIENT_ID_OFFSET;
+        if (offset + Short.BYTES > request.writerIndex()) {
+            return null;
+        }
+        short length = request.getShort(offset);
+        if (length < 0 || offset + Short.BYTES + length > request.writerIndex()) {
+            return null;
+        }
+        return request.toString(offset + Short.BYTES, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return false if the request gets no response, that is, if it's a produce request with acks=0.
+     */
+    static boolean expectsResponse(ByteBuf request) {
+        int ri = request.readerIndex();
+        if (request.getShort(ri + REQUEST_API_KEY_OFFSET) != ApiKeys.PRODUCE.id) {
+            return true;
+        }
+        short apiVersion = request.getShort(ri + REQUEST_API_VERSION_OFFSET);
+        try {
+            ByteBuffer buffer = request.nioBuffer(ri + REQUEST_CLIENT_ID_OFFSET, request.readableBytes() - REQUEST_CLIENT_ID_OFFSET);
+            skip(buffer, buffer.getShort()); // client_id
+            boolean flexible = ApiKeys.PRODUCE.requestHeaderVersion(apiVersion) >= 2;
+            if (flexible) {
+                int taggedFields = ByteUtils.readUnsignedVarint(buffer);
+                for (int i = 0; i < taggedFields; i++) {
+                    ByteUtils.readUnsignedVarint(buffer); // tag
+                    skip(buffer, ByteUtils.readUnsignedVarint(buffer));
+                }
+            }
+            if (apiVersion >= 3) {
+                // transactional_id
+                skip(buffer, flexible ? ByteUtils.readUnsignedVarint(buffer) - 1 : buffer.getShort());
+            }
+            return buffer.getShort() != 0;
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e) {
+            // leave it to the broker to reject the request
+            return true;
+        }
+    }
+
+    private static void skip(ByteBuffer buffer, int length) {
+        if (length > 0) {
+            buffer.position(buffer.position() + length);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import io.kroxylicious.proxy.config.WorkerPoolConfiguration;
+import io.kroxylicious.proxy.internal.util.Metrics;
+
+/**
+ * The proxy's pool of threads for CPU-intensive filter work, which would otherwise hold up the
+ * network I/O of all the connections sharing an event loop.
+ * <p>The pool is bounded. Once its queue is full, further work is rejected rather than buffered,
+ * and rather than being run by the submitting thread, which would usually be an event loop.</p>
+ */
+public class WorkerPool implements Executor, AutoCloseable {
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger queueDepth = Metrics.workerPoolQueueDepth();
+    private final Timer waitTimer = Metrics.workerPoolTaskWaitTimer();
+    private final Timer runTimer = Metrics.workerPoolTaskRunTimer();
+
+    public WorkerPool(WorkerPoolConfiguration configuration) {
+        this.executor = new ThreadPoolExecutor(configuration.threads(), configuration.threads(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(configuration.queueCapacity()),
+                new DefaultThreadFactory("kroxylicious-worker", true),
+                (work, pool) -> {
+                    throw new RejectedExecutionException(pool.isShutdown() ? "Worker pool has been shut down" : "Worker pool queue is full");
+                });
+    }
+
+    @Override
+    public void execute(Runnable work) {
+        long submitted = System.nanoTime();
+        queueDepth.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                long started = System.nanoTime();
+                queueDepth.decrementAndGet();
+                waitTimer.record(started - submitted, TimeUnit.NANOSECONDS);
+                try {
+                    work.run();
+                }
+                finally {
+                    runTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            queueDepth.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
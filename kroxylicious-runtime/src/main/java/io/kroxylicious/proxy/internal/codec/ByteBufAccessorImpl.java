@@ -20,13 +20,29 @@ import io.kroxylicious.proxy.frame.ByteBufAccessor;
  * This isn't completely ideal because the Kafka APIs for decoding of Records
  * depends on NIO ByteBuffer, so copying between ByteBuffer and ByteBuf cannot
  * always be avoided.
+ * In zero-copy mode {@link #readByteBuffer(int)} returns a view of the underlying
+ * {@code ByteBuf} instead of a copy, when the {@code ByteBuf} is backed by a single NIO buffer.
+ * In that case the caller must keep the {@code ByteBuf} alive for as long as the
+ * returned buffers (and any {@code Records} wrapping them) are in use,
+ * see {@link #sharesBuffer()}.
  */
 public class ByteBufAccessorImpl implements ByteBufAccessor {
 
     private final ByteBuf buf;
+    private final boolean zeroCopy;
+    private boolean sharesBuffer;
 
     public ByteBufAccessorImpl(ByteBuf buf) {
+        this(buf, false);
+    }
+
+    /**
+     * @param buf The buffer
+     * @param zeroCopy Whether {@link #readByteBuffer(int)} may return views of {@code buf} rather than copies.
+     */
+    public ByteBufAccessorImpl(ByteBuf buf, boolean zeroCopy) {
         this.buf = buf;
+        this.zeroCopy = zeroCopy;
     }
 
     private static IllegalArgumentException illegalVarintException(int value) {
@@ -154,11 +170,24 @@ public class ByteBufAccessorImpl implements ByteBufAccessor {
 
     @Override
     public ByteBuffer readByteBuffer(int length) {
-        // TODO use buf.nioBufferCount() and buf.nioBuffers() to avoid the copy if possible
-        ByteBuffer wrap = ByteBuffer.wrap(ByteBufUtil.getBytes(buf, buf.readerIndex(), length, false));
+        final ByteBuffer result;
+        if (zeroCopy && buf.nioBufferCount() == 1) {
+            result = buf.nioBuffer(buf.readerIndex(), length);
+            sharesBuffer = true;
+        }
+        else {
+            result = ByteBuffer.wrap(ByteBufUtil.getBytes(buf, buf.readerIndex(), length, false));
+        }
         buf.readerIndex(buf.readerIndex() + length);
-        return wrap;
+        return result;
+    }
 
+    /**
+     * @return true if any of the buffers returned from {@link #readByteBuffer(int)} is a view
+     * of the underlying {@code ByteBuf}, rather than a copy.
+     */
+    public boolean sharesBuffer() {
+        return sharesBuffer;
     }
 
     @Override
@@ -5,8 +5,8 @@
  */
 package io.kroxylicious.proxy.internal.codec;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 
@@ -15,19 +15,44 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.kroxylicious.proxy.filter.Filter;
+import io.kroxylicious.proxy.internal.util.Metrics;
 import io.kroxylicious.proxy.tag.VisibleForTesting;
 
 /**
  * Manages correlation ids for a single connection (across the proxy) between a single client
  * and a single broker.
+ * <p>Upstream correlation ids are allocated sequentially and brokers respond in request order,
+ * so the in-flight correlations mostly occupy a sliding window of ids. They are held in a power-of-two
+ * sized open addressing table, starting at the slot given by the low bits of the correlation id and
+ * probing linearly, with the primitive state held in parallel arrays so that neither an entry object
+ * nor a boxed key is allocated per request. The table is sized by the number of requests in flight,
+ * not by the spread of their ids, so a request whose response is long delayed costs a single slot:
+ * it doubles once more than half its slots are occupied, and halves once fewer than an eighth are.</p>
  */
 public class CorrelationManager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CorrelationManager.class);
 
-    // TODO use a specialized map
     @VisibleForTesting
-    final Map<Integer, Correlation> brokerRequests = new HashMap<>();
+    static final int INITIAL_CAPACITY = 16;
+
+    private static final byte OCCUPIED = 1;
+    private static final byte DECODE_RESPONSE = 2;
+
+    private int mask;
+    private int[] upstreamIds;
+    private short[] apiKeys;
+    private short[] apiVersions;
+    private int[] downstreamIds;
+    private byte[] flags;
+    private Filter[] recipients;
+    private CompletableFuture<?>[] promises;
+
+    private int inFlight;
+    private int highWaterMark;
+
+    /** Reused to return the correlation removed by {@link #getBrokerCorrelation(int)}. */
+    private final Correlation removed = new Correlation();
 
     /** The correlation id with the upstream broker */
     private int upstreamId;
@@ -38,6 +63,18 @@ public class CorrelationManager {
 
     public CorrelationManager(int initialCorrelationId) {
         upstreamId = initialCorrelationId;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        mask = capacity - 1;
+        upstreamIds = new int[capacity];
+        apiKeys = new short[capacity];
+        apiVersions = new short[capacity];
+        downstreamIds = new int[capacity];
+        flags = new byte[capacity];
+        recipients = new Filter[capacity];
+        promises = new CompletableFuture<?>[capacity];
     }
 
     /**
@@ -57,48 +94,205 @@ public class CorrelationManager {
                                 Filter recipient,
                                 CompletableFuture<?> promise,
                                 boolean decodeResponse) {
-        // need to allocate an id and put in a map for quick lookup, along with the "tag"
+        // need to allocate an id and put in the table for quick lookup, along with the "tag"
         int upstreamCorrelationId = upstreamId++;
         LOGGER.trace("Allocated upstream id {} for downstream id {}", upstreamCorrelationId, downstreamCorrelationId);
         if (hasResponse) {
-            Correlation existing = this.brokerRequests.put(upstreamCorrelationId,
-                    new Correlation(apiKey, apiVersion, downstreamCorrelationId, decodeResponse, recipient, promise));
-            if (existing != null) {
+            if ((inFlight + 1) * 2 > flags.length) {
+                resize(flags.length << 1);
+            }
+            int slot = upstreamCorrelationId & mask;
+            while ((flags[slot] & OCCUPIED) != 0 && upstreamIds[slot] != upstreamCorrelationId) {
+                slot = (slot + 1) & mask;
+            }
+            if ((flags[slot] & OCCUPIED) != 0) {
                 LOGGER.error("Duplicate upstream correlation id {}", upstreamCorrelationId);
             }
+            else {
+                inFlight++;
+                Metrics.upstreamInFlightRequests().increment();
+                if (inFlight > highWaterMark) {
+                    highWaterMark = inFlight;
+                    Metrics.recordUpstreamInFlightRequestsHighWaterMark(highWaterMark);
+                }
+            }
+            store(slot, upstreamCorrelationId, apiKey, apiVersion, downstreamCorrelationId, decodeResponse, recipient, promise);
         }
         return upstreamCorrelationId;
     }
 
     /**
-     * Find (and remove) the Correlation for an incoming response from the broker
+     * @return The slot holding the given id, or -1 if there is no request in flight with the id.
+     */
+    private int slotOf(int upstreamCorrelationId) {
+        int slot = upstreamCorrelationId & mask;
+        while ((flags[slot] & OCCUPIED) != 0) {
+            if (upstreamIds[slot] == upstreamCorrelationId) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        int[] oldUpstreamIds = upstreamIds;
+        short[] oldApiKeys = apiKeys;
+        short[] oldApiVersions = apiVersions;
+        int[] oldDownstreamIds = downstreamIds;
+        byte[] oldFlags = flags;
+        Filter[] oldRecipients = recipients;
+        CompletableFuture<?>[] oldPromises = promises;
+        allocate(capacity);
+        LOGGER.trace("Resized correlation table to {} slots", capacity);
+        for (int i = 0; i < oldFlags.length; i++) {
+            if ((oldFlags[i] & OCCUPIED) != 0) {
+                int slot = oldUpstreamIds[i] & mask;
+                while ((flags[slot] & OCCUPIED) != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                store(slot, oldUpstreamIds[i], oldApiKeys[i], oldApiVersions[i], oldDownstreamIds[i],
+                        (oldFlags[i] & DECODE_RESPONSE) != 0, oldRecipients[i], oldPromises[i]);
+            }
+        }
+    }
+
+    /**
+     * Empties the given slot, moving back any later entries of the same probe run
+     * which could no longer be found past the empty slot.
+     */
+    private void remove(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while ((flags[next] & OCCUPIED) != 0) {
+            int home = upstreamIds[next] & mask;
+            // the entry may fill the hole unless its home slot lies after the hole
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                store(hole, upstreamIds[next], apiKeys[next], apiVersions[next], downstreamIds[next],
+                        (flags[next] & DECODE_RESPONSE) != 0, recipients[next], promises[next]);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        flags[hole] = 0;
+        recipients[hole] = null;
+        promises[hole] = null;
+    }
+
+    private void store(int slot,
+                       int upstreamCorrelationId,
+                       short apiKey,
+                       short apiVersion,
+                       int downstreamCorrelationId,
+                       boolean decodeResponse,
+                       Filter recipient,
+                       CompletableFuture<?> promise) {
+        upstreamIds[slot] = upstreamCorrelationId;
+        apiKeys[slot] = apiKey;
+        apiVersions[slot] = apiVersion;
+        downstreamIds[slot] = downstreamCorrelationId;
+        flags[slot] = (byte) (OCCUPIED | (decodeResponse ? DECODE_RESPONSE : 0));
+        recipients[slot] = recipient;
+        promises[slot] = promise;
+    }
+
+    /**
      * @param upstreamCorrelationId The (upstream) correlation id in the response.
+     * @return true if a request with the given id is in flight and its response is not to be decoded.
+     */
+    public boolean isOpaqueResponse(int upstreamCorrelationId) {
+        int slot = slotOf(upstreamCorrelationId);
+        return slot >= 0 && (flags[slot] & DECODE_RESPONSE) == 0;
+    }
+
+    /**
+     * Find (and remove) the Correlation for an incoming response from the broker.
+     * The returned instance is owned by this manager, and is only valid until the next call to this method.
+     * @param upstreamCorrelationId The (upstream) correlation id in the response.
+     * @return The correlation, or null if there is no request in flight with the given id.
      */
     public Correlation getBrokerCorrelation(int upstreamCorrelationId) {
-        // Set the tag on the response object
-        return brokerRequests.remove(upstreamCorrelationId);
+        int slot = slotOf(upstreamCorrelationId);
+        if (slot < 0) {
+            return null;
+        }
+        removed.set(apiKeys[slot], apiVersions[slot], downstreamIds[slot], (flags[slot] & DECODE_RESPONSE) != 0, recipients[slot], promises[slot]);
+        remove(slot);
+        inFlight--;
+        Metrics.upstreamInFlightRequests().decrement();
+        if (flags.length > INITIAL_CAPACITY && inFlight * 8 < flags.length) {
+            resize(flags.length >> 1);
+        }
+        return removed;
+    }
+
+    /**
+     * Forgets all the in-flight correlations, for example because the connection to the broker has closed.
+     * The promises of filters' requests still awaiting a response are failed, since it will never arrive.
+     */
+    public void clear() {
+        ClosedChannelException closed = null;
+        for (CompletableFuture<?> promise : promises) {
+            if (promise != null) {
+                if (closed == null) {
+                    closed = new ClosedChannelException();
+                }
+                promise.completeExceptionally(closed);
+            }
+        }
+        Metrics.upstreamInFlightRequests().add(-inFlight);
+        inFlight = 0;
+        if (flags.length > INITIAL_CAPACITY) {
+            allocate(INITIAL_CAPACITY);
+        }
+        else {
+            Arrays.fill(flags, (byte) 0);
+            Arrays.fill(recipients, null);
+            Arrays.fill(promises, null);
+        }
+    }
+
+    /**
+     * @return The number of requests sent to the broker for which a response is still expected.
+     */
+    public int inFlightCount() {
+        return inFlight;
+    }
+
+    /**
+     * @return The greatest number of requests that have been in flight at the same time.
+     */
+    public int highWaterMark() {
+        return highWaterMark;
+    }
+
+    @VisibleForTesting
+    int capacity() {
+        return flags.length;
     }
 
     /**
      * A record for which responses should be decoded, together with their
      * API key and version.
      */
-    // TODO a perfect value type
     public static class Correlation {
-        private final short apiKey;
-        private final short apiVersion;
-
-        private final int downstreamCorrelationId;
-        private final boolean decodeResponse;
-        private final Filter recipient;
-        private final CompletableFuture<?> promise;
-
-        private Correlation(short apiKey,
-                            short apiVersion,
-                            int downstreamCorrelationId,
-                            boolean decodeResponse,
-                            Filter recipient,
-                            CompletableFuture<?> promise) {
+        private short apiKey;
+        private short apiVersion;
+
+        private int downstreamCorrelationId;
+        private boolean decodeResponse;
+        private Filter recipient;
+        private CompletableFuture<?> promise;
+
+        private Correlation() {
+        }
+
+        private void set(short apiKey,
+                         short apiVersion,
+                         int downstreamCorrelationId,
+                         boolean decodeResponse,
+                         Filter recipient,
+                         CompletableFuture<?> promise) {
             this.apiKey = apiKey;
             this.apiVersion = apiVersion;
             this.downstreamCorrelationId = downstreamCorrelationId;
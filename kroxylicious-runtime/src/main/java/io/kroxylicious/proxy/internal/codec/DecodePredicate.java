@@ -10,7 +10,7 @@ import java.util.List;
 import org.apache.kafka.common.protocol.ApiKeys;
 
 import io.kroxylicious.proxy.filter.FilterAndInvoker;
-import io.kroxylicious.proxy.filter.FilterInvoker;
+import io.kroxylicious.proxy.internal.FilterRoutingTable;
 
 /**
  * Encapsulates decisions about whether requests and responses should be
@@ -22,34 +22,7 @@ import io.kroxylicious.proxy.filter.FilterInvoker;
  */
 public interface DecodePredicate {
     static DecodePredicate forFilters(List<FilterAndInvoker> filterAndInvokers) {
-
-        List<FilterInvoker> invokers = filterAndInvokers.stream().map(FilterAndInvoker::invoker).toList();
-        return new DecodePredicate() {
-            @Override
-            public boolean shouldDecodeResponse(ApiKeys apiKey, short apiVersion) {
-                for (var invoker : invokers) {
-                    if (invoker.shouldHandleResponse(apiKey, apiVersion)) {
-                        return true;
-                    }
-                }
-                return false;
-            }
-
-            @Override
-            public boolean shouldDecodeRequest(ApiKeys apiKey, short apiVersion) {
-                for (var invoker : invokers) {
-                    if (invoker.shouldHandleRequest(apiKey, apiVersion)) {
-                        return true;
-                    }
-                }
-                return false;
-            }
-
-            @Override
-            public String toString() {
-                return "DecodePredicate$forFilters{" + filterAndInvokers + "}";
-            }
-        };
+        return new FilterRoutingTable(filterAndInvokers);
     }
 
     boolean shouldDecodeRequest(ApiKeys apiKey, short apiVersion);
@@ -13,15 +13,25 @@ import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
 
+import io.kroxylicious.proxy.frame.DecodedFrame;
 import io.kroxylicious.proxy.frame.Frame;
+import io.kroxylicious.proxy.frame.OpaqueFrame;
+import io.kroxylicious.proxy.frame.OpaqueFrameChunk;
 
 /**
  * Abstraction for request and response decoders.
+ * <p>Frames are normally only emitted once all of their bytes have arrived. A subclass may instead choose to
+ * {@linkplain #streamHead(ChannelHandlerContext, ByteBuf, int) stream} a large opaque frame, in which case the
+ * bytes which have arrived are emitted straight away as a {@linkplain OpaqueFrame#isStreamed() streamed} frame,
+ * and the rest of the frame is emitted as {@link OpaqueFrameChunk}s as it arrives.</p>
  */
 public abstract class KafkaMessageDecoder extends ByteToMessageDecoder {
 
     private final int socketFrameMaxSize;
 
+    /** The number of bytes of the frame being streamed which are yet to be emitted. */
+    private int streamRemaining;
+
     protected abstract Logger log();
 
     protected KafkaMessageDecoder(int socketFrameMaxSize) {
@@ -30,6 +40,9 @@ public abstract class KafkaMessageDecoder extends ByteToMessageDecoder {
 
     @Override
     public void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        if (streamRemaining > 0) {
+            relayChunk(ctx, in, out);
+        }
         while (in.readableBytes() > 4) {
             try {
                 int sof = in.readerIndex();
@@ -53,7 +66,14 @@ public abstract class KafkaMessageDecoder extends ByteToMessageDecoder {
                     }
                 }
                 else {
-                    in.readerIndex(sof);
+                    OpaqueFrame head = streamHead(ctx, in, frameSize);
+                    if (head != null) {
+                        out.add(head);
+                        streamRemaining = frameSize - readable;
+                    }
+                    else {
+                        in.readerIndex(sof);
+                    }
                     break;
                 }
             }
@@ -64,6 +84,46 @@ public abstract class KafkaMessageDecoder extends ByteToMessageDecoder {
         }
     }
 
+    /**
+     * If the decoded body references the bytes of the given buffer (for example the records of a Produce request
+     * or Fetch response read in zero-copy mode) then retain the frame's slice of the buffer for the lifetime of the frame.
+     * <p>The slice keeps the memory of the whole buffer it was read into from being freed, so a frame which is held
+     * for a long time pins the memory of the frames read alongside it. While any such frame is held, the decoder also
+     * has to copy the unread remainder of the buffer (at most one partial frame) into a new buffer when more bytes
+     * arrive, rather than appending to it. Both are the price of not copying the records.</p>
+     * @param accessor The accessor the body was decoded with.
+     * @param in The buffer holding just the frame.
+     * @param frame The decoded frame.
+     */
+    protected static void retainIfShared(ByteBufAccessorImpl accessor, ByteBuf in, DecodedFrame<?, ?> frame) {
+        if (accessor.sharesBuffer()) {
+            frame.add(in.retainedSlice(0, in.capacity()));
+        }
+    }
+
+    private void relayChunk(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        int bytes = Math.min(in.readableBytes(), streamRemaining);
+        streamRemaining -= bytes;
+        if (log().isTraceEnabled()) { // avoid boxing
+            log().trace("{}: Relaying {} bytes of streamed frame ({} remaining)", ctx, bytes, streamRemaining);
+        }
+        out.add(new OpaqueFrameChunk(in.readRetainedSlice(bytes), streamRemaining == 0));
+    }
+
+    /**
+     * Called when only part of a frame has arrived, to decide whether to stream the frame rather than waiting
+     * for the rest of it.
+     * A frame which is streamed must consume all the readable bytes of {@code in}; one which isn't must not
+     * consume any.
+     * @param ctx The context.
+     * @param in The buffer, positioned after the frame size.
+     * @param length The length of the whole frame.
+     * @return The streamed frame, or null to wait for the whole frame.
+     */
+    protected OpaqueFrame streamHead(ChannelHandlerContext ctx, ByteBuf in, int length) {
+        return null;
+    }
+
     protected abstract Frame decodeHeaderAndBody(ChannelHandlerContext ctx, ByteBuf in, int length);
 
 }
@@ -8,32 +8,149 @@ package io.kroxylicious.proxy.internal.codec;
 import org.slf4j.Logger;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.MessageToByteEncoder;
 
+import io.kroxylicious.proxy.frame.DecodedFrame;
 import io.kroxylicious.proxy.frame.Frame;
+import io.kroxylicious.proxy.frame.OpaqueFrame;
+import io.kroxylicious.proxy.frame.OpaqueFrameChunk;
 
 /**
  * Abstraction for request and response encoders.
+ * <p>Decoded frames are written in a single pass by the generated {@code *Writer} classes, into a buffer sized
+ * using {@link DecodedFrame#encodedSizeHint()} and with the frame size prefix back-patched once the header and
+ * body have been written. Other frames are encoded into a buffer sized using {@link Frame#estimateEncodedSize()}.
+ * {@link OpaqueFrame}s are instead passed through without copying their body: a freshly allocated
+ * header (containing the frame size prefix) is composed with the frame's own buffer, whose
+ * ownership passes to the written message. The {@link OpaqueFrameChunk}s which follow a streamed opaque frame
+ * are written as they are.</p>
  */
 public abstract class KafkaMessageEncoder<F extends Frame> extends MessageToByteEncoder<F> {
 
+    /**
+     * Number of bytes required for storing the frame length.
+     */
+    protected static final int FRAME_SIZE_LENGTH = Integer.BYTES;
+
+    /**
+     * Initial capacity of the buffer for a decoded frame whose received size is unknown.
+     */
+    private static final int DEFAULT_DECODED_FRAME_CAPACITY = 256;
+
     /*
      * TODO In org.apache.kafka.common.protocol.SendBuilder.buildSend Kafka gets to optimize how it writes to the
      * output buffer because it can sometimes use zero copy and so avoid needing to allocate a buffer for the whole message
-     * To do similar we'd need to override io.netty.handler.codec.MessageToByteEncoder.write()
-     * so we had control over buffer allocation
+     * To do similar for decoded frames we'd need to write the records of the message without copying them, like we already
+     * do for opaque frames.
      */
 
     protected abstract Logger log();
 
     /**
-     * This has been overridden in order to use {@link Frame#estimateEncodedSize()} to pre-size correctly the holding buffer
-     * and save expensive enlarging to happen under the hood, during the encoding process.
+     * Writes the header and body of the given decoded frame.
+     * @param frame The frame.
+     * @param out The buffer to write to.
+     */
+    protected abstract void writeHeaderAndBody(DecodedFrame<?, ?> frame, ByteBuf out);
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof OpaqueFrame opaqueFrame && acceptOutboundMessage(msg)) {
+            final ByteBuf passthrough;
+            try {
+                @SuppressWarnings("unchecked")
+                F frame = (F) msg;
+                // encodeOpaque owns the frame's buffer, so has released it if this throws
+                passthrough = encodeOpaque(ctx, frame, opaqueFrame);
+            }
+            catch (EncoderException e) {
+                throw e;
+            }
+            catch (Throwable e) {
+                throw new EncoderException(e);
+            }
+            ctx.write(passthrough, promise);
+        }
+        else if (msg instanceof OpaqueFrameChunk chunk) {
+            ctx.write(chunk.content(), promise);
+        }
+        else {
+            super.write(ctx, msg, promise);
+        }
+    }
+
+    /**
+     * Encodes the given opaque frame without copying its body.
+     * Ownership of the frame's buffer passes to this method: the returned buffer owns it, so it is released
+     * once the returned buffer has been written, and if this throws it has already been released.
+     * @param ctx The context.
+     * @param frame The frame.
+     * @param opaqueFrame The same frame, as an opaque frame.
+     * @return A buffer containing the encoded frame, including the size prefix.
+     */
+    protected ByteBuf encodeOpaque(ChannelHandlerContext ctx, F frame, OpaqueFrame opaqueFrame) {
+        if (log().isTraceEnabled()) {
+            log().trace("{}: Passing through {} with 4 byte length ({})", ctx, opaqueFrame, opaqueFrame.length());
+        }
+        ByteBuf header;
+        ByteBuf body;
+        try {
+            body = opaqueFrame.transferBuffer(0);
+            header = ctx.alloc().ioBuffer(FRAME_SIZE_LENGTH);
+        }
+        catch (RuntimeException e) {
+            opaqueFrame.buf().release();
+            throw e;
+        }
+        header.writeInt(opaqueFrame.length());
+        return compose(ctx, header, body);
+    }
+
+    /**
+     * Composes the given header and body into a single buffer without copying either of them.
+     * Ownership of both buffers passes to this method: the returned buffer owns them, and if this throws
+     * they have already been released.
+     */
+    protected static ByteBuf compose(ChannelHandlerContext ctx, ByteBuf header, ByteBuf body) {
+        CompositeByteBuf composite;
+        try {
+            composite = ctx.alloc().compositeBuffer(2);
+        }
+        catch (RuntimeException e) {
+            header.release();
+            body.release();
+            throw e;
+        }
+        try {
+            // if adding fails, the buffers not yet added have been released, and those added are released with the composite
+            return composite.addComponents(true, header, body);
+        }
+        catch (RuntimeException e) {
+            composite.release();
+            throw e;
+        }
+    }
+
+    /**
+     * This has been overridden in order to pre-size the holding buffer and save expensive enlarging to happen
+     * under the hood, during the encoding process.
+     * For decoded frames the size they were received with is used, because computing the exact size would
+     * mean traversing the whole message an extra time.
      */
     @Override
     protected ByteBuf allocateBuffer(final ChannelHandlerContext ctx, final F msg, final boolean preferDirect) throws Exception {
-        final int bytes = msg.estimateEncodedSize();
+        final int bytes;
+        if (msg instanceof DecodedFrame<?, ?> decodedFrame) {
+            int hint = decodedFrame.encodedSizeHint();
+            bytes = hint < 0 ? DEFAULT_DECODED_FRAME_CAPACITY : FRAME_SIZE_LENGTH + hint;
+        }
+        else {
+            bytes = msg.estimateEncodedSize();
+        }
         if (preferDirect) {
             return ctx.alloc().ioBuffer(bytes);
         }
@@ -43,6 +160,14 @@ public abstract class KafkaMessageEncoder<F extends Frame> extends MessageToByte
     @Override
     protected void encode(ChannelHandlerContext ctx, F frame, ByteBuf out) throws Exception {
         log().trace("{}: Encoding {} to buffer {}", ctx, frame, out);
-        frame.encode(new ByteBufAccessorImpl(out));
+        if (frame instanceof DecodedFrame<?, ?> decodedFrame) {
+            final int initialIndex = out.writerIndex();
+            out.writeInt(0);
+            writeHeaderAndBody(decodedFrame, out);
+            out.setInt(initialIndex, out.writerIndex() - initialIndex - FRAME_SIZE_LENGTH);
+        }
+        else {
+            frame.encode(new ByteBufAccessorImpl(out));
+        }
     }
 }
@@ -74,7 +74,7 @@ public class KafkaRequestDecoder extends KafkaMessageDecoder {
             // TODO Decide whether to decode this API at all
             // TODO Can we implement ApiMessage using an opaque wrapper around a bytebuf?
 
-            accessor = new ByteBufAccessorImpl(in);
+            accessor = new ByteBufAccessorImpl(in, true);
             header = readHeader(headerVersion, accessor);
             if (log().isTraceEnabled()) {
                 log().trace("{}: header: {}", ctx, header);
@@ -90,7 +90,10 @@ public class KafkaRequestDecoder extends KafkaMessageDecoder {
                 log().trace("{}: body {}", ctx, body);
             }
 
-            frame = new DecodedRequestFrame<>(apiVersion, correlationId, decodeResponse, header, body);
+            var decodedFrame = new DecodedRequestFrame<>(apiVersion, correlationId, decodeResponse, header, body);
+            retainIfShared(accessor, in, decodedFrame);
+            decodedFrame.encodedSizeHint(length);
+            frame = decodedFrame;
             if (log().isTraceEnabled()) {
                 log().trace("{}: frame {}", ctx, frame);
             }
@@ -5,6 +5,7 @@
  */
 package io.kroxylicious.proxy.internal.codec;
 
+import org.apache.kafka.common.message.RequestHeaderData;
 import org.apache.kafka.common.protocol.ApiKeys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +13,8 @@ import org.slf4j.LoggerFactory;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 
+import io.kroxylicious.proxy.frame.DecodedFrame;
+import io.kroxylicious.proxy.frame.OpaqueFrame;
 import io.kroxylicious.proxy.frame.RequestFrame;
 import io.kroxylicious.proxy.internal.InternalRequestFrame;
 
@@ -22,6 +25,8 @@ public class KafkaRequestEncoder extends KafkaMessageEncoder<RequestFrame> {
     public static final int LENGTH = 4;
     public static final int API_KEY = 2;
     public static final int API_VERSION = 2;
+    public static final int CORRELATION_ID = 4;
+    private static final int OPAQUE_HEADER_LENGTH = LENGTH + API_KEY + API_VERSION + CORRELATION_ID;
     private final CorrelationManager correlationManager;
 
     public KafkaRequestEncoder(CorrelationManager correlationManager) {
@@ -33,6 +38,12 @@ public class KafkaRequestEncoder extends KafkaMessageEncoder<RequestFrame> {
         return LOGGER;
     }
 
+    @Override
+    protected void writeHeaderAndBody(DecodedFrame<?, ?> frame, ByteBuf out) {
+        RequestHeaderWriter.write((RequestHeaderData) frame.header(), frame.headerVersion(), out);
+        BodyWriter.writeRequest(frame.apiKey(), frame.apiVersion(), frame.body(), out);
+    }
+
     @Override
     protected void encode(ChannelHandlerContext ctx, RequestFrame frame, ByteBuf out) throws Exception {
         super.encode(ctx, frame, out);
@@ -43,6 +54,53 @@ public class KafkaRequestEncoder extends KafkaMessageEncoder<RequestFrame> {
         out.readerIndex(LENGTH);
         short apiKey = out.readShort();
         short apiVersion = out.readShort();
+        int upstreamCorrelationId = putBrokerRequest(ctx, frame, apiKey, apiVersion);
+        out.writerIndex(LENGTH + API_KEY + API_VERSION);
+        out.writeInt(upstreamCorrelationId);
+        out.readerIndex(ri);
+        out.writerIndex(wi);
+    }
+
+    /**
+     * The inbound buffer of an opaque request frame is read-only and still contains the downstream correlation id,
+     * so rather than rewriting it in place we write a new header (frame size, api key, api version and upstream
+     * correlation id) and compose it with the remainder of the frame.
+     * The request is only registered with the correlation manager once the frame has been composed, so that
+     * a failure to compose it doesn't leave behind a correlation for a request which was never sent.
+     */
+    @Override
+    protected ByteBuf encodeOpaque(ChannelHandlerContext ctx, RequestFrame frame, OpaqueFrame opaqueFrame) {
+        ByteBuf buf = opaqueFrame.buf();
+        int ri = buf.readerIndex();
+        short apiKey = buf.getShort(ri);
+        short apiVersion = buf.getShort(ri + API_KEY);
+        ByteBuf header;
+        ByteBuf body;
+        try {
+            body = opaqueFrame.transferBuffer(API_KEY + API_VERSION + CORRELATION_ID);
+            header = ctx.alloc().ioBuffer(OPAQUE_HEADER_LENGTH);
+        }
+        catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+        header.writeInt(opaqueFrame.length());
+        header.writeShort(apiKey);
+        header.writeShort(apiVersion);
+        // the upstream correlation id is set once the request has been registered
+        header.writeInt(0);
+        ByteBuf encoded = compose(ctx, header, body);
+        try {
+            encoded.setInt(OPAQUE_HEADER_LENGTH - CORRELATION_ID, putBrokerRequest(ctx, frame, apiKey, apiVersion));
+        }
+        catch (RuntimeException e) {
+            encoded.release();
+            throw e;
+        }
+        return encoded;
+    }
+
+    private int putBrokerRequest(ChannelHandlerContext ctx, RequestFrame frame, short apiKey, short apiVersion) {
         boolean hasResponse = frame.hasResponse();
         boolean decodeResponse = frame.decodeResponse();
         int downstreamCorrelationId = frame.correlationId();
@@ -52,20 +110,16 @@ public class KafkaRequestEncoder extends KafkaMessageEncoder<RequestFrame> {
                 hasResponse,
                 frame instanceof InternalRequestFrame ? ((InternalRequestFrame<?>) frame).recipient() : null,
                 frame instanceof InternalRequestFrame ? ((InternalRequestFrame<?>) frame).promise() : null, decodeResponse);
-        out.writerIndex(LENGTH + API_KEY + API_VERSION);
-        out.writeInt(upstreamCorrelationId);
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("{}: {} downstream correlation id {} assigned upstream correlation id: {}",
                     ctx, ApiKeys.forId(apiKey), downstreamCorrelationId, upstreamCorrelationId);
         }
-        out.readerIndex(ri);
-        out.writerIndex(wi);
-
         if (decodeResponse &&
                 !hasResponse) {
             log().warn("{}: Not honouring decode of acks=0 PRODUCE response, because there will be none. " +
                     "This is a bug in your filter.", ctx);
         }
+        return upstreamCorrelationId;
     }
 
 }
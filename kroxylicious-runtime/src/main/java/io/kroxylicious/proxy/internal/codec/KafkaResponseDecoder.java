@@ -28,10 +28,18 @@ public class KafkaResponseDecoder extends KafkaMessageDecoder {
     private static final Logger LOGGER = LoggerFactory.getLogger(KafkaResponseDecoder.class);
 
     private final CorrelationManager correlationManager;
+    private final int streamedFrameMinSizeBytes;
 
-    public KafkaResponseDecoder(CorrelationManager correlationManager, int socketRequestMaxSizeBytes) {
+    /**
+     * @param correlationManager The correlations of the connection.
+     * @param socketRequestMaxSizeBytes The largest frame accepted.
+     * @param streamedFrameMinSizeBytes The smallest opaque frame which is relayed as it arrives, rather than once
+     * all of it has arrived.
+     */
+    public KafkaResponseDecoder(CorrelationManager correlationManager, int socketRequestMaxSizeBytes, int streamedFrameMinSizeBytes) {
         super(socketRequestMaxSizeBytes);
         this.correlationManager = correlationManager;
+        this.streamedFrameMinSizeBytes = streamedFrameMinSizeBytes;
     }
 
     @Override
@@ -39,6 +47,31 @@ public class KafkaResponseDecoder extends KafkaMessageDecoder {
         return LOGGER;
     }
 
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        // responses to the requests still in flight will never arrive
+        correlationManager.clear();
+        super.handlerRemoved0(ctx);
+    }
+
+    @Override
+    protected OpaqueFrame streamHead(ChannelHandlerContext ctx, ByteBuf in, int length) {
+        if (length < streamedFrameMinSizeBytes || in.readableBytes() < Integer.BYTES) {
+            return null;
+        }
+        int ri = in.readerIndex();
+        var upstreamCorrelationId = in.getInt(ri);
+        // only responses which no filter wants to see can be forwarded before all of them has arrived
+        if (!correlationManager.isOpaqueResponse(upstreamCorrelationId)) {
+            return null;
+        }
+        CorrelationManager.Correlation correlation = correlationManager.getBrokerCorrelation(upstreamCorrelationId);
+        int correlationId = correlation.downstreamCorrelationId();
+        in.setInt(ri, correlationId);
+        LOGGER.debug("{}: Streaming response of {} bytes for upstream correlation id {}", ctx, length, upstreamCorrelationId);
+        return new OpaqueResponseFrame(in.readRetainedSlice(in.readableBytes()), correlationId, length, true);
+    }
+
     @Override
     protected Frame decodeHeaderAndBody(ChannelHandlerContext ctx, ByteBuf in, int length) {
         var wi = in.writerIndex();
@@ -62,17 +95,22 @@ public class KafkaResponseDecoder extends KafkaMessageDecoder {
         if (correlation.decodeResponse()) {
             ApiKeys apiKey = ApiKeys.forId(correlation.apiKey());
             short apiVersion = correlation.apiVersion();
-            var accessor = new ByteBufAccessorImpl(in);
+            Filter recipient = correlation.recipient();
+            // The body of a response to a filter's own request is handed to the filter, rather than being
+            // forwarded as a frame, so there's no frame lifetime to tie the bytes of the buffer to
+            var accessor = new ByteBufAccessorImpl(in, recipient == null);
             short headerVersion = apiKey.responseHeaderVersion(apiVersion);
             log().trace("{}: Header version: {}", ctx, headerVersion);
             ResponseHeaderData header = readHeader(headerVersion, accessor);
             log().trace("{}: Header: {}", ctx, header);
             ApiMessage body = BodyDecoder.decodeResponse(apiKey, apiVersion, accessor);
             log().trace("{}: Body: {}", ctx, body);
-            Filter recipient = correlation.recipient();
             Metrics.payloadSizeBytesDownstreamSummary(apiKey, apiVersion).record(length);
             if (recipient == null) {
-                frame = new DecodedResponseFrame<>(apiVersion, correlationId, header, body);
+                var decodedFrame = new DecodedResponseFrame<>(apiVersion, correlationId, header, body);
+                retainIfShared(accessor, in, decodedFrame);
+                decodedFrame.encodedSizeHint(length);
+                frame = decodedFrame;
             }
             else {
                 frame = new InternalResponseFrame<>(recipient, apiVersion, correlationId, header, body, correlation.promise());
@@ -5,9 +5,13 @@
  */
 package io.kroxylicious.proxy.internal.codec;
 
+import org.apache.kafka.common.message.ResponseHeaderData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.netty.buffer.ByteBuf;
+
+import io.kroxylicious.proxy.frame.DecodedFrame;
 import io.kroxylicious.proxy.frame.ResponseFrame;
 
 public class KafkaResponseEncoder extends KafkaMessageEncoder<ResponseFrame> {
@@ -19,4 +23,10 @@ public class KafkaResponseEncoder extends KafkaMessageEncoder<ResponseFrame> {
         return LOGGER;
     }
 
+    @Override
+    protected void writeHeaderAndBody(DecodedFrame<?, ?> frame, ByteBuf out) {
+        ResponseHeaderWriter.write((ResponseHeaderData) frame.header(), frame.headerVersion(), out);
+        BodyWriter.writeResponse(frame.apiKey(), frame.apiVersion(), frame.body(), out);
+    }
+
 }
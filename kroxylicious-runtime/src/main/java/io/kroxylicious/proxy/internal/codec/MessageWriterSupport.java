@@ -0,0 +1,202 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.kafka.common.Uuid;
+import org.apache.kafka.common.errors.UnsupportedVersionException;
+import org.apache.kafka.common.protocol.types.RawTaggedField;
+import org.apache.kafka.common.record.BaseRecords;
+import org.apache.kafka.common.record.MemoryRecords;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+/**
+ * Primitives used by the generated {@code *Writer} classes, which encode Kafka messages
+ * directly into a {@link ByteBuf} in a single pass.
+ * <p>Unlike Kafka's own {@code write()} methods these don't need the sizes of strings and
+ * nested structures up front: string lengths are computed from the UTF-16 representation
+ * and the UTF-8 bytes are written straight into the output buffer, and the sizes of
+ * tagged fields are back-patched once their value has been written.</p>
+ */
+final class MessageWriterSupport {
+
+    private static final int MAX_VARINT_BYTES = 5;
+
+    private MessageWriterSupport() {
+    }
+
+    static void writeUnsignedVarint(int value, ByteBuf out) {
+        ByteBufAccessorImpl.writeUnsignedVarint(value, out);
+    }
+
+    static void writeBoolean(boolean value, ByteBuf out) {
+        out.writeByte(value ? 1 : 0);
+    }
+
+    static void writeUuid(Uuid value, ByteBuf out) {
+        out.writeLong(value.getMostSignificantBits());
+        out.writeLong(value.getLeastSignificantBits());
+    }
+
+    /**
+     * Writes a string with either an int16 length prefix (or {@code -1} if it is null),
+     * or in compact form with an unsigned varint length prefix (the length plus one, or {@code 0} if it is null).
+     */
+    static void writeString(String value, boolean nullable, boolean compact, String fieldName, ByteBuf out) {
+        if (value == null) {
+            checkNullable(nullable, fieldName);
+            if (compact) {
+                writeUnsignedVarint(0, out);
+            }
+            else {
+                out.writeShort(-1);
+            }
+            return;
+        }
+        int length = ByteBufUtil.utf8Bytes(value);
+        if (length > Short.MAX_VALUE) {
+            throw new RuntimeException("'" + fieldName + "' field is too long to be serialized");
+        }
+        if (compact) {
+            writeUnsignedVarint(length + 1, out);
+        }
+        else {
+            out.writeShort(length);
+        }
+        ByteBufUtil.reserveAndWriteUtf8(out, value, length);
+    }
+
+    static void writeBytes(byte[] value, boolean nullable, boolean compact, String fieldName, ByteBuf out) {
+        if (value == null) {
+            writeNull(nullable, compact, fieldName, out);
+        }
+        else {
+            writeLength(value.length, compact, out);
+            out.writeBytes(value);
+        }
+    }
+
+    static void writeBytes(ByteBuffer value, boolean nullable, boolean compact, String fieldName, ByteBuf out) {
+        if (value == null) {
+            writeNull(nullable, compact, fieldName, out);
+        }
+        else {
+            writeLength(value.remaining(), compact, out);
+            out.writeBytes(value.duplicate());
+        }
+    }
+
+    static void writeRecords(BaseRecords value, boolean nullable, boolean compact, String fieldName, ByteBuf out) {
+        if (value == null) {
+            writeNull(nullable, compact, fieldName, out);
+        }
+        else if (value instanceof MemoryRecords memoryRecords) {
+            ByteBuffer buffer = memoryRecords.buffer();
+            writeLength(buffer.remaining(), compact, out);
+            out.writeBytes(buffer);
+        }
+        else {
+            throw new UnsupportedOperationException("Unsupported records type " + value.getClass());
+        }
+    }
+
+    /**
+     * Writes the length prefix of an array, bytes or records field.
+     */
+    static void writeLength(int length, boolean compact, ByteBuf out) {
+        if (compact) {
+            writeUnsignedVarint(length + 1, out);
+        }
+        else {
+            out.writeInt(length);
+        }
+    }
+
+    /**
+     * Writes the length prefix of a null array, bytes or records field.
+     */
+    static void writeNull(boolean nullable, boolean compact, String fieldName, ByteBuf out) {
+        checkNullable(nullable, fieldName);
+        if (compact) {
+            writeUnsignedVarint(0, out);
+        }
+        else {
+            out.writeInt(-1);
+        }
+    }
+
+    /**
+     * Writes the tag of a tagged field and reserves a single byte for its size.
+     * @return the index at which the value of the field starts, to be passed to {@link #endTaggedField(int, ByteBuf)}.
+     */
+    static int startTaggedField(int tag, ByteBuf out) {
+        writeUnsignedVarint(tag, out);
+        out.writeByte(0);
+        return out.writerIndex();
+    }
+
+    /**
+     * Back-patches the size of a tagged field whose value has been written since
+     * {@link #startTaggedField(int, ByteBuf)}.
+     * Most tagged fields are small enough that their size fits in the single reserved byte,
+     * otherwise the value is moved along to make room for a longer varint.
+     */
+    static void endTaggedField(int valueStart, ByteBuf out) {
+        int size = out.writerIndex() - valueStart;
+        if (size < 0x80) {
+            out.setByte(valueStart - 1, size);
+            return;
+        }
+        byte[] value = new byte[size];
+        out.getBytes(valueStart, value);
+        out.writerIndex(valueStart - 1);
+        out.ensureWritable(MAX_VARINT_BYTES + size);
+        writeUnsignedVarint(size, out);
+        out.writeBytes(value);
+    }
+
+    /**
+     * Writes those of the given unknown tagged fields which precede the given tag.
+     * Like Kafka, we assume the unknown tagged fields are sorted by tag.
+     * @param from the index of the first field in {@code fields} which has yet to be written
+     * @return the index of the first field in {@code fields} which has yet to be written
+     */
+    static int writeRawTaggedFields(List<RawTaggedField> fields, int from, int beforeTag, ByteBuf out) {
+        int index = from;
+        int size = fields.size();
+        while (index < size) {
+            RawTaggedField field = fields.get(index);
+            if (field.tag() >= beforeTag) {
+                if (field.tag() == beforeTag) {
+                    throw new RuntimeException("Attempted to use tag " + field.tag() + " as an undefined tag.");
+                }
+                break;
+            }
+            writeUnsignedVarint(field.tag(), out);
+            writeUnsignedVarint(field.size(), out);
+            out.writeBytes(field.data());
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @return the exception thrown when a field which is absent from the version being written doesn't have its default value
+     */
+    static UnsupportedVersionException nonDefaultFieldException(String fieldName, short version) {
+        return new UnsupportedVersionException("Attempted to write a non-default " + fieldName + " at version " + version);
+    }
+
+    private static void checkNullable(boolean nullable, String fieldName) {
+        if (!nullable) {
+            throw new NullPointerException("non-nullable field " + fieldName + " was serialized as null");
+        }
+    }
+}
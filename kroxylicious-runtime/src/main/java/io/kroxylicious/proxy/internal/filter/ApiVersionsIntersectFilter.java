@@ -18,18 +18,29 @@ import io.kroxylicious.proxy.internal.ApiVersionsServiceImpl;
 /**
  * Changes an API_VERSIONS response so that a client sees the intersection of supported version ranges for each
  * API key. This is an intrinsic part of correctly acting as a proxy.
+ * <p>When no other filter in the chain handles API_VERSIONS, the response the client sees depends only on the
+ * upstream broker, so it is cached for the other connections to that broker.</p>
  */
 public class ApiVersionsIntersectFilter implements ApiVersionsResponseFilter {
     private final ApiVersionsServiceImpl apiVersionsService;
+    private final boolean cacheResponses;
 
     public ApiVersionsIntersectFilter(ApiVersionsServiceImpl service) {
+        this(service, false);
+    }
+
+    public ApiVersionsIntersectFilter(ApiVersionsServiceImpl service, boolean cacheResponses) {
         this.apiVersionsService = service;
+        this.cacheResponses = cacheResponses;
     }
 
     @Override
     public CompletionStage<ResponseFilterResult> onApiVersionsResponse(short apiVersion, ResponseHeaderData header, ApiVersionsResponseData data,
                                                                        FilterContext context) {
         apiVersionsService.updateVersions(context.channelDescriptor(), data);
+        if (cacheResponses) {
+            apiVersionsService.cacheVersions(data);
+        }
         return context.forwardResponse(header, data);
     }
 }
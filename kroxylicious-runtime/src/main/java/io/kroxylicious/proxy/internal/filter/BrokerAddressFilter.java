@@ -39,7 +39,7 @@ import io.kroxylicious.proxy.service.HostPort;
 
 /**
  * An internal filter that rewrites broker addresses in all relevant responses to the corresponding proxy address. It also
- * is responsible for updating the virtual cluster's cache of upstream broker endpoints.
+ * is responsible for updating the virtual cluster's cache of upstream broker endpoints, and its cache of topic names.
  */
 public class BrokerAddressFilter implements MetadataResponseFilter, FindCoordinatorResponseFilter, DescribeClusterResponseFilter,
         ProduceResponseFilter, FetchResponseFilter {
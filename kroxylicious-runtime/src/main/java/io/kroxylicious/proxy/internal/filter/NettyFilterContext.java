@@ -6,22 +6,32 @@
 
 package io.kroxylicious.proxy.internal.filter;
 
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledExecutorService;
 
+import javax.annotation.Nullable;
+
 import io.kroxylicious.proxy.config.PluginFactory;
 import io.kroxylicious.proxy.config.PluginFactoryRegistry;
 import io.kroxylicious.proxy.filter.FilterFactoryContext;
+import io.kroxylicious.proxy.filter.TopicNameCache;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 
 public class NettyFilterContext implements FilterFactoryContext {
     private final ScheduledExecutorService eventLoop;
     private final PluginFactoryRegistry pluginFactoryRegistry;
+    private final Executor workerPool;
+    private final TopicNameCache topicNameCache;
 
     public NettyFilterContext(ScheduledExecutorService eventLoop,
-                              PluginFactoryRegistry pluginFactoryRegistry) {
+                              PluginFactoryRegistry pluginFactoryRegistry,
+                              Executor workerPool,
+                              @Nullable TopicNameCache topicNameCache) {
         this.eventLoop = eventLoop;
         this.pluginFactoryRegistry = pluginFactoryRegistry;
+        this.workerPool = workerPool;
+        this.topicNameCache = topicNameCache;
     }
 
     @Override
@@ -29,6 +39,18 @@ public class NettyFilterContext implements FilterFactoryContext {
         return eventLoop;
     }
 
+    @NonNull
+    @Override
+    public Executor workerPool() {
+        return workerPool;
+    }
+
+    @Nullable
+    @Override
+    public TopicNameCache topicNameCache() {
+        return topicNameCache;
+    }
+
     @NonNull
     @Override
     public <P> P pluginInstance(@NonNull Class<P> pluginClass, @NonNull String instanceName) {
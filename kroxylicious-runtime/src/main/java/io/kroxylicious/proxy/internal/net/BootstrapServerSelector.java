@@ -0,0 +1,174 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.proxy.internal.net;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.kroxylicious.proxy.service.HostPort;
+
+import edu.umd.cs.findbugs.annotations.NonNull;
+import edu.umd.cs.findbugs.annotations.Nullable;
+
+/**
+ * Chooses which of the upstream bootstrap servers of a virtual cluster a connection is made to.
+ * <p>A server whose connection attempt failed is avoided for a back-off period, which doubles with each consecutive
+ * failure. Among the other servers, two are picked at random and the one with the lower connect latency
+ * (an exponentially weighted moving average) is chosen, so that load is spread across the servers while
+ * favouring the faster ones. Servers whose latency is not known yet are tried first.</p>
+ */
+public class BootstrapServerSelector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BootstrapServerSelector.class);
+
+    static final Duration INITIAL_BACKOFF = Duration.ofSeconds(1);
+    static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+    // weight of the latest latency sample in the moving average
+    private static final double LATENCY_WEIGHT = 0.3;
+
+    private static final class Server {
+        private final HostPort address;
+        private volatile long latencyNanos = 0;
+        private volatile int consecutiveFailures = 0;
+        private volatile long retryAt;
+
+        private Server(HostPort address) {
+            this.address = address;
+        }
+
+        private boolean isAvailable(long now) {
+            return consecutiveFailures == 0 || now - retryAt >= 0;
+        }
+    }
+
+    private final List<Server> servers;
+    private final LongSupplier nanoTime;
+
+    public BootstrapServerSelector(@NonNull List<HostPort> bootstrapServers) {
+        this(bootstrapServers, System::nanoTime);
+    }
+
+    BootstrapServerSelector(@NonNull List<HostPort> bootstrapServers, @NonNull LongSupplier nanoTime) {
+        this.servers = bootstrapServers.stream().distinct().map(Server::new).toList();
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * @return true if there is more than one server to choose from.
+     */
+    public boolean canFailover() {
+        return servers.size() > 1;
+    }
+
+    /**
+     * @param address An upstream address.
+     * @return true if the address is one of the bootstrap servers.
+     */
+    public boolean isBootstrapServer(HostPort address) {
+        return find(address) != null;
+    }
+
+    /**
+     * Chooses a bootstrap server.
+     * @return The server, or null if there are no bootstrap servers.
+     */
+    @Nullable
+    public HostPort select() {
+        return select(Set.of());
+    }
+
+    /**
+     * Chooses a bootstrap server, other than those already attempted.
+     * If all those servers are backing off, the one whose back-off ends soonest is chosen.
+     * @param attempted The servers which must not be chosen.
+     * @return The server, or null if all the servers have been attempted.
+     */
+    @Nullable
+    public HostPort select(@NonNull Collection<HostPort> attempted) {
+        long now = nanoTime.getAsLong();
+        var candidates = new ArrayList<Server>(servers.size());
+        Server soonestRetry = null;
+        for (Server server : servers) {
+            if (attempted.contains(server.address)) {
+                continue;
+            }
+            if (server.isAvailable(now)) {
+                candidates.add(server);
+            }
+            else if (soonestRetry == null || server.retryAt - soonestRetry.retryAt < 0) {
+                soonestRetry = server;
+            }
+        }
+        if (candidates.isEmpty()) {
+            return soonestRetry == null ? null : soonestRetry.address;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0).address;
+        }
+        var random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Server a = candidates.get(first);
+        Server b = candidates.get(second);
+        return b.latencyNanos < a.latencyNanos ? b.address : a.address;
+    }
+
+    /**
+     * Records a successful connection to a bootstrap server.
+     * @param address The server.
+     * @param latencyNanos How long the connection took to establish.
+     */
+    public void connected(HostPort address, long latencyNanos) {
+        var server = find(address);
+        if (server == null) {
+            return;
+        }
+        long previous = server.latencyNanos;
+        server.latencyNanos = previous == 0 ? latencyNanos : (long) (LATENCY_WEIGHT * latencyNanos + (1 - LATENCY_WEIGHT) * previous);
+        if (server.consecutiveFailures > 0) {
+            LOGGER.info("Bootstrap server {} is reachable again", address);
+            server.consecutiveFailures = 0;
+        }
+    }
+
+    /**
+     * Records a failed connection attempt to a bootstrap server.
+     * @param address The server.
+     */
+    public void failed(HostPort address) {
+        var server = find(address);
+        if (server == null) {
+            return;
+        }
+        int failures = server.consecutiveFailures + 1;
+        long backoff = Math.min(INITIAL_BACKOFF.toNanos() << Math.min(failures - 1, 16), MAX_BACKOFF.toNanos());
+        server.retryAt = nanoTime.getAsLong() + backoff;
+        server.consecutiveFailures = failures;
+        LOGGER.debug("Bootstrap server {} failed {} consecutive time(s), avoiding it for {}ms", address, failures, Duration.ofNanos(backoff).toMillis());
+    }
+
+    @Nullable
+    private Server find(HostPort address) {
+        for (Server server : servers) {
+            if (server.address.equals(address)) {
+                return server;
+            }
+        }
+        return null;
+    }
+}
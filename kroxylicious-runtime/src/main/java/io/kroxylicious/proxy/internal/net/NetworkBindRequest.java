@@ -6,9 +6,12 @@
 
 package io.kroxylicious.proxy.internal.net;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,13 +20,28 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.util.AttributeKey;
 
 /**
  * Request for a network endpoint to be bound.
- *
+ * <p>If the server bootstrap carries the {@link #ACCEPTORS} attribute, the endpoint is bound that many times
+ * (relying on {@code SO_REUSEPORT}), so that the kernel spreads incoming connections across the acceptor
+ * threads. The future is completed with the first channel, which refers to the others through the
+ * {@link #ADDITIONAL_ACCEPTORS} attribute.</p>
  */
 public class NetworkBindRequest extends NetworkBindingOperation<Channel> {
     private static final Logger LOGGER = LoggerFactory.getLogger(NetworkBindRequest.class);
+
+    /**
+     * The number of channels each endpoint is bound with.
+     */
+    public static final AttributeKey<Integer> ACCEPTORS = AttributeKey.newInstance("acceptors");
+
+    /**
+     * The channels bound to the same endpoint as the channel carrying this attribute.
+     */
+    public static final AttributeKey<List<Channel>> ADDITIONAL_ACCEPTORS = AttributeKey.newInstance("additionalAcceptors");
+
     private final CompletableFuture<Channel> future;
     private final Endpoint endpoint;
 
@@ -67,7 +85,7 @@ public class NetworkBindRequest extends NetworkBindingOperation<Channel> {
                         future.completeExceptionally(channelFuture.cause());
                     }
                     else {
-                        future.complete(channelFuture.channel());
+                        bindAdditionalAcceptors(serverBootstrap, executorService, channelFuture.channel());
                     }
                 });
             });
@@ -77,4 +95,45 @@ public class NetworkBindRequest extends NetworkBindingOperation<Channel> {
         }
     }
 
+    private void bindAdditionalAcceptors(ServerBootstrap serverBootstrap, ExecutorService executorService, Channel primary) {
+        Integer acceptors = (Integer) serverBootstrap.config().attrs().get(ACCEPTORS);
+        int additional = acceptors == null ? 0 : acceptors - 1;
+        if (additional <= 0) {
+            future.complete(primary);
+            return;
+        }
+        // bind to the address actually bound, so that an ephemeral port is shared by all the acceptors
+        var localAddress = primary.localAddress();
+        var channels = new ArrayList<Channel>(additional);
+        var binds = new ArrayList<ChannelFuture>(additional);
+        for (int i = 0; i < additional; i++) {
+            binds.add(serverBootstrap.bind(localAddress));
+        }
+        var remaining = new AtomicInteger(additional);
+        ChannelFutureListener listener = channelFuture -> {
+            if (remaining.decrementAndGet() == 0) {
+                executorService.execute(() -> {
+                    Throwable cause = null;
+                    for (ChannelFuture bind : binds) {
+                        channels.add(bind.channel());
+                        if (bind.cause() != null && cause == null) {
+                            cause = bind.cause();
+                        }
+                    }
+                    if (cause != null) {
+                        LOGGER.debug("Binding additional acceptors to {} failed", localAddress, cause);
+                        primary.close();
+                        channels.forEach(Channel::close);
+                        future.completeExceptionally(cause);
+                    }
+                    else {
+                        LOGGER.debug("Bound {} acceptors to {}", additional + 1, localAddress);
+                        primary.attr(ADDITIONAL_ACCEPTORS).set(List.copyOf(channels));
+                        future.complete(primary);
+                    }
+                });
+            }
+        };
+        binds.forEach(bind -> bind.addListener(listener));
+    }
 }
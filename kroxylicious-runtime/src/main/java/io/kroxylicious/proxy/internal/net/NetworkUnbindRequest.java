@@ -7,14 +7,18 @@
 package io.kroxylicious.proxy.internal.net;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 
 /**
@@ -42,18 +46,31 @@ public class NetworkUnbindRequest extends NetworkBindingOperation<Void> {
             var addr = channel.localAddress();
             LOGGER.info("Unbinding {}", addr);
 
-            channel.close().addListener((ChannelFutureListener) channelFuture -> {
-                executorService.execute(() -> {
-                    if (channelFuture.cause() != null) {
-                        LOGGER.debug("Unbind failed {}", addr, channelFuture.cause());
-                        future.completeExceptionally(channelFuture.cause());
-                    }
-                    else {
-                        LOGGER.info("Unbound {}", addr);
-                        future.complete(null);
-                    }
-                });
-            });
+            var channels = new ArrayList<Channel>();
+            channels.add(channel);
+            var additionalAcceptors = channel.attr(NetworkBindRequest.ADDITIONAL_ACCEPTORS).get();
+            if (additionalAcceptors != null) {
+                channels.addAll(additionalAcceptors);
+            }
+
+            var remaining = new AtomicInteger(channels.size());
+            var closes = channels.stream().map(Channel::close).toList();
+            ChannelFutureListener listener = channelFuture -> {
+                if (remaining.decrementAndGet() == 0) {
+                    executorService.execute(() -> {
+                        var cause = closes.stream().map(ChannelFuture::cause).filter(Objects::nonNull).findFirst();
+                        if (cause.isPresent()) {
+                            LOGGER.debug("Unbind failed {}", addr, cause.get());
+                            future.completeExceptionally(cause.get());
+                        }
+                        else {
+                            LOGGER.info("Unbound {}", addr);
+                            future.complete(null);
+                        }
+                    });
+                }
+            };
+            closes.forEach(close -> close.addListener(listener));
         }
         catch (Throwable t) {
             future.completeExceptionally(t);
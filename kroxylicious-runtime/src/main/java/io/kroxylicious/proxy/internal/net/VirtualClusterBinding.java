@@ -27,6 +27,16 @@ public interface VirtualClusterBinding {
      */
     HostPort upstreamTarget();
 
+    /**
+     * The upstream target a new connection to this binding should be made to. This differs from
+     * {@link #upstreamTarget()} when the target is a bootstrap and the target cluster has several bootstrap servers.
+     *
+     * @return upstream target.
+     */
+    default HostPort selectUpstreamTarget() {
+        return upstreamTarget();
+    }
+
     /**
      * If set true, the upstream target must only be used for metadata discovery.
      *
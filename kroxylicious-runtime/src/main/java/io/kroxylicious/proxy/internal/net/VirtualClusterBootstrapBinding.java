@@ -24,6 +24,12 @@ public record VirtualClusterBootstrapBinding(VirtualCluster virtualCluster, Host
         Objects.requireNonNull(upstreamTarget, "upstreamTarget cannot be null");
     }
 
+    @Override
+    public HostPort selectUpstreamTarget() {
+        var selected = virtualCluster.bootstrapServers().select();
+        return selected == null ? upstreamTarget : selected;
+    }
+
     @Override
     public String toString() {
         return "VirtualClusterBrokerBinding[" +
@@ -26,6 +26,16 @@ public record VirtualClusterBrokerBinding(VirtualCluster virtualCluster, HostPor
         Objects.requireNonNull(upstreamTarget, "upstreamTarget must not be null");
     }
 
+    @Override
+    public HostPort selectUpstreamTarget() {
+        if (restrictUpstreamToMetadataDiscovery) {
+            // the target is a bootstrap
+            var selected = virtualCluster.bootstrapServers().select();
+            return selected == null ? upstreamTarget : selected;
+        }
+        return upstreamTarget;
+    }
+
     @Override
     public String toString() {
         return "VirtualClusterBrokerBinding[" +
@@ -7,15 +7,23 @@
 package io.kroxylicious.proxy.internal.util;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.kafka.common.protocol.ApiKeys;
 
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+
+import io.kroxylicious.proxy.internal.MemoryBudget;
 
 import static io.micrometer.core.instrument.Metrics.counter;
+import static io.micrometer.core.instrument.Metrics.gauge;
 import static io.micrometer.core.instrument.Metrics.summary;
+import static io.micrometer.core.instrument.Metrics.timer;
 
 public class Metrics {
 
@@ -27,12 +35,34 @@ public class Metrics {
 
     private static final String KROXYLICIOUS_PAYLOAD_SIZE_BYTES = "kroxylicious_payload_size_bytes";
 
+    private static final String KROXYLICIOUS_UPSTREAM_IN_FLIGHT_REQUESTS = "kroxylicious_upstream_in_flight_requests";
+
+    private static final String KROXYLICIOUS_UPSTREAM_IN_FLIGHT_REQUESTS_HIGH_WATER_MARK = "kroxylicious_upstream_in_flight_requests_high_water_mark";
+
+    private static final String KROXYLICIOUS_WORKER_POOL_QUEUE_DEPTH = "kroxylicious_worker_pool_queue_depth";
+
+    private static final String KROXYLICIOUS_WORKER_POOL_TASK_WAIT_TIME = "kroxylicious_worker_pool_task_wait_time";
+
+    private static final String KROXYLICIOUS_WORKER_POOL_TASK_RUN_TIME = "kroxylicious_worker_pool_task_run_time";
+
+    private static final String KROXYLICIOUS_IN_FLIGHT_BYTES = "kroxylicious_in_flight_bytes";
+
+    private static final String KROXYLICIOUS_IN_FLIGHT_BYTES_PAUSED_CONNECTIONS = "kroxylicious_in_flight_bytes_paused_connections";
+
     private static final String FLOWING_TAG = "flowing";
 
     private static final Tag FLOWING_UPSTREAM = Tag.of(FLOWING_TAG, "upstream");
 
     private static final Tag FLOWING_DOWNSTREAM = Tag.of(FLOWING_TAG, "downstream");
 
+    private static final LongAdder UPSTREAM_IN_FLIGHT_REQUESTS = new LongAdder();
+
+    private static final AtomicInteger UPSTREAM_IN_FLIGHT_REQUESTS_HIGH_WATER_MARK = new AtomicInteger();
+
+    private static final AtomicInteger WORKER_POOL_QUEUE_DEPTH = new AtomicInteger();
+
+    private static final AtomicReference<MemoryBudget> MEMORY_BUDGET = new AtomicReference<>();
+
     public static Counter inboundDownstreamMessagesCounter() {
         return counter(KROXYLICIOUS_INBOUND_DOWNSTREAM_MESSAGES, List.of(FLOWING_DOWNSTREAM));
     }
@@ -49,6 +79,54 @@ public class Metrics {
         return payloadSizeBytesSummary(apiKey, apiVersion, FLOWING_DOWNSTREAM);
     }
 
+    /**
+     * Registers gauges reporting the number of requests awaiting a response from upstream brokers,
+     * summed across all connections, and the greatest number in flight on any single connection.
+     */
+    public static void upstreamInFlightRequestsGauges() {
+        gauge(KROXYLICIOUS_UPSTREAM_IN_FLIGHT_REQUESTS, List.of(), UPSTREAM_IN_FLIGHT_REQUESTS, LongAdder::sum);
+        gauge(KROXYLICIOUS_UPSTREAM_IN_FLIGHT_REQUESTS_HIGH_WATER_MARK, List.of(), UPSTREAM_IN_FLIGHT_REQUESTS_HIGH_WATER_MARK, AtomicInteger::get);
+    }
+
+    public static LongAdder upstreamInFlightRequests() {
+        return UPSTREAM_IN_FLIGHT_REQUESTS;
+    }
+
+    public static void recordUpstreamInFlightRequestsHighWaterMark(int inFlight) {
+        UPSTREAM_IN_FLIGHT_REQUESTS_HIGH_WATER_MARK.accumulateAndGet(inFlight, Math::max);
+    }
+
+    /**
+     * Registers a gauge reporting the number of pieces of work waiting for a thread of the worker pool.
+     */
+    public static void workerPoolQueueDepthGauge() {
+        gauge(KROXYLICIOUS_WORKER_POOL_QUEUE_DEPTH, List.of(), WORKER_POOL_QUEUE_DEPTH, AtomicInteger::get);
+    }
+
+    public static AtomicInteger workerPoolQueueDepth() {
+        return WORKER_POOL_QUEUE_DEPTH;
+    }
+
+    /**
+     * Registers gauges reporting the bytes of the frames held by the proxy across all connections,
+     * and the number of connections paused because that exceeded the proxy's budget.
+     * @param memoryBudget The budget of the running proxy.
+     */
+    public static void inFlightBytesGauges(MemoryBudget memoryBudget) {
+        MEMORY_BUDGET.set(memoryBudget);
+        gauge(KROXYLICIOUS_IN_FLIGHT_BYTES, List.of(), MEMORY_BUDGET, budget -> budget.get() == null ? 0 : budget.get().heldBytes());
+        gauge(KROXYLICIOUS_IN_FLIGHT_BYTES_PAUSED_CONNECTIONS, List.of(), MEMORY_BUDGET,
+                budget -> budget.get() == null ? 0 : budget.get().pausedConnections());
+    }
+
+    public static Timer workerPoolTaskWaitTimer() {
+        return timer(KROXYLICIOUS_WORKER_POOL_TASK_WAIT_TIME, List.of());
+    }
+
+    public static Timer workerPoolTaskRunTimer() {
+        return timer(KROXYLICIOUS_WORKER_POOL_TASK_RUN_TIME, List.of());
+    }
+
     private static DistributionSummary payloadSizeBytesSummary(ApiKeys apiKey, short apiVersion, Tag flowing) {
         List<Tag> tags = List.of(
                 Tag.of("ApiKey", apiKey.name()),
@@ -7,8 +7,11 @@ package io.kroxylicious.proxy.model;
 
 import java.io.UncheckedIOException;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 import javax.net.ssl.SSLException;
@@ -16,19 +19,31 @@ import javax.net.ssl.SSLException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslContextOption;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.concurrent.ImmediateExecutor;
 
+import io.kroxylicious.proxy.config.DeferredRequestWindow;
 import io.kroxylicious.proxy.config.TargetCluster;
+import io.kroxylicious.proxy.config.TlsEngine;
+import io.kroxylicious.proxy.config.UpstreamMultiplexing;
+import io.kroxylicious.proxy.config.WriteBufferWatermarks;
 import io.kroxylicious.proxy.config.tls.NettyKeyProvider;
 import io.kroxylicious.proxy.config.tls.NettyTrustProvider;
 import io.kroxylicious.proxy.config.tls.Tls;
+import io.kroxylicious.proxy.internal.ApiVersionsCache;
+import io.kroxylicious.proxy.internal.TopicNameCacheImpl;
+import io.kroxylicious.proxy.internal.net.BootstrapServerSelector;
 import io.kroxylicious.proxy.service.ClusterNetworkAddressConfigProvider;
 import io.kroxylicious.proxy.service.HostPort;
 
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 public class VirtualCluster implements ClusterNetworkAddressConfigProvider {
     public static final int DEFAULT_SOCKET_FRAME_MAX_SIZE_BYTES = 104857600;
+    public static final int DEFAULT_STREAMED_FRAME_MIN_SIZE_BYTES = 1048576;
     private final String clusterName;
 
     private final TargetCluster targetCluster;
@@ -38,12 +53,28 @@ public class VirtualCluster implements ClusterNetworkAddressConfigProvider {
 
     private final boolean logFrames;
 
+    private final DeferredRequestWindow deferredRequestWindow;
+
+    private final Optional<UpstreamMultiplexing> upstreamMultiplexing;
+
+    private final boolean connectUpstreamOnAccept;
+
+    private final WriteBufferWatermarks writeBufferWatermarks;
+
+    private final TlsEngine tlsEngine;
+
     private final ClusterNetworkAddressConfigProvider clusterNetworkAddressConfigProvider;
 
     private final Optional<SslContext> upstreamSslContext;
 
     private final Optional<SslContext> downstreamSslContext;
 
+    private final TopicNameCacheImpl topicNameCache = new TopicNameCacheImpl();
+
+    private final ApiVersionsCache apiVersionsCache = new ApiVersionsCache();
+
+    private final BootstrapServerSelector bootstrapServers;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(VirtualCluster.class);
 
     public VirtualCluster(String clusterName,
@@ -51,13 +82,24 @@ public class VirtualCluster implements ClusterNetworkAddressConfigProvider {
                           ClusterNetworkAddressConfigProvider clusterNetworkAddressConfigProvider,
                           Optional<Tls> tls,
                           boolean logNetwork,
-                          boolean logFrames) {
+                          boolean logFrames,
+                          DeferredRequestWindow deferredRequestWindow,
+                          Optional<UpstreamMultiplexing> upstreamMultiplexing,
+                          boolean connectUpstreamOnAccept,
+                          WriteBufferWatermarks writeBufferWatermarks,
+                          TlsEngine tlsEngine) {
         this.clusterName = clusterName;
         this.tls = tls;
         this.targetCluster = targetCluster;
         this.logNetwork = logNetwork;
         this.logFrames = logFrames;
+        this.deferredRequestWindow = Objects.requireNonNull(deferredRequestWindow);
+        this.upstreamMultiplexing = Objects.requireNonNull(upstreamMultiplexing);
+        this.connectUpstreamOnAccept = connectUpstreamOnAccept;
+        this.writeBufferWatermarks = Objects.requireNonNull(writeBufferWatermarks);
+        this.tlsEngine = Objects.requireNonNull(tlsEngine);
         this.clusterNetworkAddressConfigProvider = clusterNetworkAddressConfigProvider;
+        this.bootstrapServers = new BootstrapServerSelector(targetCluster.bootstrapServersList());
 
         validateTLsSettings(clusterNetworkAddressConfigProvider, tls);
         validatePortUsage(clusterNetworkAddressConfigProvider);
@@ -76,9 +118,8 @@ public class VirtualCluster implements ClusterNetworkAddressConfigProvider {
             var downstreamTls = tls.map(tls1 -> " (TLS)").orElse("");
             HostPort downstreamBootstrap = clusterNetworkAddressConfigProvider.getClusterBootstrapAddress();
             var upstreamTls = targetCluster.tls().map(tls1 -> " (TLS)").orElse("");
-            HostPort upstreamHostPort = targetCluster.bootstrapServersList().get(0);
             LOGGER.info("Virtual Cluster: {}, Downstream {}{} => Upstream {}{}",
-                    clusterName, downstreamBootstrap, downstreamTls, upstreamHostPort, upstreamTls);
+                    clusterName, downstreamBootstrap, downstreamTls, targetCluster.bootstrapServers(), upstreamTls);
         }
         catch (Exception e) {
             LOGGER.warn("Failed to log summary for Virtual Cluster: {}", clusterName, e);
@@ -105,6 +146,58 @@ public class VirtualCluster implements ClusterNetworkAddressConfigProvider {
         return logFrames;
     }
 
+    public DeferredRequestWindow deferredRequestWindow() {
+        return deferredRequestWindow;
+    }
+
+    public Optional<UpstreamMultiplexing> upstreamMultiplexing() {
+        return upstreamMultiplexing;
+    }
+
+    public boolean connectUpstreamOnAccept() {
+        return connectUpstreamOnAccept;
+    }
+
+    public WriteBufferWatermarks writeBufferWatermarks() {
+        return writeBufferWatermarks;
+    }
+
+    public TlsEngine tlsEngine() {
+        return tlsEngine;
+    }
+
+    /**
+     * @param workerPool The proxy's worker pool.
+     * @return The executor for the tasks delegated by the TLS engines of this cluster during handshakes.
+     * When they are offloaded to the worker pool and it's full, they run on the caller's thread instead, since
+     * the handshake would otherwise stall.
+     */
+    public Executor tlsHandshakeExecutor(Executor workerPool) {
+        if (!tlsEngine.offloadHandshakes()) {
+            return ImmediateExecutor.INSTANCE;
+        }
+        return task -> {
+            try {
+                workerPool.execute(task);
+            }
+            catch (RejectedExecutionException e) {
+                task.run();
+            }
+        };
+    }
+
+    public TopicNameCacheImpl topicNameCache() {
+        return topicNameCache;
+    }
+
+    public ApiVersionsCache apiVersionsCache() {
+        return apiVersionsCache;
+    }
+
+    public BootstrapServerSelector bootstrapServers() {
+        return bootstrapServers;
+    }
+
     public boolean isUseTls() {
         return tls.isPresent();
     }
@@ -113,6 +206,10 @@ public class VirtualCluster implements ClusterNetworkAddressConfigProvider {
         return DEFAULT_SOCKET_FRAME_MAX_SIZE_BYTES;
     }
 
+    public int streamedFrameMinSizeBytes() {
+        return DEFAULT_STREAMED_FRAME_MIN_SIZE_BYTES;
+    }
+
     @Override
     public String toString() {
         return "VirtualCluster{" +
@@ -121,6 +218,9 @@ public class VirtualCluster implements ClusterNetworkAddressConfigProvider {
                 ", tls=" + tls +
                 ", logNetwork=" + logNetwork +
                 ", logFrames=" + logFrames +
+                ", deferredRequestWindow=" + deferredRequestWindow +
+                ", writeBufferWatermarks=" + writeBufferWatermarks +
+                ", tlsEngine=" + tlsEngine +
                 ", clusterNetworkAddressConfigProvider=" + clusterNetworkAddressConfigProvider +
                 ", upstreamSslContext=" + upstreamSslContext +
                 ", downstreamSslContext=" + downstreamSslContext +
@@ -178,7 +278,7 @@ public class VirtualCluster implements ClusterNetworkAddressConfigProvider {
     private Optional<SslContext> buildDownstreamSslContext() {
         return tls.map(tls -> {
             try {
-                return Optional.of(tls.key()).map(NettyKeyProvider::new).map(NettyKeyProvider::forServer).orElseThrow().build();
+                return configureEngine(Optional.of(tls.key()).map(NettyKeyProvider::new).map(NettyKeyProvider::forServer).orElseThrow()).build();
             }
             catch (SSLException e) {
                 throw new UncheckedIOException(e);
@@ -192,7 +292,7 @@ public class VirtualCluster implements ClusterNetworkAddressConfigProvider {
                 var sslContextBuilder = Optional.ofNullable(tls.key()).map(NettyKeyProvider::new).map(NettyKeyProvider::forClient).orElse(SslContextBuilder.forClient());
                 var withTrust = Optional.ofNullable(tls.trust()).map(NettyTrustProvider::new).map(tp -> tp.apply(sslContextBuilder))
                         .orElse(sslContextBuilder);
-                return withTrust.build();
+                return configureEngine(withTrust).build();
             }
             catch (SSLException e) {
                 throw new UncheckedIOException(e);
@@ -200,6 +300,34 @@ public class VirtualCluster implements ClusterNetworkAddressConfigProvider {
         });
     }
 
+    private SslContextBuilder configureEngine(SslContextBuilder builder) {
+        SslProvider provider;
+        if (tlsEngine.provider() == TlsEngine.Provider.JDK) {
+            provider = SslProvider.JDK;
+        }
+        else if (OpenSsl.isAvailable()) {
+            provider = SslProvider.OPENSSL;
+        }
+        else {
+            if (tlsEngine.provider() == TlsEngine.Provider.OPENSSL) {
+                LOGGER.warn("Virtual Cluster: {}, OpenSSL is not available, using the JDK's TLS implementation instead", clusterName);
+            }
+            provider = SslProvider.JDK;
+        }
+        builder.sslProvider(provider);
+        if (provider == SslProvider.OPENSSL && tlsEngine.offloadHandshakes()) {
+            // OpenSSL only hands its handshake work to the delegated task executor when asked to
+            builder.option(OpenSslContextOption.USE_TASKS, true);
+        }
+        if (tlsEngine.sessionCacheSize() != null) {
+            builder.sessionCacheSize(tlsEngine.sessionCacheSize());
+        }
+        if (tlsEngine.sessionTimeoutSeconds() != null) {
+            builder.sessionTimeout(tlsEngine.sessionTimeoutSeconds());
+        }
+        return builder;
+    }
+
     private static void validatePortUsage(ClusterNetworkAddressConfigProvider clusterNetworkAddressConfigProvider) {
         var conflicts = clusterNetworkAddressConfigProvider.getExclusivePorts().stream().filter(p -> clusterNetworkAddressConfigProvider.getSharedPorts().contains(p))
                 .collect(Collectors.toSet());
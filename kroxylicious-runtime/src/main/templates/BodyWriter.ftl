@@ -0,0 +1,67 @@
+<#--
+
+    Copyright Kroxylicious Authors.
+
+    Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+
+-->
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package ${outputPackage};
+
+<#list messageSpecs as messageSpec>
+import org.apache.kafka.common.message.${messageSpec.name}Data;
+</#list>
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ApiMessage;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+* Writes an ApiMessage directly to a ByteBuf, using the generated {@code *Writer} classes
+* <p>Note: this class is automatically generated from a template</p>
+*/
+public class BodyWriter {
+
+    /**
+    * Writes a Kafka request body
+    * @param apiKey the api key of the message
+    * @param apiVersion the api version of the message
+    * @param body the message
+    * @param out the buffer to write to
+    * @throws IllegalArgumentException if an unhandled ApiKey is encountered
+    */
+    static void writeRequest(ApiKeys apiKey, short apiVersion, ApiMessage body, ByteBuf out) {
+        switch (apiKey) {
+<#list messageSpecs as messageSpec>
+    <#if messageSpec.type?lower_case == 'request'>
+            case ${retrieveApiKey(messageSpec)} -> ${messageSpec.name}Writer.write((${messageSpec.name}Data) body, apiVersion, out);
+    </#if>
+</#list>
+            default -> throw new IllegalArgumentException("Unsupported RPC " + apiKey);
+        }
+    }
+
+    /**
+    * Writes a Kafka response body
+    * @param apiKey the api key of the message
+    * @param apiVersion the api version of the message
+    * @param body the message
+    * @param out the buffer to write to
+    * @throws IllegalArgumentException if an unhandled ApiKey is encountered
+    */
+    static void writeResponse(ApiKeys apiKey, short apiVersion, ApiMessage body, ByteBuf out) {
+        switch (apiKey) {
+<#list messageSpecs as messageSpec>
+    <#if messageSpec.type?lower_case == 'response'>
+            case ${retrieveApiKey(messageSpec)} -> ${messageSpec.name}Writer.write((${messageSpec.name}Data) body, apiVersion, out);
+    </#if>
+</#list>
+            default -> throw new IllegalArgumentException("Unsupported RPC " + apiKey);
+        }
+    }
+
+}
@@ -0,0 +1,261 @@
+<#--
+
+    Copyright Kroxylicious Authors.
+
+    Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+
+-->
+<#assign
+  dataClass = messageSpec.dataClassName
+  writerClass = "${messageSpec.name}Writer"
+  validVersions = messageSpec.validVersions
+  flexibleVersions = messageSpec.flexibleVersions
+/>
+<#--
+  Returns a Java boolean expression which is true when `version` is one of the given versions,
+  simplified using the knowledge that `version` is one of the message's valid versions.
+-->
+<#function versionCheck versions>
+  <#if versions.empty>
+    <#return "false">
+  </#if>
+  <#local coversLowest = (versions.lowest <= validVersions.lowest) />
+  <#local coversHighest = (versions.highest >= validVersions.highest) />
+  <#if coversLowest && coversHighest>
+    <#return "true">
+  <#elseif coversLowest>
+    <#return "version <= ${versions.highest?c}">
+  <#elseif coversHighest>
+    <#return "version >= ${versions.lowest?c}">
+  <#else>
+    <#return "version >= ${versions.lowest?c} && version <= ${versions.highest?c}">
+  </#if>
+</#function>
+<#function getter field>
+  <#return "data.${field.name?uncap_first}()">
+</#function>
+<#function isTagged field>
+  <#return !field.taggedVersions.empty>
+</#function>
+<#function compactCheck field>
+  <#return versionCheck(field.flexibleVersions.orElse(flexibleVersions))>
+</#function>
+<#function structClass name>
+  <#return "${dataClass}.${name}">
+</#function>
+<#function defaultConstant name>
+  <#return "DEFAULT_" + name?replace("([a-z0-9])([A-Z])", "$1_$2", "r")?upper_case>
+</#function>
+<#--
+  Returns a Java boolean expression which is true when the given field does not have its default value,
+  following the same rules as Kafka's generated code.
+-->
+<#function nonDefault field expr>
+  <#local default = field.defaultString />
+  <#if field.type == 'bool'>
+    <#return (default == 'true')?then("!${expr}", expr)>
+  <#elseif field.type == 'int8' || field.type == 'int16' || field.type == 'uint16' || field.type == 'int32'>
+    <#return "${expr} != ${(default == '')?then('0', default)}">
+  <#elseif field.type == 'int64'>
+    <#return "${expr} != ${(default == '')?then('0', default)}L">
+  <#elseif field.type == 'float64'>
+    <#return "Double.compare(${expr}, ${(default == '')?then('0.0', default)}) != 0">
+  <#elseif field.type == 'uuid'>
+    <#return "!${expr}.equals(${(default == '')?then('org.apache.kafka.common.Uuid.ZERO_UUID', 'org.apache.kafka.common.Uuid.fromString(\"' + default + '\")')})">
+  <#elseif field.type == 'string'>
+    <#return (default == 'null')?then("${expr} != null", "!\"${default}\".equals(${expr})")>
+  <#elseif field.type.isRecords || default == 'null'>
+    <#return "${expr} != null">
+  <#elseif field.type.isBytes>
+    <#return "${expr} == null || ${expr}.${field.zeroCopy?then('hasRemaining()', 'length != 0')}">
+  <#elseif field.type.isArray>
+    <#return "${expr} == null || !${expr}.isEmpty()">
+  <#elseif field.type.isStruct>
+    <#return "!${defaultConstant(field.type)}.equals(${expr})">
+  <#else>
+    <#stop "Unsupported type ${field.type} of field ${field.name}">
+  </#if>
+</#function>
+<#-- Writes a non-nullable struct, or value of a simple type (i.e. not an array, bytes or records) -->
+<#macro writeSimple type expr compact fieldName struct=false>
+<#if struct>
+write${type}(${expr}, version, out);<#t>
+<#elseif type == 'bool'>
+MessageWriterSupport.writeBoolean(${expr}, out);<#t>
+<#elseif type == 'int8'>
+out.writeByte(${expr});<#t>
+<#elseif type == 'int16' || type == 'uint16'>
+out.writeShort(${expr});<#t>
+<#elseif type == 'int32'>
+out.writeInt(${expr});<#t>
+<#elseif type == 'int64'>
+out.writeLong(${expr});<#t>
+<#elseif type == 'float64'>
+out.writeDouble(${expr});<#t>
+<#elseif type == 'uuid'>
+MessageWriterSupport.writeUuid(${expr}, out);<#t>
+<#elseif type == 'string'>
+MessageWriterSupport.writeString(${expr}, false, ${compact}, "${fieldName}", out);<#t>
+<#else>
+<#stop "Unsupported type ${type} of field ${fieldName}">
+</#if>
+</#macro>
+<#macro writeValue field indent>
+<#local compact = compactCheck(field) />
+<#local nullable = versionCheck(field.nullableVersions) />
+<#local fieldName = field.name?uncap_first />
+<#local expr = getter(field) />
+<#if field.type.isArray>
+${indent}{
+${indent}    var array = ${expr};
+${indent}    if (array == null) {
+${indent}        MessageWriterSupport.writeNull(${nullable}, ${compact}, "${fieldName}", out);
+${indent}    }
+${indent}    else {
+${indent}        MessageWriterSupport.writeLength(array.size(), ${compact}, out);
+${indent}        for (var element : array) {
+<#if field.type.isStructArray>
+${indent}            <@writeSimple type=field.type.elementName expr="element" compact=compact fieldName=fieldName struct=true/>
+<#else>
+${indent}            <@writeSimple type=field.type.elementType expr="element" compact=compact fieldName=fieldName/>
+</#if>
+${indent}        }
+${indent}    }
+${indent}}
+<#elseif field.type.isBytes>
+${indent}MessageWriterSupport.writeBytes(${expr}, ${nullable}, ${compact}, "${fieldName}", out);
+<#elseif field.type.isRecords>
+${indent}MessageWriterSupport.writeRecords(${expr}, ${nullable}, ${compact}, "${fieldName}", out);
+<#elseif field.type == 'string'>
+${indent}MessageWriterSupport.writeString(${expr}, ${nullable}, ${compact}, "${fieldName}", out);
+<#elseif field.type.isStruct && nullable == 'true'>
+${indent}if (${expr} == null) {
+${indent}    out.writeByte(-1);
+${indent}}
+${indent}else {
+${indent}    out.writeByte(1);
+${indent}    <@writeSimple type=field.type expr=expr compact=compact fieldName=fieldName struct=true/>
+${indent}}
+<#elseif field.type.isStruct && nullable != 'false'>
+${indent}if (!(${nullable})) {
+${indent}    <@writeSimple type=field.type expr=expr compact=compact fieldName=fieldName struct=true/>
+${indent}}
+${indent}else if (${expr} == null) {
+${indent}    out.writeByte(-1);
+${indent}}
+${indent}else {
+${indent}    out.writeByte(1);
+${indent}    <@writeSimple type=field.type expr=expr compact=compact fieldName=fieldName struct=true/>
+${indent}}
+<#elseif field.type.isStruct>
+${indent}<@writeSimple type=field.type expr=expr compact=compact fieldName=fieldName struct=true/>
+<#else>
+${indent}<@writeSimple type=field.type expr=expr compact=compact fieldName=fieldName/>
+</#if>
+</#macro>
+<#macro writeFields fields>
+<#list fields as field>
+<#local present = versionCheck(isTagged(field)?then(field.taggedVersions, field.versions)) />
+<#local checkAbsent = present != 'true' && !field.ignorable />
+<#if isTagged(field)>
+<#if checkAbsent>
+        if (!(${present}) && (${nonDefault(field, getter(field))})) {
+            throw MessageWriterSupport.nonDefaultFieldException("${field.name?uncap_first}", version);
+        }
+</#if>
+<#elseif present == 'true'>
+<@writeValue field=field indent="        "/>
+<#else>
+        if (${present}) {
+<@writeValue field=field indent="            "/>
+        }
+<#if checkAbsent>
+        else if (${nonDefault(field, getter(field))}) {
+            throw MessageWriterSupport.nonDefaultFieldException("${field.name?uncap_first}", version);
+        }
+</#if>
+</#if>
+</#list>
+<#local flexible = versionCheck(flexibleVersions) />
+<#local taggedFields = fields?filter(field -> isTagged(field))?sort_by("tagInteger") />
+<#if flexible != 'false'>
+<#if flexible != 'true'>
+        if (${flexible}) {
+</#if>
+            var unknownTaggedFields = data.unknownTaggedFields();
+            int numTaggedFields = unknownTaggedFields.size();
+<#list taggedFields as field>
+            if (${versionCheck(field.taggedVersions)} && (${nonDefault(field, getter(field))})) {
+                numTaggedFields++;
+            }
+</#list>
+            MessageWriterSupport.writeUnsignedVarint(numTaggedFields, out);
+            int rawIndex = 0;
+<#list taggedFields as field>
+            rawIndex = MessageWriterSupport.writeRawTaggedFields(unknownTaggedFields, rawIndex, ${field.tagInteger?c}, out);
+            if (${versionCheck(field.taggedVersions)} && (${nonDefault(field, getter(field))})) {
+                int valueStart = MessageWriterSupport.startTaggedField(${field.tagInteger?c}, out);
+<@writeValue field=field indent="                "/>
+                MessageWriterSupport.endTaggedField(valueStart, out);
+            }
+</#list>
+            MessageWriterSupport.writeRawTaggedFields(unknownTaggedFields, rawIndex, Integer.MAX_VALUE, out);
+<#if flexible != 'true'>
+        }
+</#if>
+</#if>
+</#macro>
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package ${outputPackage};
+
+import org.apache.kafka.common.message.${dataClass};
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Writes {@link ${dataClass}} directly to a {@link ByteBuf} in a single pass,
+ * producing the same bytes as {@link ${dataClass}#write}.
+ * <p>Note: this class is automatically generated from a template</p>
+ */
+final class ${writerClass} {
+
+<#assign defaultedStructs = [] />
+<#macro defaultConstants fields>
+<#list fields as field>
+<#if field.type.isStruct && field.defaultString != 'null' && !defaultedStructs?seq_contains(field.type?string)>
+<#assign defaultedStructs = defaultedStructs + [field.type?string] />
+    private static final ${structClass(field.type)} ${defaultConstant(field.type)} = new ${structClass(field.type)}();
+</#if>
+</#list>
+</#macro>
+<@defaultConstants fields=messageSpec.struct.fields/>
+<#list structRegistry.structs() as info>
+<@defaultConstants fields=info.spec().fields/>
+</#list>
+<#if defaultedStructs?has_content>
+
+</#if>
+    private ${writerClass}() {
+    }
+
+    /**
+     * Writes the given message.
+     * @param data the message
+     * @param version the version of the message to write
+     * @param out the buffer to write to
+     */
+    static void write(${dataClass} data, short version, ByteBuf out) {
+<@writeFields fields=messageSpec.struct.fields/>
+    }
+<#list structRegistry.structs() as info>
+<#assign struct = info.spec() />
+
+    private static void write${struct.name}(${structClass(struct.name)} data, short version, ByteBuf out) {
+<@writeFields fields=struct.fields/>
+    }
+</#list>
+}
@@ -25,6 +25,8 @@ import io.kroxylicious.proxy.config.PluginFactory;
 import io.kroxylicious.proxy.config.PluginFactoryRegistry;
 import io.kroxylicious.proxy.filter.FilterAndInvoker;
 import io.kroxylicious.proxy.filter.FilterFactory;
+import io.kroxylicious.proxy.internal.TopicNameCacheImpl;
+import io.kroxylicious.proxy.internal.WorkerPool;
 import io.kroxylicious.proxy.internal.filter.ExampleConfig;
 import io.kroxylicious.proxy.internal.filter.FlakyConfig;
 import io.kroxylicious.proxy.internal.filter.FlakyFactory;
@@ -100,7 +102,8 @@ class FilterChainFactoryTest {
     void testNullFiltersInConfigResultsInEmptyList() {
         ScheduledExecutorService eventLoop = Executors.newScheduledThreadPool(1);
         FilterChainFactory filterChainFactory = new FilterChainFactory(pfr, null);
-        List<FilterAndInvoker> filters = filterChainFactory.createFilters(new NettyFilterContext(eventLoop, pfr));
+        List<FilterAndInvoker> filters = filterChainFactory
+                .createFilters(new NettyFilterContext(eventLoop, pfr, filterChainFactory.workerPool(), new TopicNameCacheImpl().forFilter(0, eventLoop)));
         assertNotNull(filters, "Filters list should not be null");
         assertTrue(filters.isEmpty(), "Filters list should be empty");
     }
@@ -116,6 +119,7 @@ class FilterChainFactoryTest {
         listAssert.first().extracting(FilterAndInvoker::filter).isInstanceOfSatisfying(TestFilterFactory.TestFilterImpl.class, testFilterImpl -> {
             assertThat(testFilterImpl.getContributorClass()).isEqualTo(TestFilterFactory.class);
             assertThat(testFilterImpl.getContext().eventLoop()).isSameAs(eventLoop);
+            assertThat(testFilterImpl.getContext().workerPool()).isInstanceOf(WorkerPool.class);
             assertThat(testFilterImpl.getExampleConfig()).isSameAs(config);
         });
     }
@@ -245,7 +249,7 @@ class FilterChainFactoryTest {
 
     private ListAssert<FilterAndInvoker> assertFiltersCreated(List<FilterDefinition> filterDefinitions) {
         FilterChainFactory filterChainFactory = new FilterChainFactory(pfr, filterDefinitions);
-        NettyFilterContext context = new NettyFilterContext(eventLoop, pfr);
+        NettyFilterContext context = new NettyFilterContext(eventLoop, pfr, filterChainFactory.workerPool(), new TopicNameCacheImpl().forFilter(0, eventLoop));
         List<FilterAndInvoker> filters = filterChainFactory.createFilters(context);
         return assertThat(filters).hasSameSizeAs(filterDefinitions);
     }
@@ -297,7 +301,7 @@ class FilterChainFactoryTest {
                         onInitialize1::increment, onClose1::increment)),
                 new FilterDefinition(FlakyFactory.class.getName(), new FlakyConfig(null, "foo", null,
                         onInitialize2::increment, onClose2::increment)));
-        NettyFilterContext context = new NettyFilterContext(eventLoop, pfr);
+        NettyFilterContext context = new NettyFilterContext(eventLoop, pfr, Runnable::run, new TopicNameCacheImpl().forFilter(0, eventLoop));
 
         try (var fcf = new FilterChainFactory(pfr, list)) {
             assertThat(onInitialize1.count).isEqualTo(1);
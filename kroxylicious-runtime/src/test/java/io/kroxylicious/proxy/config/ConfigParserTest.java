@@ -10,8 +10,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import org.assertj.core.api.InstanceOfAssertFactories;
@@ -27,6 +31,8 @@ import com.fasterxml.jackson.databind.exc.ValueInstantiationException;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import com.flipkart.zjsonpatch.JsonDiff;
 
+import io.netty.util.concurrent.ImmediateExecutor;
+
 import io.kroxylicious.proxy.config.admin.AdminHttpConfiguration;
 import io.kroxylicious.proxy.config.secret.PasswordProvider;
 import io.kroxylicious.proxy.config.tls.KeyStore;
@@ -58,6 +64,8 @@ class ConfigParserTest {
     public static Stream<Arguments> yamlDeserializeSerializeFidelity() {
         return Stream.of(Arguments.of("Top level flags", """
                 useIoUring: true
+                acceptorThreads: 4
+                maxInFlightBytes: 1048576
                 """),
                 Arguments.of("Virtual cluster (PortPerBroker)", """
                         virtualClusters:
@@ -249,6 +257,237 @@ class ConfigParserTest {
         assertThat(actualValidClusters).singleElement().extracting("clusterName").isEqualTo("myAwesomeCluster");
     }
 
+    @Test
+    void shouldConfigureDeferredRequestWindow() {
+        final Configuration configurationModel = configParser.parseConfiguration("""
+                virtualClusters:
+                  demo:
+                    targetCluster:
+                      bootstrap_servers: kafka.example:1234
+                    clusterNetworkAddressConfigProvider:
+                      type: PortPerBrokerClusterNetworkAddressConfigProvider
+                      config:
+                        bootstrapAddress: cluster1:9192
+                    deferredRequestWindow:
+                      maxFrames: 4
+                """);
+        // When
+        final List<io.kroxylicious.proxy.model.VirtualCluster> actualValidClusters = configurationModel.virtualClusterModel();
+
+        // Then
+        assertThat(actualValidClusters).singleElement()
+                .extracting(io.kroxylicious.proxy.model.VirtualCluster::deferredRequestWindow)
+                .isEqualTo(new DeferredRequestWindow(4, DeferredRequestWindow.DEFAULT_MAX_BYTES));
+    }
+
+    @Test
+    void shouldDefaultDeferredRequestWindow() {
+        var cluster = configParser.parseConfiguration(this.getClass().getClassLoader().getResourceAsStream("config.yaml"))
+                .virtualClusterModel().get(0);
+        assertThat(cluster.deferredRequestWindow())
+                .isEqualTo(new DeferredRequestWindow(DeferredRequestWindow.DEFAULT_MAX_FRAMES, DeferredRequestWindow.DEFAULT_MAX_BYTES));
+    }
+
+    @Test
+    void shouldConfigureUpstreamMultiplexing() {
+        final Configuration configurationModel = configParser.parseConfiguration("""
+                virtualClusters:
+                  demo:
+                    targetCluster:
+                      bootstrap_servers: kafka.example:1234
+                    clusterNetworkAddressConfigProvider:
+                      type: PortPerBrokerClusterNetworkAddressConfigProvider
+                      config:
+                        bootstrapAddress: cluster1:9192
+                    upstreamMultiplexing: {}
+                """);
+        // When
+        final List<io.kroxylicious.proxy.model.VirtualCluster> actualValidClusters = configurationModel.virtualClusterModel();
+
+        // Then
+        assertThat(actualValidClusters).singleElement()
+                .extracting(io.kroxylicious.proxy.model.VirtualCluster::upstreamMultiplexing)
+                .isEqualTo(Optional.of(new UpstreamMultiplexing(UpstreamMultiplexing.DEFAULT_CONNECTIONS_PER_EVENT_LOOP)));
+    }
+
+    @Test
+    void shouldNotMultiplexUpstreamByDefault() {
+        var cluster = configParser.parseConfiguration(this.getClass().getClassLoader().getResourceAsStream("config.yaml"))
+                .virtualClusterModel().get(0);
+        assertThat(cluster.upstreamMultiplexing()).isEmpty();
+    }
+
+    @Test
+    void shouldConfigureConnectUpstreamOnAccept() {
+        final Configuration configurationModel = configParser.parseConfiguration("""
+                virtualClusters:
+                  demo:
+                    targetCluster:
+                      bootstrap_servers: kafka.example:1234
+                    clusterNetworkAddressConfigProvider:
+                      type: PortPerBrokerClusterNetworkAddressConfigProvider
+                      config:
+                        bootstrapAddress: cluster1:9192
+                    connectUpstreamOnAccept: true
+                """);
+        // When
+        final List<io.kroxylicious.proxy.model.VirtualCluster> actualValidClusters = configurationModel.virtualClusterModel();
+
+        // Then
+        assertThat(actualValidClusters).singleElement()
+                .extracting(io.kroxylicious.proxy.model.VirtualCluster::connectUpstreamOnAccept)
+                .isEqualTo(true);
+    }
+
+    @Test
+    void shouldNotConnectUpstreamOnAcceptByDefault() {
+        var cluster = configParser.parseConfiguration(this.getClass().getClassLoader().getResourceAsStream("config.yaml"))
+                .virtualClusterModel().get(0);
+        assertThat(cluster.connectUpstreamOnAccept()).isFalse();
+    }
+
+    @Test
+    void shouldParseAcceptorThreads() {
+        var configuration = configParser.parseConfiguration("""
+                acceptorThreads: 4
+                """);
+        assertThat(configuration.acceptorThreadCount()).isEqualTo(4);
+    }
+
+    @Test
+    void shouldDefaultToSingleAcceptorThread() {
+        var configuration = configParser.parseConfiguration("""
+                useIoUring: false
+                """);
+        assertThat(configuration.acceptorThreadCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldParseWriteBufferWatermarks() {
+        var cluster = configParser.parseConfiguration("""
+                virtualClusters:
+                  demo1:
+                    targetCluster:
+                      bootstrap_servers: kafka.example:1234
+                    clusterNetworkAddressConfigProvider:
+                      type: PortPerBrokerClusterNetworkAddressConfigProvider
+                      config:
+                        bootstrapAddress: cluster1:9192
+                    writeBufferWatermarks:
+                      lowBytes: 1024
+                      highBytes: 4096
+                """).virtualClusterModel().get(0);
+        assertThat(cluster.writeBufferWatermarks()).isEqualTo(new WriteBufferWatermarks(1024, 4096));
+    }
+
+    @Test
+    void shouldDefaultWriteBufferWatermarks() {
+        var cluster = configParser.parseConfiguration(this.getClass().getClassLoader().getResourceAsStream("config.yaml"))
+                .virtualClusterModel().get(0);
+        assertThat(cluster.writeBufferWatermarks()).isEqualTo(new WriteBufferWatermarks(WriteBufferWatermarks.DEFAULT_LOW_BYTES,
+                WriteBufferWatermarks.DEFAULT_HIGH_BYTES));
+    }
+
+    @Test
+    void shouldParseTlsEngine() {
+        var cluster = configParser.parseConfiguration("""
+                virtualClusters:
+                  demo1:
+                    targetCluster:
+                      bootstrap_servers: kafka.example:1234
+                    clusterNetworkAddressConfigProvider:
+                      type: PortPerBrokerClusterNetworkAddressConfigProvider
+                      config:
+                        bootstrapAddress: cluster1:9192
+                    tlsEngine:
+                      provider: OPENSSL
+                      sessionCacheSize: 10000
+                      sessionTimeoutSeconds: 3600
+                      offloadHandshakes: true
+                """).virtualClusterModel().get(0);
+        assertThat(cluster.tlsEngine()).isEqualTo(new TlsEngine(TlsEngine.Provider.OPENSSL, 10000L, 3600L, true));
+        var offloaded = new ArrayList<Runnable>();
+        var ran = new AtomicInteger();
+        cluster.tlsHandshakeExecutor(offloaded::add).execute(ran::incrementAndGet);
+        assertThat(offloaded).hasSize(1);
+        assertThat(ran).hasValue(0);
+    }
+
+    @Test
+    void shouldRunTlsHandshakeTasksInlineWhenWorkerPoolIsFull() {
+        var cluster = configParser.parseConfiguration("""
+                virtualClusters:
+                  demo1:
+                    targetCluster:
+                      bootstrap_servers: kafka.example:1234
+                    clusterNetworkAddressConfigProvider:
+                      type: PortPerBrokerClusterNetworkAddressConfigProvider
+                      config:
+                        bootstrapAddress: cluster1:9192
+                    tlsEngine:
+                      offloadHandshakes: true
+                """).virtualClusterModel().get(0);
+        Executor fullWorkerPool = task -> {
+            throw new RejectedExecutionException("full");
+        };
+        var ran = new AtomicInteger();
+        cluster.tlsHandshakeExecutor(fullWorkerPool).execute(ran::incrementAndGet);
+        assertThat(ran).hasValue(1);
+    }
+
+    @Test
+    void shouldDefaultTlsEngine() {
+        var cluster = configParser.parseConfiguration(this.getClass().getClassLoader().getResourceAsStream("config.yaml"))
+                .virtualClusterModel().get(0);
+        assertThat(cluster.tlsEngine()).isEqualTo(new TlsEngine(null, null, null, false));
+        assertThat(cluster.tlsHandshakeExecutor(Runnable::run)).isSameAs(ImmediateExecutor.INSTANCE);
+    }
+
+    @Test
+    void shouldRejectNegativeTlsSessionSettings() {
+        assertThatThrownBy(() -> new TlsEngine(null, -1L, null, false)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TlsEngine(null, null, -1L, false)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldRejectInvertedWriteBufferWatermarks() {
+        assertThatThrownBy(() -> new WriteBufferWatermarks(4096, 1024)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new WriteBufferWatermarks(-1, null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldParseMaxInFlightBytes() {
+        var configuration = configParser.parseConfiguration("""
+                maxInFlightBytes: 1048576
+                """);
+        assertThat(configuration.maxInFlightBytesBudget()).isEqualTo(1048576L);
+    }
+
+    @Test
+    void shouldDefaultToUnlimitedInFlightBytes() {
+        var configuration = configParser.parseConfiguration("""
+                useIoUring: false
+                """);
+        assertThat(configuration.maxInFlightBytesBudget()).isEqualTo(Long.MAX_VALUE);
+        assertThatThrownBy(() -> new Configuration(null, null, null, null, false, null, null, 0L)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldRejectNoAcceptorThreads() {
+        assertThatThrownBy(() -> new Configuration(null, null, null, null, false, null, 0, null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldRejectUpstreamMultiplexingWithoutConnections() {
+        assertThatThrownBy(() -> new UpstreamMultiplexing(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldRejectEmptyDeferredRequestWindow() {
+        assertThatThrownBy(() -> new DeferredRequestWindow(0, null)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new DeferredRequestWindow(null, 0L)).isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test
     void shouldDetectDuplicateClusterNodeNames() {
         // Given
@@ -393,7 +632,7 @@ class ConfigParserTest {
 
     @Test
     void shouldThrowWhenSerializingUnserializableObject() {
-        var config = new Configuration(null, null, List.of(new FilterDefinition("", new Object())), null, false);
+        var config = new Configuration(null, null, List.of(new FilterDefinition("", new Object())), null, false, null, null, null);
 
         ConfigParser cp = new ConfigParser();
         assertThrows(IllegalArgumentException.class, () -> cp.toYaml(config));
@@ -0,0 +1,92 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.proxy.internal;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.common.message.ApiVersionsResponseData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ByteBufferAccessor;
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+
+import io.kroxylicious.proxy.service.HostPort;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ApiVersionsCacheTest {
+
+    private static final HostPort UPSTREAM = new HostPort("broker", 9092);
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final ApiVersionsCache cache = new ApiVersionsCache(nanoTime::get, Duration.ofNanos(100));
+
+    @Test
+    void shouldReturnCachedVersions() {
+        var response = response((short) 0, (short) 3);
+        cache.put(UPSTREAM, response.apiKeys(), response);
+
+        var entry = cache.get(UPSTREAM);
+
+        assertThat(entry).isNotNull();
+        assertThat(entry.intersected()).isEqualTo(response).isNotSameAs(response);
+        assertThat(cache.get(new HostPort("other", 9092))).isNull();
+    }
+
+    @Test
+    void shouldExpireVersions() {
+        var response = response((short) 0, (short) 3);
+        cache.put(UPSTREAM, response.apiKeys(), response);
+
+        nanoTime.set(99);
+        assertThat(cache.get(UPSTREAM)).isNotNull();
+        nanoTime.set(100);
+        assertThat(cache.get(UPSTREAM)).isNull();
+    }
+
+    @Test
+    void shouldInvalidateVersions() {
+        var response = response((short) 0, (short) 3);
+        cache.put(UPSTREAM, response.apiKeys(), response);
+
+        cache.invalidate(UPSTREAM);
+
+        assertThat(cache.get(UPSTREAM)).isNull();
+    }
+
+    @Test
+    void shouldEncodeResponseForRequestVersion() {
+        var response = response((short) 0, (short) 3);
+        cache.put(UPSTREAM, response.apiKeys(), response);
+        var entry = cache.get(UPSTREAM);
+
+        for (short version = 0; version <= 3; version++) {
+            ByteBuf frame = entry.encodedResponse(version, 42);
+            assertThat(frame).isNotNull();
+            assertThat(frame.readInt()).isEqualTo(42);
+            var decoded = new ApiVersionsResponseData(new ByteBufferAccessor(frame.nioBuffer()), version);
+            assertThat(decoded.apiKeys()).isEqualTo(response.apiKeys());
+        }
+    }
+
+    @Test
+    void shouldNotEncodeResponseForUnsupportedRequestVersion() {
+        var response = response((short) 0, (short) 2);
+        cache.put(UPSTREAM, response.apiKeys(), response);
+
+        assertThat(cache.get(UPSTREAM).encodedResponse((short) 3, 42)).isNull();
+    }
+
+    private static ApiVersionsResponseData response(short minVersion, short maxVersion) {
+        var response = new ApiVersionsResponseData();
+        response.apiKeys().add(new ApiVersionsResponseData.ApiVersion().setApiKey(ApiKeys.API_VERSIONS.id).setMinVersion(minVersion).setMaxVersion(maxVersion));
+        response.apiKeys().add(new ApiVersionsResponseData.ApiVersion().setApiKey(ApiKeys.METADATA.id).setMinVersion((short) 0).setMaxVersion((short) 12));
+        return response;
+    }
+}
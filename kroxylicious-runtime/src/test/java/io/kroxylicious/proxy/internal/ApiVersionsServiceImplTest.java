@@ -18,6 +18,7 @@ import org.mockito.Mockito;
 
 import io.kroxylicious.proxy.ApiVersionsService;
 import io.kroxylicious.proxy.filter.FilterContext;
+import io.kroxylicious.proxy.service.HostPort;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
@@ -132,6 +133,65 @@ class ApiVersionsServiceImplTest {
         assertThat(upstreamApiVersions.apiKeys()).isEmpty();
     }
 
+    @Test
+    void testGetVersionRanges_UsesVersionsCachedByAnotherConnection() {
+        var cache = new ApiVersionsCache();
+        var upstreamAddress = new HostPort("broker", 9092);
+        ApiVersionsServiceImpl first = new ApiVersionsServiceImpl(cache);
+        first.connectingTo(upstreamAddress);
+        ApiVersionsResponseData upstreamApiVersions = createApiVersionsWith(ApiKeys.METADATA.id, ApiKeys.METADATA.oldestVersion(),
+                (short) (ApiKeys.METADATA.latestVersion() + 1));
+        first.updateVersions("channel", upstreamApiVersions);
+        first.cacheVersions(upstreamApiVersions);
+
+        ApiVersionsServiceImpl second = new ApiVersionsServiceImpl(cache);
+        second.connectingTo(upstreamAddress);
+        FilterContext filterContext = Mockito.mock(FilterContext.class);
+        ApiVersionsService.ApiVersionRanges range = second.getApiVersionRanges(ApiKeys.METADATA, filterContext).toCompletableFuture()
+                .getNow(Optional.empty()).orElse(null);
+        assertThat(range).isNotNull();
+        assertThat(range.upstream().maxVersion()).isEqualTo((short) (ApiKeys.METADATA.latestVersion() + 1));
+        assertThat(range.intersected().maxVersion()).isEqualTo(ApiKeys.METADATA.latestVersion());
+        Mockito.verifyNoInteractions(filterContext);
+    }
+
+    @Test
+    void testCachedResponse_OnlyForAddressConnectedTo() {
+        var cache = new ApiVersionsCache();
+        ApiVersionsServiceImpl first = new ApiVersionsServiceImpl(cache);
+        first.connectingTo(new HostPort("broker", 9092));
+        ApiVersionsResponseData upstreamApiVersions = createApiVersionsWith(ApiKeys.API_VERSIONS.id, ApiKeys.API_VERSIONS.oldestVersion(),
+                ApiKeys.API_VERSIONS.latestVersion());
+        first.updateVersions("channel", upstreamApiVersions);
+        first.cacheVersions(upstreamApiVersions);
+
+        ApiVersionsServiceImpl second = new ApiVersionsServiceImpl(cache);
+        assertThat(second.cachedResponse(ApiKeys.API_VERSIONS.latestVersion(), 1)).isNull();
+        second.connectingTo(new HostPort("other-broker", 9092));
+        assertThat(second.cachedResponse(ApiKeys.API_VERSIONS.latestVersion(), 1)).isNull();
+        second.connectingTo(new HostPort("broker", 9092));
+        var response = second.cachedResponse(ApiKeys.API_VERSIONS.latestVersion(), 1);
+        assertThat(response).isNotNull();
+        response.release();
+    }
+
+    @Test
+    void testUpdateVersions_UnsupportedVersionInvalidatesCachedVersions() {
+        var cache = new ApiVersionsCache();
+        var upstreamAddress = new HostPort("broker", 9092);
+        ApiVersionsServiceImpl apiVersionsService = new ApiVersionsServiceImpl(cache);
+        apiVersionsService.connectingTo(upstreamAddress);
+        ApiVersionsResponseData upstreamApiVersions = createApiVersionsWith(ApiKeys.METADATA.id, ApiKeys.METADATA.oldestVersion(),
+                ApiKeys.METADATA.latestVersion());
+        apiVersionsService.updateVersions("channel", upstreamApiVersions);
+        apiVersionsService.cacheVersions(upstreamApiVersions);
+        assertThat(cache.get(upstreamAddress)).isNotNull();
+
+        apiVersionsService.updateVersions("channel", new ApiVersionsResponseData().setErrorCode(Errors.UNSUPPORTED_VERSION.code()));
+
+        assertThat(cache.get(upstreamAddress)).isNull();
+    }
+
     private static void assertThatApiVersionsContainsExactly(ApiVersionsResponseData upstreamApiVersions, ApiKeys apiKeys, short minVersion, short maxVersion) {
         assertThat(upstreamApiVersions.apiKeys()).satisfies(apiVersions -> {
             assertThat(apiVersions).hasSize(1).first().satisfies(apiVersion -> {
@@ -5,8 +5,10 @@
  */
 package io.kroxylicious.proxy.internal;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
@@ -29,6 +31,7 @@ import org.apache.kafka.common.message.ProduceRequestData;
 import org.apache.kafka.common.message.ProduceResponseData;
 import org.apache.kafka.common.message.RequestHeaderData;
 import org.apache.kafka.common.message.ResponseHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
 import org.apache.kafka.common.protocol.ApiMessage;
 import org.apache.kafka.common.protocol.types.RawTaggedField;
 import org.junit.jupiter.api.Test;
@@ -37,11 +40,13 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import io.kroxylicious.proxy.config.DeferredRequestWindow;
 import io.kroxylicious.proxy.filter.ApiVersionsRequestFilter;
 import io.kroxylicious.proxy.filter.ApiVersionsResponseFilter;
 import io.kroxylicious.proxy.filter.FetchRequestFilter;
 import io.kroxylicious.proxy.filter.FetchResponseFilter;
 import io.kroxylicious.proxy.filter.FilterContext;
+import io.kroxylicious.proxy.filter.MetadataRequestFilter;
 import io.kroxylicious.proxy.filter.ProduceRequestFilter;
 import io.kroxylicious.proxy.filter.RequestFilterResult;
 import io.kroxylicious.proxy.filter.ResponseFilterResult;
@@ -59,7 +64,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.fail;
 
-class FilterHandlerTest extends FilterHarness {
+class FilterChainHandlerTest extends FilterHarness {
 
     private static final int ARBITRARY_TAG = 500;
     private static final RawTaggedField MARK = createTag(ARBITRARY_TAG, "mark");
@@ -161,7 +166,8 @@ class FilterHandlerTest extends FilterHarness {
         requestFutureMap.put(req2, new CompletableFuture<>());
 
         // we expect the embedded netty eventloop to run on this thread
-        AtomicReference<Thread> expectedDispatchThread = new AtomicReference<>();
+        // (the filter's routes are worked out when the chain is built, so this must be known up front)
+        AtomicReference<Thread> expectedDispatchThread = new AtomicReference<>(Thread.currentThread());
         ApiVersionsRequestFilter filter = new ApiVersionsRequestFilter() {
 
             @Override
@@ -184,7 +190,7 @@ class FilterHandlerTest extends FilterHarness {
             }
         };
         buildChannel(filter);
-        expectedDispatchThread.set(obtainEventLoop());
+        assertThat(obtainEventLoop()).isSameAs(expectedDispatchThread.get());
         writeRequest(req1);
         writeRequest(req2);
 
@@ -530,6 +536,21 @@ class FilterHandlerTest extends FilterHarness {
         assertThat(seen).containsExactly(frame1.body());
     }
 
+    @Test
+    void closingChannelReleasesQueuedFrames() {
+        ApiVersionsResponseFilter filter = (apiVersion, header, response, context) -> new CompletableFuture<>();
+        buildChannel(filter);
+        writeResponse(new ApiVersionsResponseData());
+        // queued behind the response the filter never finishes with
+        OpaqueResponseFrame queued = writeArbitraryOpaqueResponse();
+        channel.runPendingTasks();
+        assertThat(queued.buf().refCnt()).isOne();
+
+        channel.close();
+
+        assertThat(queued.buf().refCnt()).isZero();
+    }
+
     @Test
     void testShouldNotDeserialiseRequest() {
         ApiVersionsRequestFilter filter = new ApiVersionsRequestFilter() {
@@ -823,7 +844,7 @@ class FilterHandlerTest extends FilterHarness {
     }
 
     /**
-     * Test the special case within {@link FilterHandler} for
+     * Test the special case within {@link FilterChainHandler} for
      * {@link FilterContext#sendRequest(RequestHeaderData, ApiMessage)}
      * with acks=0 Produce requests.
      */
@@ -1052,6 +1073,267 @@ class FilterHandlerTest extends FilterHarness {
         assertThat(propagated).isEqualTo(requestFrame);
     }
 
+    @Test
+    void requestsPassThroughFiltersInOrderAndResponsesInReverse() {
+        var events = new ArrayList<String>();
+        buildChannel(new RecordingFilter("a", events), new RecordingFilter("b", events), new RecordingFilter("c", events));
+
+        var requestFrame = writeRequest(new ApiVersionsRequestData());
+        assertThat((Object) channel.readOutbound()).isSameAs(requestFrame);
+        var responseFrame = writeResponse(new ApiVersionsResponseData());
+        assertThat((Object) channel.readInbound()).isSameAs(responseFrame);
+
+        assertThat(events).containsExactly("a-request", "b-request", "c-request", "c-response", "b-response", "a-response");
+    }
+
+    @Test
+    void deferredFilterOnlyDelaysFramesAtThatFilter() {
+        var events = new ArrayList<String>();
+        var req1 = new ApiVersionsRequestData().setClientSoftwareName("req1");
+        var req2 = new ApiVersionsRequestData().setClientSoftwareName("req2");
+        var req1Future = new CompletableFuture<Void>();
+        ApiVersionsRequestFilter deferringFilter = (apiVersion, header, request, context) -> {
+            events.add("deferring-" + request.clientSoftwareName());
+            var future = request == req1 ? req1Future : CompletableFuture.<Void> completedFuture(null);
+            return future.thenCompose(u -> context.forwardRequest(header, request));
+        };
+        ApiVersionsRequestFilter lastFilter = (apiVersion, header, request, context) -> {
+            events.add("last-" + request.clientSoftwareName());
+            return context.forwardRequest(header, request);
+        };
+        buildChannel(new RecordingFilter("first", events), deferringFilter, lastFilter);
+
+        writeRequest(req1);
+        writeRequest(req2);
+        channel.runPendingTasks();
+
+        // the first filter has seen both requests, but the second is queued behind the first at the deferring filter
+        assertThat(events).containsExactly("first-request", "deferring-req1", "first-request");
+        assertThat((Object) channel.readOutbound()).isNull();
+
+        req1Future.complete(null);
+        channel.runPendingTasks();
+
+        assertThat(events).containsExactly("first-request", "deferring-req1", "first-request", "last-req1", "deferring-req2", "last-req2");
+        DecodedRequestFrame<?> outboundRequest1 = channel.readOutbound();
+        assertThat(outboundRequest1).extracting(DecodedRequestFrame::body).isEqualTo(req1);
+        DecodedRequestFrame<?> outboundRequest2 = channel.readOutbound();
+        assertThat(outboundRequest2).extracting(DecodedRequestFrame::body).isEqualTo(req2);
+    }
+
+    @Test
+    void readsContinueWhileDeferredFramesFitInWindow() {
+        var requestFuture = new CompletableFuture<Void>();
+        ApiVersionsRequestFilter filter = (apiVersion, header, request, context) -> requestFuture.thenCompose(u -> context.forwardRequest(header, request));
+        buildChannel(filter);
+
+        writeRequest(new ApiVersionsRequestData());
+        writeRequest(new ApiVersionsRequestData());
+
+        assertThat(inboundChannel.config().isAutoRead()).isTrue();
+        requestFuture.complete(null);
+        channel.runPendingTasks();
+
+        assertThat((Object) channel.readOutbound()).isNotNull();
+        assertThat((Object) channel.readOutbound()).isNotNull();
+        assertThat(inboundChannel.config().isAutoRead()).isTrue();
+    }
+
+    @Test
+    void readsPausedWhileDeferredFramesExhaustWindow() {
+        var requestFuture = new CompletableFuture<Void>();
+        ApiVersionsRequestFilter filter = (apiVersion, header, request, context) -> requestFuture.thenCompose(u -> context.forwardRequest(header, request));
+        deferredRequestWindow(new DeferredRequestWindow(2, null));
+        buildChannel(filter);
+
+        writeRequest(new ApiVersionsRequestData());
+        assertThat(inboundChannel.config().isAutoRead()).isTrue();
+
+        // the second request is queued behind the first, filling the window
+        writeRequest(new ApiVersionsRequestData());
+        assertThat(inboundChannel.config().isAutoRead()).isFalse();
+
+        requestFuture.complete(null);
+        channel.runPendingTasks();
+
+        assertThat((Object) channel.readOutbound()).isNotNull();
+        assertThat((Object) channel.readOutbound()).isNotNull();
+        assertThat(inboundChannel.config().isAutoRead()).isTrue();
+    }
+
+    @Test
+    void readsPausedWhileDeferredBytesExhaustWindow() {
+        var requestFuture = new CompletableFuture<Void>();
+        ApiVersionsRequestFilter filter = (apiVersion, header, request, context) -> requestFuture.thenCompose(u -> context.forwardRequest(header, request));
+        deferredRequestWindow(new DeferredRequestWindow(null, 1L));
+        buildChannel(filter);
+
+        var header = new RequestHeaderData().setRequestApiKey(ApiKeys.API_VERSIONS.id).setRequestApiVersion(ApiKeys.API_VERSIONS.latestVersion());
+        var frame = new DecodedRequestFrame<>(header.requestApiVersion(), 42, true, header, new ApiVersionsRequestData());
+        frame.encodedSizeHint(10);
+        channel.writeOutbound(frame);
+
+        assertThat(inboundChannel.config().isAutoRead()).isFalse();
+        requestFuture.complete(null);
+        channel.runPendingTasks();
+
+        assertThat((Object) channel.readOutbound()).isNotNull();
+        assertThat(inboundChannel.config().isAutoRead()).isTrue();
+    }
+
+    @Test
+    void offloadedWorkRunsOnWorkerPoolInOrder() {
+        var workerTasks = new ArrayDeque<Runnable>();
+        var events = new ArrayList<String>();
+        ApiVersionsRequestFilter filter = (apiVersion, header, request, context) -> {
+            var first = context.offload(() -> events.add("first"));
+            var second = context.offload(() -> events.add("second"));
+            return first.thenCombine(second, (a, b) -> b).thenCompose(u -> context.forwardRequest(header, request));
+        };
+        workerPool(workerTasks::add);
+        buildChannel(filter);
+
+        writeRequest(new ApiVersionsRequestData());
+
+        // the second piece of work isn't submitted until the first has completed on the event loop
+        assertThat(workerTasks).hasSize(1);
+        workerTasks.poll().run();
+        assertThat(events).containsExactly("first");
+        assertThat(workerTasks).isEmpty();
+        channel.runPendingTasks();
+
+        assertThat(workerTasks).hasSize(1);
+        workerTasks.poll().run();
+        channel.runPendingTasks();
+
+        assertThat(events).containsExactly("first", "second");
+        assertThat((Object) channel.readOutbound()).isNotNull();
+    }
+
+    @Test
+    void offloadedWorkFailureCompletesStageExceptionally() {
+        var failure = new AtomicReference<Throwable>();
+        ApiVersionsRequestFilter filter = (apiVersion, header, request, context) -> context.offload(() -> {
+            throw new IllegalStateException("failed");
+        })
+                .handle((result, throwable) -> throwable)
+                .thenCompose(throwable -> {
+                    failure.set(throwable);
+                    return context.offload(() -> request);
+                })
+                .thenCompose(offloadedRequest -> context.forwardRequest(header, offloadedRequest));
+        buildChannel(filter);
+
+        writeRequest(new ApiVersionsRequestData());
+        channel.runPendingTasks();
+        channel.runPendingTasks();
+
+        assertThat(failure.get()).hasRootCauseInstanceOf(IllegalStateException.class).hasRootCauseMessage("failed");
+        assertThat((Object) channel.readOutbound()).isNotNull();
+    }
+
+    @Test
+    void shortCircuitResponsePassesThroughPrecedingFiltersOnly() {
+        var events = new ArrayList<String>();
+        var responseData = new ApiVersionsResponseData();
+        ApiVersionsRequestFilter shortCircuitingFilter = (apiVersion, header, request, context) -> context.requestFilterResultBuilder()
+                .shortCircuitResponse(responseData)
+                .completed();
+        buildChannel(new RecordingFilter("before", events), shortCircuitingFilter, new RecordingFilter("after", events));
+
+        writeRequest(new ApiVersionsRequestData());
+
+        DecodedResponseFrame<?> propagated = channel.readInbound();
+        assertThat(propagated.body()).isSameAs(responseData);
+        assertThat((Object) channel.readOutbound()).isNull();
+        assertThat(events).containsExactly("before-request", "before-response");
+    }
+
+    @Test
+    void filterContextIsReusedOnlyAfterSynchronousCompletion() {
+        var contexts = new ArrayList<FilterContext>();
+        var stages = new ArrayList<CompletionStage<RequestFilterResult>>();
+        var deferred = new CompletableFuture<Void>();
+        ApiVersionsRequestFilter filter = (apiVersion, header, request, context) -> {
+            contexts.add(context);
+            if ("deferred".equals(request.clientSoftwareName())) {
+                return deferred.thenCompose(u -> context.forwardRequest(header, request));
+            }
+            var stage = context.forwardRequest(header, request);
+            stages.add(stage);
+            return stage;
+        };
+        buildChannel(filter);
+
+        var frame1 = writeRequest(new ApiVersionsRequestData());
+        var frame2 = writeRequest(new ApiVersionsRequestData());
+        assertThat((Object) channel.readOutbound()).isSameAs(frame1);
+        assertThat((Object) channel.readOutbound()).isSameAs(frame2);
+        assertThat(contexts.get(1)).isSameAs(contexts.get(0));
+        assertThat((Object) stages.get(1)).isSameAs(stages.get(0));
+
+        writeRequest(new ApiVersionsRequestData().setClientSoftwareName("deferred"));
+        deferred.complete(null);
+        channel.runPendingTasks();
+        assertThat((Object) channel.readOutbound()).isNotNull();
+        var frame4 = writeRequest(new ApiVersionsRequestData());
+        assertThat((Object) channel.readOutbound()).isSameAs(frame4);
+
+        // the context used by the deferred filter invocation is never handed out again
+        assertThat(contexts.get(2)).isSameAs(contexts.get(0));
+        assertThat(contexts.get(3)).isNotSameAs(contexts.get(2));
+    }
+
+    @Test
+    void framesSkipUninterestedFiltersButKeepTheirOrder() {
+        var events = new ArrayList<String>();
+        var deferred = new CompletableFuture<Void>();
+        ApiVersionsRequestFilter deferringFilter = (apiVersion, header, request, context) -> {
+            events.add("deferring-request");
+            return deferred.thenCompose(u -> context.forwardRequest(header, request));
+        };
+        MetadataRequestFilter metadataFilter = (apiVersion, header, request, context) -> {
+            events.add("metadata-request");
+            return context.forwardRequest(header, request);
+        };
+        buildChannel(deferringFilter, metadataFilter);
+
+        var apiVersionsFrame = writeRequest(new ApiVersionsRequestData());
+        var metadataFrame = writeRequest(new MetadataRequestData());
+        channel.runPendingTasks();
+
+        // the metadata request isn't passed to the deferring filter, but it still waits behind the deferred request
+        assertThat(events).containsExactly("deferring-request");
+        assertThat((Object) channel.readOutbound()).isNull();
+
+        deferred.complete(null);
+        channel.runPendingTasks();
+
+        assertThat(events).containsExactly("deferring-request", "metadata-request");
+        assertThat((Object) channel.readOutbound()).isSameAs(apiVersionsFrame);
+        assertThat((Object) channel.readOutbound()).isSameAs(metadataFrame);
+    }
+
+    /**
+     * Records the requests and responses it sees, then forwards them.
+     */
+    private record RecordingFilter(String name, List<String> events) implements ApiVersionsRequestFilter, ApiVersionsResponseFilter {
+
+        @Override
+        public CompletionStage<RequestFilterResult> onApiVersionsRequest(short apiVersion, RequestHeaderData header, ApiVersionsRequestData request,
+                                                                         FilterContext context) {
+            events.add(name + "-request");
+            return context.forwardRequest(header, request);
+        }
+
+        @Override
+        public CompletionStage<ResponseFilterResult> onApiVersionsResponse(short apiVersion, ResponseHeaderData header, ApiVersionsResponseData response,
+                                                                           FilterContext context) {
+            events.add(name + "-response");
+            return context.forwardResponse(header, response);
+        }
+    }
+
     private static RawTaggedField createTag(int arbitraryTag, String data) {
         return new RawTaggedField(arbitraryTag, data.getBytes(UTF_8));
     }
@@ -5,15 +5,14 @@
  */
 package io.kroxylicious.proxy.internal;
 
-import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collector;
 import java.util.stream.Stream;
 
 import org.apache.kafka.common.message.RequestHeaderData;
@@ -29,7 +28,10 @@ import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.embedded.EmbeddedChannel;
 
+import io.kroxylicious.proxy.config.DeferredRequestWindow;
 import io.kroxylicious.proxy.config.TargetCluster;
+import io.kroxylicious.proxy.config.TlsEngine;
+import io.kroxylicious.proxy.config.WriteBufferWatermarks;
 import io.kroxylicious.proxy.filter.Filter;
 import io.kroxylicious.proxy.filter.FilterAndInvoker;
 import io.kroxylicious.proxy.frame.DecodedRequestFrame;
@@ -53,9 +55,12 @@ public abstract class FilterHarness {
     public static final String TEST_CLIENT = "test-client";
     public static final List<HostPort> TARGET_CLUSTER_BOOTSTRAP = List.of(HostPort.parse("targetCluster:9091"));
     protected EmbeddedChannel channel;
+    protected EmbeddedChannel inboundChannel;
     private final AtomicInteger outboundCorrelationId = new AtomicInteger(1);
     private final Map<Integer, Correlation> pendingInternalRequestMap = new HashMap<>();
     private long timeoutMs = 1000L;
+    private DeferredRequestWindow deferredRequestWindow = new DeferredRequestWindow(null, null);
+    private Executor workerPool = Runnable::run;
 
     /**
      * Sets the timeout for applied to the filters.
@@ -69,7 +74,29 @@ public abstract class FilterHarness {
     }
 
     /**
-     * Build a {@link #channel} containing a {@link FilterHandler} for each the given {@link Filter}.
+     * Sets the window bounding the frames held up by deferred filter work.
+     *
+     * @param deferredRequestWindow the window
+     * @return this
+     */
+    protected FilterHarness deferredRequestWindow(DeferredRequestWindow deferredRequestWindow) {
+        this.deferredRequestWindow = deferredRequestWindow;
+        return this;
+    }
+
+    /**
+     * Sets the executor to which filters offload work. By default the work is run by the thread offloading it.
+     *
+     * @param workerPool the executor
+     * @return this
+     */
+    protected FilterHarness workerPool(Executor workerPool) {
+        this.workerPool = workerPool;
+        return this;
+    }
+
+    /**
+     * Build a {@link #channel} containing a {@link FilterChainHandler} for the given {@link Filter}s.
      *
      * @param filters - the filters to associate with the channel.
      */
@@ -79,20 +106,15 @@ public abstract class FilterHarness {
         final TargetCluster targetCluster = mock(TargetCluster.class);
         when(targetCluster.bootstrapServersList()).thenReturn(TARGET_CLUSTER_BOOTSTRAP);
         var testVirtualCluster = new VirtualCluster("TestVirtualCluster", targetCluster, mock(ClusterNetworkAddressConfigProvider.class), Optional.empty(),
-                false, false);
-        var inboundChannel = new EmbeddedChannel();
+                false, false, deferredRequestWindow, Optional.empty(), false, new WriteBufferWatermarks(null, null), new TlsEngine(null, null, null, false));
+        inboundChannel = new EmbeddedChannel();
         var apiVersionService = new ApiVersionsServiceImpl();
         var channelProcessors = Stream.<ChannelHandler> of(new InternalRequestTracker(), new CorrelationIdIssuer());
 
-        var filterHandlers = Arrays.stream(filters)
-                .collect(Collector.of(ArrayDeque<Filter>::new, ArrayDeque::addFirst, (d1, d2) -> {
-                    d2.addAll(d1);
-                    return d2;
-                })) // reverses order
-                .stream()
-                .map(f -> new FilterHandler(getOnlyElement(FilterAndInvoker.build(f)), timeoutMs, null, testVirtualCluster, inboundChannel, apiVersionService))
-                .map(ChannelHandler.class::cast);
-        var handlers = Stream.concat(channelProcessors, filterHandlers);
+        var filterAndInvokers = Arrays.stream(filters).map(f -> getOnlyElement(FilterAndInvoker.build(f))).toList();
+        var filterChainHandler = new FilterChainHandler(filterAndInvokers, new FilterRoutingTable(filterAndInvokers), timeoutMs, deferredRequestWindow, null,
+                testVirtualCluster, inboundChannel, apiVersionService, workerPool, MemoryBudget.Account.NONE);
+        var handlers = Stream.concat(channelProcessors, Stream.of(filterChainHandler));
 
         channel = new EmbeddedChannel(handlers.toArray(ChannelHandler[]::new));
     }
@@ -0,0 +1,141 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.proxy.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import org.apache.kafka.common.message.FetchRequestData;
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.junit.jupiter.api.Test;
+
+import io.kroxylicious.proxy.filter.FetchRequestFilter;
+import io.kroxylicious.proxy.filter.Filter;
+import io.kroxylicious.proxy.filter.FilterAndInvoker;
+import io.kroxylicious.proxy.filter.FilterContext;
+import io.kroxylicious.proxy.filter.MetadataRequestFilter;
+import io.kroxylicious.proxy.filter.MetadataResponseFilter;
+import io.kroxylicious.proxy.filter.RequestFilterResult;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FilterRoutingTableTest {
+
+    private static final short FETCH_V4 = 4;
+
+    private final MetadataRequestFilter metadataRequestFilter = (apiVersion, header, request, context) -> context.forwardRequest(header, request);
+    private final MetadataResponseFilter metadataResponseFilter = (apiVersion, header, response, context) -> context.forwardResponse(header, response);
+
+    @Test
+    void shouldRouteRequestsToInterestedFiltersOnly() {
+        // Given
+        var table = new FilterRoutingTable(chain(metadataRequestFilter, new FetchV4Filter(), metadataRequestFilter));
+
+        // When
+        long route = table.requestRoute(ApiKeys.METADATA, ApiKeys.METADATA.latestVersion());
+
+        // Then
+        assertThat(FilterRoutingTable.isRouted(route, 0)).isTrue();
+        assertThat(FilterRoutingTable.isRouted(route, 1)).isFalse();
+        assertThat(FilterRoutingTable.isRouted(route, 2)).isTrue();
+        assertThat(table.requestRoute(ApiKeys.PRODUCE, ApiKeys.PRODUCE.latestVersion())).isZero();
+    }
+
+    @Test
+    void shouldRouteResponsesSeparatelyFromRequests() {
+        // Given
+        var table = new FilterRoutingTable(chain(metadataRequestFilter, metadataResponseFilter));
+
+        // When
+        long route = table.responseRoute(ApiKeys.METADATA, ApiKeys.METADATA.latestVersion());
+
+        // Then
+        assertThat(FilterRoutingTable.isRouted(route, 0)).isFalse();
+        assertThat(FilterRoutingTable.isRouted(route, 1)).isTrue();
+    }
+
+    @Test
+    void shouldRouteEveryVersionOfAnApiKeyToFilterHandlingAnyVersion() {
+        // Given
+        var table = new FilterRoutingTable(chain(new FetchV4Filter()));
+
+        // When
+        long route = table.requestRoute(ApiKeys.FETCH, ApiKeys.FETCH.latestVersion());
+
+        // Then
+        assertThat(FilterRoutingTable.isRouted(route, 0)).isTrue();
+    }
+
+    @Test
+    void shouldDecodeOnlyVersionsHandledByAFilter() {
+        // Given
+        var table = new FilterRoutingTable(chain(new FetchV4Filter(), metadataResponseFilter));
+
+        // When/Then
+        assertThat(table.shouldDecodeRequest(ApiKeys.FETCH, FETCH_V4)).isTrue();
+        assertThat(table.shouldDecodeRequest(ApiKeys.FETCH, (short) (FETCH_V4 + 1))).isFalse();
+        assertThat(table.shouldDecodeResponse(ApiKeys.FETCH, FETCH_V4)).isFalse();
+        assertThat(table.shouldDecodeRequest(ApiKeys.METADATA, ApiKeys.METADATA.latestVersion())).isFalse();
+        assertThat(table.shouldDecodeResponse(ApiKeys.METADATA, ApiKeys.METADATA.latestVersion())).isTrue();
+    }
+
+    @Test
+    void shouldAskFiltersAboutUnknownVersions() {
+        // Given
+        var unknownVersion = (short) (ApiKeys.METADATA.latestVersion(true) + 1);
+        var table = new FilterRoutingTable(chain(metadataRequestFilter));
+
+        // When/Then
+        assertThat(table.requestRoute(ApiKeys.METADATA, unknownVersion)).isEqualTo(FilterRoutingTable.ALL_FILTERS);
+        assertThat(table.shouldDecodeRequest(ApiKeys.METADATA, unknownVersion)).isTrue();
+        assertThat(table.shouldDecodeRequest(ApiKeys.FETCH, (short) (ApiKeys.FETCH.latestVersion(true) + 1))).isFalse();
+    }
+
+    @Test
+    void shouldRouteToFiltersBeyondTheSixtyFourth() {
+        // Given
+        var filters = new ArrayList<FilterAndInvoker>();
+        for (int i = 0; i < 65; i++) {
+            filters.addAll(FilterAndInvoker.build(new FetchV4Filter()));
+        }
+        var table = new FilterRoutingTable(filters);
+
+        // When
+        long route = table.requestRoute(ApiKeys.METADATA, ApiKeys.METADATA.latestVersion());
+
+        // Then
+        assertThat(FilterRoutingTable.isRouted(route, 63)).isFalse();
+        assertThat(FilterRoutingTable.isRouted(route, 64)).isTrue();
+    }
+
+    private static List<FilterAndInvoker> chain(Filter... filters) {
+        var chain = new ArrayList<FilterAndInvoker>();
+        for (Filter filter : filters) {
+            chain.addAll(FilterAndInvoker.build(filter));
+        }
+        return chain;
+    }
+
+    /**
+     * Handles only version 4 of fetch requests.
+     */
+    private static class FetchV4Filter implements FetchRequestFilter {
+
+        @Override
+        public boolean shouldHandleFetchRequest(short apiVersion) {
+            return apiVersion == FETCH_V4;
+        }
+
+        @Override
+        public CompletionStage<RequestFilterResult> onFetchRequest(short apiVersion, RequestHeaderData header, FetchRequestData request,
+                                                                   FilterContext context) {
+            return context.forwardRequest(header, request);
+        }
+    }
+}
@@ -5,15 +5,19 @@
  */
 package io.kroxylicious.proxy.internal;
 
+import java.net.ConnectException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.net.ssl.SSLException;
 
 import org.apache.kafka.common.message.ApiVersionsRequestData;
+import org.apache.kafka.common.message.ApiVersionsResponseData;
 import org.apache.kafka.common.message.MetadataRequestData;
 import org.apache.kafka.common.message.RequestHeaderData;
 import org.apache.kafka.common.message.SaslAuthenticateRequestData;
@@ -31,6 +35,7 @@ import org.mockito.Mockito;
 
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
@@ -45,13 +50,17 @@ import io.netty.handler.codec.haproxy.HAProxyProxiedProtocol;
 import io.netty.handler.ssl.SniCompletionEvent;
 import io.netty.handler.ssl.SslContextBuilder;
 
+import io.kroxylicious.proxy.config.WriteBufferWatermarks;
 import io.kroxylicious.proxy.filter.NetFilter;
 import io.kroxylicious.proxy.frame.DecodedFrame;
 import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+import io.kroxylicious.proxy.frame.OpaqueRequestFrame;
+import io.kroxylicious.proxy.frame.OpaqueResponseFrame;
 import io.kroxylicious.proxy.internal.KafkaProxyFrontendHandler.State;
 import io.kroxylicious.proxy.internal.codec.FrameOversizedException;
 import io.kroxylicious.proxy.internal.codec.KafkaRequestDecoder;
 import io.kroxylicious.proxy.internal.codec.RequestDecoderTest;
+import io.kroxylicious.proxy.internal.net.BootstrapServerSelector;
 import io.kroxylicious.proxy.model.VirtualCluster;
 import io.kroxylicious.proxy.service.HostPort;
 
@@ -79,6 +88,10 @@ class KafkaProxyFrontendHandlerTest {
 
     int corrId = 0;
     private final AtomicReference<NetFilter.NetFilterContext> connectContext = new AtomicReference<>();
+    private BootstrapServerSelector bootstrapServers;
+    private final Set<String> unreachableHosts = new HashSet<>();
+    private final List<String> connectAttempts = new ArrayList<>();
+    private final MemoryBudget memoryBudget = new MemoryBudget(Long.MAX_VALUE);
 
     private void writeRequest(short apiVersion, ApiMessage body) {
         var apiKey = ApiKeys.forId(body.apiKey());
@@ -99,6 +112,7 @@ class KafkaProxyFrontendHandlerTest {
     public void buildChannel() {
         inboundChannel = new EmbeddedChannel();
         corrId = 0;
+        bootstrapServers = new BootstrapServerSelector(List.of(new HostPort(CLUSTER_HOST, CLUSTER_PORT)));
     }
 
     @AfterEach
@@ -143,6 +157,22 @@ class KafkaProxyFrontendHandlerTest {
         assertThat(outboundClientSoftwareNames()).containsExactly("initial", "post-connecting");
     }
 
+    @Test
+    void testMessagesBufferedWhileConnectingAreHeldAgainstMemoryBudget() {
+        // Given
+        KafkaProxyFrontendHandler handler = handler(connectContext::set, new SaslDecodePredicate(false), Mockito.mock(VirtualCluster.class));
+        givenHandlerIsConnecting(handler, "initial");
+        long heldBefore = memoryBudget.heldBytes();
+
+        // When
+        inboundChannel.writeInbound(new OpaqueRequestFrame(Unpooled.buffer().writeZero(100), corrId++, false, 100, true));
+
+        // Then
+        assertThat(memoryBudget.heldBytes()).isEqualTo(heldBefore + 104);
+        whenConnectedAndOutboundBecomesActive(handler);
+        assertThat(memoryBudget.heldBytes()).isZero();
+    }
+
     @Test
     void testMessageHandledAfterConnectedBeforeOutboundActive() {
         // Given
@@ -219,20 +249,176 @@ class KafkaProxyFrontendHandlerTest {
         assertEquals(State.FAILED, handler.state());
     }
 
+    @Test
+    void testApiVersionsAnsweredFromCacheOfSelectedServer() {
+        // Given
+        var cache = cacheWithVersionsOf(new HostPort(CLUSTER_HOST, CLUSTER_PORT));
+        KafkaProxyFrontendHandler handler = handler(this::connectionInitiated, new SaslDecodePredicate(false), mock(VirtualCluster.class),
+                new ApiVersionsServiceImpl(cache));
+        initialiseInboundChannel(handler);
+
+        // When
+        writeInboundApiVersionsRequest("cached");
+
+        // Then
+        assertThat(connectAttempts).containsExactly(CLUSTER_HOST);
+        Object written = inboundChannel.readOutbound();
+        assertThat(written).isInstanceOfSatisfying(OpaqueResponseFrame.class, frame -> assertThat(frame.correlationId()).isEqualTo(corrId));
+
+        // And When
+        outboundChannelBecomesActive(handler);
+
+        // Then
+        assertThat(outboundClientSoftwareNames()).isEmpty();
+    }
+
+    @Test
+    void testApiVersionsNotAnsweredFromCacheOfAnotherServer() {
+        // Given
+        var cache = cacheWithVersionsOf(new HostPort("other.example.org", CLUSTER_PORT));
+        KafkaProxyFrontendHandler handler = handler(this::connectionInitiated, new SaslDecodePredicate(false), mock(VirtualCluster.class),
+                new ApiVersionsServiceImpl(cache));
+        initialiseInboundChannel(handler);
+
+        // When
+        writeInboundApiVersionsRequest("uncached");
+        outboundChannelBecomesActive(handler);
+
+        // Then
+        assertThat((Object) inboundChannel.readOutbound()).isNull();
+        assertThat(outboundClientSoftwareNames()).containsExactly("uncached");
+    }
+
+    @Test
+    void testConnectFailsOverToAnotherBootstrapServer() {
+        // Given
+        var otherBootstrapServer = new HostPort("other.example.org", CLUSTER_PORT);
+        bootstrapServers = new BootstrapServerSelector(List.of(new HostPort(CLUSTER_HOST, CLUSTER_PORT), otherBootstrapServer));
+        unreachableHosts.add(CLUSTER_HOST);
+        KafkaProxyFrontendHandler handler = handler(connectContext::set, new SaslDecodePredicate(false), mock(VirtualCluster.class));
+        givenHandlerIsConnecting(handler, "initial");
+
+        // When
+        connectionInitiated(connectContext.get());
+
+        // Then
+        assertThat(connectAttempts).containsExactly(CLUSTER_HOST, otherBootstrapServer.host());
+        assertEquals(State.CONNECTED, handler.state());
+        assertThat(bootstrapServers.select()).isEqualTo(otherBootstrapServer);
+    }
+
+    @Test
+    void testConnectFailsWhenAllBootstrapServersUnreachable() {
+        // Given
+        var otherBootstrapServer = new HostPort("other.example.org", CLUSTER_PORT);
+        bootstrapServers = new BootstrapServerSelector(List.of(new HostPort(CLUSTER_HOST, CLUSTER_PORT), otherBootstrapServer));
+        unreachableHosts.add(CLUSTER_HOST);
+        unreachableHosts.add(otherBootstrapServer.host());
+        KafkaProxyFrontendHandler handler = handler(connectContext::set, new SaslDecodePredicate(false), mock(VirtualCluster.class));
+        givenHandlerIsConnecting(handler, "initial");
+
+        // When
+        connectionInitiated(connectContext.get());
+
+        // Then
+        assertThat(connectAttempts).containsExactly(CLUSTER_HOST, otherBootstrapServer.host());
+        assertEquals(State.FAILED, handler.state());
+        assertThat(inboundChannel.isOpen()).isFalse();
+    }
+
+    @Test
+    void testConnectsUpstreamOnAccept() {
+        // Given
+        VirtualCluster virtualCluster = mock(VirtualCluster.class);
+        when(virtualCluster.connectUpstreamOnAccept()).thenReturn(true);
+        KafkaProxyFrontendHandler handler = handler(connectContext::set, new SaslDecodePredicate(false), virtualCluster);
+
+        // When
+        inboundChannel.pipeline().addLast(handler);
+        inboundChannel.pipeline().fireChannelActive();
+
+        // Then
+        assertEquals(State.CONNECTING, handler.state());
+        assertThat(connectContext.get()).isSameAs(handler);
+
+        // And When
+        connectionInitiated(connectContext.get());
+        writeInboundApiVersionsRequest("pre-connected");
+        outboundChannelBecomesActive(handler);
+
+        // Then
+        assertThat(outboundClientSoftwareNames()).containsExactly("pre-connected");
+        assertThat(handler.clientSoftwareName()).isEqualTo("pre-connected");
+    }
+
+    @Test
+    void testConnectsUpstreamOnAcceptAnswersApiVersionsFromCache() {
+        // Given
+        var cache = cacheWithVersionsOf(new HostPort(CLUSTER_HOST, CLUSTER_PORT));
+        VirtualCluster virtualCluster = mock(VirtualCluster.class);
+        when(virtualCluster.connectUpstreamOnAccept()).thenReturn(true);
+        KafkaProxyFrontendHandler handler = handler(connectContext::set, new SaslDecodePredicate(false), virtualCluster,
+                new ApiVersionsServiceImpl(cache));
+        inboundChannel.pipeline().addLast(handler);
+        inboundChannel.pipeline().fireChannelActive();
+        connectionInitiated(connectContext.get());
+
+        // When
+        writeInboundApiVersionsRequest("cached");
+        outboundChannelBecomesActive(handler);
+
+        // Then
+        assertThat((Object) inboundChannel.readOutbound()).isInstanceOf(OpaqueResponseFrame.class);
+        assertThat(outboundClientSoftwareNames()).isEmpty();
+    }
+
+    @Test
+    void testDoesNotConnectUpstreamOnAcceptWithAuthenticationOffload() {
+        // Given
+        VirtualCluster virtualCluster = mock(VirtualCluster.class);
+        when(virtualCluster.connectUpstreamOnAccept()).thenReturn(true);
+        KafkaProxyFrontendHandler handler = handler(connectContext::set, new SaslDecodePredicate(true), virtualCluster);
+
+        // When
+        initialiseInboundChannel(handler);
+
+        // Then
+        assertThat(connectContext.get()).isNull();
+    }
+
+    private static ApiVersionsCache cacheWithVersionsOf(HostPort upstreamAddress) {
+        var cache = new ApiVersionsCache();
+        var response = new ApiVersionsResponseData();
+        response.apiKeys().add(new ApiVersionsResponseData.ApiVersion().setApiKey(ApiKeys.API_VERSIONS.id)
+                .setMinVersion(ApiKeys.API_VERSIONS.oldestVersion()).setMaxVersion(ApiKeys.API_VERSIONS.latestVersion()));
+        cache.put(upstreamAddress, response.apiKeys(), response);
+        return cache;
+    }
+
     private void writeInboundApiVersionsRequest(String clientSoftwareName) {
         writeRequest(ApiVersionsRequestData.HIGHEST_SUPPORTED_VERSION, new ApiVersionsRequestData()
                 .setClientSoftwareName(clientSoftwareName).setClientSoftwareVersion("1.0.0"));
     }
 
     KafkaProxyFrontendHandler handler(NetFilter filter, SaslDecodePredicate dp, VirtualCluster virtualCluster) {
-        return new KafkaProxyFrontendHandler(filter, dp, virtualCluster, new ApiVersionsServiceImpl()) {
+        return handler(filter, dp, virtualCluster, new ApiVersionsServiceImpl());
+    }
+
+    KafkaProxyFrontendHandler handler(NetFilter filter, SaslDecodePredicate dp, VirtualCluster virtualCluster, ApiVersionsServiceImpl apiVersionsService) {
+        when(virtualCluster.bootstrapServers()).thenReturn(bootstrapServers);
+        when(virtualCluster.writeBufferWatermarks()).thenReturn(new WriteBufferWatermarks(null, null));
+        return new KafkaProxyFrontendHandler(filter, dp, virtualCluster, apiVersionsService, Runnable::run, new UpstreamMultiplexer(Runnable::run), memoryBudget) {
             @Override
             ChannelFuture initConnection(String remoteHost, int remotePort, Bootstrap b) {
                 // This is ugly... basically the EmbeddedChannel doesn't seem to handle the case
                 // of a handler creating an outgoing connection and ends up
                 // trying to re-register the outbound channel => IllegalStateException
                 // So we override this method to short-circuit that
+                connectAttempts.add(remoteHost);
                 outboundChannel = new EmbeddedChannel();
+                if (unreachableHosts.contains(remoteHost)) {
+                    return new DefaultChannelPromise(outboundChannel).setFailure(new ConnectException("Connection refused"));
+                }
                 return new DefaultChannelPromise(outboundChannel).setSuccess();
             }
         };
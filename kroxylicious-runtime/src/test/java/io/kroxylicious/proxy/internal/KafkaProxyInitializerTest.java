@@ -12,6 +12,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.function.IntFunction;
 
 import org.apache.kafka.common.security.auth.AuthenticateCallbackHandler;
 import org.junit.jupiter.api.BeforeEach;
@@ -20,6 +21,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Captor;
 import org.mockito.InOrder;
 import org.mockito.Mock;
@@ -30,14 +32,18 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.ServerSocketChannel;
 import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.SocketChannelConfig;
 import io.netty.handler.codec.ByteToMessageDecoder;
 import io.netty.handler.codec.MessageToByteEncoder;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.handler.ssl.SniHandler;
 
 import io.kroxylicious.proxy.bootstrap.FilterChainFactory;
+import io.kroxylicious.proxy.config.DeferredRequestWindow;
 import io.kroxylicious.proxy.config.ServiceBasedPluginFactoryRegistry;
 import io.kroxylicious.proxy.config.TargetCluster;
+import io.kroxylicious.proxy.config.TlsEngine;
+import io.kroxylicious.proxy.config.WriteBufferWatermarks;
 import io.kroxylicious.proxy.config.tls.Tls;
 import io.kroxylicious.proxy.filter.FilterFactoryContext;
 import io.kroxylicious.proxy.filter.NetFilter;
@@ -49,6 +55,7 @@ import io.kroxylicious.proxy.service.ClusterNetworkAddressConfigProvider;
 import io.kroxylicious.proxy.service.HostPort;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.ArgumentMatchers.isNull;
@@ -64,6 +71,9 @@ class KafkaProxyInitializerTest {
     @Mock(strictness = Mock.Strictness.LENIENT)
     private SocketChannel channel;
 
+    @Mock(strictness = Mock.Strictness.LENIENT)
+    private SocketChannelConfig channelConfig;
+
     @Mock(strictness = Mock.Strictness.LENIENT)
     private ChannelPipeline channelPipeline;
 
@@ -90,6 +100,7 @@ class KafkaProxyInitializerTest {
         filterChainFactory = new FilterChainFactory(pfr, List.of());
         final InetSocketAddress localhost = new InetSocketAddress(0);
         when(channel.pipeline()).thenReturn(channelPipeline);
+        when(channel.config()).thenReturn(channelConfig);
         when(channel.parent()).thenReturn(serverSocketChannel);
         when(channel.localAddress()).thenReturn(InetSocketAddress.createUnresolved("localhost", 9099));
 
@@ -104,7 +115,12 @@ class KafkaProxyInitializerTest {
                 mock(ClusterNetworkAddressConfigProvider.class),
                 tls,
                 logNetwork,
-                logFrames);
+                logFrames,
+                new DeferredRequestWindow(null, null),
+                Optional.empty(),
+                false,
+                new WriteBufferWatermarks(null, null),
+                new TlsEngine(null, null, null, false));
     }
 
     @Test
@@ -116,7 +132,8 @@ class KafkaProxyInitializerTest {
                 (endpoint, sniHostname) -> bindingStage,
                 (virtualCluster, upstreamNodes) -> null,
                 false,
-                Map.of());
+                Map.of(),
+                new MemoryBudget(Long.MAX_VALUE));
         // When
         kafkaProxyInitializer.initChannel(channel);
 
@@ -136,7 +153,8 @@ class KafkaProxyInitializerTest {
                 virtualClusterBindingResolver,
                 (virtualCluster, upstreamNodes) -> null,
                 false,
-                Map.of());
+                Map.of(),
+                new MemoryBudget(Long.MAX_VALUE));
         when(channelPipeline.addLast(plainChannelResolverCaptor.capture())).thenReturn(channelPipeline);
 
         kafkaProxyInitializer.initChannel(channel);
@@ -160,7 +178,8 @@ class KafkaProxyInitializerTest {
                 virtualClusterBindingResolver,
                 (virtualCluster, upstreamNodes) -> null,
                 false,
-                Map.of());
+                Map.of(),
+                new MemoryBudget(Long.MAX_VALUE));
         when(channelPipeline.addLast(plainChannelResolverCaptor.capture())).thenReturn(channelPipeline);
 
         kafkaProxyInitializer.initChannel(channel);
@@ -185,7 +204,8 @@ class KafkaProxyInitializerTest {
                 (endpoint, sniHostname) -> bindingStage,
                 (virtualCluster, upstreamNodes) -> null,
                 false,
-                Map.of());
+                Map.of(),
+                new MemoryBudget(Long.MAX_VALUE));
 
         // When
         kafkaProxyInitializer.addHandlers(channel, vcb);
@@ -196,6 +216,8 @@ class KafkaProxyInitializerTest {
         verifyer.verify(channelPipeline).addLast(eq("responseEncoder"), any(MessageToByteEncoder.class));
         verifyer.verify(channelPipeline).addLast(eq("responseOrderer"), any(ResponseOrderer.class));
         verifyer.verify(channelPipeline).addLast(eq("netHandler"), any(KafkaProxyFrontendHandler.class));
+        verify(channelConfig).setWriteBufferWaterMark(argThat(watermark -> watermark.low() == WriteBufferWatermarks.DEFAULT_LOW_BYTES
+                && watermark.high() == WriteBufferWatermarks.DEFAULT_HIGH_BYTES));
     }
 
     @ParameterizedTest
@@ -210,7 +232,8 @@ class KafkaProxyInitializerTest {
                 (endpoint, sniHostname) -> bindingStage,
                 (virtualCluster, upstreamNodes) -> null,
                 false,
-                Map.of());
+                Map.of(),
+                new MemoryBudget(Long.MAX_VALUE));
 
         // When
         kafkaProxyInitializer.addHandlers(channel, vcb);
@@ -231,7 +254,8 @@ class KafkaProxyInitializerTest {
                 (endpoint, sniHostname) -> bindingStage,
                 (virtualCluster, upstreamNodes) -> null,
                 false,
-                Map.of());
+                Map.of(),
+                new MemoryBudget(Long.MAX_VALUE));
 
         // When
         kafkaProxyInitializer.addHandlers(channel, vcb);
@@ -253,7 +277,8 @@ class KafkaProxyInitializerTest {
                 (endpoint, sniHostname) -> bindingStage,
                 (virtualCluster, upstreamNodes) -> null,
                 false,
-                Map.of(KafkaAuthnHandler.SaslMechanism.PLAIN, plainHandler));
+                Map.of(KafkaAuthnHandler.SaslMechanism.PLAIN, plainHandler),
+                new MemoryBudget(Long.MAX_VALUE));
 
         // When
         kafkaProxyInitializer.addHandlers(channel, vcb);
@@ -274,7 +299,8 @@ class KafkaProxyInitializerTest {
                 (endpoint, sniHostname) -> bindingStage,
                 (virtualCluster, upstreamNodes) -> null,
                 false,
-                Map.of());
+                Map.of(),
+                new MemoryBudget(Long.MAX_VALUE));
 
         // When
         kafkaProxyInitializer.addHandlers(channel, vcb);
@@ -288,6 +314,7 @@ class KafkaProxyInitializerTest {
         // Given
         final FilterChainFactory fcf = mock(FilterChainFactory.class);
         when(vcb.upstreamTarget()).thenReturn(new HostPort("upstream.broker.kafka", 9090));
+        when(vcb.selectUpstreamTarget()).thenReturn(new HostPort("upstream.broker.kafka", 9090));
         final KafkaProxyInitializer.InitalizerNetFilter initalizerNetFilter = new KafkaProxyInitializer.InitalizerNetFilter(mock(SaslDecodePredicate.class),
                 mock(ApiVersionsServiceImpl.class), channel, vcb, pfr, fcf, (virtualCluster1, upstreamNodes) -> null);
         final NetFilter.NetFilterContext netFilterContext = mock(NetFilter.NetFilterContext.class);
@@ -296,7 +323,7 @@ class KafkaProxyInitializerTest {
         initalizerNetFilter.selectServer(netFilterContext);
 
         // Then
-        verify(fcf).createFilters(any(FilterFactoryContext.class));
+        verify(fcf).createFilters(ArgumentMatchers.<IntFunction<FilterFactoryContext>> any());
     }
 
     @Test
@@ -308,7 +335,8 @@ class KafkaProxyInitializerTest {
                 (endpoint, sniHostname) -> bindingStage,
                 (virtualCluster, upstreamNodes) -> null,
                 false,
-                Map.of());
+                Map.of(),
+                new MemoryBudget(Long.MAX_VALUE));
 
         // When
         kafkaProxyInitializer.initChannel(channel);
@@ -0,0 +1,183 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.proxy.internal;
+
+import java.util.List;
+
+import org.apache.kafka.common.message.MetadataRequestData;
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.junit.jupiter.api.Test;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import io.kroxylicious.proxy.frame.DecodedRequestFrame;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MemoryBudgetTest {
+
+    private final MemoryBudget budget = new MemoryBudget(100);
+    private final EmbeddedChannel light = new EmbeddedChannel();
+    private final EmbeddedChannel heavy = new EmbeddedChannel();
+    private final EmbeddedChannel other = new EmbeddedChannel();
+
+    @Test
+    void shouldTrackHeldBytesAcrossAccounts() {
+        var lightAccount = budget.register(light);
+        var heavyAccount = budget.register(heavy);
+
+        lightAccount.reserve(10);
+        heavyAccount.reserve(50);
+        lightAccount.release(5);
+
+        assertThat(budget.heldBytes()).isEqualTo(55);
+        assertThat(lightAccount.heldBytes()).isEqualTo(5);
+        assertThat(heavyAccount.heldBytes()).isEqualTo(50);
+        assertThat(budget.pausedConnections()).isZero();
+    }
+
+    @Test
+    void shouldPauseHeaviestConnectionFirst() {
+        var lightAccount = budget.register(light);
+        var heavyAccount = budget.register(heavy);
+        var otherAccount = budget.register(other);
+        lightAccount.reserve(30);
+        heavyAccount.reserve(60);
+
+        otherAccount.reserve(20);
+
+        assertThat(heavyAccount.isPaused()).isTrue();
+        assertThat(heavy.config().isAutoRead()).isFalse();
+        assertThat(lightAccount.isPaused()).isFalse();
+        assertThat(light.config().isAutoRead()).isTrue();
+        assertThat(otherAccount.isPaused()).isFalse();
+        assertThat(other.config().isAutoRead()).isTrue();
+        assertThat(budget.pausedConnections()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldPauseMoreConnectionsWhenPausedOnesDoNotCoverExcess() {
+        var lightAccount = budget.register(light);
+        var heavyAccount = budget.register(heavy);
+        var otherAccount = budget.register(other);
+        lightAccount.reserve(30);
+        heavyAccount.reserve(40);
+        otherAccount.reserve(80);
+        assertThat(otherAccount.isPaused()).isTrue();
+        otherAccount.release(75);
+        assertThat(otherAccount.isPaused()).isTrue();
+
+        lightAccount.reserve(40);
+
+        assertThat(lightAccount.isPaused()).isTrue();
+        assertThat(heavyAccount.isPaused()).isFalse();
+        assertThat(budget.pausedConnections()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldResumeOnceWellUnderBudget() {
+        var lightAccount = budget.register(light);
+        var heavyAccount = budget.register(heavy);
+        lightAccount.reserve(30);
+        heavyAccount.reserve(80);
+        assertThat(heavyAccount.isPaused()).isTrue();
+
+        heavyAccount.release(20);
+        assertThat(heavyAccount.isPaused()).isTrue();
+
+        heavyAccount.release(20);
+        assertThat(heavyAccount.isPaused()).isFalse();
+        assertThat(heavy.config().isAutoRead()).isTrue();
+        assertThat(budget.pausedConnections()).isZero();
+    }
+
+    @Test
+    void shouldOnlyPauseConnectionsWhenCrossingBudget() {
+        var lightAccount = budget.register(light);
+        var heavyAccount = budget.register(heavy);
+        var otherAccount = budget.register(other);
+        lightAccount.reserve(30);
+        heavyAccount.reserve(60);
+        otherAccount.reserve(20);
+        assertThat(heavyAccount.isPaused()).isTrue();
+
+        otherAccount.reserve(60);
+
+        assertThat(otherAccount.isPaused()).isFalse();
+        assertThat(budget.pausedConnections()).isEqualTo(1);
+
+        // back under the budget, then over it again
+        otherAccount.release(80);
+        otherAccount.reserve(80);
+
+        assertThat(otherAccount.isPaused()).isTrue();
+        assertThat(budget.pausedConnections()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotResumeReadsPausedForAnotherReason() {
+        var lightAccount = budget.register(light);
+        var heavyAccount = budget.register(heavy);
+        lightAccount.reserve(30);
+        heavyAccount.reserve(80);
+        assertThat(heavyAccount.isPaused()).isTrue();
+        ReadPauses.pause(heavy, ReadPauses.Reason.DEFERRED_REQUEST_WINDOW);
+
+        heavyAccount.release(40);
+
+        assertThat(heavyAccount.isPaused()).isFalse();
+        assertThat(heavy.config().isAutoRead()).isFalse();
+
+        ReadPauses.resume(heavy, ReadPauses.Reason.DEFERRED_REQUEST_WINDOW);
+
+        assertThat(heavy.config().isAutoRead()).isTrue();
+    }
+
+    @Test
+    void shouldReleaseHeldBytesOnClose() {
+        var lightAccount = budget.register(light);
+        var heavyAccount = budget.register(heavy);
+        lightAccount.reserve(30);
+        heavyAccount.reserve(80);
+
+        heavyAccount.close();
+        heavyAccount.release(80);
+
+        assertThat(budget.heldBytes()).isEqualTo(30);
+        assertThat(budget.pausedConnections()).isZero();
+    }
+
+    @Test
+    void shouldNeverPauseUnbudgetedAccount() {
+        var account = MemoryBudget.Account.NONE;
+
+        account.reserve(Integer.MAX_VALUE);
+
+        assertThat(account.isPaused()).isFalse();
+        assertThat(account.heldBytes()).isZero();
+    }
+
+    @Test
+    void shouldSizeFrameCreatedByFilterOnce() {
+        var frame = new DecodedRequestFrame<>((short) 12, 1, true, new RequestHeaderData().setRequestApiKey(ApiKeys.METADATA.id).setClientId("app"),
+                new MetadataRequestData().setTopics(List.of(new MetadataRequestData.MetadataRequestTopic().setName("topic"))));
+        int expected = frame.estimateEncodedSize() - Integer.BYTES;
+
+        int size = MemoryBudget.sizeOf(frame);
+        frame.body().topics().get(0).setName("a-topic-with-a-longer-name");
+
+        assertThat(size).isEqualTo(expected);
+        assertThat(MemoryBudget.sizeOf(frame)).isEqualTo(size);
+    }
+
+    @Test
+    void shouldRejectEmptyBudget() {
+        assertThatThrownBy(() -> new MemoryBudget(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -9,10 +9,13 @@ package io.kroxylicious.proxy.internal;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import io.netty.buffer.Unpooled;
 import io.netty.channel.embedded.EmbeddedChannel;
 
 import io.kroxylicious.proxy.frame.ByteBufAccessor;
 import io.kroxylicious.proxy.frame.Frame;
+import io.kroxylicious.proxy.frame.OpaqueFrameChunk;
+import io.kroxylicious.proxy.frame.OpaqueResponseFrame;
 import io.kroxylicious.proxy.frame.RequestFrame;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -268,6 +271,65 @@ class ResponseOrdererTest {
         thenOutboundContains(response);
     }
 
+    @Test
+    void testOtherResponsesWaitForChunksOfStreamedResponse() {
+        whenWriteInboundMessage(new TestFrame(1));
+        whenWriteInboundMessage(new TestFrame(2));
+
+        OpaqueResponseFrame responseForFrame1 = streamedResponse(1);
+        whenWriteOutboundMessage(responseForFrame1);
+        thenOutboundContains(responseForFrame1);
+
+        TestFrame responseForFrame2 = new TestFrame(2);
+        whenWriteOutboundMessage(responseForFrame2);
+        thenQueuedResponseCountEquals(1);
+        thenOutboundIsEmpty();
+
+        OpaqueFrameChunk chunk = new OpaqueFrameChunk(Unpooled.buffer(1).writeByte(0), false);
+        whenWriteOutboundMessage(chunk);
+        thenOutboundContains(chunk);
+        thenOutboundIsEmpty();
+
+        OpaqueFrameChunk lastChunk = new OpaqueFrameChunk(Unpooled.buffer(1).writeByte(0), true);
+        whenWriteOutboundMessage(lastChunk);
+        thenInFlightRequestCountEquals(0);
+        thenQueuedResponseCountEquals(0);
+        thenOutboundContains(lastChunk);
+        thenOutboundContains(responseForFrame2);
+        thenOutboundIsEmpty();
+    }
+
+    @Test
+    void testChunksOfQueuedStreamedResponseAreQueuedWithIt() {
+        whenWriteInboundMessage(new TestFrame(1));
+        whenWriteInboundMessage(new TestFrame(2));
+
+        OpaqueResponseFrame responseForFrame2 = streamedResponse(2);
+        whenWriteOutboundMessage(responseForFrame2);
+        OpaqueFrameChunk chunk = new OpaqueFrameChunk(Unpooled.buffer(1).writeByte(0), false);
+        whenWriteOutboundMessage(chunk);
+        thenQueuedResponseCountEquals(1);
+        thenOutboundIsEmpty();
+
+        TestFrame responseForFrame1 = new TestFrame(1);
+        whenWriteOutboundMessage(responseForFrame1);
+        thenInFlightRequestCountEquals(0);
+        thenQueuedResponseCountEquals(0);
+        thenOutboundContains(responseForFrame1);
+        thenOutboundContains(responseForFrame2);
+        thenOutboundContains(chunk);
+        thenOutboundIsEmpty();
+
+        // the rest of the streamed response is written as it arrives
+        OpaqueFrameChunk lastChunk = new OpaqueFrameChunk(Unpooled.buffer(1).writeByte(0), true);
+        whenWriteOutboundMessage(lastChunk);
+        thenOutboundContains(lastChunk);
+    }
+
+    private static OpaqueResponseFrame streamedResponse(int correlationId) {
+        return new OpaqueResponseFrame(Unpooled.buffer(Integer.BYTES).writeInt(correlationId), correlationId, 6, true);
+    }
+
     private void whenWriteOutboundMessage(Object object) {
         embeddedChannel.writeOneOutbound(object);
     }
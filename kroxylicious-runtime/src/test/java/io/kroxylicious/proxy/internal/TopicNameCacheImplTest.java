@@ -0,0 +1,199 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.proxy.internal;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.common.Uuid;
+import org.apache.kafka.common.message.MetadataRequestData;
+import org.apache.kafka.common.message.MetadataResponseData;
+import org.apache.kafka.common.message.MetadataResponseData.MetadataResponseTopic;
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.protocol.Errors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import io.kroxylicious.proxy.filter.FilterContext;
+import io.kroxylicious.proxy.filter.TopicNameCache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TopicNameCacheImplTest {
+
+    private static final Uuid TOPIC_ID = Uuid.randomUuid();
+    private static final String TOPIC_NAME = "mytopic";
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final TopicNameCacheImpl cacheImpl = new TopicNameCacheImpl(1, Duration.ofMinutes(1), nanoTime::get);
+    private final TopicNameCache cache = cacheImpl.forFilter(0, Runnable::run);
+
+    @Mock
+    private FilterContext context;
+
+    @Captor
+    private ArgumentCaptor<RequestHeaderData> headerCaptor;
+
+    @Captor
+    private ArgumentCaptor<MetadataRequestData> requestCaptor;
+
+    @Test
+    void shouldResolveLookedUpNamesWithoutLookup() {
+        // Given
+        when(context.<MetadataResponseData> sendRequest(any(), any())).thenReturn(CompletableFuture.completedFuture(
+                metadataResponse(new MetadataResponseTopic().setTopicId(TOPIC_ID).setName(TOPIC_NAME))));
+        cache.topicNames(List.of(TOPIC_ID), context);
+        var otherContext = mock(FilterContext.class);
+
+        // When
+        var names = cacheImpl.forFilter(0, Runnable::run).topicNames(List.of(TOPIC_ID), otherContext);
+
+        // Then
+        assertThat(names).isCompletedWithValueMatching(map -> TOPIC_NAME.equals(map.get(TOPIC_ID)));
+        verifyNoInteractions(otherContext);
+    }
+
+    @Test
+    void shouldNotShareNamesBetweenFilterPositions() {
+        // Given
+        when(context.<MetadataResponseData> sendRequest(any(), any())).thenReturn(CompletableFuture.completedFuture(
+                metadataResponse(new MetadataResponseTopic().setTopicId(TOPIC_ID).setName(TOPIC_NAME))));
+        cache.topicNames(List.of(TOPIC_ID), context);
+        var otherContext = mock(FilterContext.class);
+        when(otherContext.<MetadataResponseData> sendRequest(any(), any())).thenReturn(CompletableFuture.completedFuture(
+                metadataResponse(new MetadataResponseTopic().setTopicId(TOPIC_ID).setName("tenant-" + TOPIC_NAME))));
+
+        // When
+        var names = cacheImpl.forFilter(1, Runnable::run).topicNames(List.of(TOPIC_ID), otherContext);
+
+        // Then
+        assertThat(names).isCompletedWithValueMatching(map -> ("tenant-" + TOPIC_NAME).equals(map.get(TOPIC_ID)));
+        assertThat(cache.topicNames(List.of(TOPIC_ID), context)).isCompletedWithValueMatching(map -> TOPIC_NAME.equals(map.get(TOPIC_ID)));
+        verify(context, times(1)).sendRequest(any(), any());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedNames() {
+        // Given
+        var otherTopicId = Uuid.randomUuid();
+        when(context.<MetadataResponseData> sendRequest(any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(metadataResponse(new MetadataResponseTopic().setTopicId(TOPIC_ID).setName(TOPIC_NAME))))
+                .thenReturn(CompletableFuture.completedFuture(metadataResponse(new MetadataResponseTopic().setTopicId(otherTopicId).setName("other"))));
+        cache.topicNames(List.of(TOPIC_ID), context);
+        cache.topicNames(List.of(otherTopicId), context);
+
+        // When
+        cache.topicNames(List.of(TOPIC_ID), context);
+
+        // Then
+        verify(context, times(3)).sendRequest(any(), any());
+    }
+
+    @Test
+    void shouldExpireUnusedNames() {
+        // Given
+        when(context.<MetadataResponseData> sendRequest(any(), any())).thenReturn(CompletableFuture.completedFuture(
+                metadataResponse(new MetadataResponseTopic().setTopicId(TOPIC_ID).setName(TOPIC_NAME))));
+        cache.topicNames(List.of(TOPIC_ID), context);
+        nanoTime.addAndGet(Duration.ofSeconds(59).toNanos());
+        cache.topicNames(List.of(TOPIC_ID), context);
+        verify(context, times(1)).sendRequest(any(), any());
+
+        // When
+        nanoTime.addAndGet(Duration.ofSeconds(61).toNanos());
+        var names = cache.topicNames(List.of(TOPIC_ID), context);
+
+        // Then
+        assertThat(names).isCompletedWithValueMatching(map -> TOPIC_NAME.equals(map.get(TOPIC_ID)));
+        verify(context, times(2)).sendRequest(any(), any());
+    }
+
+    @Test
+    void shouldShareLookupBetweenConcurrentRequests() {
+        // Given
+        var response = new CompletableFuture<MetadataResponseData>();
+        when(context.<MetadataResponseData> sendRequest(headerCaptor.capture(), requestCaptor.capture())).thenReturn(response);
+        var names1 = cache.topicNames(List.of(TOPIC_ID), context);
+        var names2 = cache.topicNames(List.of(TOPIC_ID), context);
+        assertThat(names1).isNotDone();
+
+        // When
+        response.complete(metadataResponse(new MetadataResponseTopic().setTopicId(TOPIC_ID).setName(TOPIC_NAME)));
+
+        // Then
+        verify(context, times(1)).sendRequest(any(), any());
+        assertThat(headerCaptor.getValue().requestApiVersion()).isEqualTo(TopicNameCacheImpl.METADATA_API_VER_WITH_TOPIC_ID_SUPPORT);
+        assertThat(requestCaptor.getValue().topics()).singleElement().satisfies(topic -> {
+            assertThat(topic.topicId()).isEqualTo(TOPIC_ID);
+            assertThat(topic.name()).isNull();
+        });
+        assertThat(names1).isCompletedWithValueMatching(map -> TOPIC_NAME.equals(map.get(TOPIC_ID)));
+        assertThat(names2).isCompletedWithValueMatching(map -> TOPIC_NAME.equals(map.get(TOPIC_ID)));
+        // and it's cached
+        assertThat(cache.topicNames(List.of(TOPIC_ID), context)).isCompleted();
+    }
+
+    @Test
+    void shouldOmitUnknownTopics() {
+        // Given
+        when(context.<MetadataResponseData> sendRequest(any(), any())).thenReturn(CompletableFuture.completedFuture(
+                metadataResponse(new MetadataResponseTopic().setTopicId(TOPIC_ID).setErrorCode(Errors.UNKNOWN_TOPIC_ID.code()))));
+
+        // When
+        var names = cache.topicNames(List.of(TOPIC_ID), context);
+
+        // Then
+        assertThat(names).isCompletedWithValueMatching(map -> map.isEmpty());
+    }
+
+    @Test
+    void shouldLookUpAgainAfterFailure() {
+        // Given
+        when(context.<MetadataResponseData> sendRequest(any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("boom")))
+                .thenReturn(CompletableFuture.completedFuture(metadataResponse(new MetadataResponseTopic().setTopicId(TOPIC_ID).setName(TOPIC_NAME))));
+
+        // When
+        var failed = cache.topicNames(List.of(TOPIC_ID), context);
+        var retried = cache.topicNames(List.of(TOPIC_ID), context);
+
+        // Then
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(retried).isCompletedWithValueMatching(map -> TOPIC_NAME.equals(map.get(TOPIC_ID)));
+    }
+
+    @Test
+    void shouldFailWaitersWhenLookupCantBeSent() {
+        // Given
+        when(context.<MetadataResponseData> sendRequest(any(), any())).thenThrow(new IllegalStateException("boom"));
+
+        // When
+        var names = cache.topicNames(List.of(TOPIC_ID), context);
+
+        // Then
+        assertThat(names).isCompletedExceptionally();
+    }
+
+    private static MetadataResponseData metadataResponse(MetadataResponseTopic topic) {
+        var response = new MetadataResponseData();
+        response.topics().add(topic);
+        return response;
+    }
+}
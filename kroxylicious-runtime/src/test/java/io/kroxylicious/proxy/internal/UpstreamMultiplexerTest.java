@@ -0,0 +1,354 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.common.message.ProduceRequestData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.requests.ProduceRequest;
+import org.apache.kafka.common.requests.RequestHeader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoop;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+
+import io.kroxylicious.proxy.config.UpstreamMultiplexing;
+import io.kroxylicious.proxy.config.WriteBufferWatermarks;
+import io.kroxylicious.proxy.model.VirtualCluster;
+import io.kroxylicious.proxy.service.HostPort;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UpstreamMultiplexerTest {
+
+    private final NioEventLoopGroup group = new NioEventLoopGroup(1);
+    private final AtomicInteger brokerConnections = new AtomicInteger();
+    private final Queue<Channel> brokerChannels = new ConcurrentLinkedQueue<>();
+    private final BlockingQueue<Integer> brokerCorrelationIds = new LinkedBlockingQueue<>();
+    // the fetch responses the broker is holding on to
+    private final Queue<Runnable> heldFetches = new ConcurrentLinkedQueue<>();
+    private final UpstreamMultiplexer multiplexer = new UpstreamMultiplexer(Runnable::run);
+    private final VirtualCluster virtualCluster = mock(VirtualCluster.class);
+    private HostPort broker;
+    private EventLoop eventLoop;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // a broker which responds with an empty body, except to produce requests with acks=0,
+        // and which holds on to fetches until they are released
+        Channel server = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        brokerConnections.incrementAndGet();
+                        brokerChannels.add(ch);
+                        ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(1024, 0, Integer.BYTES, 0, Integer.BYTES), new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                ByteBuf request = (ByteBuf) msg;
+                                ByteBuffer buffer = request.nioBuffer();
+                                RequestHeader header = RequestHeader.parse(buffer);
+                                boolean respond = header.apiKey() != ApiKeys.PRODUCE
+                                        || ProduceRequest.parse(buffer, header.apiVersion()).acks() != 0;
+                                request.release();
+                                brokerCorrelationIds.add(header.correlationId());
+                                Runnable response = () -> ctx.writeAndFlush(Unpooled.buffer().writeInt(Integer.BYTES).writeInt(header.correlationId()));
+                                if (header.apiKey() == ApiKeys.FETCH) {
+                                    heldFetches.add(response);
+                                }
+                                else if (respond) {
+                                    response.run();
+                                }
+                            }
+                        });
+                    }
+                })
+                .bind("127.0.0.1", 0).sync().channel();
+        broker = new HostPort("127.0.0.1", ((InetSocketAddress) server.localAddress()).getPort());
+        eventLoop = group.next();
+        when(virtualCluster.getClusterName()).thenReturn("demo");
+        when(virtualCluster.socketFrameMaxSizeBytes()).thenReturn(1024);
+        when(virtualCluster.upstreamMultiplexing()).thenReturn(Optional.of(new UpstreamMultiplexing(1)));
+        when(virtualCluster.writeBufferWatermarks()).thenReturn(new WriteBufferWatermarks(null, null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        group.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Test
+    void shouldShareConnectionBetweenClients() throws Exception {
+        // Given
+        var client1 = new Client("app");
+        var client2 = new Client("app");
+
+        // When
+        client1.send(ApiKeys.METADATA, 7);
+        var response1 = client1.responses.poll(5, TimeUnit.SECONDS);
+        client2.send(ApiKeys.METADATA, 7);
+        var response2 = client2.responses.poll(5, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(response1).isEqualTo(7);
+        assertThat(response2).isEqualTo(7);
+        assertThat(brokerConnections).hasValue(1);
+        assertThat(brokerCorrelationIds).containsExactly(0, 1);
+    }
+
+    @Test
+    void shouldNotShareConnectionBetweenClientIds() throws Exception {
+        // Given
+        var client1 = new Client("app1");
+        var client2 = new Client("app2");
+
+        // When
+        client1.send(ApiKeys.METADATA, 7);
+        var response1 = client1.responses.poll(5, TimeUnit.SECONDS);
+        client2.send(ApiKeys.METADATA, 7);
+        var response2 = client2.responses.poll(5, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(response1).isEqualTo(7);
+        assertThat(response2).isEqualTo(7);
+        assertThat(brokerConnections).hasValue(2);
+    }
+
+    @Test
+    void shouldNotAwaitResponseToProduceWithoutAcks() throws Exception {
+        // Given
+        var client = new Client("app");
+        client.sendProduce((short) 0, 1);
+
+        // When
+        client.send(ApiKeys.METADATA, 2);
+        var response = client.responses.poll(5, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(response).isEqualTo(2);
+        assertThat(brokerCorrelationIds).containsExactly(0, 1);
+        assertThat(client.responses).isEmpty();
+    }
+
+    @Test
+    void shouldSendProduceWithAcksOverDedicatedConnection() throws Exception {
+        // Given
+        var client = new Client("app");
+        client.send(ApiKeys.METADATA, 1);
+        assertThat(client.responses.poll(5, TimeUnit.SECONDS)).isEqualTo(1);
+
+        // When
+        client.sendProduce((short) -1, 2);
+        var response = client.responses.poll(5, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(response).isEqualTo(2);
+        assertThat(brokerConnections).hasValue(2);
+        // the first request on each connection
+        assertThat(brokerCorrelationIds).containsExactly(0, 0);
+    }
+
+    @Test
+    void shouldConnectOnceBrokerConnected() throws Exception {
+        // When
+        new Client("app");
+
+        // Then
+        assertThat(brokerConnections).hasValue(1);
+    }
+
+    @Test
+    void shouldFailConnectWhenBrokerUnreachable() throws Exception {
+        // Given
+        HostPort unreachable;
+        try (var socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            unreachable = new HostPort("127.0.0.1", socket.getLocalPort());
+        }
+        var bootstrap = new Bootstrap().handler(new ChannelInboundHandlerAdapter());
+
+        // When
+        var connectFuture = multiplexer.connect(bootstrap, eventLoop, NioSocketChannel.class, virtualCluster, unreachable);
+
+        // Then
+        assertThat(connectFuture.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(connectFuture.isSuccess()).isFalse();
+        assertThat(connectFuture.channel().closeFuture().await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void shouldDiscardPoolOnceItsConnectionsClose() throws Exception {
+        // Given
+        var client = new Client("app");
+        client.send(ApiKeys.METADATA, 1);
+        assertThat(client.responses.poll(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(multiplexer.poolCount()).isOne();
+
+        // When
+        client.channel.close().sync();
+        brokerChannels.forEach(Channel::close);
+
+        // Then
+        // the pool is discarded on the event loop, after its connections have closed
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (multiplexer.poolCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(multiplexer.poolCount()).isZero();
+    }
+
+    @Test
+    void shouldSendFetchesOverDedicatedConnection() throws Exception {
+        // Given
+        var fetcher = new Client("app");
+        var other = new Client("app");
+        fetcher.send(ApiKeys.METADATA, 1);
+        assertThat(fetcher.responses.poll(5, TimeUnit.SECONDS)).isEqualTo(1);
+
+        // When
+        fetcher.send(ApiKeys.FETCH, 2);
+        other.send(ApiKeys.METADATA, 3);
+
+        // Then
+        assertThat(other.responses.poll(5, TimeUnit.SECONDS)).isEqualTo(3);
+        assertThat(brokerConnections).hasValue(2);
+    }
+
+    @Test
+    void shouldPassResponsesBackInRequestOrder() throws Exception {
+        // Given
+        var client = new Client("app");
+        client.send(ApiKeys.FETCH, 1);
+        client.send(ApiKeys.METADATA, 2);
+        assertThat(brokerCorrelationIds.poll(5, TimeUnit.SECONDS)).isNotNull();
+        assertThat(brokerCorrelationIds.poll(5, TimeUnit.SECONDS)).isNotNull();
+
+        // When
+        assertThat(client.responses.poll(200, TimeUnit.MILLISECONDS)).isNull();
+        heldFetches.forEach(Runnable::run);
+
+        // Then
+        assertThat(client.responses.poll(5, TimeUnit.SECONDS)).isEqualTo(1);
+        assertThat(client.responses.poll(5, TimeUnit.SECONDS)).isEqualTo(2);
+    }
+
+    @Test
+    void shouldSendRequestsOfAuthenticatingClientOverDedicatedConnection() throws Exception {
+        // Given
+        var client = new Client("app");
+        client.send(ApiKeys.METADATA, 1);
+        assertThat(client.responses.poll(5, TimeUnit.SECONDS)).isEqualTo(1);
+
+        // When
+        client.send(ApiKeys.SASL_HANDSHAKE, 2);
+        var handshakeResponse = client.responses.poll(5, TimeUnit.SECONDS);
+        client.send(ApiKeys.METADATA, 3);
+        var metadataResponse = client.responses.poll(5, TimeUnit.SECONDS);
+
+        // Then
+        assertThat(handshakeResponse).isEqualTo(2);
+        assertThat(metadataResponse).isEqualTo(3);
+        assertThat(brokerConnections).hasValue(2);
+        // the first request on each connection, then the second on the dedicated connection
+        assertThat(brokerCorrelationIds).containsExactly(0, 0, 1);
+    }
+
+    @ParameterizedTest
+    @ValueSource(shorts = { 2, 3, 8, 9, 10 })
+    void shouldRecogniseProduceWithoutAcks(short apiVersion) {
+        assertThat(UpstreamMultiplexer.expectsResponse(produceRequest(apiVersion, (short) 0, 5))).isFalse();
+        assertThat(UpstreamMultiplexer.expectsResponse(produceRequest(apiVersion, (short) -1, 5))).isTrue();
+    }
+
+    private static ByteBuf produceRequest(short apiVersion, short acks, int correlationId) {
+        var data = new ProduceRequestData().setAcks(acks).setTimeoutMs(1000);
+        if (apiVersion >= 3) {
+            data.setTransactionalId("txn");
+        }
+        ByteBuffer request = new ProduceRequest(data, apiVersion)
+                .serializeWithHeader(new RequestHeader(ApiKeys.PRODUCE, apiVersion, "app", correlationId));
+        return Unpooled.buffer().writeInt(request.remaining()).writeBytes(request);
+    }
+
+    /**
+     * Stands in for the upstream channel of a client connection.
+     */
+    private class Client {
+
+        private final BlockingQueue<Integer> responses = new LinkedBlockingQueue<>();
+        private final String clientId;
+        private final Channel channel;
+
+        Client(String clientId) throws InterruptedException {
+            this.clientId = clientId;
+            // the responses arrive as a stream of bytes, like over a socket
+            var bootstrap = new Bootstrap().handler(new ChannelInitializer<>() {
+                @Override
+                protected void initChannel(Channel ch) {
+                    ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(1024, 0, Integer.BYTES), new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            ByteBuf response = (ByteBuf) msg;
+                            responses.add(response.getInt(response.readerIndex() + 4));
+                            response.release();
+                        }
+                    });
+                }
+            });
+            var connectFuture = multiplexer.connect(bootstrap, eventLoop, NioSocketChannel.class, virtualCluster, broker);
+            connectFuture.channel().pipeline().addFirst(multiplexer.peerHandler(connectFuture.channel()));
+            channel = connectFuture.sync().channel();
+        }
+
+        void send(ApiKeys apiKey, int correlationId) {
+            // a v1 request header with an empty body
+            byte[] clientIdBytes = clientId.getBytes(StandardCharsets.UTF_8);
+            ByteBuf request = Unpooled.buffer()
+                    .writeInt(Short.BYTES + Short.BYTES + Integer.BYTES + Short.BYTES + clientIdBytes.length)
+                    .writeShort(apiKey.id)
+                    .writeShort(apiKey.oldestVersion())
+                    .writeInt(correlationId)
+                    .writeShort(clientIdBytes.length)
+                    .writeBytes(clientIdBytes);
+            channel.writeAndFlush(request);
+        }
+
+        void sendProduce(short acks, int correlationId) {
+            channel.writeAndFlush(produceRequest((short) 3, acks, correlationId));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.proxy.internal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.kroxylicious.proxy.config.WorkerPoolConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WorkerPoolTest {
+
+    private final WorkerPool workerPool = new WorkerPool(new WorkerPoolConfiguration(1, 1));
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        workerPool.close();
+    }
+
+    @Test
+    void shouldRunWorkOnWorkerThread() throws Exception {
+        // Given
+        var thread = new CompletableFuture<Thread>();
+
+        // When
+        workerPool.execute(() -> thread.complete(Thread.currentThread()));
+
+        // Then
+        assertThat(thread.get(5, TimeUnit.SECONDS)).isNotSameAs(Thread.currentThread())
+                .extracting(Thread::getName).asString().startsWith("kroxylicious-worker");
+    }
+
+    @Test
+    void shouldRejectWorkWhenQueueIsFull() throws Exception {
+        // Given
+        var started = new CountDownLatch(1);
+        workerPool.execute(() -> {
+            started.countDown();
+            awaitRelease();
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        workerPool.execute(this::awaitRelease);
+
+        // When/Then
+        assertThatThrownBy(() -> workerPool.execute(() -> {
+        })).isInstanceOf(RejectedExecutionException.class)
+                .hasMessageContaining("full");
+    }
+
+    @Test
+    void shouldRejectWorkOnceClosed() {
+        // Given
+        workerPool.close();
+
+        // When/Then
+        assertThatThrownBy(() -> workerPool.execute(() -> {
+        })).isInstanceOf(RejectedExecutionException.class);
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
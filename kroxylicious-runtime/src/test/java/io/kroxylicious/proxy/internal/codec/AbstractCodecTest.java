@@ -140,6 +140,10 @@ public abstract class AbstractCodecTest {
             throws Exception {
         int expectedSize = expected.capacity();
         assertEquals(expected.limit(), expectedSize);
+        if (toBeEncoded instanceof DecodedFrame<?, ?> decodedFrame) {
+            // As if the frame had been received by a decoder
+            decodedFrame.encodedSizeHint(expectedSize - 4);
+        }
 
         // Encode using our APIS
         ByteBuffer ourBuffer = ByteBuffer.allocate(expectedSize).clear();
@@ -374,4 +374,33 @@ public class ByteBufAccessorTest {
 
         assertSameResponse(apiVersion, schema, message, readReq);
     }
+
+    @Test
+    void readByteBufferCopiesByDefault() {
+        ByteBuf buf = Unpooled.wrappedBuffer(new byte[]{ 1, 2, 3, 4 });
+        var accessor = new ByteBufAccessorImpl(buf);
+        accessor.readByte();
+
+        ByteBuffer read = accessor.readByteBuffer(2);
+        buf.setByte(1, 42);
+
+        assertThat(read.get(0)).isEqualTo((byte) 2);
+        assertThat(buf.readerIndex()).isEqualTo(3);
+        assertThat(accessor.sharesBuffer()).isFalse();
+    }
+
+    @Test
+    void readByteBufferInZeroCopyModeReturnsView() {
+        ByteBuf buf = Unpooled.wrappedBuffer(new byte[]{ 1, 2, 3, 4 });
+        var accessor = new ByteBufAccessorImpl(buf, true);
+        accessor.readByte();
+
+        ByteBuffer read = accessor.readByteBuffer(2);
+        buf.setByte(1, 42);
+
+        assertThat(read.remaining()).isEqualTo(2);
+        assertThat(read.get(read.position())).isEqualTo((byte) 42);
+        assertThat(buf.readerIndex()).isEqualTo(3);
+        assertThat(accessor.sharesBuffer()).isTrue();
+    }
 }
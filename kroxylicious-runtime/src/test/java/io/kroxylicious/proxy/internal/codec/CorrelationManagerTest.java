@@ -0,0 +1,163 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CorrelationManagerTest {
+
+    @Test
+    void allocatesSequentialUpstreamIds() {
+        var correlationManager = new CorrelationManager(5);
+        assertThat(put(correlationManager, 100, true)).isEqualTo(5);
+        assertThat(put(correlationManager, 101, false)).isEqualTo(6);
+        assertThat(put(correlationManager, 102, true)).isEqualTo(7);
+        assertThat(correlationManager.inFlightCount()).isEqualTo(2);
+    }
+
+    @Test
+    void recoversCorrelation() {
+        var correlationManager = new CorrelationManager();
+        var promise = new CompletableFuture<>();
+        int upstreamId = correlationManager.putBrokerRequest(ApiKeys.FETCH.id, (short) 12, 42, true, null, promise, true);
+
+        var correlation = correlationManager.getBrokerCorrelation(upstreamId);
+
+        assertThat(correlation).isNotNull();
+        assertThat(correlation.apiKey()).isEqualTo(ApiKeys.FETCH.id);
+        assertThat(correlation.apiVersion()).isEqualTo((short) 12);
+        assertThat(correlation.downstreamCorrelationId()).isEqualTo(42);
+        assertThat(correlation.decodeResponse()).isTrue();
+        assertThat(correlation.promise()).isSameAs(promise);
+        assertThat(correlationManager.getBrokerCorrelation(upstreamId)).isNull();
+        assertThat(correlationManager.inFlightCount()).isZero();
+    }
+
+    @Test
+    void unknownIdHasNoCorrelation() {
+        var correlationManager = new CorrelationManager();
+        int upstreamId = put(correlationManager, 1, true);
+
+        assertThat(correlationManager.getBrokerCorrelation(upstreamId + CorrelationManager.INITIAL_CAPACITY)).isNull();
+        assertThat(correlationManager.inFlightCount()).isOne();
+    }
+
+    @Test
+    void growsWhenInFlightWindowExceedsCapacity() {
+        var correlationManager = new CorrelationManager();
+        int requests = CorrelationManager.INITIAL_CAPACITY * 3 + 1;
+        for (int i = 0; i < requests; i++) {
+            put(correlationManager, 1000 + i, true);
+        }
+
+        assertThat(correlationManager.capacity()).isGreaterThanOrEqualTo(requests);
+        assertThat(correlationManager.inFlightCount()).isEqualTo(requests);
+        assertThat(correlationManager.highWaterMark()).isEqualTo(requests);
+        for (int i = 0; i < requests; i++) {
+            assertThat(correlationManager.getBrokerCorrelation(i).downstreamCorrelationId()).isEqualTo(1000 + i);
+        }
+        assertThat(correlationManager.inFlightCount()).isZero();
+        assertThat(correlationManager.highWaterMark()).isEqualTo(requests);
+    }
+
+    @Test
+    void slidingWindowReusesSlots() {
+        var correlationManager = new CorrelationManager(Integer.MAX_VALUE - 100);
+        for (int i = 0; i < 1000; i++) {
+            int upstreamId = put(correlationManager, i, true);
+            put(correlationManager, -i, true);
+            assertThat(correlationManager.getBrokerCorrelation(upstreamId).downstreamCorrelationId()).isEqualTo(i);
+            assertThat(correlationManager.getBrokerCorrelation(upstreamId + 1).downstreamCorrelationId()).isEqualTo(-i);
+        }
+        assertThat(correlationManager.capacity()).isEqualTo(CorrelationManager.INITIAL_CAPACITY);
+        assertThat(correlationManager.highWaterMark()).isEqualTo(2);
+    }
+
+    @Test
+    void delayedResponseDoesNotGrowTable() {
+        var correlationManager = new CorrelationManager();
+        int delayed = put(correlationManager, -1, true);
+        for (int i = 0; i < 1000; i++) {
+            int upstreamId = put(correlationManager, i, true);
+            assertThat(correlationManager.getBrokerCorrelation(upstreamId).downstreamCorrelationId()).isEqualTo(i);
+        }
+
+        assertThat(correlationManager.capacity()).isEqualTo(CorrelationManager.INITIAL_CAPACITY);
+        assertThat(correlationManager.getBrokerCorrelation(delayed).downstreamCorrelationId()).isEqualTo(-1);
+    }
+
+    @Test
+    void shrinksWhenInFlightCountDrops() {
+        var correlationManager = new CorrelationManager();
+        int requests = CorrelationManager.INITIAL_CAPACITY * 8;
+        for (int i = 0; i < requests; i++) {
+            put(correlationManager, i, true);
+        }
+        assertThat(correlationManager.capacity()).isGreaterThan(CorrelationManager.INITIAL_CAPACITY);
+
+        // responses out of request order, so that removals move entries within probe runs
+        for (int i = requests - 1; i >= 0; i -= 2) {
+            assertThat(correlationManager.getBrokerCorrelation(i).downstreamCorrelationId()).isEqualTo(i);
+        }
+        for (int i = 0; i < requests; i += 2) {
+            assertThat(correlationManager.getBrokerCorrelation(i).downstreamCorrelationId()).isEqualTo(i);
+        }
+
+        assertThat(correlationManager.inFlightCount()).isZero();
+        assertThat(correlationManager.capacity()).isEqualTo(CorrelationManager.INITIAL_CAPACITY);
+    }
+
+    @Test
+    void findsCollidingIdsAfterRemoval() {
+        var correlationManager = new CorrelationManager();
+        int delayed = put(correlationManager, -1, true);
+        for (int i = 1; i < CorrelationManager.INITIAL_CAPACITY; i++) {
+            correlationManager.getBrokerCorrelation(put(correlationManager, i, true));
+        }
+        // these start probing at the same slots as the delayed id and the one after it
+        int colliding = put(correlationManager, 100, true);
+        int next = put(correlationManager, 101, true);
+
+        assertThat(correlationManager.getBrokerCorrelation(delayed).downstreamCorrelationId()).isEqualTo(-1);
+
+        assertThat(correlationManager.isOpaqueResponse(next)).isTrue();
+        assertThat(correlationManager.getBrokerCorrelation(colliding).downstreamCorrelationId()).isEqualTo(100);
+        assertThat(correlationManager.getBrokerCorrelation(next).downstreamCorrelationId()).isEqualTo(101);
+        assertThat(correlationManager.inFlightCount()).isZero();
+    }
+
+    @Test
+    void clearForgetsInFlightCorrelations() {
+        var correlationManager = new CorrelationManager();
+        int upstreamId = put(correlationManager, 1, true);
+        put(correlationManager, 2, true);
+
+        correlationManager.clear();
+
+        assertThat(correlationManager.inFlightCount()).isZero();
+        assertThat(correlationManager.getBrokerCorrelation(upstreamId)).isNull();
+    }
+
+    @Test
+    void clearFailsPromisesOfFiltersRequests() {
+        var correlationManager = new CorrelationManager();
+        var promise = new CompletableFuture<Void>();
+        correlationManager.putBrokerRequest(ApiKeys.METADATA.id, (short) 12, 1, true, null, promise, true);
+
+        correlationManager.clear();
+
+        assertThat(promise).isCompletedExceptionally();
+    }
+
+    private static int put(CorrelationManager correlationManager, int downstreamCorrelationId, boolean hasResponse) {
+        return correlationManager.putBrokerRequest(ApiKeys.METADATA.id, (short) 12, downstreamCorrelationId, hasResponse, null, null, false);
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+package io.kroxylicious.proxy.internal.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.apache.kafka.common.Uuid;
+import org.apache.kafka.common.message.FetchResponseData;
+import org.apache.kafka.common.message.MetadataResponseData;
+import org.apache.kafka.common.message.ProduceRequestData;
+import org.apache.kafka.common.message.RequestHeaderData;
+import org.apache.kafka.common.message.ResponseHeaderData;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.protocol.ApiMessage;
+import org.apache.kafka.common.protocol.ByteBufferAccessor;
+import org.apache.kafka.common.protocol.Message;
+import org.apache.kafka.common.protocol.ObjectSerializationCache;
+import org.apache.kafka.common.protocol.types.RawTaggedField;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.SimpleRecord;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that the generated {@code *Writer} classes produce the same bytes as Kafka's own serialization.
+ */
+class MessageWriterTest {
+
+    static Stream<Arguments> allVersionsOfAllApis() {
+        return Arrays.stream(ApiKeys.values())
+                .flatMap(apiKey -> IntStream.rangeClosed(apiKey.messageType.lowestSupportedVersion(), apiKey.messageType.highestSupportedVersion(true))
+                        .mapToObj(version -> Arguments.of(apiKey, (short) version)));
+    }
+
+    static Stream<Short> fetchVersions() {
+        return versions(ApiKeys.FETCH);
+    }
+
+    static Stream<Short> produceVersions() {
+        return versions(ApiKeys.PRODUCE);
+    }
+
+    static Stream<Short> metadataVersions() {
+        return versions(ApiKeys.METADATA);
+    }
+
+    private static Stream<Short> versions(ApiKeys apiKey) {
+        return IntStream.rangeClosed(apiKey.messageType.lowestSupportedVersion(), apiKey.messageType.highestSupportedVersion(true))
+                .mapToObj(version -> (short) version);
+    }
+
+    @ParameterizedTest
+    @MethodSource("allVersionsOfAllApis")
+    void defaultRequestIsWrittenLikeKafka(ApiKeys apiKey, short version) {
+        ApiMessage request = apiKey.messageType.newRequest();
+        assertWrittenLikeKafka(request, version, out -> BodyWriter.writeRequest(apiKey, version, request, out));
+    }
+
+    @ParameterizedTest
+    @MethodSource("allVersionsOfAllApis")
+    void defaultResponseIsWrittenLikeKafka(ApiKeys apiKey, short version) {
+        ApiMessage response = apiKey.messageType.newResponse();
+        assertWrittenLikeKafka(response, version, out -> BodyWriter.writeResponse(apiKey, version, response, out));
+    }
+
+    @ParameterizedTest
+    @MethodSource("fetchVersions")
+    void fetchResponseIsWrittenLikeKafka(short version) {
+        var partition = new FetchResponseData.PartitionData()
+                .setPartitionIndex(1)
+                .setHighWatermark(10)
+                .setLastStableOffset(9)
+                .setAbortedTransactions(List.of(new FetchResponseData.AbortedTransaction().setProducerId(2).setFirstOffset(3)))
+                .setRecords(MemoryRecords.withRecords(CompressionType.NONE, new SimpleRecord("key".getBytes(), "value".getBytes())));
+        var emptyPartition = new FetchResponseData.PartitionData()
+                .setPartitionIndex(2)
+                .setAbortedTransactions(null)
+                .setRecords(null);
+        var response = new FetchResponseData()
+                .setThrottleTimeMs(5)
+                .setResponses(List.of(new FetchResponseData.FetchableTopicResponse()
+                        .setTopic(version <= 12 ? "tøpic-€" : "")
+                        .setTopicId(version >= 13 ? Uuid.randomUuid() : Uuid.ZERO_UUID)
+                        .setPartitions(List.of(partition, emptyPartition))));
+        if (version >= 7) {
+            response.setSessionId(1234);
+        }
+        if (version >= 12) {
+            partition.setDivergingEpoch(new FetchResponseData.EpochEndOffset().setEpoch(1).setEndOffset(5));
+        }
+        assertWrittenLikeKafka(response, version, out -> FetchResponseWriter.write(response, version, out));
+    }
+
+    @ParameterizedTest
+    @MethodSource("fetchVersions")
+    void nonDefaultFieldAbsentFromVersionIsRejectedLikeKafka(short version) {
+        var response = new FetchResponseData().setSessionId(1234);
+        assertWrittenLikeKafka(response, version, out -> FetchResponseWriter.write(response, version, out));
+    }
+
+    @ParameterizedTest
+    @MethodSource("fetchVersions")
+    void largeAndUnknownTaggedFieldsAreWrittenLikeKafka(short version) {
+        var partition = new FetchResponseData.PartitionData()
+                .setPartitionIndex(1)
+                .setRecords(null);
+        var response = new FetchResponseData()
+                .setResponses(List.of(new FetchResponseData.FetchableTopicResponse().setPartitions(List.of(partition))));
+        if (version >= 12) {
+            partition.setCurrentLeader(new FetchResponseData.LeaderIdAndEpoch().setLeaderId(3).setLeaderEpoch(4));
+            // unknown tags follow the known ones, and one is too large for its size to fit in a single byte
+            partition.unknownTaggedFields().add(new RawTaggedField(5, new byte[]{ 1, 2, 3 }));
+            partition.unknownTaggedFields().add(new RawTaggedField(200, new byte[300]));
+        }
+        if (version >= 16) {
+            var endpoints = new FetchResponseData.NodeEndpointCollection();
+            for (int i = 0; i < 20; i++) {
+                endpoints.add(new FetchResponseData.NodeEndpoint().setNodeId(i).setHost("broker-" + i + ".example.com").setPort(9092));
+            }
+            response.setNodeEndpoints(endpoints);
+        }
+        assertWrittenLikeKafka(response, version, out -> FetchResponseWriter.write(response, version, out));
+    }
+
+    @ParameterizedTest
+    @MethodSource("produceVersions")
+    void produceRequestIsWrittenLikeKafka(short version) {
+        var request = new ProduceRequestData()
+                .setAcks((short) -1)
+                .setTimeoutMs(30000)
+                .setTransactionalId(version >= 3 ? "txn" : null);
+        request.topicData().add(new ProduceRequestData.TopicProduceData()
+                .setName("topic")
+                .setPartitionData(List.of(new ProduceRequestData.PartitionProduceData()
+                        .setIndex(0)
+                        .setRecords(MemoryRecords.withRecords(CompressionType.NONE, new SimpleRecord("value".getBytes()))))));
+        assertWrittenLikeKafka(request, version, out -> ProduceRequestWriter.write(request, version, out));
+    }
+
+    @ParameterizedTest
+    @MethodSource("metadataVersions")
+    void metadataResponseIsWrittenLikeKafka(short version) {
+        var response = new MetadataResponseData()
+                .setClusterId(version >= 2 ? "clüster" : null)
+                .setControllerId(version >= 1 ? 1 : -1);
+        response.brokers().add(new MetadataResponseData.MetadataResponseBroker().setNodeId(1).setHost("localhost").setPort(9092)
+                .setRack(version >= 1 ? "rack" : null));
+        response.topics().add(new MetadataResponseData.MetadataResponseTopic()
+                .setName("topic")
+                .setIsInternal(false)
+                .setPartitions(List.of(new MetadataResponseData.MetadataResponsePartition()
+                        .setPartitionIndex(0)
+                        .setLeaderId(1)
+                        .setReplicaNodes(List.of(1, 2, 3))
+                        .setIsrNodes(List.of(1, 2))
+                        .setOfflineReplicas(List.of()))));
+        assertWrittenLikeKafka(response, version, out -> MetadataResponseWriter.write(response, version, out));
+    }
+
+    @ParameterizedTest
+    @MethodSource("io.kroxylicious.proxy.internal.codec.AbstractCodecTest#requestApiVersions")
+    void requestHeaderIsWrittenLikeKafka(short apiVersion) {
+        short headerVersion = ApiKeys.API_VERSIONS.requestHeaderVersion(apiVersion);
+        for (String clientId : new String[]{ null, "", "clïent" }) {
+            var header = new RequestHeaderData()
+                    .setRequestApiKey(ApiKeys.API_VERSIONS.id)
+                    .setRequestApiVersion(apiVersion)
+                    .setCorrelationId(12)
+                    .setClientId(clientId);
+            assertWrittenLikeKafka(header, headerVersion, out -> RequestHeaderWriter.write(header, headerVersion, out));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("io.kroxylicious.proxy.internal.codec.AbstractCodecTest#requestApiVersions")
+    void responseHeaderIsWrittenLikeKafka(short apiVersion) {
+        short headerVersion = ApiKeys.API_VERSIONS.responseHeaderVersion(apiVersion);
+        var header = new ResponseHeaderData().setCorrelationId(12);
+        assertWrittenLikeKafka(header, headerVersion, out -> ResponseHeaderWriter.write(header, headerVersion, out));
+    }
+
+    private static void assertWrittenLikeKafka(Message message, short version, Consumer<ByteBuf> writer) {
+        final byte[] expected;
+        try {
+            expected = writeUsingKafka(message, version);
+        }
+        catch (RuntimeException e) {
+            assertThatThrownBy(() -> writer.accept(Unpooled.buffer()))
+                    .isExactlyInstanceOf(e.getClass())
+                    .hasMessage(e.getMessage());
+            return;
+        }
+        // Start small, so that the buffer has to grow
+        ByteBuf out = Unpooled.buffer(1);
+        writer.accept(out);
+        assertThat(ByteBufUtil.getBytes(out))
+                .describedAs("%s v%d", message.getClass().getSimpleName(), version)
+                .isEqualTo(expected);
+    }
+
+    private static byte[] writeUsingKafka(Message message, short version) {
+        var cache = new ObjectSerializationCache();
+        ByteBuffer buffer = ByteBuffer.allocate(message.size(cache, version));
+        message.write(new ByteBufferAccessor(buffer), cache, version);
+        return buffer.array();
+    }
+}
@@ -6,6 +6,7 @@
 package io.kroxylicious.proxy.internal.codec;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletionStage;
@@ -18,6 +19,9 @@ import org.apache.kafka.common.message.ProduceRequestData;
 import org.apache.kafka.common.message.RequestHeaderData;
 import org.apache.kafka.common.protocol.ApiKeys;
 import org.apache.kafka.common.protocol.ByteBufferAccessor;
+import org.apache.kafka.common.record.CompressionType;
+import org.apache.kafka.common.record.MemoryRecords;
+import org.apache.kafka.common.record.SimpleRecord;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -346,4 +350,34 @@ public class RequestDecoderTest extends AbstractCodecTest {
                         DecodedRequestFrame.class, ((RequestHeaderData head) -> head), acks != 0),
                 "Unexpected correlation id");
     }
+
+    @Test
+    void decodedRecordsShareTheInboundBuffer() {
+        short produceVersion = ApiKeys.PRODUCE.latestVersion();
+        var header = new RequestHeaderData()
+                .setRequestApiKey(ApiKeys.PRODUCE.id)
+                .setRequestApiVersion(produceVersion)
+                .setCorrelationId(45)
+                .setClientId("323423");
+        var records = MemoryRecords.withRecords(CompressionType.NONE, new SimpleRecord("value".getBytes(StandardCharsets.UTF_8)));
+        var body = new ProduceRequestData().setAcks((short) 1);
+        body.topicData().add(new ProduceRequestData.TopicProduceData().setName("topic")
+                .setPartitionData(List.of(new ProduceRequestData.PartitionProduceData().setIndex(0).setRecords(records))));
+        ByteBuffer akBuffer = serializeUsingKafkaApis(ApiKeys.PRODUCE.requestHeaderVersion(produceVersion), header, produceVersion, body);
+        ByteBuf inbound = Unpooled.wrappedBuffer(akBuffer);
+
+        var messages = new ArrayList<>();
+        getKafkaRequestDecoder(DECODE_EVERYTHING, DEFAULT_SOCKET_FRAME_MAX_SIZE_BYTES).decode(null, inbound, messages);
+
+        assertThat(messages).singleElement().isInstanceOf(DecodedRequestFrame.class);
+        DecodedRequestFrame<ProduceRequestData> frame = (DecodedRequestFrame<ProduceRequestData>) messages.get(0);
+        var decodedRecords = (MemoryRecords) frame.body().topicData().iterator().next().partitionData().get(0).records();
+        assertThat(decodedRecords).isEqualTo(records);
+        assertThat(decodedRecords.buffer().array()).isSameAs(inbound.array());
+        assertThat(inbound.refCnt()).isEqualTo(2);
+
+        frame.release();
+
+        assertThat(inbound.refCnt()).isOne();
+    }
 }
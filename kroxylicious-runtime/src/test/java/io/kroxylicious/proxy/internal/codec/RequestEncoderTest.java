@@ -14,17 +14,26 @@ import org.apache.kafka.common.message.ApiVersionsRequestData;
 import org.apache.kafka.common.message.ProduceRequestData;
 import org.apache.kafka.common.message.RequestHeaderData;
 import org.apache.kafka.common.protocol.ApiKeys;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import io.netty.buffer.AbstractByteBufAllocator;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
 
 import io.kroxylicious.proxy.frame.DecodedRequestFrame;
 import io.kroxylicious.proxy.frame.OpaqueRequestFrame;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 
+import static io.kroxylicious.proxy.internal.codec.KafkaRequestEncoder.API_KEY;
+import static io.kroxylicious.proxy.internal.codec.KafkaRequestEncoder.API_VERSION;
+import static io.kroxylicious.proxy.internal.codec.KafkaRequestEncoder.LENGTH;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -74,7 +83,7 @@ public class RequestEncoderTest extends AbstractCodecTest {
         var correlationManager = new CorrelationManager(78);
         whenRequestEncoded(frame, correlationManager);
 
-        assertTrue(correlationManager.brokerRequests.isEmpty(),
+        assertEquals(0, correlationManager.inFlightCount(),
                 "Expect request with no response to not have a correlation stored");
     }
 
@@ -87,10 +96,71 @@ public class RequestEncoderTest extends AbstractCodecTest {
         var correlationManager = new CorrelationManager(78);
         whenRequestEncoded(frame, correlationManager);
 
-        assertNotNull(correlationManager.brokerRequests.get(78),
-                "Expect request with response to have a correlation stored");
-        assertEquals(1, correlationManager.brokerRequests.size(),
+        assertEquals(1, correlationManager.inFlightCount(),
                 "Expect request with response to have a correlation");
+        assertNotNull(correlationManager.getBrokerCorrelation(78),
+                "Expect request with response to have a correlation stored");
+        assertEquals(0, correlationManager.inFlightCount(),
+                "Expect the correlation to be removed once retrieved");
+    }
+
+    @Test
+    void opaqueRequestIsPassedThroughWithoutCopyingTheBody() {
+        givenRequestFrame given = createRequestFrame(true);
+        ByteBuf inbound = given.frame().buf();
+        var correlationManager = new CorrelationManager(78);
+        var channel = new EmbeddedChannel(new KafkaRequestEncoder(correlationManager));
+
+        channel.writeOutbound(given.frame());
+        ByteBuf written = channel.readOutbound();
+
+        assertThat(written).isInstanceOf(CompositeByteBuf.class);
+        ByteBuffer expected = given.byteBuffer().duplicate().rewind();
+        expected.putInt(LENGTH + API_KEY + API_VERSION, 78);
+        assertSameBytes(Unpooled.wrappedBuffer(expected), written);
+        assertThat(correlationManager.getBrokerCorrelation(78).downstreamCorrelationId()).isEqualTo(12);
+
+        assertThat(inbound.refCnt()).isEqualTo(1);
+        written.release();
+        assertThat(inbound.refCnt()).isZero();
+    }
+
+    @Test
+    void opaqueRequestIsReleasedWhenPassingThroughFails() {
+        givenRequestFrame given = createRequestFrame(true);
+        ByteBuf inbound = given.frame().buf();
+        List<ByteBuf> headers = new ArrayList<>();
+        var correlationManager = new CorrelationManager(78);
+        var channel = new EmbeddedChannel(new KafkaRequestEncoder(correlationManager));
+        channel.config().setAllocator(new AbstractByteBufAllocator() {
+            @Override
+            protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+                ByteBuf header = Unpooled.buffer(initialCapacity, maxCapacity);
+                headers.add(header);
+                return header;
+            }
+
+            @Override
+            protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+                return newHeapBuffer(initialCapacity, maxCapacity);
+            }
+
+            @Override
+            public boolean isDirectBufferPooled() {
+                return false;
+            }
+
+            @Override
+            public CompositeByteBuf compositeBuffer(int maxNumComponents) {
+                throw new IllegalStateException("out of buffers");
+            }
+        });
+
+        assertThatThrownBy(() -> channel.writeOutbound(given.frame())).hasRootCauseInstanceOf(IllegalStateException.class);
+
+        assertThat(inbound.refCnt()).isZero();
+        assertThat(headers).singleElement().extracting(ByteBuf::refCnt).isEqualTo(0);
+        assertThat(correlationManager.inFlightCount()).isZero();
     }
 
     private static void whenRequestEncoded(givenRequestFrame result, CorrelationManager correlationManager) throws Exception {
@@ -21,12 +21,14 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 
 import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+import io.kroxylicious.proxy.frame.OpaqueFrameChunk;
 import io.kroxylicious.proxy.frame.OpaqueResponseFrame;
 
 import edu.umd.cs.findbugs.annotations.NonNull;
 
 import static io.kroxylicious.proxy.internal.codec.ByteBufs.writeByteBuf;
 import static io.kroxylicious.proxy.model.VirtualCluster.DEFAULT_SOCKET_FRAME_MAX_SIZE_BYTES;
+import static io.kroxylicious.proxy.model.VirtualCluster.DEFAULT_STREAMED_FRAME_MIN_SIZE_BYTES;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -74,7 +76,7 @@ class ResponseDecoderTest extends AbstractCodecTest {
 
     @NonNull
     private static KafkaResponseDecoder createResponseDecoder(CorrelationManager mgr, int socketFrameMaxSizeBytes) {
-        return new KafkaResponseDecoder(mgr, socketFrameMaxSizeBytes);
+        return new KafkaResponseDecoder(mgr, socketFrameMaxSizeBytes, DEFAULT_STREAMED_FRAME_MIN_SIZE_BYTES);
     }
 
     @Test
@@ -151,4 +153,81 @@ class ResponseDecoderTest extends AbstractCodecTest {
                 .extracting("body")
                 .isEqualTo(new ApiVersionsResponseData().setErrorCode(Errors.UNSUPPORTED_VERSION.code()));
     }
+
+    @Test
+    void shouldStreamLargeOpaqueResponseAsItArrives() {
+        mgr.putBrokerRequest(ApiKeys.FETCH.id, (short) 12, 52, true, null, null, false);
+        var decoder = new KafkaResponseDecoder(mgr, frameMaxSizeBytes, 64);
+
+        // given
+        ByteBuf head = Unpooled.buffer().writeInt(100).writeInt(12).writeZero(20);
+        List<Object> objects = new ArrayList<>();
+
+        // when
+        decoder.decode(null, head, objects);
+
+        // then
+        assertThat(objects).singleElement().isInstanceOfSatisfying(OpaqueResponseFrame.class, frame -> {
+            assertThat(frame.isStreamed()).isTrue();
+            assertThat(frame.length()).isEqualTo(100);
+            assertThat(frame.correlationId()).isEqualTo(52);
+            assertThat(frame.buf().readableBytes()).isEqualTo(24);
+            assertThat(frame.buf().getInt(frame.buf().readerIndex())).isEqualTo(52);
+        });
+        assertThat(head.isReadable()).isFalse();
+        assertThat(mgr.inFlightCount()).isZero();
+
+        // when
+        objects.clear();
+        decoder.decode(null, Unpooled.buffer().writeZero(40), objects);
+        // the rest of the frame, followed by the start of the next one
+        decoder.decode(null, Unpooled.buffer().writeZero(36).writeInt(100), objects);
+
+        // then
+        assertThat(objects).hasSize(2);
+        assertThat(objects.get(0)).isInstanceOfSatisfying(OpaqueFrameChunk.class, chunk -> {
+            assertThat(chunk.content().readableBytes()).isEqualTo(40);
+            assertThat(chunk.isLast()).isFalse();
+        });
+        assertThat(objects.get(1)).isInstanceOfSatisfying(OpaqueFrameChunk.class, chunk -> {
+            assertThat(chunk.content().readableBytes()).isEqualTo(36);
+            assertThat(chunk.isLast()).isTrue();
+        });
+    }
+
+    @Test
+    void shouldNotStreamResponseToBeDecoded() {
+        mgr.putBrokerRequest(ApiKeys.FETCH.id, (short) 12, 52, true, null, null, true);
+        var decoder = new KafkaResponseDecoder(mgr, frameMaxSizeBytes, 64);
+
+        // given
+        ByteBuf buffer = Unpooled.buffer().writeInt(100).writeInt(12).writeZero(20);
+        List<Object> objects = new ArrayList<>();
+
+        // when
+        decoder.decode(null, buffer, objects);
+
+        // then
+        assertThat(objects).isEmpty();
+        assertThat(buffer.readerIndex()).isZero();
+        assertThat(mgr.inFlightCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotStreamResponseSmallerThanThreshold() {
+        mgr.putBrokerRequest(ApiKeys.FETCH.id, (short) 12, 52, true, null, null, false);
+        var decoder = new KafkaResponseDecoder(mgr, frameMaxSizeBytes, 101);
+
+        // given
+        ByteBuf buffer = Unpooled.buffer().writeInt(100).writeInt(12).writeZero(20);
+        List<Object> objects = new ArrayList<>();
+
+        // when
+        decoder.decode(null, buffer, objects);
+
+        // then
+        assertThat(objects).isEmpty();
+        assertThat(buffer.readerIndex()).isZero();
+        assertThat(mgr.inFlightCount()).isEqualTo(1);
+    }
 }
@@ -10,10 +10,19 @@ import java.nio.ByteBuffer;
 import org.apache.kafka.common.message.ApiVersionsResponseData;
 import org.apache.kafka.common.message.ResponseHeaderData;
 import org.apache.kafka.common.protocol.ApiKeys;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
 import io.kroxylicious.proxy.frame.DecodedResponseFrame;
+import io.kroxylicious.proxy.frame.OpaqueResponseFrame;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 class ResponseEncoderTest extends AbstractCodecTest {
     @ParameterizedTest
@@ -25,4 +34,25 @@ class ResponseEncoderTest extends AbstractCodecTest {
         ByteBuffer expected = serializeUsingKafkaApis(headerVersion, exampleHeader, apiVersion, exampleBody);
         testEncode(expected, new DecodedResponseFrame<>(apiVersion, exampleHeader.correlationId(), exampleHeader, exampleBody), new KafkaResponseEncoder());
     }
+
+    @Test
+    void opaqueResponseIsPassedThroughWithoutCopyingTheBody() {
+        ResponseHeaderData exampleHeader = exampleResponseHeader();
+        ApiVersionsResponseData exampleBody = exampleApiVersionsResponse();
+        short apiVersion = ApiKeys.API_VERSIONS.latestVersion();
+        short headerVersion = ApiKeys.API_VERSIONS.responseHeaderVersion(apiVersion);
+        ByteBuffer expected = serializeUsingKafkaApis(headerVersion, exampleHeader, apiVersion, exampleBody);
+        int length = expected.duplicate().getInt();
+        ByteBuf inbound = Unpooled.wrappedBuffer(expected.duplicate().position(Integer.BYTES));
+        var channel = new EmbeddedChannel(new KafkaResponseEncoder());
+
+        channel.writeOutbound(new OpaqueResponseFrame(inbound, exampleHeader.correlationId(), length));
+        ByteBuf written = channel.readOutbound();
+
+        assertThat(written).isInstanceOf(CompositeByteBuf.class);
+        assertSameBytes(Unpooled.wrappedBuffer(expected), written);
+        assertThat(inbound.refCnt()).isEqualTo(1);
+        written.release();
+        assertThat(inbound.refCnt()).isZero();
+    }
 }
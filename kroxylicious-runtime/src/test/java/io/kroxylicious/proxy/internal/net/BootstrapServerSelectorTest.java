@@ -0,0 +1,114 @@
+/*
+ * Copyright Kroxylicious Authors.
+ *
+ * Licensed under the Apache Software License version 2.0, available at http://www.apache.org/licenses/LICENSE-2.0
+ */
+
+package io.kroxylicious.proxy.internal.net;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import io.kroxylicious.proxy.service.HostPort;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BootstrapServerSelectorTest {
+
+    private static final HostPort SERVER_1 = new HostPort("server1", 9092);
+    private static final HostPort SERVER_2 = new HostPort("server2", 9092);
+    private static final HostPort SERVER_3 = new HostPort("server3", 9092);
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @Test
+    void shouldSelectOnlyServer() {
+        var selector = new BootstrapServerSelector(List.of(SERVER_1), nanoTime::get);
+
+        assertThat(selector.canFailover()).isFalse();
+        assertThat(selector.select()).isEqualTo(SERVER_1);
+        selector.failed(SERVER_1);
+        assertThat(selector.select()).isEqualTo(SERVER_1);
+        assertThat(selector.select(Set.of(SERVER_1))).isNull();
+    }
+
+    @Test
+    void shouldSpreadSelectionsAcrossServers() {
+        var selector = new BootstrapServerSelector(List.of(SERVER_1, SERVER_2, SERVER_3), nanoTime::get);
+
+        var selected = new HashSet<HostPort>();
+        for (int i = 0; i < 100; i++) {
+            selected.add(selector.select());
+        }
+
+        assertThat(selector.canFailover()).isTrue();
+        assertThat(selected).containsExactlyInAnyOrder(SERVER_1, SERVER_2, SERVER_3);
+    }
+
+    @Test
+    void shouldPreferLowerLatencyServer() {
+        var selector = new BootstrapServerSelector(List.of(SERVER_1, SERVER_2), nanoTime::get);
+        selector.connected(SERVER_1, 5_000_000);
+        selector.connected(SERVER_2, 1_000_000);
+
+        assertThat(selector.select()).isEqualTo(SERVER_2);
+    }
+
+    @Test
+    void shouldAvoidFailedServerUntilBackoffElapses() {
+        var selector = new BootstrapServerSelector(List.of(SERVER_1, SERVER_2), nanoTime::get);
+        selector.connected(SERVER_1, 1_000_000);
+        selector.connected(SERVER_2, 5_000_000);
+
+        selector.failed(SERVER_1);
+        assertThat(selector.select()).isEqualTo(SERVER_2);
+
+        nanoTime.addAndGet(BootstrapServerSelector.INITIAL_BACKOFF.toNanos());
+        assertThat(selector.select()).isEqualTo(SERVER_1);
+    }
+
+    @Test
+    void shouldDoubleBackoffOnConsecutiveFailures() {
+        var selector = new BootstrapServerSelector(List.of(SERVER_1, SERVER_2), nanoTime::get);
+        selector.connected(SERVER_1, 1_000_000);
+        selector.connected(SERVER_2, 5_000_000);
+
+        selector.failed(SERVER_1);
+        selector.failed(SERVER_1);
+
+        nanoTime.addAndGet(BootstrapServerSelector.INITIAL_BACKOFF.toNanos());
+        assertThat(selector.select()).isEqualTo(SERVER_2);
+        nanoTime.addAndGet(BootstrapServerSelector.INITIAL_BACKOFF.toNanos());
+        assertThat(selector.select()).isEqualTo(SERVER_1);
+    }
+
+    @Test
+    void shouldSelectServerWhoseBackoffEndsSoonestWhenAllFailed() {
+        var selector = new BootstrapServerSelector(List.of(SERVER_1, SERVER_2), nanoTime::get);
+        selector.failed(SERVER_2);
+        nanoTime.addAndGet(1);
+        selector.failed(SERVER_1);
+
+        assertThat(selector.select()).isEqualTo(SERVER_2);
+    }
+
+    @Test
+    void shouldNotSelectAttemptedServers() {
+        var selector = new BootstrapServerSelector(List.of(SERVER_1, SERVER_2), nanoTime::get);
+
+        assertThat(selector.select(Set.of(SERVER_1))).isEqualTo(SERVER_2);
+        assertThat(selector.select(Set.of(SERVER_1, SERVER_2))).isNull();
+    }
+
+    @Test
+    void shouldRecogniseBootstrapServers() {
+        var selector = new BootstrapServerSelector(List.of(SERVER_1, SERVER_2), nanoTime::get);
+
+        assertThat(selector.isBootstrapServer(SERVER_2)).isTrue();
+        assertThat(selector.isBootstrapServer(SERVER_3)).isFalse();
+    }
+}